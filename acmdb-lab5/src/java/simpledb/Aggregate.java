@@ -55,6 +55,9 @@ public class Aggregate extends Operator {
         if (aFieldType == Type.INT_TYPE) {
             this.aggregator = new IntegerAggregator(gfield, gFieldType, afield, aop);
         }
+        else if (aFieldType == Type.LONG_TYPE || aFieldType == Type.DOUBLE_TYPE) {
+            this.aggregator = new NumericAggregator(gfield, gFieldType, afield, aFieldType, aop);
+        }
         else {
             this.aggregator = new StringAggregator(gfield, gFieldType, afield, aop);
         }
@@ -110,6 +113,14 @@ public class Aggregate extends Operator {
         return aop;
     }
 
+    /**
+     * @return the type of the result of the aggregate operator over a field
+     *         of the given type: an int for COUNT, otherwise the field's type
+     */
+    public static Type aggregateType(Aggregator.Op aop, Type fieldType) {
+        return aop == Aggregator.Op.COUNT ? Type.INT_TYPE : fieldType;
+    }
+
     public static String nameOfAggregatorOp(Aggregator.Op aop) {
 	return aop.toString();
     }
@@ -163,11 +174,12 @@ public class Aggregate extends Operator {
         // some code goes here
         Type[] typeArr;
         String[] nameArr;
+        Type resultType = aggregateType(aop, aFieldType);
         if (gfield == Aggregator.NO_GROUPING) {
-            typeArr = new Type[]{aFieldType};
+            typeArr = new Type[]{resultType};
             nameArr = new String[]{aop.toString() + " " + aggregateFieldName()};
         } else {
-            typeArr = new Type[]{gFieldType, aFieldType};
+            typeArr = new Type[]{gFieldType, resultType};
             nameArr = new String[]{groupFieldName(), aop.toString() + " " + aggregateFieldName()};
         }
         return new TupleDesc(typeArr, nameArr);
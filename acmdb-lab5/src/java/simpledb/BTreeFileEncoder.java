@@ -558,7 +558,12 @@ public class BTreeFileEncoder {
 		for(int t = 0; t < recordcount; t++) {
 			TupleDesc td = tuples.get(t).getTupleDesc();
 			for(int j = 0; j < td.numFields(); j++) {
-				tuples.get(t).getField(j).serialize(dos);
+				Field f = tuples.get(t).getField(j);
+				f.serialize(dos);
+				// pad variable-length fields to the slot size
+				for (int k = typeAr[j].getLen(f); k < typeAr[j].getLen(); k++) {
+					dos.writeByte(0);
+				}
 			}
 		}
 
@@ -669,7 +674,11 @@ public class BTreeFileEncoder {
 
 		Collections.sort(entries, new EntryComparator());
 		for(int e = 0; e < entrycount; e++) {
-			entries.get(e).getKey().serialize(dos);
+			Field key = entries.get(e).getKey();
+			key.serialize(dos);
+			for (int k = keyType.getLen(key); k < keyType.getLen(); k++) {
+				dos.writeByte(0);
+			}
 		}
 
 		for(int e = entrycount; e < nentries; e++) {
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of BTreeHeaderPage stores data for one page of a BTreeFile and 
@@ -109,7 +110,7 @@ public class BTreeHeaderPage implements Page {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
@@ -132,41 +133,23 @@ public class BTreeHeaderPage implements Page {
 	 * @return A byte array correspond to the bytes of this page.
 	 */
 	public byte[] getPageData() {
-		int len = BufferPool.getPageSize();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
+		byte[] data = new byte[BufferPool.getPageSize()];
+		writePageData(ByteBuffer.wrap(data));
+		return data;
+	}
 
+	/**
+	 * Writes the bytes of {@link #getPageData()} into buf at its position with
+	 * bulk puts, advancing it by one page.
+	 */
+	public void writePageData(ByteBuffer buf) {
 		// write out the next and prev pointers
-		try {
-			dos.writeInt(nextPage);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		try {
-			dos.writeInt(prevPage);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		buf.putInt(nextPage);
+		buf.putInt(prevPage);
 
 		// create the header of the page
-		for (int i=0; i<header.length; i++) {
-			try {
-				dos.writeByte(header[i]);
-			} catch (IOException e) {
-				// this really shouldn't happen
-				e.printStackTrace();
-			}
-		}
-
-		try {
-			dos.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		return baos.toByteArray();
+		buf.put(header);
+		BTreePage.putZeros(buf, BufferPool.getPageSize() - (2 * INDEX_SIZE + header.length));
 	}
 
 	/**
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import simpledb.Predicate.Op;
 
@@ -157,7 +158,7 @@ public class BTreeInternalPage extends BTreePage {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
@@ -181,8 +182,8 @@ public class BTreeInternalPage extends BTreePage {
 		// read the key field
 		Field f = null;
 		try {
-			f = td.getFieldType(keyField).parse(dis);
-		} catch (java.text.ParseException e) {
+			f = readField(dis, td.getFieldType(keyField));
+		} catch (java.text.ParseException | IOException e) {
 			e.printStackTrace();
 			throw new NoSuchElementException("parsing error!");
 		}
@@ -232,105 +233,44 @@ public class BTreeInternalPage extends BTreePage {
 	 * @return A byte array correspond to the bytes of this page.
 	 */
 	public byte[] getPageData() {
-		int len = BufferPool.getPageSize();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
-
-		// write out the parent pointer
-		try {
-			dos.writeInt(parent);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		// write out the child page category
-		try {
-			dos.writeByte((byte) childCategory);
+		byte[] data = new byte[BufferPool.getPageSize()];
+		writePageData(ByteBuffer.wrap(data));
+		return data;
+	}
 
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+	/**
+	 * Writes the bytes of {@link #getPageData()} into buf at its position with
+	 * bulk puts, advancing it by one page.
+	 */
+	public void writePageData(ByteBuffer buf) {
+		// write out the parent pointer and the child page category
+		buf.putInt(parent);
+		buf.put((byte) childCategory);
 
 		// create the header of the page
-		for (int i=0; i<header.length; i++) {
-			try {
-				dos.writeByte(header[i]);
-			} catch (IOException e) {
-				// this really shouldn't happen
-				e.printStackTrace();
-			}
-		}
+		buf.put(header);
 
 		// create the keys
 		// start from 1 because the first key slot is not used
 		// since a node with m keys has m+1 pointers
+		int keyLen = td.getFieldType(keyField).getLen();
 		for (int i=1; i<keys.length; i++) {
-
-			// empty slot
-			if (!isSlotUsed(i)) {
-				for (int j=0; j<td.getFieldType(keyField).getLen(); j++) {
-					try {
-						dos.writeByte(0);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-
-				}
-				continue;
+			if (isSlotUsed(i)) {
+				putField(buf, td.getFieldType(keyField), keys[i]);
 			}
-
-			// non-empty slot
-			try {
-				keys[i].serialize(dos);
-			} catch (IOException e) {
-				e.printStackTrace();
+			else {
+				putZeros(buf, keyLen);
 			}
-
 		}
 
 		// create the child pointers
 		for (int i=0; i<children.length; i++) {
-
-			// empty slot
-			if (!isSlotUsed(i)) {
-				for (int j=0; j<INDEX_SIZE; j++) {
-					try {
-						dos.writeByte(0);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-
-				}
-				continue;
-			}
-
-			// non-empty slot
-			try {
-				dos.writeInt(children[i]);
-
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+			buf.putInt(isSlotUsed(i) ? children[i] : 0);
 		}
 
 		// padding
-		int zerolen = BufferPool.getPageSize() - (INDEX_SIZE + 1 + header.length + 
-				td.getFieldType(keyField).getLen() * (keys.length - 1) + INDEX_SIZE * children.length); 
-		byte[] zeroes = new byte[zerolen];
-		try {
-			dos.write(zeroes, 0, zerolen);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		try {
-			dos.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		return baos.toByteArray();
+		putZeros(buf, BufferPool.getPageSize() - (INDEX_SIZE + 1 + header.length +
+				keyLen * (keys.length - 1) + INDEX_SIZE * children.length));
 	}
 
 	/**
@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of BTreeLeafPage stores data for one page of a BTreeFile and 
@@ -149,7 +150,7 @@ public class BTreeLeafPage extends BTreePage {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
@@ -176,10 +177,10 @@ public class BTreeLeafPage extends BTreePage {
 		t.setRecordId(rid);
 		try {
 			for (int j=0; j<td.numFields(); j++) {
-				Field f = td.getFieldType(j).parse(dis);
+				Field f = readField(dis, td.getFieldType(j));
 				t.setField(j, f);
 			}
-		} catch (java.text.ParseException e) {
+		} catch (java.text.ParseException | IOException e) {
 			e.printStackTrace();
 			throw new NoSuchElementException("parsing error!");
 		}
@@ -199,84 +200,40 @@ public class BTreeLeafPage extends BTreePage {
 	 * @return A byte array corresponding to the bytes of this page.
 	 */
 	public byte[] getPageData() {
-		int len = BufferPool.getPageSize();
-		ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-		DataOutputStream dos = new DataOutputStream(baos);
+		byte[] data = new byte[BufferPool.getPageSize()];
+		writePageData(ByteBuffer.wrap(data));
+		return data;
+	}
 
+	/**
+	 * Writes the bytes of {@link #getPageData()} into buf at its position with
+	 * bulk puts, advancing it by one page.
+	 */
+	public void writePageData(ByteBuffer buf) {
 		// write out the parent and sibling pointers
-		try {
-			dos.writeInt(parent);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		try {
-			dos.writeInt(leftSibling);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-		try {
-			dos.writeInt(rightSibling);
-
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		buf.putInt(parent);
+		buf.putInt(leftSibling);
+		buf.putInt(rightSibling);
 
 		// create the header of the page
-		for (int i=0; i<header.length; i++) {
-			try {
-				dos.writeByte(header[i]);
-			} catch (IOException e) {
-				// this really shouldn't happen
-				e.printStackTrace();
-			}
-		}
+		buf.put(header);
 
 		// create the tuples
 		for (int i=0; i<tuples.length; i++) {
-
 			// empty slot
 			if (!isSlotUsed(i)) {
-				for (int j=0; j<td.getSize(); j++) {
-					try {
-						dos.writeByte(0);
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-
-				}
+				putZeros(buf, td.getSize());
 				continue;
 			}
 
 			// non-empty slot
 			for (int j=0; j<td.numFields(); j++) {
-				Field f = tuples[i].getField(j);
-				try {
-					f.serialize(dos);
-
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
+				putField(buf, td.getFieldType(j), tuples[i].getField(j));
 			}
 		}
 
 		// padding
-		int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length + 3 * INDEX_SIZE); //- numSlots * td.getSize();
-		byte[] zeroes = new byte[zerolen];
-		try {
-			dos.write(zeroes, 0, zerolen);
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		try {
-			dos.flush();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
-
-		return baos.toByteArray();
+		putZeros(buf, BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length + 3 * INDEX_SIZE));
 	}
 
 	/**
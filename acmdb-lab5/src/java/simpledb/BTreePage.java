@@ -2,6 +2,7 @@ package simpledb;
 
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import simpledb.Predicate.Op;
 
@@ -27,6 +28,9 @@ public abstract class BTreePage implements Page {
 	protected byte[] oldData;
 	protected final Byte oldDataLock=new Byte((byte)0);
 
+	/** Source of zeros for padding written by {@link #putZeros}. */
+	private static final byte[] ZEROS = new byte[256];
+
 	/**
 	 * Create a BTreeInternalPage from a set of bytes of data read from disk.
 	 * The format of a BTreeInternalPage is a set of header bytes indicating
@@ -141,5 +145,35 @@ public abstract class BTreePage implements Page {
 	 */
 	public abstract boolean isSlotUsed(int i);
 
-}
 
+	/**
+	 * Writes len zero bytes into buf with bulk puts, e.g. for empty slots and
+	 * the padding at the end of a page.
+	 */
+	static void putZeros(ByteBuffer buf, int len) {
+		while (len > 0) {
+			int n = Math.min(len, ZEROS.length);
+			buf.put(ZEROS, 0, n);
+			len -= n;
+		}
+	}
+
+	/**
+	 * Writes a field of the given type into buf, padded to the largest size
+	 * of the type, as every slot of a B+ tree page is of one size.
+	 */
+	static void putField(ByteBuffer buf, Type type, Field f) {
+		f.serialize(buf);
+		putZeros(buf, type.getLen() - type.getLen(f));
+	}
+
+	/**
+	 * Reads a field of the given type written by
+	 * {@link #putField(ByteBuffer, Type, Field)}, padding included.
+	 */
+	static Field readField(DataInputStream dis, Type type) throws java.text.ParseException, IOException {
+		Field f = type.parse(dis);
+		dis.skipBytes(type.getLen() - type.getLen(f));
+		return f;
+	}
+}
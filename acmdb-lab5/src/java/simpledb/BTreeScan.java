@@ -4,14 +4,16 @@ import java.util.*;
 
 /**
  * BTreeScan is an operator which reads tuples in sorted order 
- * according to a predicate
+ * according to a predicate. It also scans other {@link IndexFile}s, such as
+ * a {@link HashFile}, in the order their index iterators return tuples.
  */
-public class BTreeScan implements DbIterator {
+public class BTreeScan implements IndexedScan {
 
 	private static final long serialVersionUID = 1L;
 
 	private boolean isOpen = false;
 	private TransactionId tid;
+	private int tableid;
 	private TupleDesc myTd;
 	private IndexPredicate ipred = null;
 	private transient DbFileIterator it;
@@ -52,6 +54,11 @@ public class BTreeScan implements DbIterator {
 		return this.tablename;
 	}
 
+	/** @return the id of the table this operator scans */
+	public int getTableId() {
+		return this.tableid;
+	}
+
 	/**
 	 * @return Return the alias of the table this operator scans. 
 	 * */
@@ -74,14 +81,10 @@ public class BTreeScan implements DbIterator {
 	 */
 	public void reset(int tableid, String tableAlias) {
 		this.isOpen=false;
+		this.tableid = tableid;
 		this.alias = tableAlias;
 		this.tablename = Database.getCatalog().getTableName(tableid);
-		if(ipred == null) {
-			this.it = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
-		}
-		else {
-			this.it = ((BTreeFile) Database.getCatalog().getDatabaseFile(tableid)).indexIterator(tid, ipred);
-		}
+		this.it = fileIterator();
 		myTd = Database.getCatalog().getTupleDesc(tableid);
 		String[] newNames = new String[myTd.numFields()];
 		Type[] newTypes = new Type[myTd.numFields()];
@@ -95,6 +98,27 @@ public class BTreeScan implements DbIterator {
 		myTd = new TupleDesc(newTypes, newNames);
 	}
 
+	/**
+	 * @return an iterator over the tuples of the table matching the predicate
+	 */
+	private DbFileIterator fileIterator() {
+		DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+		if (ipred == null) {
+			return f.iterator(tid);
+		}
+		return ((IndexFile) f).indexIterator(tid, ipred);
+	}
+
+	public IndexPredicate getPredicate() {
+		return ipred;
+	}
+
+	public void setPredicate(IndexPredicate ipred) {
+		close();
+		this.ipred = ipred;
+		this.it = fileIterator();
+	}
+
 	public BTreeScan(TransactionId tid, int tableid, IndexPredicate ipred) {
 		this(tid, tableid, Database.getCatalog().getTableName(tableid), ipred);
 	}
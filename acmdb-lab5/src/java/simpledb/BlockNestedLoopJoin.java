@@ -0,0 +1,153 @@
+package simpledb;
+
+import java.util.ArrayList;
+
+/**
+ * BlockNestedLoopJoin is a {@link Join} that reads its outer child a block
+ * at a time: it buffers a number of pages' worth of outer tuples, then scans
+ * the inner child once for the whole block, testing each inner tuple against
+ * every buffered outer tuple. The inner child is thus rescanned once per
+ * block rather than once per outer tuple. Any join predicate is supported.
+ * <p>
+ * Within a block, the joined tuples come in the order of the inner child.
+ */
+public class BlockNestedLoopJoin extends Join {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The default size of a block of outer tuples, in pages */
+    public static final int DEFAULT_BLOCK_PAGES = 32;
+
+    private DbIterator outer, inner;
+    private TupleDesc td;
+    private int blockPages = DEFAULT_BLOCK_PAGES;
+    private final ArrayList<Tuple> block = new ArrayList<Tuple>();
+    /** The next tuple of the block to test against innerTuple */
+    private int blockPos;
+    private Tuple innerTuple;
+    private int innerScans;
+
+    /**
+     * Constructor. Accepts to children to join and the predicate to join them
+     * on
+     *
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     */
+    public BlockNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        super(p, child1, child2);
+        setChildren(new DbIterator[] {child1, child2});
+    }
+
+    /**
+     * Sets how many pages of outer tuples, counting the tuples by their
+     * estimated size in memory, a block holds. Takes effect with the next block.
+     */
+    public void setBlockPages(int pages) {
+        if (pages < 1) {
+            throw new IllegalArgumentException("a block must hold at least a page");
+        }
+        blockPages = pages;
+    }
+
+    /**
+     * @return the number of times the inner child was scanned since the join
+     *         was opened or rewound: once per block of outer tuples
+     */
+    public int getInnerScans() {
+        return innerScans;
+    }
+
+    public TupleDesc getTupleDesc() {
+        if (td == null) {
+            td = super.getTupleDesc();
+        }
+        return td;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.rewind();
+        reset();
+    }
+
+    public void close() {
+        super.close();
+        reset();
+    }
+
+    private void reset() {
+        block.clear();
+        blockPos = 0;
+        innerTuple = null;
+        innerScans = 0;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples: the concatenation of an outer tuple in the current block
+     * with the current inner tuple, if they satisfy the join predicate.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        JoinPredicate p = getJoinPredicate();
+        while (true) {
+            while (innerTuple != null && blockPos < block.size()) {
+                Tuple outerTuple = block.get(blockPos++);
+                if (p.filter(outerTuple, innerTuple)) {
+                    Tuple joined = new Tuple(getTupleDesc());
+                    int n1 = outerTuple.getTupleDesc().numFields();
+                    for (int i = 0; i < n1; i++) {
+                        joined.setField(i, outerTuple.getField(i));
+                    }
+                    for (int i = 0; i < innerTuple.getTupleDesc().numFields(); i++) {
+                        joined.setField(n1 + i, innerTuple.getField(i));
+                    }
+                    return joined;
+                }
+            }
+            if (!block.isEmpty() && inner.hasNext()) {
+                innerTuple = inner.next();
+                blockPos = 0;
+            } else if (!nextBlock()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Replaces the block with the next block of outer tuples, and starts a
+     * scan of the inner child for it.
+     *
+     * @return false if the outer child has no more tuples
+     */
+    private boolean nextBlock() throws DbException, TransactionAbortedException {
+        block.clear();
+        innerTuple = null;
+        long budget = (long) blockPages * BufferPool.getPageSize();
+        long bytes = 0;
+        while (bytes < budget && outer.hasNext()) {
+            Tuple t = outer.next();
+            block.add(t);
+            bytes += SpillFile.memorySize(t);
+        }
+        if (block.isEmpty()) {
+            return false;
+        }
+        if (innerScans > 0) {
+            inner.rewind();
+        }
+        innerScans++;
+        return true;
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        super.setChildren(children);
+        this.outer = children[0];
+        this.inner = children[1];
+        this.td = null;
+    }
+}
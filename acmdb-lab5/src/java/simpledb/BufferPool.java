@@ -3,9 +3,15 @@ package simpledb;
 import java.io.*;
 
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -15,6 +21,28 @@ import java.util.Set;
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
  * locks to read/write the page.
+ * <p>
+ * The page table is split into a power-of-two number of partitions selected
+ * by the hash of the PageId. Each partition has its own monitor and its own
+ * {@link ReplacementPolicy} state, so hits on different partitions never
+ * contend. The capacity limit is shared by all partitions; a miss that finds
+ * the pool full evicts from its own partition first and then from the others.
+ * <p>
+ * Scans can have pages loaded ahead of them by the pool's {@link ReadAhead}
+ * service. Scans of tables larger than the pool read through a
+ * {@link BufferRing}, a few frames of their own that they recycle, rather
+ * than evicting the rest of the pool. Pages read into a ring that no one
+ * else has asked for are evicted before any other page, so the rings of
+ * finished scans do not linger.
+ * <p>
+ * Read-only transactions read heap pages without taking locks. They see the
+ * last committed version of each page: the before-image of a page that a
+ * writer holds exclusively or has dirtied. While any read-only transaction
+ * is active, a writer taking an exclusive lock on a clean heap page gets a
+ * private copy of it, so page objects already handed to lockless readers are
+ * never changed under them. This is read-committed page by page, not a
+ * transaction-consistent snapshot; B+ tree pages, whose consistency spans
+ * several pages, are still locked.
  * 
  * @Threadsafe, all fields are final
  */
@@ -29,9 +57,106 @@ public class BufferPool {
     constructor instead. */
     public static final int DEFAULT_PAGES = 50;
 
+    /** Upper bound on the number of page table partitions. */
+    private static final int MAX_PARTITIONS = 64;
+
+    /** Number of frames in the ring of a large scan, if the pool is big enough. */
+    private static final int RING_PAGES = 8;
+
     private final int numPages;
-    private final LinkedHashMap<PageId, Page> idToPage;
+    private final Partition[] partitions;
+    private final AtomicInteger numCached;
     private final Locks locks;
+    private final ReadAhead readAhead;
+    /** Read-only transactions that have read without locks and not completed. */
+    private final Set<TransactionId> lockFreeReaders;
+
+    /**
+     * One stripe of the page table. All accesses to {@code pages} and
+     * {@code policy} must hold the partition's monitor. As a predicate it
+     * tells the policy which pages may be evicted: only clean ones.
+     */
+    private static class Partition implements Predicate<PageId> {
+        final HashMap<PageId, Page> pages;
+        final ReplacementPolicy policy;
+        /** Pages read into a scan ring that only ring scans have asked for since. */
+        final LinkedHashSet<PageId> ringPages;
+        /**
+         * Pages being read by read-ahead that were not cached when the read
+         * started and have not been cached and removed since; see
+         * prefetchPage.
+         */
+        final HashSet<PageId> prefetching;
+
+        Partition(ReplacementPolicy policy) {
+            this.pages = new HashMap<>();
+            this.policy = policy;
+            this.ringPages = new LinkedHashSet<>();
+            this.prefetching = new HashSet<>();
+        }
+
+        /**
+         * Looks up a page, recording the hit with the policy. The first
+         * request for a prefetched page is not a second reference; the
+         * policy already saw the page when it was added. A hit from outside
+         * a ring makes a ring page an ordinary one.
+         */
+        Page get(PageId pid, ReadAhead readAhead, BufferRing ring) {
+            Page page = pages.get(pid);
+            if (page != null && !readAhead.pageRequested(pid)) {
+                policy.pageAccessed(pid);
+            }
+            if (page != null && ring == null && !ringPages.isEmpty()) {
+                ringPages.remove(pid);
+            }
+            return page;
+        }
+
+        /** @return true if the page was not cached before */
+        boolean put(Page page) {
+            PageId pid = page.getId();
+            if (pages.put(pid, page) == null) {
+                policy.pageAdded(pid);
+                return true;
+            }
+            policy.pageAccessed(pid);
+            ringPages.remove(pid);
+            return false;
+        }
+
+        /** Adds a page read into a scan ring. */
+        void putRingPage(Page page) {
+            pages.put(page.getId(), page);
+            policy.pageAdded(page.getId());
+            ringPages.add(page.getId());
+        }
+
+        /** @return true if the page was cached */
+        boolean remove(PageId pid) {
+            if (pages.remove(pid) != null) {
+                policy.pageRemoved(pid);
+                ringPages.remove(pid);
+                prefetching.remove(pid);
+                return true;
+            }
+            return false;
+        }
+
+        /** @return a clean ring page, removed from the partition, or null */
+        PageId evictRingPage() {
+            for (PageId pid : ringPages) {
+                if (test(pid)) {
+                    remove(pid);
+                    return pid;
+                }
+            }
+            return null;
+        }
+
+        public boolean test(PageId pid) {
+            return pages.get(pid).isDirty() == null;
+        }
+    }
 
     /**
      * Creates a BufferPool that caches up to numPages pages.
@@ -39,12 +164,80 @@ public class BufferPool {
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, ReplacementPolicy.Kind.LRU);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages and evicts them
+     * with the given replacement policy.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the replacement policy used by every partition
+     */
+    public BufferPool(int numPages, ReplacementPolicy.Kind policy) {
         // some code goes here
         this.numPages = numPages;
-        this.idToPage = new LinkedHashMap<>(numPages, 0.75f, true);
+        this.partitions = new Partition[numPartitions(numPages)];
+        int partitionPages = (numPages + partitions.length - 1) / partitions.length;
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(policy.create(partitionPages));
+        }
+        this.numCached = new AtomicInteger(0);
         this.locks = new Locks();
+        this.readAhead = new ReadAhead(this);
+        this.lockFreeReaders = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Chooses a power-of-two partition count: a few per core, but never more
+     * partitions than pages so that small pools keep a meaningful LRU order.
+     */
+    private static int numPartitions(int numPages) {
+        int wanted = Math.min(MAX_PARTITIONS, Runtime.getRuntime().availableProcessors() * 4);
+        int count = Math.min(Integer.highestOneBit(wanted), Integer.highestOneBit(Math.max(1, numPages)));
+        return Math.max(1, count);
+    }
+
+    private int partitionIndex(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return h & (partitions.length - 1);
+    }
+
+    private Partition partitionOf(PageId pid) {
+        return partitions[partitionIndex(pid)];
     }
     
+    /** @return the read-ahead service loading pages into this pool */
+    public ReadAhead getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Returns a ring of frames for a sequential scan of a file with the given
+     * number of pages, or null if the whole file fits in the pool and is
+     * scanned through it as usual. The ring holds at least the scan's
+     * read-ahead window, but never more than a quarter of the pool.
+     *
+     * @param filePages the number of pages the scan will read
+     */
+    public BufferRing newScanRing(int filePages) {
+        if (filePages <= numPages) {
+            return null;
+        }
+        int quarter = numPages / 4;
+        int size = Math.max(RING_PAGES, readAhead.getWindowSize() + 2);
+        return new BufferRing(Math.min(size, Math.max(1, quarter)));
+    }
+
+    /**
+     * @return true if the page is in the pool; for tests and monitoring, as
+     *   the answer may be out of date as soon as it is returned
+     */
+    public boolean isCached(PageId pid) {
+        return getCachedPage(pid) != null;
+    }
+
     public static int getPageSize() {
         return pageSize;
     }
@@ -69,36 +262,306 @@ public class BufferPool {
      * be added to the buffer pool and returned.  If there is insufficient
      * space in the buffer pool, a page should be evicted and the new page
      * should be added in its place.
+     * <p>
+     * A read-only transaction may only ask for READ_ONLY access; it gets heap
+     * pages without locking, as described in the class comment.
      *
      * @param tid the ID of the transaction requesting the page
      * @param pid the ID of the requested page
      * @param perm the requested permissions on the page
+     * @throws DbException if a read-only transaction asks for READ_WRITE
      */
     public Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
         // some code goes here
+        return getPage(tid, pid, perm, null);
+    }
+
+    /**
+     * Retrieves a page like {@link #getPage(TransactionId, PageId, Permissions)},
+     * but on a miss reads it into a frame of the given scan ring.
+     *
+     * @param ring the ring of the scan asking, or null to use the whole pool
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, BufferRing ring)
+        throws TransactionAbortedException, DbException {
+        if (tid != null && tid.isReadOnly()) {
+            if (perm != Permissions.READ_ONLY) {
+                throw new DbException("transaction " + tid.getId() + " is read-only");
+            }
+            if (pid instanceof HeapPageId) {
+                return getCommittedPage(tid, pid, ring);
+            }
+        }
+
+        // get lock, parking until it is granted or we are chosen as a deadlock victim
+        locks.lock(tid, pid, perm);
+
+        Page page = fetchPage(pid, ring);
+        if (perm == Permissions.READ_WRITE) {
+            page = detachFromReaders(page);
+        }
+        return page;
+    }
+
+    /**
+     * Returns the last committed version of a heap page to a read-only
+     * transaction without locking it. The reader is registered before it
+     * looks the page up, so a writer that locks the page later will see it
+     * and detach; a writer that locked the page earlier is seen here.
+     */
+    private Page getCommittedPage(TransactionId tid, PageId pid, BufferRing ring) throws DbException {
+        lockFreeReaders.add(tid);
+        Page page = fetchPage(pid, ring);
+        if (page.isDirty() != null || locks.isLockedExclusively(pid)) {
+            return page.getBeforeImage();
+        }
+        return page;
+    }
 
-        // get lock
-        long startTime = System.currentTimeMillis();
-        while (!locks.lock(tid, pid, perm)) {
-            long currentTime = System.currentTimeMillis();
-            if(currentTime - startTime > 150) {
-                throw new TransactionAbortedException();
+    /**
+     * Called once a writer holds the exclusive lock on a page: if lock-free
+     * readers may hold the cached page object, replaces it in the pool with a
+     * copy for the writer to modify.
+     */
+    private Page detachFromReaders(Page page) {
+        PageId pid = page.getId();
+        if (lockFreeReaders.isEmpty() || !(pid instanceof HeapPageId) || page.isDirty() != null) {
+            return page;
+        }
+        Partition partition = partitionOf(pid);
+        synchronized (partition) {
+            if (partition.pages.get(pid) != page) {
+                return page;
             }
+            // clean, so the before-image is the page's current content
+            Page copy = page.getBeforeImage();
+            partition.pages.put(pid, copy);
+            return copy;
         }
+    }
 
-        if (idToPage.containsKey(pid)) {
-            return idToPage.get(pid);
+    /**
+     * Looks a page up in the pool, reading it from disk on a miss. The caller
+     * has locked the page or only needs its committed version. A page read
+     * on behalf of a scan ring takes a frame recycled from the ring.
+     */
+    private Page fetchPage(PageId pid, BufferRing ring) throws DbException {
+        Partition partition = partitionOf(pid);
+        synchronized (partition) {
+            Page page = partition.get(pid, readAhead, ring);
+            if (page != null) {
+                return page;
+            }
         }
-        else {
-            if (idToPage.size() >= numPages) {
-                evictPage();
+
+        // a read-ahead of this page may be under way; wait for it instead
+        // of reading the page a second time
+        if (readAhead.awaitInFlight(pid)) {
+            synchronized (partition) {
+                Page page = partition.get(pid, readAhead, ring);
+                if (page != null) {
+                    return page;
+                }
             }
+        }
+
+        // miss: reserve a frame, then read the page without holding the partition
+        if (ring != null) {
+            recycleFrame(ring);
+        }
+        reserveFrame(pid);
+        Page page;
+        try {
             int tableId = pid.getTableId();
             DbFile file = Database.getCatalog().getDatabaseFile(tableId);
-            Page page = file.readPage(pid);
-            idToPage.put(pid, page);
-            return page;
+            page = file.readPage(pid);
+        }
+        catch (RuntimeException e) {
+            numCached.decrementAndGet();
+            throw e;
+        }
+        synchronized (partition) {
+            // another thread may have loaded the same page in the meantime
+            Page cached = partition.get(pid, readAhead, ring);
+            if (cached != null) {
+                numCached.decrementAndGet();
+                return cached;
+            }
+            if (ring != null) {
+                partition.putRingPage(page);
+                ring.add(pid);
+            }
+            else {
+                partition.put(page);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Reads a page into the pool on behalf of the read-ahead service, which
+     * has marked the read as in flight, so a transaction missing on the page
+     * in the meantime waits for it rather than reading and changing it. A
+     * frame is only freed by evicting a clean page; otherwise the page is
+     * skipped. So is a page that was cached and evicted during the read, as
+     * it may have been changed and written meanwhile. No lock is taken.
+     * Pages prefetched for a scan with a ring go into the ring.
+     *
+     * @return the cached page, or null if it was skipped
+     */
+    Page prefetchPage(PageId pid, BufferRing ring) {
+        Partition partition = partitionOf(pid);
+        synchronized (partition) {
+            Page cached = partition.pages.get(pid);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        if (ring != null) {
+            recycleFrame(ring);
+        }
+        try {
+            tryReserveFrame(pid);
+        } catch (DbException e) {
+            // all pages are dirty
+            return null;
+        }
+        synchronized (partition) {
+            Page cached = partition.pages.get(pid);
+            if (cached != null) {
+                numCached.decrementAndGet();
+                return cached;
+            }
+            partition.prefetching.add(pid);
+        }
+        Page page;
+        try {
+            DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+            page = file.readPage(pid);
+        }
+        catch (RuntimeException e) {
+            synchronized (partition) {
+                partition.prefetching.remove(pid);
+            }
+            numCached.decrementAndGet();
+            throw e;
+        }
+        synchronized (partition) {
+            Page cached = partition.pages.get(pid);
+            boolean current = partition.prefetching.remove(pid);
+            if (cached != null || !current) {
+                numCached.decrementAndGet();
+                return cached;
+            }
+            readAhead.pagePrefetched(pid);
+            if (ring != null) {
+                partition.putRingPage(page);
+                ring.add(pid);
+            }
+            else {
+                partition.put(page);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Claims one frame of the pool's capacity for the given page, evicting
+     * pages until a frame becomes available. Frames held by read-ahead reads
+     * still under way become evictable once those reads complete, so they
+     * are waited for before giving up.
+     */
+    private void reserveFrame(PageId pid) throws DbException {
+        while (true) {
+            try {
+                tryReserveFrame(pid);
+                return;
+            } catch (DbException e) {
+                if (!readAhead.awaitInFlight()) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Frees the frame of the oldest page of a full ring, so that the page
+     * about to be read can take it. Ring pages that were dirtied or asked for
+     * outside a ring since they were read now belong to the pool and are
+     * skipped, and a page already evicted has freed its frame. The freed
+     * frame is not held for the caller; under contention reserving a frame
+     * may still have to evict from the pool.
+     */
+    private void recycleFrame(BufferRing ring) {
+        PageId pid;
+        while ((pid = ring.recycle()) != null) {
+            Partition partition = partitionOf(pid);
+            synchronized (partition) {
+                Page page = partition.pages.get(pid);
+                if (page == null) {
+                    return;
+                }
+                if (partition.ringPages.contains(pid) && page.isDirty() == null) {
+                    partition.remove(pid);
+                    numCached.decrementAndGet();
+                    readAhead.pageEvicted(pid);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Like {@link #reserveFrame}, but fails at once if no clean page can be
+     * evicted.
+     */
+    private void tryReserveFrame(PageId pid) throws DbException {
+        while (true) {
+            int cached = numCached.get();
+            if (cached < numPages) {
+                if (numCached.compareAndSet(cached, cached + 1)) {
+                    return;
+                }
+            }
+            else {
+                evictPage(partitionIndex(pid));
+            }
+        }
+    }
+
+    /**
+     * Installs a page that was modified outside of getPage, e.g. a page newly
+     * appended by a DbFile, replacing any cached version. A page that is not
+     * cached takes a frame like a page read by getPage, evicting one if the
+     * pool is full.
+     *
+     * @throws DbException if the pool is full of dirty pages
+     */
+    private void putPage(Page page) throws DbException {
+        PageId pid = page.getId();
+        Partition partition = partitionOf(pid);
+        synchronized (partition) {
+            if (partition.pages.containsKey(pid)) {
+                partition.put(page);
+                return;
+            }
+        }
+        reserveFrame(pid);
+        synchronized (partition) {
+            if (!partition.put(page)) {
+                // installed by another thread in the meantime
+                numCached.decrementAndGet();
+            }
+        }
+    }
+
+    /** Returns the cached version of the page, or null if it is not cached. */
+    private Page getCachedPage(PageId pid) {
+        Partition partition = partitionOf(pid);
+        synchronized (partition) {
+            return partition.pages.get(pid);
         }
     }
 
@@ -128,6 +591,21 @@ public class BufferPool {
         transactionComplete(tid, true);
     }
 
+    /** @return the lock manager of this pool; for tests */
+    Locks getLocks() {
+        return locks;
+    }
+
+    /** Return the number of deadlocks the lock manager has broken by aborting a victim */
+    public long getDeadlockCount() {
+        return locks.getDeadlockCount();
+    }
+
+    /** Return the total time, in nanoseconds, deadlock victims waited before being aborted */
+    public long getDeadlockVictimWaitNanos() {
+        return locks.getVictimWaitNanos();
+    }
+
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
         // some code goes here
@@ -146,24 +624,29 @@ public class BufferPool {
         throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        lockFreeReaders.remove(tid);
         Set<PageId> lockedPages = locks.getLockedPages(tid);
 
         // no locked pages, return
         if (lockedPages == null) return;
 
         // flush or discard the pages if they are in the buffer pool
+        HashSet<Integer> flushedTables = new HashSet<>();
         for (PageId pid : lockedPages) {
-            if (!idToPage.containsKey(pid)) continue;
-            Page page = idToPage.get(pid);
+            Page page = getCachedPage(pid);
+            if (page == null) continue;
             if (page.isDirty() == tid) {
                 if (commit) {
-                    flushPage(pid);
+                    if (flushPage(pid)) {
+                        flushedTables.add(pid.getTableId());
+                    }
                 }
                 else {
                     discardPage(pid);
                 }
             }
         }
+        syncSideFiles(flushedTables);
 
          // release all locks
          locks.unlockPages(tid);
@@ -180,6 +663,9 @@ public class BufferPool {
      * been dirtied to the cache (replacing any existing versions of those pages) so 
      * that future requests see up-to-date pages. 
      *
+     * The entries for the tuple are added to the table's secondary indexes
+     * (see {@link Catalog#addIndex}) in the same way.
+     *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
      * @param t the tuple to add
@@ -188,12 +674,57 @@ public class BufferPool {
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        checkWritable(tid);
         DbFile table = Database.getCatalog().getDatabaseFile(tableId);
         ArrayList<Page> dirtyPages = table.insertTuple(tid, t);
         // Mark the dirty pages as dirty and put them into the buffer
         for (Page dirtyPage : dirtyPages) {
             dirtyPage.markDirty(true, tid);
-            idToPage.put(dirtyPage.getId(), dirtyPage);
+            putPage(dirtyPage);
+        }
+        for (SecondaryIndex index : Database.getCatalog().getIndexes(tableId)) {
+            for (Page dirtyPage : index.insertEntry(tid, t)) {
+                dirtyPage.markDirty(true, tid);
+                putPage(dirtyPage);
+            }
+        }
+    }
+
+    /**
+     * Adds all tuples the iterator returns to the specified table on behalf
+     * of transaction tid, through the table's bulk insert path (see
+     * {@link DbFile#insertTuples}). Otherwise like {@link #insertTuple}.
+     *
+     * @param tid the transaction adding the tuples
+     * @param tableId the table to add the tuples to
+     * @param tuples the tuples to add
+     */
+    public void insertTuples(TransactionId tid, int tableId, Iterator<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        checkWritable(tid);
+        DbFile table = Database.getCatalog().getDatabaseFile(tableId);
+        List<SecondaryIndex> indexes = Database.getCatalog().getIndexes(tableId);
+        ArrayList<Tuple> inserted = null;
+        if (!indexes.isEmpty()) {
+            // keep the tuples, which get their record ids, for the indexes
+            inserted = new ArrayList<Tuple>();
+            while (tuples.hasNext()) {
+                inserted.add(tuples.next());
+            }
+            tuples = inserted.iterator();
+        }
+        ArrayList<Page> dirtyPages = table.insertTuples(tid, tuples);
+        for (Page dirtyPage : dirtyPages) {
+            dirtyPage.markDirty(true, tid);
+            putPage(dirtyPage);
+        }
+        for (SecondaryIndex index : indexes) {
+            for (Tuple t : inserted) {
+                for (Page dirtyPage : index.insertEntry(tid, t)) {
+                    dirtyPage.markDirty(true, tid);
+                    putPage(dirtyPage);
+                }
+            }
         }
     }
 
@@ -207,6 +738,9 @@ public class BufferPool {
      * been dirtied to the cache (replacing any existing versions of those pages) so 
      * that future requests see up-to-date pages. 
      *
+     * The entries for the tuple are removed from the table's secondary
+     * indexes in the same way.
+     *
      * @param tid the transaction deleting the tuple.
      * @param t the tuple to delete
      */
@@ -214,13 +748,33 @@ public class BufferPool {
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
-        int tableId = t.getRecordId().getPageId().getTableId();
+        checkWritable(tid);
+        RecordId rid = t.getRecordId();
+        int tableId = rid.getPageId().getTableId();
         DbFile table = Database.getCatalog().getDatabaseFile(tableId);
+        List<SecondaryIndex> indexes = Database.getCatalog().getIndexes(tableId);
+        // the keys, before the tuple is gone
+        Field[] keys = new Field[indexes.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = t.getField(indexes.get(i).getField());
+        }
         ArrayList<Page> dirtyPages = table.deleteTuple(tid, t);
         // Mark the dirty pages as dirty and put them into the buffer
         for (Page dirtyPage : dirtyPages) {
             dirtyPage.markDirty(true, tid);
-            idToPage.put(dirtyPage.getId(), dirtyPage);
+            putPage(dirtyPage);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            for (Page dirtyPage : indexes.get(i).deleteEntry(tid, keys[i], rid)) {
+                dirtyPage.markDirty(true, tid);
+                putPage(dirtyPage);
+            }
+        }
+    }
+
+    private static void checkWritable(TransactionId tid) throws DbException {
+        if (tid != null && tid.isReadOnly()) {
+            throw new DbException("transaction " + tid.getId() + " is read-only");
         }
     }
 
@@ -229,12 +783,34 @@ public class BufferPool {
      * NB: Be careful using this routine -- it writes dirty data to disk so will
      *     break simpledb if running in NO STEAL mode.
      */
-    public synchronized void flushAllPages() throws IOException {
+    public void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-        ArrayList<PageId> pageIds = new ArrayList<>(idToPage.keySet());
-        for(PageId pid : pageIds) {
-            flushPage(pid);
+        HashSet<Integer> flushedTables = new HashSet<>();
+        for (Partition partition : partitions) {
+            ArrayList<PageId> pageIds;
+            synchronized (partition) {
+                pageIds = new ArrayList<>(partition.pages.keySet());
+            }
+            for (PageId pid : pageIds) {
+                if (flushPage(pid)) {
+                    flushedTables.add(pid.getTableId());
+                }
+            }
+        }
+        syncSideFiles(flushedTables);
+    }
+
+    /**
+     * Writes out the side files of the heap files among the given tables,
+     * once pages of them have been flushed.
+     */
+    private static void syncSideFiles(Set<Integer> tableIds) throws IOException {
+        for (int tableId : tableIds) {
+            DbFile table = Database.getCatalog().getDatabaseFile(tableId);
+            if (table instanceof HeapFile) {
+                ((HeapFile) table).syncSideFiles();
+            }
         }
     }
 
@@ -246,28 +822,41 @@ public class BufferPool {
         Also used by B+ tree files to ensure that deleted pages
         are removed from the cache so they can be reused safely
     */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
-        idToPage.remove(pid);
+        Partition partition = partitionOf(pid);
+        synchronized (partition) {
+            if (partition.remove(pid)) {
+                numCached.decrementAndGet();
+                readAhead.pageEvicted(pid);
+            }
+        }
     }
 
     /**
      * Flushes a certain page to disk
      * @param pid an ID indicating the page to flush
+     * @return true if the page was dirty and has been written
      */
-    private synchronized void flushPage(PageId pid) throws IOException {
+    private boolean flushPage(PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
-        Page page = idToPage.get(pid);
-        if (page.isDirty() != null) {
-            // write page to disk file
-            int tableId = pid.getTableId();
-            DbFile table = Database.getCatalog().getDatabaseFile(tableId);
-            table.writePage(page);
-            // mark page as not dirty
-            page.markDirty(false, null);
+        Partition partition = partitionOf(pid);
+        synchronized (partition) {
+            Page page = partition.pages.get(pid);
+            if (page != null && page.isDirty() != null) {
+                // write page to disk file
+                int tableId = pid.getTableId();
+                DbFile table = Database.getCatalog().getDatabaseFile(tableId);
+                table.writePage(page);
+                // mark page as not dirty; what is on disk is the new before-image
+                page.markDirty(false, null);
+                page.setBeforeImage();
+                return true;
+            }
         }
+        return false;
     }
 
     /** Write all pages of the specified transaction to disk.
@@ -280,40 +869,40 @@ public class BufferPool {
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * Dirty pages are never evicted (NO STEAL). Clean pages left behind in
+     * the pool by scan rings go first; otherwise the partitions are asked in
+     * turn to pick a clean victim with their replacement policy.
+     *
+     * @param start the partition to search first
      */
-    private synchronized void evictPage() throws DbException {
+    private void evictPage(int start) throws DbException {
         // some code goes here
         // not necessary for lab1
-        // get the LRU page
-        for (Map.Entry<PageId, Page> LRU : idToPage.entrySet()) {
-            PageId LRUPageId = LRU.getKey();
-            Page LRUPage = LRU.getValue();
-            if (LRUPage.isDirty() == null) {
-                // flush the LRU page
-                try {
-                    flushPage(LRUPageId);
+        for (int i = 0; i < partitions.length; i++) {
+            Partition partition = partitions[(start + i) & (partitions.length - 1)];
+            synchronized (partition) {
+                PageId victim = partition.evictRingPage();
+                if (victim != null) {
+                    numCached.decrementAndGet();
+                    readAhead.pageEvicted(victim);
+                    return;
                 }
-                catch (IOException e) {
-                    throw new DbException("Flush failed");
+            }
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            Partition partition = partitions[(start + i) & (partitions.length - 1)];
+            synchronized (partition) {
+                PageId victim = partition.policy.evict(partition);
+                if (victim != null) {
+                    partition.pages.remove(victim);
+                    partition.ringPages.remove(victim);
+                    partition.prefetching.remove(victim);
+                    numCached.decrementAndGet();
+                    readAhead.pageEvicted(victim);
+                    return;
                 }
-                // remove the LRU page from the buffer pool
-                idToPage.remove(LRUPageId);
-                return;
             }
         }
         throw new DbException("All pages are dirty.");
-
-//        Map.Entry<PageId, Page> LRU = idToPage.entrySet().iterator().next();
-//        PageId LRUPageId = LRU.getKey();
-//        Page LRUPage = LRU.getValue();
-//        // flush the LRU page
-//        try {
-//            flushPage(LRUPageId);
-//        }
-//        catch (IOException e) {
-//            throw new DbException("Flush failed");
-//        }
-//        // remove the LRU page from the buffer pool
-//        idToPage.remove(LRUPageId);
     }
 }
@@ -0,0 +1,49 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+
+/**
+ * BufferRing is a small private set of buffer pool frames used by one large
+ * sequential scan. Pages the scan misses on are read into the ring, and once
+ * the ring is full each further miss recycles the frame of the ring's oldest
+ * page instead of evicting a page that someone else may need, so a scan of a
+ * table larger than the pool leaves the pool's working set in place. Pages
+ * the scan finds already cached are used where they are and do not join the
+ * ring.
+ * <p>
+ * A ring page that has been dirtied since it was read cannot be recycled (NO
+ * STEAL); it is dropped from the ring and stays in the pool like any other
+ * page.
+ * <p>
+ * Rings are handed out by {@link BufferPool#newScanRing(int)}. A ring is
+ * shared by a scan and the read-ahead issued for it, so it is thread-safe.
+ */
+public class BufferRing {
+
+    private final int size;
+    /** Pages read into the ring, oldest first. */
+    private final ArrayDeque<PageId> pages;
+
+    BufferRing(int size) {
+        this.size = Math.max(1, size);
+        this.pages = new ArrayDeque<>(this.size);
+    }
+
+    /** @return the number of frames in the ring */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the oldest page of the ring, removed from it, if the ring is
+     *   full; otherwise null, as a frame may still be taken from the pool
+     */
+    synchronized PageId recycle() {
+        return pages.size() < size ? null : pages.poll();
+    }
+
+    /** Records that a page was read into a frame of the ring. */
+    synchronized void add(PageId pid) {
+        pages.add(pid);
+    }
+}
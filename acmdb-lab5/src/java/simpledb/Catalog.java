@@ -2,10 +2,12 @@ package simpledb;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * The Catalog keeps track of all available tables in the database and their
@@ -21,6 +23,10 @@ public class Catalog {
     private final ConcurrentHashMap<Integer, DbFile> idToFile;
     private final ConcurrentHashMap<Integer, String> idToPrimaryKey;
     private final ConcurrentHashMap<Integer, String> idToName;
+    /** Secondary indexes by the id of their table. */
+    private final ConcurrentHashMap<Integer, List<SecondaryIndex>> idToIndexes;
+    /** The B+ trees of secondary indexes by their own id, for the buffer pool. */
+    private final ConcurrentHashMap<Integer, DbFile> idToIndexFile;
     /**
      * Constructor.
      * Creates a new, empty catalog.
@@ -31,6 +37,8 @@ public class Catalog {
         idToFile = new ConcurrentHashMap<>();
         idToPrimaryKey = new ConcurrentHashMap<>();
         idToName = new ConcurrentHashMap<>();
+        idToIndexes = new ConcurrentHashMap<>();
+        idToIndexFile = new ConcurrentHashMap<>();
     }
 
     /**
@@ -50,6 +58,7 @@ public class Catalog {
             idToFile.remove(oldId);
             idToPrimaryKey.remove(oldId);
             idToName.remove(oldId);
+            dropIndexes(oldId);
         }
         nameToId.put(name, id);
         idToFile.put(id, file);
@@ -72,6 +81,72 @@ public class Catalog {
         addTable(file, (UUID.randomUUID()).toString());
     }
 
+    /**
+     * Adds a secondary B+ tree index on a field of a table, stored in the
+     * given file. Unless the file holds an index that was closed with the
+     * table as it is now (see {@link SecondaryIndex#isCurrent}), the index is
+     * built afresh from the tuples in the table, which must not change
+     * meanwhile. From then on the buffer pool keeps the index up to date as
+     * tuples are inserted and deleted.
+     *
+     * @param tableid the table to index, as specified by DbFile.getId()
+     * @param field the field of the table to index
+     * @param f the file backing the index
+     * @return the new index
+     * @throws NoSuchElementException if the table doesn't exist
+     * @throws DbException if the table is not stored in a HeapFile
+     */
+    public SecondaryIndex addIndex(int tableid, int field, File f)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!(getDatabaseFile(tableid) instanceof HeapFile)) {
+            throw new DbException("secondary indexes are only kept on heap files");
+        }
+        TupleDesc td = getTupleDesc(tableid);
+        boolean current = SecondaryIndex.isCurrent(f, (HeapFile) getDatabaseFile(tableid));
+        if (!current) {
+            new FileOutputStream(f).close();
+        }
+        BTreeFile file = new BTreeFile(f, 0, SecondaryIndex.entryDesc(td, field));
+        SecondaryIndex index = new SecondaryIndex(tableid, field, file);
+        idToIndexFile.put(file.getId(), file);
+        idToIndexes.putIfAbsent(tableid, new CopyOnWriteArrayList<SecondaryIndex>());
+        idToIndexes.get(tableid).add(index);
+        if (!current) {
+            index.build();
+        }
+        return index;
+    }
+
+    /**
+     * @return the secondary indexes of the specified table, possibly none
+     */
+    public List<SecondaryIndex> getIndexes(int tableid) {
+        List<SecondaryIndex> indexes = idToIndexes.get(tableid);
+        return indexes == null ? Collections.<SecondaryIndex>emptyList() : indexes;
+    }
+
+    /**
+     * @return a secondary index on the specified field of the table, or null
+     *   if there is none
+     */
+    public SecondaryIndex getIndex(int tableid, int field) {
+        for (SecondaryIndex index : getIndexes(tableid)) {
+            if (index.getField() == field) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    private void dropIndexes(int tableid) {
+        List<SecondaryIndex> indexes = idToIndexes.remove(tableid);
+        if (indexes != null) {
+            for (SecondaryIndex index : indexes) {
+                idToIndexFile.remove(index.getFile().getId());
+            }
+        }
+    }
+
     /**
      * Return the id of the table with a specified name,
      * @throws NoSuchElementException if the table doesn't exist
@@ -96,12 +171,15 @@ public class Catalog {
             DbFile file = idToFile.get(tableid);
             return file.getTupleDesc();
         }
+        else if (idToIndexFile.containsKey(tableid)) {
+            return idToIndexFile.get(tableid).getTupleDesc();
+        }
         else throw new NoSuchElementException("Invalid table id.");
     }
 
     /**
      * Returns the DbFile that can be used to read the contents of the
-     * specified table.
+     * specified table, or of the B+ tree of a secondary index.
      * @param tableid The id of the table, as specified by the DbFile.getId()
      *     function passed to addTable
      */
@@ -110,6 +188,9 @@ public class Catalog {
         if (idToFile.containsKey(tableid)) {
             return idToFile.get(tableid);
         }
+        else if (idToIndexFile.containsKey(tableid)) {
+            return idToIndexFile.get(tableid);
+        }
         else throw new NoSuchElementException("Invalid table id.");
     }
 
@@ -134,17 +215,43 @@ public class Catalog {
         else throw new NoSuchElementException("Invalid table id.");
     }
     
-    /** Delete all tables from the catalog */
+    /**
+     * Delete all tables from the catalog. The side files of heap files are
+     * written out first, or deleted if the data file is gone, and the
+     * secondary indexes of the tables still there are closed.
+     */
     public void clear() {
         // some code goes here
+        for (DbFile file : idToFile.values()) {
+            if (file instanceof HeapFile) {
+                HeapFile hf = (HeapFile) file;
+                try {
+                    if (hf.getFile().exists()) {
+                        hf.syncSideFiles();
+                        for (SecondaryIndex index : getIndexes(hf.getId())) {
+                            index.close();
+                        }
+                    }
+                    else {
+                        hf.deleteSideFiles();
+                    }
+                } catch (IOException e) {
+                    // side files and indexes that are out of date are rebuilt when read
+                }
+            }
+        }
         nameToId.clear();
         idToFile.clear();
         idToPrimaryKey.clear();
         idToName.clear();
+        idToIndexes.clear();
+        idToIndexFile.clear();
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * A field annotated with "index" gets a secondary index, stored next to
+     * the table's file as name.field.idx.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -162,6 +269,7 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<Integer> indexed = new ArrayList<Integer>();
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -169,6 +277,12 @@ public class Catalog {
                         types.add(Type.INT_TYPE);
                     else if (els2[1].trim().toLowerCase().equals("string"))
                         types.add(Type.STRING_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("varchar"))
+                        types.add(Type.VARCHAR_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("long"))
+                        types.add(Type.LONG_TYPE);
+                    else if (els2[1].trim().toLowerCase().equals("double"))
+                        types.add(Type.DOUBLE_TYPE);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
@@ -176,6 +290,8 @@ public class Catalog {
                     if (els2.length == 3) {
                         if (els2[2].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[2].trim().equals("index"))
+                            indexed.add(names.size() - 1);
                         else {
                             System.out.println("Unknown annotation " + els2[2]);
                             System.exit(0);
@@ -188,8 +304,12 @@ public class Catalog {
                 HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
+                for (int field : indexed) {
+                    addIndex(tabHf.getId(), field, new File(baseFolder+"/"+name + "." + namesAr[field] + ".idx"));
+                    System.out.println("Added index on " + name + "." + namesAr[field]);
+                }
             }
-        } catch (IOException e) {
+        } catch (IOException | DbException | TransactionAbortedException e) {
             e.printStackTrace();
             System.exit(0);
         } catch (IndexOutOfBoundsException e) {
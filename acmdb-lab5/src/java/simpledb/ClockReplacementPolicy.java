@@ -0,0 +1,86 @@
+package simpledb;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second chance) replacement. Pages sit in a ring of frames with a
+ * reference bit each; a hit only sets the bit, and the hand clears bits as
+ * it sweeps until it finds an unreferenced page that may be evicted.
+ */
+public class ClockReplacementPolicy implements ReplacementPolicy {
+
+    private PageId[] frames;
+    private boolean[] referenced;
+    private final HashMap<PageId, Integer> frameOf;
+    private final ArrayDeque<Integer> freeFrames;
+    /** Frames in [0, used) have been handed out at least once. */
+    private int used;
+    private int hand;
+
+    public ClockReplacementPolicy(int capacity) {
+        int frameCount = Math.max(1, capacity);
+        frames = new PageId[frameCount];
+        referenced = new boolean[frameCount];
+        frameOf = new HashMap<>();
+        freeFrames = new ArrayDeque<>();
+        used = 0;
+        hand = 0;
+    }
+
+    public void pageAdded(PageId pid) {
+        int frame;
+        if (!freeFrames.isEmpty()) {
+            frame = freeFrames.poll();
+        }
+        else {
+            // the pool may briefly hold more pages than its capacity
+            if (used == frames.length) {
+                frames = Arrays.copyOf(frames, frames.length * 2);
+                referenced = Arrays.copyOf(referenced, referenced.length * 2);
+            }
+            frame = used++;
+        }
+        frames[frame] = pid;
+        referenced[frame] = false;
+        frameOf.put(pid, frame);
+    }
+
+    public void pageAccessed(PageId pid) {
+        Integer frame = frameOf.get(pid);
+        if (frame != null) {
+            referenced[frame] = true;
+        }
+    }
+
+    public void pageRemoved(PageId pid) {
+        Integer frame = frameOf.remove(pid);
+        if (frame != null) {
+            frames[frame] = null;
+            referenced[frame] = false;
+            freeFrames.add(frame);
+        }
+    }
+
+    public PageId evict(Predicate<PageId> evictable) {
+        // two full turns: the first may only clear reference bits
+        for (int step = 0; step < 2 * used; step++) {
+            int frame = hand;
+            hand = (hand + 1) % used;
+            PageId pid = frames[frame];
+            if (pid == null) {
+                continue;
+            }
+            if (referenced[frame]) {
+                referenced[frame] = false;
+            }
+            else if (evictable.test(pid)) {
+                pageRemoved(pid);
+                return pid;
+            }
+        }
+        return null;
+    }
+}
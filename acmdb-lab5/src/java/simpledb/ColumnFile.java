@@ -0,0 +1,233 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ColumnFile is an implementation of a DbFile that stores a table column by
+ * column. Each column is a chain of {@link ColumnPage}s in a file of its own,
+ * named after the file given to the constructor with the column number
+ * appended (e.g. orders.dat.0, orders.dat.1, ...).
+ * <p>
+ * Row r of the table is in slot r % n of page r / n of every column, where n
+ * is the number of values of the column's type that fit on a page, so a scan
+ * through {@link #iterator(TransactionId, int[])} reads the pages of the
+ * columns it returns and no others. Narrow columns take fewer pages than
+ * wide ones.
+ * <p>
+ * Rows are appended in order. Inserts lock the last page of the first
+ * column before they take a row number, which serializes them. A deleted
+ * row leaves an empty slot in every column; the space is not reused.
+ *
+ * @see ColumnPage
+ */
+public class ColumnFile implements DbFile {
+
+    private final File file;
+    private final TupleDesc tupleDesc;
+    private final int tableId;
+    private final PageChannel[] channels;
+    private final int[] slotsPerPage;
+
+    /**
+     * Constructs a column file whose columns are stored in files named after
+     * the specified file.
+     *
+     * @param f
+     *            the file whose path, followed by "." and a column number,
+     *            names the file storing each column; f itself is not used
+     */
+    public ColumnFile(File f, TupleDesc td) {
+        file = f;
+        tupleDesc = td;
+        tableId = f.getAbsoluteFile().hashCode();
+        channels = new PageChannel[td.numFields()];
+        slotsPerPage = new int[td.numFields()];
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = new PageChannel(getColumnFile(i));
+            slotsPerPage[i] = ColumnPage.slotsPerPage(td.getFieldType(i));
+        }
+    }
+
+    /**
+     * Returns the File this ColumnFile is named after.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the File storing the pages of the given column
+     */
+    public File getColumnFile(int column) {
+        return new File(file.getPath() + "." + column);
+    }
+
+    /**
+     * Returns an ID uniquely identifying this ColumnFile: the hash code of
+     * the absolute path of {@link #getFile()}.
+     */
+    public int getId() {
+        return tableId;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    /** @return the number of rows stored on each page of the given column */
+    public int slotsPerPage(int column) {
+        return slotsPerPage[column];
+    }
+
+    /**
+     * Returns the number of pages of the given column.
+     */
+    public int numPages(int column) {
+        return (int) (getColumnFile(column).length() / BufferPool.getPageSize());
+    }
+
+    /**
+     * Returns the number of pages of all the columns together.
+     */
+    public int numPages() {
+        int numPages = 0;
+        for (int i = 0; i < channels.length; i++) {
+            numPages += numPages(i);
+        }
+        return numPages;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (!(pid instanceof ColumnPageId) || pid.getTableId() != tableId) {
+            throw new IllegalArgumentException("page " + pid + " is not in this file");
+        }
+        ColumnPageId id = (ColumnPageId) pid;
+        int pageSize = BufferPool.getPageSize();
+        // a page past the end of the file reads as an empty page
+        byte[] data = ColumnPage.createEmptyPageData();
+        try {
+            channels[id.column()].read(data, (long) id.pageNumber() * pageSize);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new ColumnPage(id, data);
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ColumnPageId id = (ColumnPageId) page.getId();
+        channels[id.column()].write(page, (long) id.pageNumber() * BufferPool.getPageSize());
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        return insertTuples(tid, Collections.singletonList(t).iterator());
+    }
+
+    /**
+     * Appends the tuples as consecutive rows, keeping the page of each column
+     * the last row went to, so every page is locked and dirtied once. The
+     * record id of a row is the page of its first column and the row number.
+     *
+     * @see DbFile#insertTuples
+     */
+    public ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        ArrayList<Page> dirtyPages = new ArrayList<>();
+        if (!tuples.hasNext()) {
+            return dirtyPages;
+        }
+        ColumnPage[] pages = new ColumnPage[channels.length];
+        int row = nextRow(tid);
+        while (tuples.hasNext()) {
+            Tuple t = tuples.next();
+            if (!tupleDesc.equals(t.getTupleDesc())) {
+                throw new DbException("tuple does not match the table");
+            }
+            for (int c = 0; c < pages.length; c++) {
+                int pageNum = row / slotsPerPage[c];
+                if (pages[c] == null || pages[c].getId().pageNumber() != pageNum) {
+                    pages[c] = pageForAppend(tid, c, pageNum);
+                    // dirty before it is modified: fetching the next page may evict clean ones
+                    pages[c].markDirty(true, tid);
+                    dirtyPages.add(pages[c]);
+                }
+                pages[c].appendValue(row % slotsPerPage[c], t.getField(c));
+            }
+            t.setRecordId(new RecordId(pages[0].getId(), row));
+            row++;
+        }
+        return dirtyPages;
+    }
+
+    /**
+     * Locks the last page of the first column for writing and returns the
+     * number of the row after the last one written.
+     */
+    private int nextRow(TransactionId tid) throws DbException, TransactionAbortedException {
+        while (true) {
+            int last = Math.max(0, numPages(0) - 1);
+            ColumnPageId pid = new ColumnPageId(tableId, 0, last);
+            ColumnPage page = (ColumnPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            if (numPages(0) <= last + 1) {
+                return last * slotsPerPage[0] + page.getNumRows();
+            }
+            // another insert added a page while we waited for the lock
+        }
+    }
+
+    /**
+     * Returns a page of a column, locked for writing, appending it to the
+     * column's file first if it is not there yet.
+     */
+    private ColumnPage pageForAppend(TransactionId tid, int column, int pageNum)
+            throws DbException, IOException, TransactionAbortedException {
+        int pageSize = BufferPool.getPageSize();
+        synchronized (this) {
+            if (numPages(column) <= pageNum) {
+                channels[column].write(ColumnPage.createEmptyPageData(), (long) pageNum * pageSize);
+            }
+        }
+        ColumnPageId pid = new ColumnPageId(tableId, column, pageNum);
+        return (ColumnPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != tableId) {
+            throw new DbException("tuple is not a member of this file");
+        }
+        int row = rid.tupleno();
+        ArrayList<Page> dirtyPages = new ArrayList<>();
+        for (int c = 0; c < channels.length; c++) {
+            ColumnPageId pid = new ColumnPageId(tableId, c, row / slotsPerPage[c]);
+            ColumnPage page = (ColumnPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            page.deleteValue(row % slotsPerPage[c]);
+            dirtyPages.add(page);
+        }
+        return dirtyPages;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        int[] columns = new int[channels.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = i;
+        }
+        return iterator(tid, columns);
+    }
+
+    /**
+     * Returns an iterator that reads only the pages of the given columns.
+     *
+     * @see DbFile#iterator(TransactionId, int[])
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns) {
+        return new ColumnFileIterator(this, tid, columns);
+    }
+}
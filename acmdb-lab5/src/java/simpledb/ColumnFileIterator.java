@@ -0,0 +1,92 @@
+package simpledb;
+
+/**
+ * Iterates over some of the columns of a {@link ColumnFile} row by row,
+ * reading the pages of those columns only. The first column asked for
+ * decides which rows are live and where the table ends.
+ */
+public class ColumnFileIterator extends AbstractDbFileIterator {
+    private final ColumnFile file;
+    private final TransactionId tid;
+    private final int[] columns;
+    private final TupleDesc td;
+    private boolean isOpen;
+    private int numPages;
+    private int row;
+    private ColumnPage[] pages;
+    private BufferRing ring;
+
+    /**
+     * @param columns indexes of the columns to return, at least one
+     */
+    public ColumnFileIterator(ColumnFile file, TransactionId tid, int[] columns) {
+        if (columns.length == 0) {
+            throw new IllegalArgumentException("a column scan needs at least one column");
+        }
+        this.file = file;
+        this.tid = tid;
+        this.columns = columns.clone();
+        this.td = file.getTupleDesc().project(columns);
+    }
+
+    public void open() throws TransactionAbortedException, DbException {
+        row = 0;
+        pages = new ColumnPage[columns.length];
+        numPages = file.numPages(columns[0]);
+        int scanned = 0;
+        for (int c : columns) {
+            scanned += file.numPages(c);
+        }
+        ring = Database.getBufferPool().newScanRing(scanned);
+        isOpen = true;
+    }
+
+    public void close() {
+        super.close();
+        isOpen = false;
+        pages = null;
+    }
+
+    public void rewind() throws TransactionAbortedException, DbException {
+        open();
+    }
+
+    protected Tuple readNext() throws TransactionAbortedException, DbException {
+        if (!isOpen) {
+            return null;
+        }
+        int slots = file.slotsPerPage(columns[0]);
+        while (row / slots < numPages) {
+            ColumnPage first = page(0);
+            int slot = row % slots;
+            if (slot >= first.getNumRows()) {
+                // nothing more was written to this page
+                row = (row / slots + 1) * slots;
+                continue;
+            }
+            if (!first.isSlotUsed(slot)) {
+                row++;
+                continue;
+            }
+            Tuple t = new Tuple(td);
+            t.setField(0, first.getValue(slot));
+            for (int i = 1; i < columns.length; i++) {
+                t.setField(i, page(i).getValue(row % file.slotsPerPage(columns[i])));
+            }
+            t.setRecordId(new RecordId(new ColumnPageId(file.getId(), 0, row / file.slotsPerPage(0)), row));
+            row++;
+            return t;
+        }
+        return null;
+    }
+
+    /** @return the page of the ith column asked for that holds the current row */
+    private ColumnPage page(int i) throws TransactionAbortedException, DbException {
+        int pageNum = row / file.slotsPerPage(columns[i]);
+        if (pages[i] == null || pages[i].getId().pageNumber() != pageNum) {
+            ColumnPageId pid = new ColumnPageId(file.getId(), columns[i], pageNum);
+            pages[i] = (ColumnPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY, ring);
+        }
+        return pages[i];
+    }
+}
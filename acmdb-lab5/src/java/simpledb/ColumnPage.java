@@ -0,0 +1,188 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Each instance of ColumnPage stores the values of one column of a
+ * {@link ColumnFile} for a run of consecutive rows.
+ * <p>
+ * The page begins with a 4-byte count of the rows written to it, then a
+ * bitmap with one bit per slot that is set while the row in the slot is
+ * live, then the slots, each holding one value of the column's type padded
+ * to {@link Type#getLen()}. Rows are only ever appended, so the first
+ * count slots have been written and the rest are zeros; a deleted row keeps
+ * its slot, with its bit cleared.
+ */
+public class ColumnPage implements Page {
+
+    private static final int COUNT_SIZE = 4;
+
+    private final ColumnPageId pid;
+    private final Type type;
+    private final int numSlots;
+    private final int valuesStart;
+
+    private byte[] data;
+    /** Whether data is also the before image, and must be copied before a write. */
+    private boolean shared;
+    private byte[] oldData;
+    private final Object oldDataLock = new Object();
+
+    private volatile TransactionId dirtier;
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk. The
+     * type of the values comes from the catalog entry of the page's table.
+     *
+     * @see #ColumnPage
+     * @param id the id of this page
+     * @param data the raw data of this page
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) {
+        this.pid = id;
+        this.type = Database.getCatalog().getTupleDesc(id.getTableId()).getFieldType(id.column());
+        this.numSlots = slotsPerPage(type);
+        this.valuesStart = COUNT_SIZE + (numSlots + 7) / 8;
+        this.data = data;
+        setBeforeImage();
+    }
+
+    /** @return the number of values of the given type that fit on a page */
+    public static int slotsPerPage(Type type) {
+        return ((BufferPool.getPageSize() - COUNT_SIZE) * 8) / (type.getLen() * 8 + 1);
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * ColumnPage.
+     *
+     * @return The returned ByteArray.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public ColumnPageId getId() {
+        return pid;
+    }
+
+    /** @return the number of slots on this page */
+    public int getNumSlots() {
+        return numSlots;
+    }
+
+    /** @return the number of rows written to this page, deleted ones included */
+    public int getNumRows() {
+        return ByteBuffer.wrap(data).getInt(0);
+    }
+
+    /** @return true if the page has no slot left to append a row to */
+    public boolean isFull() {
+        return getNumRows() >= numSlots;
+    }
+
+    /** @return true if the row in the slot is written and not deleted */
+    public boolean isSlotUsed(int slot) {
+        return slot >= 0 && slot < numSlots
+                && ((data[COUNT_SIZE + slot / 8] >> (slot % 8)) & 1) != 0;
+    }
+
+    /**
+     * @return the value of the row in the slot
+     * @throws java.util.NoSuchElementException if the slot is not in use
+     */
+    public Field getValue(int slot) {
+        if (!isSlotUsed(slot)) {
+            throw new java.util.NoSuchElementException("slot " + slot + " of " + pid + " is not in use");
+        }
+        try {
+            return type.parse(data, valuesStart + slot * type.getLen());
+        } catch (java.text.ParseException e) {
+            throw new java.util.NoSuchElementException("parsing error!");
+        }
+    }
+
+    /**
+     * Writes the value of a new row into the slot. Slots between the last
+     * row written and this one, left by an insert that was rolled back in
+     * another column's page, stay empty.
+     *
+     * @throws DbException if the slot is already written or past the end of
+     *   the page, or if the value is not of the column's type
+     */
+    public void appendValue(int slot, Field f) throws DbException {
+        int count = getNumRows();
+        if (slot < count || slot >= numSlots) {
+            throw new DbException("cannot append to slot " + slot + " of " + pid + " with " + count + " rows");
+        }
+        if (f.getType() != type) {
+            throw new DbException("value of type " + f.getType() + " in a column of type " + type);
+        }
+        beforeWrite();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        buf.position(valuesStart + slot * type.getLen());
+        BTreePage.putField(buf, type, f);
+        data[COUNT_SIZE + slot / 8] |= (byte) (1 << (slot % 8));
+        buf.putInt(0, slot + 1);
+    }
+
+    /**
+     * Deletes the row in the slot; the slot is not reused.
+     *
+     * @throws DbException if the slot is not in use
+     */
+    public void deleteValue(int slot) throws DbException {
+        if (!isSlotUsed(slot)) {
+            throw new DbException("Slot not used.");
+        }
+        beforeWrite();
+        data[COUNT_SIZE + slot / 8] &= (byte) ~(1 << (slot % 8));
+        int offset = valuesStart + slot * type.getLen();
+        java.util.Arrays.fill(data, offset, offset + type.getLen(), (byte) 0);
+    }
+
+    private void beforeWrite() {
+        synchronized (oldDataLock) {
+            if (shared) {
+                data = data.clone();
+                shared = false;
+            }
+        }
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public void writePageData(ByteBuffer buf) {
+        buf.put(data);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public ColumnPage getBeforeImage() {
+        byte[] oldDataRef;
+        synchronized (oldDataLock) {
+            oldDataRef = oldData;
+        }
+        return new ColumnPage(pid, oldDataRef);
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = data;
+            shared = true;
+        }
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+}
@@ -0,0 +1,79 @@
+package simpledb;
+
+/** Unique identifier for ColumnPage objects. */
+public class ColumnPageId implements PageId {
+
+    private final int tableId;
+    private final int column;
+    private final int pageNum;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of one
+     * column of a specific table.
+     *
+     * @param tableId The table that is being referenced
+     * @param column The column of the table the page stores
+     * @param pgNo The page number in the chain of pages of that column.
+     */
+    public ColumnPageId(int tableId, int column, int pgNo) {
+        this.tableId = tableId;
+        this.column = column;
+        this.pageNum = pgNo;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the column of the table whose values the page stores */
+    public int column() {
+        return column;
+    }
+
+    /**
+     * @return the page number in the chain of pages of column() associated
+     *   with this PageId
+     */
+    public int pageNumber() {
+        return pageNum;
+    }
+
+    /**
+     * @return a hash code for this page, combined from the table number, the
+     *   column and the page number
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return 31 * (31 * tableId + column) + pageNum;
+    }
+
+    /**
+     * Compares one PageId to another.
+     *
+     * @param o The object to compare against (must be a PageId)
+     * @return true if the objects are equal (e.g., table ids, columns and
+     *   page numbers are the same)
+     */
+    public boolean equals(Object o) {
+        if (!(o instanceof ColumnPageId)) {
+            return false;
+        }
+        ColumnPageId pageId = (ColumnPageId) o;
+        return tableId == pageId.tableId && column == pageId.column && pageNum == pageId.pageNum;
+    }
+
+    public String toString() {
+        return "ColumnPageId(" + tableId + ", " + column + ", " + pageNum + ")";
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.  Size of returned array must contain
+     *  number of integers that corresponds to number of args to one of the
+     *  constructors.
+     */
+    public int[] serialize() {
+        return new int[] {tableId, column, pageNum};
+    }
+}
@@ -55,11 +55,19 @@ public class Database {
      * return it
      */
     public static BufferPool resetBufferPool(int pages) {
+        return resetBufferPool(pages, ReplacementPolicy.Kind.LRU);
+    }
+
+    /**
+     * Create a new instance of the buffer pool that evicts pages with the
+     * given replacement policy, and return it
+     */
+    public static BufferPool resetBufferPool(int pages, ReplacementPolicy.Kind policy) {
         java.lang.reflect.Field bufferPoolF=null;
         try {
             bufferPoolF = Database.class.getDeclaredField("_bufferpool");
             bufferPoolF.setAccessible(true);
-            bufferPoolF.set(_instance.get(), new BufferPool(pages));
+            bufferPoolF.set(_instance.get(), new BufferPool(pages, policy));
         } catch (NoSuchFieldException e) {
             e.printStackTrace();
         } catch (SecurityException e) {
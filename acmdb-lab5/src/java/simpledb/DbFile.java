@@ -43,6 +43,35 @@ public interface DbFile {
     public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
         throws DbException, IOException, TransactionAbortedException;
 
+    /**
+     * Inserts every tuple the iterator returns on behalf of a transaction,
+     * like repeated calls to {@link #insertTuple}. Each modified page is
+     * marked dirty by the transaction as soon as it is modified, since later
+     * inserts may need other pages and evict clean ones, and is returned
+     * once.
+     * <p>
+     * Files should override this with a path that fills pages one after the
+     * other instead of looking for room anew for every tuple.
+     *
+     * @param tid The transaction performing the update
+     * @param tuples The tuples to add. They are updated to reflect where
+     *          they are now stored.
+     * @return An ArrayList containing the pages that were modified
+     * @throws DbException if a tuple cannot be added
+     * @throws IOException if the needed file can't be read/written
+     */
+    public default ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+        throws DbException, IOException, TransactionAbortedException {
+        LinkedHashMap<PageId, Page> dirtyPages = new LinkedHashMap<>();
+        while (tuples.hasNext()) {
+            for (Page page : insertTuple(tid, tuples.next())) {
+                page.markDirty(true, tid);
+                dirtyPages.put(page.getId(), page);
+            }
+        }
+        return new ArrayList<>(dirtyPages.values());
+    }
+
     /**
      * Removes the specified tuple from the file on behalf of the specified
      * transaction.
@@ -68,6 +97,69 @@ public interface DbFile {
      */
     public DbFileIterator iterator(TransactionId tid);
 
+    /**
+     * Returns an iterator over the given columns of all the tuples stored in
+     * this DbFile. Its tuples have the TupleDesc
+     * <code>getTupleDesc().project(columns)</code> and the record ids of the
+     * stored tuples, so they can be deleted.
+     * <p>
+     * Files that store columns apart should override this to read only the
+     * pages of the given columns; this default reads whole tuples and copies
+     * the columns out of them.
+     *
+     * @param columns indexes of the columns to return, at least one
+     * @return an iterator over the given columns of the tuples of this DbFile
+     */
+    public default DbFileIterator iterator(TransactionId tid, final int[] columns) {
+        final DbFileIterator it = iterator(tid);
+        final TupleDesc td = getTupleDesc().project(columns);
+        return new DbFileIterator() {
+            public void open() throws DbException, TransactionAbortedException {
+                it.open();
+            }
+
+            public boolean hasNext() throws DbException, TransactionAbortedException {
+                return it.hasNext();
+            }
+
+            public Tuple next() throws DbException, TransactionAbortedException, NoSuchElementException {
+                Tuple t = it.next();
+                Tuple projected = new Tuple(td);
+                for (int i = 0; i < columns.length; i++) {
+                    projected.setField(i, t.getField(columns[i]));
+                }
+                projected.setRecordId(t.getRecordId());
+                return projected;
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                it.rewind();
+            }
+
+            public void close() {
+                it.close();
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator like {@link #iterator(TransactionId, int[])} that
+     * may leave out pages none of whose tuples can satisfy all of the given
+     * predicates, e.g. as their minimum and maximum values show. The tuples of
+     * the pages it reads are returned whether they satisfy the predicates or
+     * not, so the caller still has to apply them.
+     * <p>
+     * This default reads every page.
+     *
+     * @param columns indexes of the columns to return, or null for all
+     * @param predicates predicates over the columns of the table, i.e. the
+     *          fields of {@link #getTupleDesc()}
+     * @return an iterator over the tuples of this DbFile, or of some of them
+     */
+    public default DbFileIterator iterator(TransactionId tid, int[] columns, Predicate[] predicates) {
+        return columns == null ? iterator(tid) : iterator(tid, columns);
+    }
+
     /**
      * Returns a unique ID used to identify this DbFile in the Catalog. This id
      * can be used to look up the table via {@link Catalog#getDatabaseFile} and
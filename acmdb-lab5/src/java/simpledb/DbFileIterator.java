@@ -37,4 +37,13 @@ public interface DbFileIterator{
      * Closes the iterator.
      */
     public void close();
+
+    /**
+     * @return the number of pages the iterator has left out without reading
+     *   them, because none of their tuples could match what was asked for
+     * @see DbFile#iterator(TransactionId, int[], Predicate[])
+     */
+    public default int getPagesSkipped() {
+        return 0;
+    }
 }
@@ -0,0 +1,127 @@
+package simpledb;
+
+/**
+ * A class to represent a fixed-width histogram over a single double field.
+ * Unlike {@link IntHistogram}, values are taken to be continuous: a range
+ * predicate counts the part of a bucket below or above the constant, and an
+ * equality predicate is taken to match a single tuple of its bucket.
+ */
+public class DoubleHistogram {
+
+    private final int[] histogram;
+    private final double min;
+    private final double max;
+    private final double width;
+    private int numTuples;
+
+    /**
+     * Create a new DoubleHistogram.
+     *
+     * @param buckets The number of buckets to split the input value into.
+     * @param min The minimum value that will ever be passed to this class for histogramming
+     * @param max The maximum value that will ever be passed to this class for histogramming
+     */
+    public DoubleHistogram(int buckets, double min, double max) {
+        this.min = min;
+        this.max = max;
+        this.histogram = new int[Math.max(1, buckets)];
+        this.width = (max - min) / histogram.length;
+    }
+
+    private int bucket(double v) {
+        if (!(width > 0)) {
+            return 0;
+        }
+        return (int) Math.max(0, Math.min(histogram.length - 1, (v - min) / width));
+    }
+
+    /**
+     * Add a value to the set of values that you are keeping a histogram of.
+     * @param v Value to add to the histogram
+     */
+    public void addValue(double v) {
+        histogram[bucket(v)]++;
+        numTuples++;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this
+     * table.
+     *
+     * @param op Operator
+     * @param v Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, double v) {
+        if (numTuples == 0) {
+            return 0;
+        }
+        double selectivity = 0;
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                selectivity = equal(v);
+                break;
+            case NOT_EQUALS:
+                selectivity = 1 - equal(v);
+                break;
+            case LESS_THAN:
+                selectivity = below(v);
+                break;
+            case LESS_THAN_OR_EQ:
+                selectivity = below(v) + equal(v);
+                break;
+            case GREATER_THAN:
+                selectivity = 1 - below(v) - equal(v);
+                break;
+            case GREATER_THAN_OR_EQ:
+                selectivity = 1 - below(v);
+                break;
+        }
+        return Math.max(0, Math.min(1, selectivity));
+    }
+
+    /** @return the fraction of values equal to v */
+    private double equal(double v) {
+        if (v < min || v > max) {
+            return 0;
+        }
+        if (!(width > 0)) {
+            // every value is min
+            return 1;
+        }
+        return histogram[bucket(v)] > 0 ? 1.0 / numTuples : 0;
+    }
+
+    /** @return the fraction of values less than v */
+    private double below(double v) {
+        if (v <= min) {
+            return 0;
+        }
+        if (v > max) {
+            return 1;
+        }
+        int bin = bucket(v);
+        double count = 0;
+        for (int i = 0; i < bin; ++i) {
+            count += histogram[i];
+        }
+        double left = min + bin * width;
+        count += histogram[bin] * Math.min(1, (v - left) / width);
+        return count / numTuples;
+    }
+
+    /**
+     * @return the average selectivity of this histogram.
+     */
+    public double avgSelectivity() {
+        return 1.0;
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        return "DoubleHistogram[" + min + ", " + max + "] " + java.util.Arrays.toString(histogram);
+    }
+}
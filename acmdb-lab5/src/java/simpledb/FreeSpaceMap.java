@@ -0,0 +1,127 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * FreeSpaceMap records the number of free tuple slots of every page of a
+ * HeapFile, so that an insert can go straight to a page with room instead of
+ * fetching and locking pages one by one until it finds one.
+ * <p>
+ * The counts are kept in memory and mirror the pages as the buffer pool sees
+ * them; they are a hint only, and inserts re-check the page they pick. The
+ * count of each page on disk is also kept in a {@link SideFile} next to the
+ * heap file (two bytes per page, big-endian), so reopening a table does not
+ * need to read the header of every page.
+ */
+class FreeSpaceMap {
+
+    /** "FSM1" */
+    private static final int MAGIC = 0x46534d31;
+
+    private final SideFile side;
+    private char[] free = new char[16];
+    private int numPages;
+    /** The number of pages whose counts on disk are known. */
+    private int diskPages;
+    /** Where the next search for a page with room starts. */
+    private int cursor;
+
+    /**
+     * @param file the side file in which counts are persisted
+     */
+    FreeSpaceMap(File file) {
+        this.side = new SideFile(file, MAGIC, 2);
+    }
+
+    /**
+     * Loads the persisted counts, unless the side file is missing or was
+     * not written for the heap file as it is now (see {@link SideFile}).
+     *
+     * @param heapFile the heap file the counts describe
+     * @param maxPages the number of pages the heap file has now
+     * @return the number of pages whose counts were loaded: maxPages or 0
+     */
+    synchronized int load(File heapFile, int maxPages) throws IOException {
+        byte[] data = side.load(heapFile, maxPages);
+        if (data == null) {
+            return 0;
+        }
+        for (int i = 0; i < maxPages; i++) {
+            set(i, ((data[2 * i] & 0xff) << 8) | (data[2 * i + 1] & 0xff));
+        }
+        diskPages = maxPages;
+        return maxPages;
+    }
+
+    /**
+     * Records the number of free slots of a page as currently buffered.
+     */
+    synchronized void update(int pageNo, int freeSlots) {
+        set(pageNo, freeSlots);
+        if (freeSlots > 0 && pageNo < cursor) {
+            cursor = pageNo;
+        }
+    }
+
+    /**
+     * Records the number of free slots of a page as it is on disk, in memory
+     * and for the side file.
+     */
+    synchronized void persist(int pageNo, int freeSlots) {
+        update(pageNo, freeSlots);
+        diskPages = Math.max(diskPages, pageNo + 1);
+        side.put(pageNo, new byte[] {(byte) (freeSlots >>> 8), (byte) freeSlots});
+    }
+
+    /**
+     * Writes the counts persisted since the last sync to the side file.
+     *
+     * @param heapFile the heap file the counts describe
+     */
+    synchronized void sync(File heapFile) throws IOException {
+        side.sync(heapFile, diskPages);
+    }
+
+    /**
+     * Marks the side file as not clean before the heap file is written; see
+     * {@link SideFile#markDirty}.
+     */
+    void markDirty() throws IOException {
+        side.markDirty();
+    }
+
+    /** Deletes the side file. */
+    void delete() throws IOException {
+        side.delete();
+    }
+
+    /**
+     * @return the lowest-numbered page recorded as having a free slot, or -1
+     *   if every page is full
+     */
+    synchronized int findPage() {
+        for (int i = cursor; i < numPages; i++) {
+            if (free[i] > 0) {
+                cursor = i;
+                return i;
+            }
+        }
+        cursor = numPages;
+        return -1;
+    }
+
+    /** @return the recorded number of free slots of a page */
+    synchronized int getFreeSlots(int pageNo) {
+        return pageNo < numPages ? free[pageNo] : 0;
+    }
+
+    private void set(int pageNo, int freeSlots) {
+        if (pageNo >= free.length) {
+            free = Arrays.copyOf(free, Math.max(pageNo + 1, free.length * 2));
+        }
+        free[pageNo] = (char) freeSlots;
+        numPages = Math.max(numPages, pageNo + 1);
+    }
+}
@@ -0,0 +1,252 @@
+package simpledb;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * HashBucketPage stores tuples of a {@link HashFile} whose keys hash to one
+ * bucket. A bucket is a primary page, which the directory points to, and a
+ * chain of overflow pages for the tuples that do not fit on it, used when
+ * splitting the bucket would not separate them (e.g. they all have the same
+ * key).
+ * <p>
+ * The page starts with its local depth, i.e. the number of low bits of the
+ * hash that all keys of the bucket share, and the page number of the next
+ * overflow page or 0, four bytes each. Then come a bitmap of the slots in use
+ * and fixed-size tuple slots, as on a {@link BTreeLeafPage}.
+ */
+public class HashBucketPage extends HashPage {
+
+    private static final int INDEX_SIZE = Type.INT_TYPE.getLen();
+
+    private final TupleDesc td;
+    private final int numSlots;
+    private final byte[] header;
+    private final Tuple[] tuples;
+
+    private int localDepth;
+    private int overflow;
+
+    /**
+     * Create a HashBucketPage from a set of bytes of data read from disk. The
+     * schema of the tuples comes from the catalog entry of the page's table.
+     *
+     * @see #HashBucketPage
+     * @param id the id of this page
+     * @param data the raw data of this page
+     */
+    public HashBucketPage(HashPageId id, byte[] data) throws IOException {
+        super(id);
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.numSlots = getMaxTuples();
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        localDepth = dis.readInt();
+        overflow = dis.readInt();
+        header = new byte[(numSlots + 7) / 8];
+        dis.readFully(header);
+        tuples = new Tuple[numSlots];
+        for (int i = 0; i < numSlots; i++) {
+            tuples[i] = readNextTuple(dis, i);
+        }
+        dis.close();
+        setBeforeImage();
+    }
+
+    private Tuple readNextTuple(DataInputStream dis, int slotId) throws IOException {
+        if (!isSlotUsed(slotId)) {
+            dis.skipBytes(td.getSize());
+            return null;
+        }
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slotId));
+        try {
+            for (int j = 0; j < td.numFields(); j++) {
+                t.setField(j, BTreePage.readField(dis, td.getFieldType(j)));
+            }
+        } catch (java.text.ParseException e) {
+            throw new NoSuchElementException("parsing error!");
+        }
+        return t;
+    }
+
+    /** @return the number of tuples a page holds */
+    public int getMaxTuples() {
+        int bitsPerTupleIncludingHeader = td.getSize() * 8 + 1;
+        // extraBits are: local depth, overflow pointer
+        int extraBits = 2 * INDEX_SIZE * 8;
+        return (BufferPool.getPageSize() * 8 - extraBits) / bitsPerTupleIncludingHeader;
+    }
+
+    /**
+     * @return the number of low bits of the hash that all keys of this bucket
+     *   share; only kept on the primary page
+     */
+    public int getLocalDepth() {
+        return localDepth;
+    }
+
+    public void setLocalDepth(int depth) {
+        localDepth = depth;
+    }
+
+    /** @return the id of the next overflow page of the bucket, or null */
+    public HashPageId getOverflowId() {
+        if (overflow == 0) {
+            return null;
+        }
+        return new HashPageId(pid.getTableId(), overflow, HashPageId.BUCKET);
+    }
+
+    /**
+     * Sets the next overflow page of the bucket.
+     *
+     * @param id the id of the overflow page, or null for none
+     * @throws DbException if the id is not of a bucket page of this table
+     */
+    public void setOverflowId(HashPageId id) throws DbException {
+        if (id == null) {
+            overflow = 0;
+            return;
+        }
+        if (id.pgcateg() != HashPageId.BUCKET || id.getTableId() != pid.getTableId()) {
+            throw new DbException("not a bucket page of this table: " + id);
+        }
+        overflow = id.pageNumber();
+    }
+
+    /** @return the number of tuples on this page */
+    public int getNumTuples() {
+        return numSlots - getNumEmptySlots();
+    }
+
+    /** @return the number of empty slots on this page */
+    public int getNumEmptySlots() {
+        int cnt = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+
+    /** @return true if the slot is in use */
+    public boolean isSlotUsed(int i) {
+        return (header[i / 8] & (1 << (i % 8))) != 0;
+    }
+
+    private void markSlotUsed(int i, boolean value) {
+        if (value) {
+            header[i / 8] |= 1 << (i % 8);
+        } else {
+            header[i / 8] &= ~(1 << (i % 8));
+        }
+    }
+
+    /**
+     * Adds the tuple to the first empty slot of the page and updates its
+     * record id.
+     *
+     * @throws DbException if the page is full or the tuple is of another schema
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) {
+            throw new DbException("type mismatch, in insertTuple");
+        }
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                markSlotUsed(i, true);
+                t.setRecordId(new RecordId(pid, i));
+                tuples[i] = t;
+                return;
+            }
+        }
+        throw new DbException("called insertTuple on page with no empty slots.");
+    }
+
+    /**
+     * Deletes the tuple from the page and clears its record id.
+     *
+     * @throws DbException if the tuple is not on this page
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) {
+            throw new DbException("tried to delete tuple on invalid page or table");
+        }
+        if (!isSlotUsed(rid.tupleno())) {
+            throw new DbException("tried to delete null tuple.");
+        }
+        markSlotUsed(rid.tupleno(), false);
+        tuples[rid.tupleno()] = null;
+        t.setRecordId(null);
+    }
+
+    public void writePageData(ByteBuffer buf) {
+        buf.putInt(localDepth);
+        buf.putInt(overflow);
+        buf.put(header);
+        for (int i = 0; i < numSlots; i++) {
+            if (!isSlotUsed(i)) {
+                BTreePage.putZeros(buf, td.getSize());
+                continue;
+            }
+            for (int j = 0; j < td.numFields(); j++) {
+                BTreePage.putField(buf, td.getFieldType(j), tuples[i].getField(j));
+            }
+        }
+        BTreePage.putZeros(buf, BufferPool.getPageSize()
+                - (2 * INDEX_SIZE + header.length + numSlots * td.getSize()));
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public HashBucketPage getBeforeImage() {
+        try {
+            synchronized (oldDataLock) {
+                return new HashBucketPage(pid, oldData);
+            }
+        } catch (IOException e) {
+            // we parsed it OK before
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return an iterator over the tuples on this page (calling remove on
+     *   this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < numSlots && !isSlotUsed(from)) {
+                    from++;
+                }
+                return from;
+            }
+
+            public boolean hasNext() {
+                return next < numSlots;
+            }
+
+            public Tuple next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = tuples[next];
+                next = advance(next + 1);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
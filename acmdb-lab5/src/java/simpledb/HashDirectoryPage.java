@@ -0,0 +1,67 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HashDirectoryPage holds a run of consecutive entries of the directory of a
+ * {@link HashFile}: entry i of the page is entry
+ * <code>n * getNumEntries() + i</code> of the directory, where n is the
+ * page's place in the list kept by the {@link HashHeaderPage}. Each entry is
+ * the four-byte page number of the bucket page that keys whose hash ends in
+ * the entry's number go to.
+ */
+public class HashDirectoryPage extends HashPage {
+
+    private final int[] buckets;
+
+    /**
+     * Create a HashDirectoryPage from a set of bytes of data read from disk.
+     *
+     * @see #HashDirectoryPage
+     * @param id the id of this page
+     * @param data the raw data of this page
+     */
+    public HashDirectoryPage(HashPageId id, byte[] data) {
+        super(id);
+        buckets = new int[getNumEntries()];
+        ByteBuffer.wrap(data).asIntBuffer().get(buckets);
+        setBeforeImage();
+    }
+
+    /** @return the number of directory entries a page holds */
+    public static int getNumEntries() {
+        return BufferPool.getPageSize() / Type.INT_TYPE.getLen();
+    }
+
+    /** @return the id of the bucket page entry i of this page points to */
+    public HashPageId getBucketId(int i) {
+        return new HashPageId(pid.getTableId(), buckets[i], HashPageId.BUCKET);
+    }
+
+    /**
+     * Points entry i of this page to a bucket page.
+     *
+     * @throws DbException if the id is not of a bucket page of this table
+     */
+    public void setBucketId(int i, HashPageId id) throws DbException {
+        if (id.pgcateg() != HashPageId.BUCKET || id.getTableId() != pid.getTableId()) {
+            throw new DbException("not a bucket page of this table: " + id);
+        }
+        buckets[i] = id.pageNumber();
+    }
+
+    public void writePageData(ByteBuffer buf) {
+        for (int pageNo : buckets) {
+            buf.putInt(pageNo);
+        }
+        BTreePage.putZeros(buf, BufferPool.getPageSize() - buckets.length * Type.INT_TYPE.getLen());
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public HashDirectoryPage getBeforeImage() {
+        synchronized (oldDataLock) {
+            return new HashDirectoryPage(pid, oldData);
+        }
+    }
+}
@@ -1,23 +1,70 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
- * The Join operator implements the relational join operation.
+ * The HashEquiJoin operator implements the relational equi-join: it builds a
+ * hash table on the join field of one child and probes it with the tuples of
+ * the other.
+ * <p>
+ * The hash table holds at most a memory budget of tuples. When the build
+ * side exceeds it, the join turns into a Grace hash join: both inputs are
+ * split by the hash of their join field into partitions written to
+ * {@link SpillFile}s, and each pair of partitions is joined on its own.
+ * Partitions whose build side still exceeds the budget are split again with
+ * another hash function; a partition that does not split, because most of
+ * its tuples share a key, is joined a budget of its build side at a time,
+ * with a scan of its probe side for each. Memory use is thus bounded by the
+ * budget plus a page per partition, however large the inputs are.
  */
 public class HashEquiJoin extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    /** The default memory budget, in pages of {@link BufferPool#getPageSize()} bytes */
+    public static final int DEFAULT_MEMORY_PAGES = 256;
+    /** The most partitions an input is split into at once */
+    static final int MAX_FANOUT = 64;
+    /** The most times a partition is split again before it is joined a budget at a time */
+    static final int MAX_DEPTH = 4;
+
     private final JoinPredicate p;
+    private final boolean buildOuter;
     private DbIterator child1, child2;
+    private int memoryPages = DEFAULT_MEMORY_PAGES;
     private HashMap<Field, List<Tuple>> hashMap;
-    private Tuple tuple1;
+    private boolean started;
+    private final LinkedList<Partition> pending = new LinkedList<>();
+    private Partition current;
+    private int partitions;
+    /** The build input the hash table is reloaded from if it did not fit, else null */
+    private DbFileIterator buildIt;
+    private DbFileIterator probeIt;
+    private Tuple probeTuple;
     transient Iterator<Tuple> listIt = null;
 
+    /** The tuples of both inputs whose join fields hash to one partition */
+    private static class Partition {
+        final SpillFile build, probe;
+        /** How many times the inputs were split to get this partition */
+        final int depth;
+
+        Partition(SpillFile build, SpillFile probe, int depth) {
+            this.build = build;
+            this.probe = probe;
+            this.depth = depth;
+        }
+
+        void delete() {
+            build.delete();
+            probe.delete();
+        }
+    }
+
     /**
      * Constructor. Accepts to children to join and the predicate to join them
-     * on
+     * on. The hash table is built on the right(inner) child.
      * 
      * @param p
      *            The predicate to use to join the children
@@ -27,10 +74,27 @@ public class HashEquiJoin extends Operator {
      *            Iterator for the right(inner) relation to join
      */
     public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
-        // some code goes here
+        this(p, child1, child2, false);
+    }
+
+    /**
+     * Constructor. The hash table is built on one child and probed with the
+     * tuples of the other; the output is the same either way.
+     * 
+     * @param p
+     *            The predicate to use to join the children
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @param buildOuter
+     *            whether to build the hash table on child1 rather than child2
+     */
+    public HashEquiJoin(JoinPredicate p, DbIterator child1, DbIterator child2, boolean buildOuter) {
         this.p = p;
         this.child1 = child1;
         this.child2 = child2;
+        this.buildOuter = buildOuter;
         hashMap = new HashMap<>();
     }
 
@@ -39,6 +103,29 @@ public class HashEquiJoin extends Operator {
         return p;
     }
 
+    /** @return whether the hash table is built on child1 rather than child2 */
+    public boolean buildsOuter() {
+        return buildOuter;
+    }
+
+    /**
+     * Sets how many pages of tuples the hash table may hold, counting the
+     * tuples by their estimated size in memory, before the join spills to
+     * disk. Takes
+     * effect on the next open or rewind.
+     */
+    public void setMemoryPages(int pages) {
+        if (pages < 1) {
+            throw new IllegalArgumentException("memory budget must be at least a page");
+        }
+        memoryPages = pages;
+    }
+
+    /** @return the number of partitions the inputs were spilled to since the join was opened */
+    public int getPartitionCount() {
+        return partitions;
+    }
+
     public TupleDesc getTupleDesc() {
         // some code goes here
         return TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
@@ -53,7 +140,7 @@ public class HashEquiJoin extends Operator {
     public String getJoinField2Name()
     {
         // some code goes here
-        return child1.getTupleDesc().getFieldName(p.getField2());
+        return child2.getTupleDesc().getFieldName(p.getField2());
     }
     
     public void open() throws DbException, NoSuchElementException,
@@ -69,14 +156,33 @@ public class HashEquiJoin extends Operator {
         super.close();
         child1.close();
         child2.close();
+        reset();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
         child1.rewind();
         child2.rewind();
+        reset();
+    }
+
+    /** Drops the hash table and removes the spill files. */
+    private void reset() {
         hashMap.clear();
-        tuple1 = null;
+        started = false;
+        if (current != null) {
+            current.delete();
+            current = null;
+        }
+        for (Partition part : pending) {
+            part.delete();
+        }
+        pending.clear();
+        partitions = 0;
+        buildIt = null;
+        probeIt = null;
+        probeTuple = null;
+        listIt = null;
     }
 
     /**
@@ -98,70 +204,228 @@ public class HashEquiJoin extends Operator {
      * @see JoinPredicate#filter
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
-        // some code goes here
-        int tuple1NumFields = child1.getTupleDesc().numFields();
-        int tuple2NumFields = child2.getTupleDesc().numFields();
-
-        // If this is the first call to fetchNext(), build the hashMap, get the first tuple1 and listIt
-        if (tuple1 == null) {
-            // Build the hashMap
-            while (child2.hasNext()) {
-                Tuple tuple2 = child2.next();
-                Field tuple2Key = tuple2.getField(p.getField2());
-                if (hashMap.containsKey(tuple2Key)) {
-                    List<Tuple> tupleList = hashMap.get(tuple2Key);
-                    tupleList.add(tuple2);
-                }
-                else {
-                    List<Tuple> tupleList = new ArrayList<>();
-                    tupleList.add(tuple2);
-                    hashMap.put(tuple2Key, tupleList);
+        while (true) {
+            if (listIt != null && listIt.hasNext()) {
+                Tuple match = listIt.next();
+                return buildOuter ? merge(match, probeTuple) : merge(probeTuple, match);
+            }
+            // When listIt reaches the end, get the next probe tuple and listIt
+            listIt = null;
+            if (probeIt != null && probeIt.hasNext()) {
+                probeTuple = probeIt.next();
+                List<Tuple> matches = hashMap.get(probeTuple.getField(probeField()));
+                if (matches != null) {
+                    listIt = matches.iterator();
                 }
-
+            } else if (!nextPass()) {
+                return null;
             }
+        }
+    }
+
+    private int buildField() {
+        return buildOuter ? p.getField1() : p.getField2();
+    }
+
+    private int probeField() {
+        return buildOuter ? p.getField2() : p.getField1();
+    }
 
-            // Get the first tuple1 and listIt
-            while (child1.hasNext()) {
-                tuple1 = child1.next();
-                Field tuple1Key = tuple1.getField(p.getField1());
-                if (hashMap.containsKey(tuple1Key)) {
-                    listIt = hashMap.get(tuple1Key).listIterator();
-                    break;
+    /**
+     * Loads the hash table for the next pass over a probe input, and points
+     * probeIt at that input: on the first call the children, spilling them
+     * to partitions if the build side exceeds the memory budget; then the
+     * next chunk of the build side of the current partition, or the next
+     * partition.
+     * 
+     * @return false if there are no more passes
+     */
+    private boolean nextPass() throws DbException, TransactionAbortedException {
+        try {
+            if (!started) {
+                started = true;
+                DbFileIterator build = childIterator(buildOuter ? child1 : child2);
+                DbFileIterator probe = childIterator(buildOuter ? child2 : child1);
+                if (load(build)) {
+                    probeIt = probe;
+                    return true;
                 }
+                split(build, probe, 0);
+            } else if (buildIt != null) {
+                if (load(buildIt)) {
+                    buildIt.close();
+                    buildIt = null;
+                }
+                probeIt.rewind();
+                return true;
             }
-            if (listIt == null) {
-                return null;
+            if (current != null) {
+                probeIt.close();
+                current.delete();
+                current = null;
             }
+            probeIt = null;
+            while (!pending.isEmpty()) {
+                Partition part = pending.removeFirst();
+                if (part.build.numTuples() == 0 || part.probe.numTuples() == 0) {
+                    part.delete();
+                    continue;
+                }
+                DbFileIterator build = part.build.iterator();
+                DbFileIterator probe = part.probe.iterator();
+                build.open();
+                probe.open();
+                if (load(build) || part.depth == MAX_DEPTH) {
+                    if (build.hasNext()) {
+                        buildIt = build;
+                    } else {
+                        build.close();
+                    }
+                    current = part;
+                    probeIt = probe;
+                    return true;
+                }
+                try {
+                    split(build, probe, part.depth + 1);
+                } finally {
+                    build.close();
+                    probe.close();
+                    part.delete();
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            throw new DbException("could not spill join input: " + e.getMessage());
         }
+    }
 
-        while (true) {
-            if (listIt.hasNext()) { // Get the next tuple2
-                Tuple tuple2 = listIt.next();
-                Tuple joinedTuple = new Tuple(getTupleDesc());
-                int i = 0;
-                while (i < tuple1NumFields) {
-                    joinedTuple.setField(i, tuple1.getField(i));
-                    ++i;
-                }
-                while (i < tuple1NumFields + tuple2NumFields) {
-                    joinedTuple.setField(i, tuple2.getField(i - tuple1NumFields));
-                    ++i;
+    /**
+     * Clears the hash table and loads it from a build input, until the input
+     * ends or the table exceeds the memory budget.
+     * 
+     * @return whether the input ended
+     */
+    private boolean load(DbFileIterator build) throws DbException, TransactionAbortedException {
+        hashMap.clear();
+        long budget = (long) memoryPages * BufferPool.getPageSize();
+        long bytes = 0;
+        while (bytes < budget && build.hasNext()) {
+            Tuple t = build.next();
+            Field key = t.getField(buildField());
+            List<Tuple> tupleList = hashMap.get(key);
+            if (tupleList == null) {
+                tupleList = new ArrayList<>();
+                hashMap.put(key, tupleList);
+            }
+            tupleList.add(t);
+            bytes += SpillFile.memorySize(t);
+        }
+        return !build.hasNext();
+    }
+
+    /**
+     * Splits the tuples in the hash table and the rest of both inputs into
+     * partitions by the hash of their join field, and queues the partitions
+     * to be joined before the ones queued earlier. A partition holding all
+     * the build tuples did not split, and is not split again.
+     */
+    private void split(DbFileIterator build, DbFileIterator probe, int depth)
+            throws IOException, DbException, TransactionAbortedException {
+        int fanout = Math.min(MAX_FANOUT, Math.max(2, memoryPages));
+        SpillFile[] builds = new SpillFile[fanout];
+        SpillFile[] probes = new SpillFile[fanout];
+        long total = 0;
+        boolean written = false;
+        try {
+            for (int i = 0; i < fanout; i++) {
+                builds[i] = new SpillFile((buildOuter ? child1 : child2).getTupleDesc());
+                probes[i] = new SpillFile((buildOuter ? child2 : child1).getTupleDesc());
+            }
+            for (List<Tuple> tupleList : hashMap.values()) {
+                for (Tuple t : tupleList) {
+                    builds[partition(t.getField(buildField()), depth, fanout)].add(t);
                 }
-                return joinedTuple;
-            }
-            listIt = null;  // When listIt reaches the end, get the next tuple1 and listIt
-            while (child1.hasNext()) {
-                tuple1 = child1.next();
-                Field tuple1Key = tuple1.getField(p.getField1());
-                if (hashMap.containsKey(tuple1Key)) {
-                    listIt = hashMap.get(tuple1Key).listIterator();
-                    break;
+            }
+            hashMap.clear();
+            while (build.hasNext()) {
+                Tuple t = build.next();
+                builds[partition(t.getField(buildField()), depth, fanout)].add(t);
+            }
+            for (SpillFile f : builds) {
+                f.finish();
+                total += f.numTuples();
+            }
+            while (probe.hasNext()) {
+                Tuple t = probe.next();
+                probes[partition(t.getField(probeField()), depth, fanout)].add(t);
+            }
+            for (SpillFile f : probes) {
+                f.finish();
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                for (int i = 0; i < fanout; i++) {
+                    if (builds[i] != null) {
+                        builds[i].delete();
+                    }
+                    if (probes[i] != null) {
+                        probes[i].delete();
+                    }
                 }
             }
-            if (listIt == null) {
-                return null;
+        }
+        for (int i = fanout - 1; i >= 0; i--) {
+            int d = builds[i].numTuples() == total ? MAX_DEPTH : depth;
+            pending.addFirst(new Partition(builds[i], probes[i], d));
+        }
+        partitions += fanout;
+    }
+
+    /**
+     * @return the partition of a join key at a depth of splitting; each depth
+     *         hashes the key differently, so keys that shared a partition are
+     *         spread over the partitions of the next depth
+     */
+    private static int partition(Field key, int depth, int fanout) {
+        int h = key.hashCode() ^ (depth * 0x9e3779b9);
+        h *= 0x85ebca6b;
+        h ^= h >>> 15;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % fanout;
+    }
+
+    /** @return a DbFileIterator over the tuples of an open child */
+    private static DbFileIterator childIterator(final DbIterator child) {
+        return new AbstractDbFileIterator() {
+            public void open() {
+            }
+
+            @Override
+            protected Tuple readNext() throws DbException, TransactionAbortedException {
+                return child.hasNext() ? child.next() : null;
             }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                close();
+                child.rewind();
+            }
+        };
+    }
+
+    /** @return the concatenation of a tuple of child1 and one of child2 */
+    private Tuple merge(Tuple tuple1, Tuple tuple2) {
+        int tuple1NumFields = tuple1.getTupleDesc().numFields();
+        int tuple2NumFields = tuple2.getTupleDesc().numFields();
+        Tuple joinedTuple = new Tuple(getTupleDesc());
+        for (int i = 0; i < tuple1NumFields; i++) {
+            joinedTuple.setField(i, tuple1.getField(i));
+        }
+        for (int i = 0; i < tuple2NumFields; i++) {
+            joinedTuple.setField(tuple1NumFields + i, tuple2.getField(i));
         }
+        return joinedTuple;
     }
 
     @Override
@@ -0,0 +1,581 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * HashFile is an implementation of a DbFile that stores an extendible hash
+ * index: tuples go to buckets by the hash of their key, so finding the
+ * tuples with a given key reads a single bucket page (plus any overflow
+ * pages of the bucket) once the header and directory pages are in the
+ * buffer pool.
+ * <p>
+ * Page 0 of the file is a {@link HashHeaderPage} holding the global depth d
+ * and the list of {@link HashDirectoryPage}s, which hold the 2^d directory
+ * entries; the entry numbered by the low d bits of a key's hash points to
+ * the key's {@link HashBucketPage}. A bucket whose keys share only their low
+ * l &lt; d bits is pointed to by 2^(d-l) entries. When a bucket is full it is
+ * split in two by the next bit of the hash, doubling the directory first if
+ * l = d; when splitting cannot separate its keys, e.g. because they are all
+ * equal, the bucket gets an overflow page instead. Buckets are not merged
+ * again when tuples are deleted.
+ * <p>
+ * Pages are numbered from 0 and stored one after the other. New pages are
+ * appended to the file; those of a transaction that aborts are left unused.
+ *
+ * @see HashPageId
+ */
+public class HashFile implements IndexFile {
+
+    private final File f;
+    private final PageChannel channel;
+    private final TupleDesc td;
+    private final int tableid;
+    private final int keyField;
+
+    /**
+     * Constructs a hash index file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file
+     * @param key the field which index is keyed on
+     * @param td the tuple descriptor of tuples in the file
+     */
+    public HashFile(File f, int key, TupleDesc td) {
+        this.f = f;
+        this.channel = new PageChannel(f);
+        this.tableid = f.getAbsoluteFile().hashCode();
+        this.keyField = key;
+        this.td = td;
+    }
+
+    /**
+     * Returns the File backing this HashFile on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this HashFile, the hash code of the
+     * absolute path of its file.
+     */
+    public int getId() {
+        return tableid;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    /**
+     * Returns the index of the field that this file is keyed on
+     */
+    public int keyField() {
+        return keyField;
+    }
+
+    /**
+     * Returns the number of pages in this HashFile.
+     */
+    public int numPages() {
+        return (int) (f.length() / BufferPool.getPageSize());
+    }
+
+    /**
+     * Read a page from the file on disk. This should not be called directly
+     * but should be called from the BufferPool via getPage()
+     *
+     * @param pid the id of the page to read from disk
+     * @return the page constructed from the contents on disk
+     */
+    public Page readPage(PageId pid) {
+        HashPageId id = (HashPageId) pid;
+        byte[] pageBuf = new byte[BufferPool.getPageSize()];
+        try {
+            int retval = channel.read(pageBuf, (long) id.pageNumber() * BufferPool.getPageSize());
+            if (retval == 0) {
+                throw new IllegalArgumentException("Read past end of table");
+            }
+            if (retval < BufferPool.getPageSize()) {
+                throw new IllegalArgumentException("Unable to read "
+                        + BufferPool.getPageSize() + " bytes from HashFile");
+            }
+            Debug.log(1, "HashFile.readPage: read page %d", id.pageNumber());
+            switch (id.pgcateg()) {
+            case HashPageId.HEADER:
+                return new HashHeaderPage(id, pageBuf);
+            case HashPageId.DIRECTORY:
+                return new HashDirectoryPage(id, pageBuf);
+            default:
+                return new HashBucketPage(id, pageBuf);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write a page to disk.  This should not be called directly but should
+     * be called from the BufferPool when pages are flushed to disk
+     *
+     * @param page the page to write to disk
+     */
+    public void writePage(Page page) throws IOException {
+        channel.write(page, (long) page.getId().pageNumber() * BufferPool.getPageSize());
+    }
+
+    /**
+     * @return the hash of a key; its low bits select the directory entry.
+     *   The hash codes of fields are mixed first, as those of IntFields are
+     *   the values themselves.
+     */
+    static int hash(Field key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** @return a mask of the low depth bits of a hash */
+    private static int mask(int depth) {
+        return (1 << depth) - 1;
+    }
+
+    /**
+     * Works like BufferPool.getPage(), but checks the local cache of pages
+     * of the operation first and adds the pages fetched with read-write
+     * permission to it, as BTreeFile.getPage() does.
+     */
+    private Page getPage(TransactionId tid, HashMap<PageId, Page> dirtypages, HashPageId pid, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        if (dirtypages.containsKey(pid)) {
+            return dirtypages.get(pid);
+        }
+        Page p = Database.getBufferPool().getPage(tid, pid, perm);
+        if (perm == Permissions.READ_WRITE) {
+            dirtypages.put(pid, p);
+        }
+        return p;
+    }
+
+    /**
+     * Works like getPage(), and adds the page to acquired if the transaction
+     * held no lock on it before.
+     */
+    private Page getPage(TransactionId tid, HashMap<PageId, Page> dirtypages, HashSet<PageId> acquired,
+            HashPageId pid, Permissions perm) throws DbException, TransactionAbortedException {
+        if (!Database.getBufferPool().holdsLock(tid, pid)) {
+            acquired.add(pid);
+        }
+        return getPage(tid, dirtypages, pid, perm);
+    }
+
+    /**
+     * Locks and returns the header page. An empty file is set up first, with
+     * one directory page (page 1) and one bucket (page 2).
+     */
+    private HashHeaderPage getHeaderPage(TransactionId tid, HashMap<PageId, Page> dirtypages, Permissions perm)
+            throws DbException, TransactionAbortedException {
+        synchronized (this) {
+            if (f.length() == 0) {
+                try {
+                    byte[] header = HashPage.createEmptyPageData();
+                    ByteBuffer.wrap(header).putInt(0).putInt(1).putInt(1);
+                    byte[] directory = HashPage.createEmptyPageData();
+                    ByteBuffer.wrap(directory).putInt(2);
+                    channel.write(HashPage.createEmptyPageData(), 2L * BufferPool.getPageSize());
+                    channel.write(directory, BufferPool.getPageSize());
+                    channel.write(header, 0);
+                } catch (IOException e) {
+                    throw new DbException("could not set up " + f + ": " + e);
+                }
+            }
+        }
+        return (HashHeaderPage) getPage(tid, dirtypages, new HashPageId(tableid, 0, HashPageId.HEADER), perm);
+    }
+
+    /** @return the directory page holding directory entry i, locked with perm */
+    private HashDirectoryPage getDirectoryPage(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            HashHeaderPage header, int i, Permissions perm) throws DbException, TransactionAbortedException {
+        return (HashDirectoryPage) getPage(tid, dirtypages,
+                header.getDirectoryPageId(i / HashDirectoryPage.getNumEntries()), perm);
+    }
+
+    /** @return the id of the bucket directory entry i points to */
+    private HashPageId getBucketId(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            HashHeaderPage header, int i) throws DbException, TransactionAbortedException {
+        HashDirectoryPage dir = getDirectoryPage(tid, dirtypages, header, i, Permissions.READ_ONLY);
+        return dir.getBucketId(i % HashDirectoryPage.getNumEntries());
+    }
+
+    /** Points directory entry i to a bucket. */
+    private void setBucketId(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            HashHeaderPage header, int i, HashPageId bucket) throws DbException, TransactionAbortedException {
+        HashDirectoryPage dir = getDirectoryPage(tid, dirtypages, header, i, Permissions.READ_WRITE);
+        dir.setBucketId(i % HashDirectoryPage.getNumEntries(), bucket);
+    }
+
+    /**
+     * @return the id of the primary page of the bucket keys with the given
+     *   hash go to
+     */
+    HashPageId findBucket(TransactionId tid, HashMap<PageId, Page> dirtypages, HashHeaderPage header, int hash)
+            throws DbException, TransactionAbortedException {
+        return getBucketId(tid, dirtypages, header, hash & mask(header.getGlobalDepth()));
+    }
+
+    /**
+     * Appends an empty page to the file and returns it, locked with
+     * read-write permission.
+     */
+    private HashPage getEmptyPage(TransactionId tid, HashMap<PageId, Page> dirtypages, int pgcateg)
+            throws DbException, IOException, TransactionAbortedException {
+        int pageNo;
+        synchronized (this) {
+            pageNo = (int) (channel.size() / BufferPool.getPageSize());
+            channel.write(HashPage.createEmptyPageData(), (long) pageNo * BufferPool.getPageSize());
+        }
+        HashPageId pid = new HashPageId(tableid, pageNo, pgcateg);
+        // make sure the page is not in the buffer pool or in the local cache
+        Database.getBufferPool().discardPage(pid);
+        dirtypages.remove(pid);
+        return (HashPage) getPage(tid, dirtypages, pid, Permissions.READ_WRITE);
+    }
+
+    /** @return the next page of a bucket's chain, or null */
+    private HashBucketPage nextPage(TransactionId tid, HashMap<PageId, Page> dirtypages, HashBucketPage page,
+            Permissions perm) throws DbException, TransactionAbortedException {
+        HashPageId next = page.getOverflowId();
+        return next == null ? null : (HashBucketPage) getPage(tid, dirtypages, next, perm);
+    }
+
+    /**
+     * Inserts the tuple into the first page of a bucket's chain with room,
+     * appending an overflow page if there is none.
+     */
+    private void insertIntoBucket(TransactionId tid, HashMap<PageId, Page> dirtypages, HashBucketPage bucket, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        HashBucketPage page = bucket;
+        while (page.getNumEmptySlots() == 0) {
+            HashBucketPage next = nextPage(tid, dirtypages, page, Permissions.READ_WRITE);
+            if (next == null) {
+                next = (HashBucketPage) getEmptyPage(tid, dirtypages, HashPageId.BUCKET);
+                page.setOverflowId(next.getId());
+            }
+            page = next;
+        }
+        page.insertTuple(t);
+    }
+
+    /**
+     * @return true if some page of the bucket's chain has an empty slot
+     */
+    private boolean hasRoom(TransactionId tid, HashMap<PageId, Page> dirtypages, HashBucketPage bucket)
+            throws DbException, TransactionAbortedException {
+        for (HashBucketPage p = bucket; p != null; p = nextPage(tid, dirtypages, p, Permissions.READ_WRITE)) {
+            if (p.getNumEmptySlots() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if splitting the bucket would move some of its tuples, or
+     *   the tuple with the given hash, away from the others, i.e. if their
+     *   hashes differ in a bit the directory can still grow to
+     */
+    private boolean splitSeparates(TransactionId tid, HashMap<PageId, Page> dirtypages, HashBucketPage bucket, int hash)
+            throws DbException, TransactionAbortedException {
+        int bits = mask(HashHeaderPage.getMaxGlobalDepth());
+        if (bucket.getLocalDepth() >= HashHeaderPage.getMaxGlobalDepth()) {
+            return false;
+        }
+        for (HashBucketPage p = bucket; p != null; p = nextPage(tid, dirtypages, p, Permissions.READ_WRITE)) {
+            Iterator<Tuple> it = p.iterator();
+            while (it.hasNext()) {
+                if (((hash(it.next().getField(keyField)) ^ hash) & bits) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Doubles the directory: entry i + 2^d gets the bucket of entry i, and
+     * the global depth d goes up by one.
+     *
+     * @return the header page, locked with read-write permission
+     */
+    private HashHeaderPage doubleDirectory(TransactionId tid, HashMap<PageId, Page> dirtypages)
+            throws DbException, IOException, TransactionAbortedException {
+        HashHeaderPage header = getHeaderPage(tid, dirtypages, Permissions.READ_WRITE);
+        int depth = header.getGlobalDepth();
+        int entries = 1 << depth;
+        int needed = (2 * entries + HashDirectoryPage.getNumEntries() - 1) / HashDirectoryPage.getNumEntries();
+        while (header.getNumDirectoryPages() < needed) {
+            header.addDirectoryPage(getEmptyPage(tid, dirtypages, HashPageId.DIRECTORY).getId());
+        }
+        for (int i = 0; i < entries; i++) {
+            setBucketId(tid, dirtypages, header, entries + i, getBucketId(tid, dirtypages, header, i));
+        }
+        header.setGlobalDepth(depth + 1);
+        return header;
+    }
+
+    /**
+     * Splits a bucket of local depth l by bit l of the hash: its tuples with
+     * the bit set, and the directory entries with the bit set that point to
+     * it, move to a new bucket, and both buckets get local depth l + 1.
+     *
+     * @param bucket the primary page of the bucket, locked with read-write
+     *          permission
+     * @param hash the hash of a key of the bucket
+     * @return the header page, which may have been locked with read-write
+     *   permission to double the directory
+     */
+    private HashHeaderPage splitBucket(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            HashHeaderPage header, HashBucketPage bucket, int hash)
+            throws DbException, IOException, TransactionAbortedException {
+        int depth = bucket.getLocalDepth();
+        if (depth == header.getGlobalDepth()) {
+            header = doubleDirectory(tid, dirtypages);
+        }
+        HashBucketPage image = (HashBucketPage) getEmptyPage(tid, dirtypages, HashPageId.BUCKET);
+        bucket.setLocalDepth(depth + 1);
+        image.setLocalDepth(depth + 1);
+
+        int entries = 1 << header.getGlobalDepth();
+        for (int i = (hash & mask(depth)) | (1 << depth); i < entries; i += 2 << depth) {
+            setBucketId(tid, dirtypages, header, i, image.getId());
+        }
+
+        for (HashBucketPage p = bucket; p != null; p = nextPage(tid, dirtypages, p, Permissions.READ_WRITE)) {
+            ArrayList<Tuple> moving = new ArrayList<Tuple>();
+            Iterator<Tuple> it = p.iterator();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                if ((hash(t.getField(keyField)) & (1 << depth)) != 0) {
+                    moving.add(t);
+                }
+            }
+            for (Tuple t : moving) {
+                p.deleteTuple(t);
+                insertIntoBucket(tid, dirtypages, image, t);
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Inserts a tuple into the bucket of its key, splitting the bucket (and
+     * doubling the directory) as long as it is full and splitting separates
+     * its keys, and giving it an overflow page otherwise.
+     * <p>
+     * The header is locked with read-only permission to find the bucket. A
+     * split needs it with read-write permission, and two inserters upgrading
+     * their shared locks at once would deadlock, so an insert that must
+     * split first releases the locks it holds on pages it has not changed:
+     * the header and directory pages, which only lead to buckets, and the
+     * bucket's pages, if it locked them for this insert. It then starts over
+     * with the header locked with read-write permission, which no other
+     * transaction reading the directory can hold.
+     *
+     * @param tid the transaction id
+     * @param t the tuple to insert
+     * @return a list of all pages that were dirtied by this operation
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        HashMap<PageId, Page> dirtypages = new HashMap<PageId, Page>();
+        HashHeaderPage header = getHeaderPage(tid, dirtypages, Permissions.READ_ONLY);
+        int hash = hash(t.getField(keyField));
+        if (!tid.equals(header.isDirty())) {
+            HashSet<PageId> acquired = new HashSet<PageId>();
+            HashBucketPage bucket = (HashBucketPage) getPage(tid, dirtypages, acquired,
+                    findBucket(tid, dirtypages, header, hash), Permissions.READ_WRITE);
+            for (HashBucketPage p = bucket; p.getOverflowId() != null; ) {
+                p = (HashBucketPage) getPage(tid, dirtypages, acquired, p.getOverflowId(), Permissions.READ_WRITE);
+            }
+            if (hasRoom(tid, dirtypages, bucket) || !splitSeparates(tid, dirtypages, bucket, hash)) {
+                insertIntoBucket(tid, dirtypages, bucket, t);
+                return new ArrayList<Page>(dirtypages.values());
+            }
+            for (int i = 0; i < header.getNumDirectoryPages(); i++) {
+                HashPageId pid = header.getDirectoryPageId(i);
+                if (Database.getBufferPool().holdsLock(tid, pid)
+                        && !tid.equals(getPage(tid, dirtypages, pid, Permissions.READ_ONLY).isDirty())) {
+                    Database.getBufferPool().releasePage(tid, pid);
+                }
+            }
+            Database.getBufferPool().releasePage(tid, header.getId());
+            for (PageId pid : acquired) {
+                Database.getBufferPool().releasePage(tid, pid);
+            }
+            dirtypages.clear();
+            header = getHeaderPage(tid, dirtypages, Permissions.READ_WRITE);
+        }
+        while (true) {
+            HashBucketPage bucket = (HashBucketPage) getPage(tid, dirtypages,
+                    findBucket(tid, dirtypages, header, hash), Permissions.READ_WRITE);
+            if (hasRoom(tid, dirtypages, bucket) || !splitSeparates(tid, dirtypages, bucket, hash)) {
+                insertIntoBucket(tid, dirtypages, bucket, t);
+                break;
+            }
+            header = splitBucket(tid, dirtypages, header, bucket, hash);
+        }
+        return new ArrayList<Page>(dirtypages.values());
+    }
+
+    /**
+     * Deletes a tuple from its bucket page.
+     *
+     * @param tid the transaction id
+     * @param t the tuple to delete
+     * @return a list of all pages that were dirtied by this operation
+     * @throws DbException if the tuple is not in this file
+     */
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || rid.getPageId().getTableId() != tableid) {
+            throw new DbException("tried to delete tuple not in this table");
+        }
+        HashMap<PageId, Page> dirtypages = new HashMap<PageId, Page>();
+        HashPageId pid = new HashPageId(tableid, rid.getPageId().pageNumber(), HashPageId.BUCKET);
+        HashBucketPage page = (HashBucketPage) getPage(tid, dirtypages, pid, Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        return new ArrayList<Page>(dirtypages.values());
+    }
+
+    /**
+     * Returns an iterator over the tuples whose key satisfies the predicate.
+     * An EQUALS predicate reads only the bucket of its key; other predicates
+     * read every bucket, as a hash index keeps no order.
+     *
+     * @param tid the transaction id
+     * @param ipred the index predicate value to filter on
+     * @return an iterator for the filtered tuples
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        return new HashFileIterator(this, tid, ipred);
+    }
+
+    /**
+     * Returns an iterator over all tuples in this file, bucket by bucket.
+     *
+     * @param tid the transaction id
+     * @return an iterator for all the tuples in this file
+     */
+    public DbFileIterator iterator(TransactionId tid) {
+        return new HashFileIterator(this, tid, null);
+    }
+
+    /**
+     * Helper class that iterates through the tuples of the buckets of a
+     * HashFile, following each bucket's chain of overflow pages.
+     */
+    private static class HashFileIterator extends AbstractDbFileIterator {
+
+        private final HashFile f;
+        private final TransactionId tid;
+        private final IndexPredicate ipred;
+
+        private HashHeaderPage header;
+        /** The next directory entry whose bucket to read, when reading them all. */
+        private int nextEntry;
+        private HashSet<HashPageId> visited;
+        private HashBucketPage curp;
+        private Iterator<Tuple> it;
+
+        /**
+         * @param ipred the predicate tuples must satisfy, or null for all
+         */
+        HashFileIterator(HashFile f, TransactionId tid, IndexPredicate ipred) {
+            this.f = f;
+            this.tid = tid;
+            this.ipred = ipred;
+        }
+
+        public void open() throws DbException, TransactionAbortedException {
+            HashMap<PageId, Page> pages = new HashMap<PageId, Page>();
+            header = f.getHeaderPage(tid, pages, Permissions.READ_ONLY);
+            visited = new HashSet<HashPageId>();
+            if (ipred != null && ipred.getOp() == Predicate.Op.EQUALS) {
+                setPage(f.findBucket(tid, pages, header, hash(ipred.getField())));
+                nextEntry = Integer.MAX_VALUE;
+            } else {
+                nextEntry = 0;
+            }
+        }
+
+        private void setPage(HashPageId pid) throws DbException, TransactionAbortedException {
+            curp = (HashBucketPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+            it = curp.iterator();
+        }
+
+        /**
+         * Moves on to the next page of the current bucket, or to the next
+         * bucket not read yet.
+         *
+         * @return false if there are no pages left
+         */
+        private boolean nextPage() throws DbException, TransactionAbortedException {
+            if (curp != null && curp.getOverflowId() != null) {
+                setPage(curp.getOverflowId());
+                return true;
+            }
+            int entries = 1 << header.getGlobalDepth();
+            HashMap<PageId, Page> pages = new HashMap<PageId, Page>();
+            while (nextEntry < entries) {
+                HashPageId bucket = f.getBucketId(tid, pages, header, nextEntry++);
+                if (visited.add(bucket)) {
+                    setPage(bucket);
+                    return true;
+                }
+            }
+            curp = null;
+            it = null;
+            return false;
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (header == null) {
+                return null;
+            }
+            while (true) {
+                while (it != null && it.hasNext()) {
+                    Tuple t = it.next();
+                    if (ipred == null || t.getField(f.keyField()).compare(ipred.getOp(), ipred.getField())) {
+                        return t;
+                    }
+                }
+                if (!nextPage()) {
+                    return null;
+                }
+            }
+        }
+
+        public void rewind() throws DbException, TransactionAbortedException {
+            close();
+            open();
+        }
+
+        public void close() {
+            super.close();
+            header = null;
+            curp = null;
+            it = null;
+        }
+    }
+}
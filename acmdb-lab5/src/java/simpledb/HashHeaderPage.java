@@ -0,0 +1,114 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HashHeaderPage is the first page of a {@link HashFile}. It holds the global
+ * depth d of the file, i.e. the number of low bits of a key's hash that
+ * select its entry in the directory of 2^d entries, and the page numbers of
+ * the directory pages that hold those entries, in order.
+ * <p>
+ * The page starts with the global depth and the number of directory pages,
+ * four bytes each, followed by the directory page numbers, four bytes each.
+ */
+public class HashHeaderPage extends HashPage {
+
+    private static final int INDEX_SIZE = Type.INT_TYPE.getLen();
+
+    private int globalDepth;
+    private int[] directoryPages;
+
+    /**
+     * Create a HashHeaderPage from a set of bytes of data read from disk.
+     *
+     * @see #HashHeaderPage
+     * @param id the id of this page
+     * @param data the raw data of this page
+     */
+    public HashHeaderPage(HashPageId id, byte[] data) {
+        super(id);
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        globalDepth = buf.getInt();
+        directoryPages = new int[buf.getInt()];
+        for (int i = 0; i < directoryPages.length; i++) {
+            directoryPages[i] = buf.getInt();
+        }
+        setBeforeImage();
+    }
+
+    /** @return the largest number of directory pages a header page can list */
+    public static int getMaxDirectoryPages() {
+        return (BufferPool.getPageSize() - 2 * INDEX_SIZE) / INDEX_SIZE;
+    }
+
+    /**
+     * @return the largest global depth whose directory fits on the directory
+     *   pages a header page can list
+     */
+    public static int getMaxGlobalDepth() {
+        long entries = (long) getMaxDirectoryPages() * HashDirectoryPage.getNumEntries();
+        int depth = 0;
+        while ((2L << depth) <= entries) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /** @return the number of low bits of a hash that select its directory entry */
+    public int getGlobalDepth() {
+        return globalDepth;
+    }
+
+    public void setGlobalDepth(int depth) throws DbException {
+        if (depth < 0 || depth > getMaxGlobalDepth()) {
+            throw new DbException("global depth " + depth + " out of range");
+        }
+        globalDepth = depth;
+    }
+
+    /** @return the number of directory pages of the file */
+    public int getNumDirectoryPages() {
+        return directoryPages.length;
+    }
+
+    /**
+     * @return the id of the directory page holding directory entries
+     *   i * {@link HashDirectoryPage#getNumEntries()} and up
+     */
+    public HashPageId getDirectoryPageId(int i) {
+        return new HashPageId(pid.getTableId(), directoryPages[i], HashPageId.DIRECTORY);
+    }
+
+    /**
+     * Adds a directory page after the last one.
+     *
+     * @throws DbException if there is no room for another directory page
+     */
+    public void addDirectoryPage(HashPageId id) throws DbException {
+        if (directoryPages.length == getMaxDirectoryPages()) {
+            throw new DbException("no room for another directory page");
+        }
+        if (id.pgcateg() != HashPageId.DIRECTORY || id.getTableId() != pid.getTableId()) {
+            throw new DbException("not a directory page of this table: " + id);
+        }
+        directoryPages = java.util.Arrays.copyOf(directoryPages, directoryPages.length + 1);
+        directoryPages[directoryPages.length - 1] = id.pageNumber();
+    }
+
+    public void writePageData(ByteBuffer buf) {
+        buf.putInt(globalDepth);
+        buf.putInt(directoryPages.length);
+        for (int pageNo : directoryPages) {
+            buf.putInt(pageNo);
+        }
+        BTreePage.putZeros(buf, BufferPool.getPageSize() - (2 + directoryPages.length) * INDEX_SIZE);
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public HashHeaderPage getBeforeImage() {
+        synchronized (oldDataLock) {
+            return new HashHeaderPage(pid, oldData);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb;
+
+import java.nio.ByteBuffer;
+
+/**
+ * HashPage holds what the pages of a {@link HashFile} have in common: their
+ * id, whether they are dirty, and a before image taken from
+ * {@link #getPageData()}.
+ *
+ * @see HashHeaderPage
+ * @see HashDirectoryPage
+ * @see HashBucketPage
+ */
+public abstract class HashPage implements Page {
+
+    protected final HashPageId pid;
+    protected volatile TransactionId dirtier;
+
+    protected byte[] oldData;
+    protected final Object oldDataLock = new Object();
+
+    protected HashPage(HashPageId id) {
+        this.pid = id;
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HashPageId getId() {
+        return pid;
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * HashPage of any kind: a header page with a global depth of 0 and no
+     * directory pages, a directory page all of whose entries are 0, or a
+     * bucket page with a local depth of 0, no overflow page and no tuples.
+     *
+     * @return The returned ByteArray.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page, which
+     * can be passed to the constructor of its class to produce an identical
+     * page.
+     */
+    public byte[] getPageData() {
+        byte[] data = new byte[BufferPool.getPageSize()];
+        writePageData(ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /**
+     * Writes the bytes of {@link #getPageData()} into buf at its position,
+     * advancing it by one page.
+     */
+    public abstract void writePageData(ByteBuffer buf);
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = getPageData();
+        }
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+}
@@ -1,10 +1,10 @@
 package simpledb;
 
 import java.io.*;
-import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.*;
-import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * HeapFile is an implementation of a DbFile that stores a collection of tuples
@@ -12,15 +12,44 @@ import java.nio.channels.FileChannel;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * A HeapFile can be opened in memory-mapped mode, meant for read-mostly
+ * tables: pages are then decoded directly from a mapping of the file instead
+ * of being copied into a fresh array first. Writes go through the same file
+ * channel either way.
+ * <p>
+ * Inserts find a page with room through a {@link FreeSpaceMap}, which is
+ * loaded the first time the table is modified. Bulk inserts fill the pages
+ * one after the other and extend the file by several pages at a time.
+ * <p>
+ * A table with INT columns keeps a {@link ZoneMap} of the range of values of
+ * each INT column on every page, which lets a scan with predicates leave out
+ * pages that cannot hold a match; see
+ * {@link #iterator(TransactionId, int[], Predicate[])}.
+ * <p>
+ * Both maps are kept in side files next to the data file, written by
+ * {@link #syncSideFiles} rather than with every page; see {@link SideFile}.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
  */
 public class HeapFile implements DbFile {
 
+    /** Largest number of empty pages a bulk insert appends at once. */
+    private static final int MAX_EXTENT_PAGES = 16;
+
     private final File file;
+    private final PageChannel channel;
     private final TupleDesc tupleDesc;
     private final int tableId;
+    private final boolean memoryMapped;
+    private volatile FreeSpaceMap freeSpace;
+    private volatile ZoneMap zones;
+    /**
+     * Shared by writes to the data file, exclusive while the side files are
+     * synced, so that their stamp covers every page write they record.
+     */
+    private final ReadWriteLock sideFileLock = new ReentrantReadWriteLock();
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -30,10 +59,25 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this heap
+     *            file.
+     * @param memoryMapped
+     *            whether pages are read through a memory mapping of the file
+     */
+    public HeapFile(File f, TupleDesc td, boolean memoryMapped) {
         // some code goes here
         file = f;
+        channel = new PageChannel(f);
         tupleDesc = td;
         tableId = file.getAbsoluteFile().hashCode();
+        this.memoryMapped = memoryMapped;
     }
 
     /**
@@ -70,22 +114,67 @@ public class HeapFile implements DbFile {
         return tupleDesc;
     }
 
+    /** @return the side file of the free space map of a data file */
+    private static File freeSpaceFile(File f) {
+        return new File(f.getPath() + ".fsm");
+    }
+
+    /** @return the side file of the zone map of a data file */
+    private static File zoneFile(File f) {
+        return new File(f.getPath() + ".zm");
+    }
+
+    /**
+     * Requests that a data file and the side files of the heap file stored in
+     * it be deleted when the virtual machine terminates, as
+     * {@link File#deleteOnExit} does for one file; for temporary tables.
+     */
+    public static void deleteOnExit(File f) {
+        f.deleteOnExit();
+        freeSpaceFile(f).deleteOnExit();
+        zoneFile(f).deleteOnExit();
+    }
+
+    /**
+     * @return true if pages of this file are read through a memory mapping
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     // see DbFile.java for javadocs
     public Page readPage(PageId pid) {
         // some code goes here
         int pageNum = pid.pageNumber();
         int pageSize = BufferPool.getPageSize();
 
-        int offset = pageNum * pageSize;
-        byte[] data = new byte[pageSize];
+        long offset = (long) pageNum * pageSize;
+        HeapPageId pageId = new HeapPageId(pid.getTableId(), pageNum);
 
         try {
-            FileInputStream pageFile = new FileInputStream(file);
-            pageFile.skip(offset);
-            pageFile.read(data);
-            pageFile.close();
-            HeapPageId pageId = new HeapPageId(pid.getTableId(), pageNum);
-            return new HeapPage(pageId, data);
+            HeapPage page = null;
+            if (memoryMapped) {
+                ByteBuffer view = channel.map(offset, pageSize);
+                if (view != null) {
+                    page = new HeapPage(pageId, view);
+                }
+            }
+            if (page == null) {
+                // a page past the end of the file reads as an empty page
+                byte[] data = new byte[pageSize];
+                channel.read(data, offset);
+                page = new HeapPage(pageId, data);
+            }
+            FreeSpaceMap fsm = freeSpace;
+            if (fsm != null) {
+                // the map may be stale for a page whose changes were discarded
+                fsm.update(pageNum, page.getNumEmptySlots());
+            }
+            ZoneMap zm = zoneMap();
+            if (zm != null) {
+                zm.fill(pageNum, page);
+            }
+            return page;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -98,18 +187,143 @@ public class HeapFile implements DbFile {
         PageId pageId = page.getId();
         int pageNum = pageId.pageNumber();
         int pageSize = BufferPool.getPageSize();
-        int offset = pageNum * pageSize;
+        long offset = (long) pageNum * pageSize;
 
-        byte[] data = page.getPageData();
+        FreeSpaceMap fsm = freeSpaceMap();
+        ZoneMap zm = zoneMap();
+        sideFileLock.readLock().lock();
+        try {
+            markSideFilesDirty(fsm, zm);
+            channel.write(page, offset);
+            fsm.persist(pageNum, ((HeapPage) page).getNumEmptySlots());
+            if (zm != null) {
+                zm.persist(pageNum, (HeapPage) page);
+            }
+        } finally {
+            sideFileLock.readLock().unlock();
+        }
+    }
 
+    /**
+     * Marks the side files as not clean before a write to the data file, so
+     * they are not trusted if the process stops before the next sync. The
+     * caller holds the read lock of sideFileLock.
+     */
+    private static void markSideFilesDirty(FreeSpaceMap fsm, ZoneMap zm) throws IOException {
+        fsm.markDirty();
+        if (zm != null) {
+            zm.markDirty();
+        }
+    }
+
+    /**
+     * Writes the free space counts and zones of the pages written since the
+     * last call to the side files, stamped with the data file as it is now.
+     * Called after pages of the file have been flushed.
+     */
+    public void syncSideFiles() throws IOException {
+        sideFileLock.writeLock().lock();
         try {
-            FileOutputStream pageFile = new FileOutputStream(file);
-            FileChannel fileChannel = pageFile.getChannel();
-            fileChannel.position(offset);
-            fileChannel.write(ByteBuffer.wrap(data));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            FreeSpaceMap fsm = freeSpace;
+            if (fsm != null) {
+                fsm.sync(file);
+            }
+            ZoneMap zm = zones;
+            if (zm != null) {
+                zm.sync(file, numPages());
+            }
+        } finally {
+            sideFileLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the side files of this heap file, e.g. once its data file is
+     * gone. They are created again if the file is written to.
+     */
+    public synchronized void deleteSideFiles() throws IOException {
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm != null) {
+            fsm.delete();
+            freeSpace = null;
+        }
+        ZoneMap zm = zones;
+        if (zm != null) {
+            zm.delete();
+            zones = null;
+        }
+        freeSpaceFile(file).delete();
+        zoneFile(file).delete();
+    }
+
+    /**
+     * Returns the free space map of this file, loading it on first use from
+     * its side file and, for pages the side file does not cover, from the
+     * page headers on disk.
+     */
+    private FreeSpaceMap freeSpaceMap() throws IOException {
+        FreeSpaceMap fsm = freeSpace;
+        if (fsm == null) {
+            synchronized (this) {
+                fsm = freeSpace;
+                if (fsm == null) {
+                    fsm = new FreeSpaceMap(freeSpaceFile(file));
+                    int numPages = numPages();
+                    for (int pageNum = fsm.load(file, numPages); pageNum < numPages; pageNum++) {
+                        fsm.persist(pageNum, readNumEmptySlots(pageNum));
+                    }
+                    freeSpace = fsm;
+                }
+            }
+        }
+        return fsm;
+    }
+
+    /**
+     * Returns the zone map of this file, loading it on first use from its
+     * side file, or null if the table has no INT columns.
+     */
+    private ZoneMap zoneMap() throws IOException {
+        ZoneMap zm = zones;
+        if (zm == null && ZoneMap.intColumns(tupleDesc).length > 0) {
+            synchronized (this) {
+                zm = zones;
+                if (zm == null) {
+                    zm = new ZoneMap(zoneFile(file), tupleDesc);
+                    zm.load(file, numPages());
+                    zones = zm;
+                }
+            }
         }
+        return zm;
+    }
+
+    /** @return the number of empty slots of an empty page */
+    private int slotsPerPage() {
+        return HeapPage.slotsPerPage(tupleDesc);
+    }
+
+    /**
+     * Reads just the header of a page from disk and counts its empty slots.
+     * The free space of a slotted page depends on its slot directory and
+     * tuples, so the whole page is read.
+     */
+    private int readNumEmptySlots(int pageNum) throws IOException {
+        if (!tupleDesc.isFixedLength()) {
+            byte[] image = new byte[BufferPool.getPageSize()];
+            channel.read(image, (long) pageNum * BufferPool.getPageSize());
+            return new HeapPage(new HeapPageId(tableId, pageNum), image).getNumEmptySlots();
+        }
+        int numSlots = slotsPerPage();
+        byte[] header = new byte[(numSlots + 7) / 8];
+        channel.read(header, (long) pageNum * BufferPool.getPageSize());
+        int empty = 0;
+        for (int i = 0; i < numSlots; i++) {
+            if (((header[i / 8] >> (i % 8)) & 1) == 0) {
+                empty++;
+            }
+        }
+        return empty;
     }
 
     /**
@@ -126,24 +340,95 @@ public class HeapFile implements DbFile {
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
-        int numPages = (int) file.length() / BufferPool.getPageSize();
+        return insertTuples(tid, Collections.singletonList(t).iterator());
+    }
+
+    /**
+     * Inserts the tuples one page at a time: each page with room, found
+     * through the free space map, is locked, marked dirty and filled before
+     * the next is looked for. When no page has room, empty pages are appended
+     * with a single write; the first append of a call adds one page and each
+     * further one twice as many, up to {@link #MAX_EXTENT_PAGES}.
+     *
+     * @see DbFile#insertTuples
+     */
+    public ArrayList<Page> insertTuples(TransactionId tid, Iterator<Tuple> tuples)
+            throws DbException, IOException, TransactionAbortedException {
+        FreeSpaceMap fsm = freeSpaceMap();
+        ZoneMap zm = zoneMap();
         ArrayList<Page> dirtyPages = new ArrayList<>();
-        for (int pageNum = 0; pageNum < numPages; ++pageNum) {
+        int extent = 1;
+        while (tuples.hasNext()) {
+            HeapPage page = findPageWithRoom(tid, fsm);
+            if (page == null) {
+                page = appendPages(tid, fsm, extent);
+                extent = Math.min(extent * 2, MAX_EXTENT_PAGES);
+            }
+            // dirty before it is modified: fetching the next page may evict clean ones
+            page.markDirty(true, tid);
+            for (int room = page.getNumEmptySlots(); room > 0 && tuples.hasNext(); ) {
+                Tuple t = tuples.next();
+                page.insertTuple(t);
+                if (zm != null) {
+                    zm.widen(page.getId().pageNumber(), t);
+                }
+                if (--room == 0) {
+                    // short tuples leave room on a slotted page
+                    room = page.getNumEmptySlots();
+                }
+            }
+            fsm.update(page.getId().pageNumber(), page.getNumEmptySlots());
+            dirtyPages.add(page);
+        }
+        return dirtyPages;
+    }
+
+    /**
+     * Returns a page the free space map says has room, locked for writing,
+     * or null if there is none.
+     */
+    private HeapPage findPageWithRoom(TransactionId tid, FreeSpaceMap fsm)
+            throws DbException, TransactionAbortedException {
+        for (int pageNum = fsm.findPage(); pageNum >= 0; pageNum = fsm.findPage()) {
             HeapPageId pageId = new HeapPageId(tableId, pageNum);
             HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
             if (page.getNumEmptySlots() != 0) {
-                page.insertTuple(t);
-                dirtyPages.add(page);
-                return dirtyPages;
+                return page;
             }
+            // the map was out of date
+            fsm.update(pageNum, 0);
         }
-        // No empty file, create a new page and write it to disk
-        HeapPageId newPageId = new HeapPageId(tableId, numPages);
-        HeapPage newPage = new HeapPage(newPageId, HeapPage.createEmptyPageData());
-        newPage.insertTuple(t);
-        writePage(newPage);
-        dirtyPages.add(newPage);
-        return dirtyPages;
+        return null;
+    }
+
+    /**
+     * Appends count empty pages to the file with one write and returns the
+     * first of them, locked for writing. The others are left to the free
+     * space map.
+     */
+    private HeapPage appendPages(TransactionId tid, FreeSpaceMap fsm, int count)
+            throws DbException, IOException, TransactionAbortedException {
+        int pageSize = BufferPool.getPageSize();
+        HeapPageId first;
+        synchronized (this) {
+            ZoneMap zm = zoneMap();
+            sideFileLock.readLock().lock();
+            try {
+                int pageNum = numPages();
+                markSideFilesDirty(fsm, zm);
+                channel.write(new byte[count * pageSize], (long) pageNum * pageSize);
+                for (int i = 0; i < count; i++) {
+                    fsm.persist(pageNum + i, slotsPerPage());
+                    if (zm != null) {
+                        zm.persistEmpty(pageNum + i);
+                    }
+                }
+                first = new HeapPageId(tableId, pageNum);
+            } finally {
+                sideFileLock.readLock().unlock();
+            }
+        }
+        return (HeapPage) Database.getBufferPool().getPage(tid, first, Permissions.READ_WRITE);
     }
 
     // see DbFile.java for javadocs
@@ -156,6 +441,11 @@ public class HeapFile implements DbFile {
         ArrayList<Page> dirtyPages = new ArrayList<>();
         HeapPage dirtyPage = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
         dirtyPage.deleteTuple(t);
+        try {
+            freeSpaceMap().update(pageId.pageNumber(), dirtyPage.getNumEmptySlots());
+        } catch (IOException e) {
+            throw new DbException("could not load free space map: " + e.getMessage());
+        }
         dirtyPages.add(dirtyPage);
         return dirtyPages;
     }
@@ -166,5 +456,28 @@ public class HeapFile implements DbFile {
         int numPages = (int) file.length() / BufferPool.getPageSize();
         return new HeapFileIterator(tableId, numPages, tid);
     }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid, int[] columns) {
+        return iterator(tid, columns, new Predicate[0]);
+    }
+
+    /**
+     * Returns an iterator that leaves out the pages whose zones show that none
+     * of their tuples can satisfy all the predicates on INT columns.
+     *
+     * @see DbFile#iterator(TransactionId, int[], Predicate[])
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] columns, Predicate[] predicates) {
+        ZoneMap zm = null;
+        if (predicates.length > 0) {
+            try {
+                zm = zoneMap();
+            } catch (IOException e) {
+                // scan every page
+            }
+        }
+        return new HeapFileIterator(tableId, numPages(), tid, columns, zm, predicates);
+    }
 }
 
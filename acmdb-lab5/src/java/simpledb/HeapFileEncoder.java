@@ -68,15 +68,16 @@ public class HeapFileEncoder {
 
    /** Convert the specified input text file into a binary
     * page file. <br>
-    * Assume format of the input file is (note that only integer fields are
-    * supported):<br>
+    * Assume format of the input file is (shown for integer fields; each
+    * field is of the corresponding type in typeAr):<br>
     * int,...,int\n<br>
     * int,...,int\n<br>
     * ...<br>
     * where each row represents a tuple.<br>
     * <p>
     * The format of the output file will be as specified in HeapPage and
-    * HeapFile.
+    * HeapFile: fixed slots, or the slotted layout if any of the types is of
+    * variable length.
     *
     * @see HeapPage
     * @see HeapFile
@@ -90,6 +91,12 @@ public class HeapFileEncoder {
   public static void convert(File inFile, File outFile, int npagebytes,
                  int numFields, Type[] typeAr, char fieldSeparator)
       throws IOException {
+      for (int i = 0; i < numFields; i++) {
+          if (!typeAr[i].isFixedLength()) {
+              convertSlotted(inFile, outFile, npagebytes, numFields, typeAr, fieldSeparator);
+              return;
+          }
+      }
 
       int nrecbytes = 0;
       for (int i = 0; i < numFields ; i++) {
@@ -145,6 +152,20 @@ public class HeapFileEncoder {
                     System.out.println ("BAD LINE : " + s);
                 }
             }
+            else if (typeAr[fieldNo] == Type.LONG_TYPE) {
+                try {
+                    pageStream.writeLong(Long.parseLong(s.trim()));
+                } catch (NumberFormatException e) {
+                    System.out.println ("BAD LINE : " + s);
+                }
+            }
+            else if (typeAr[fieldNo] == Type.DOUBLE_TYPE) {
+                try {
+                    pageStream.writeDouble(Double.parseDouble(s.trim()));
+                } catch (NumberFormatException e) {
+                    System.out.println ("BAD LINE : " + s);
+                }
+            }
             else   if (typeAr[fieldNo] == Type.STRING_TYPE) {
                 s = s.trim();
                 int overflow = Type.STRING_LEN - s.length();
@@ -223,4 +244,98 @@ public class HeapFileEncoder {
     br.close();
     os.close();
   }
+
+  /**
+   * Like {@link #convert(File, File, int, int, Type[], char)}, for types of
+   * variable length: packs as many tuples into each page as fit in the
+   * slotted layout of HeapPage, a two-byte slot count and tuple data offset,
+   * then an offset and length per slot, with tuples packed from the end of
+   * the page.
+   */
+  private static void convertSlotted(File inFile, File outFile, int npagebytes,
+                 int numFields, Type[] typeAr, char fieldSeparator)
+      throws IOException {
+    BufferedReader br = new BufferedReader(new FileReader(inFile));
+    FileOutputStream os = new FileOutputStream(outFile);
+    ArrayList<byte[]> records = new ArrayList<byte[]>();
+    int recordbytes = 0;
+    int npages = 0;
+
+    String line;
+    while ((line = br.readLine()) != null) {
+        if (line.isEmpty())
+            continue;
+        String[] values = line.split(java.util.regex.Pattern.quote(String.valueOf(fieldSeparator)), -1);
+        ByteArrayOutputStream recordBAOS = new ByteArrayOutputStream();
+        DataOutputStream recordStream = new DataOutputStream(recordBAOS);
+        for (int fieldNo = 0; fieldNo < numFields; fieldNo++) {
+            String s = fieldNo < values.length ? values[fieldNo].trim() : "";
+            if (typeAr[fieldNo] == Type.INT_TYPE) {
+                int v = 0;
+                try {
+                    v = Integer.parseInt(s);
+                } catch (NumberFormatException e) {
+                    System.out.println ("BAD LINE : " + s);
+                }
+                new IntField(v).serialize(recordStream);
+            } else if (typeAr[fieldNo] == Type.LONG_TYPE) {
+                long v = 0;
+                try {
+                    v = Long.parseLong(s);
+                } catch (NumberFormatException e) {
+                    System.out.println ("BAD LINE : " + s);
+                }
+                new LongField(v).serialize(recordStream);
+            } else if (typeAr[fieldNo] == Type.DOUBLE_TYPE) {
+                double v = 0;
+                try {
+                    v = Double.parseDouble(s);
+                } catch (NumberFormatException e) {
+                    System.out.println ("BAD LINE : " + s);
+                }
+                new DoubleField(v).serialize(recordStream);
+            } else if (typeAr[fieldNo] == Type.VARCHAR_TYPE) {
+                new VarcharField(s, Type.STRING_LEN).serialize(recordStream);
+            } else {
+                new StringField(s, Type.STRING_LEN).serialize(recordStream);
+            }
+        }
+        byte[] record = recordBAOS.toByteArray();
+        if (4 + 4 * (records.size() + 1) + recordbytes + record.length > npagebytes) {
+            os.write(slottedPage(records, npagebytes));
+            npages++;
+            records.clear();
+            recordbytes = 0;
+        }
+        records.add(record);
+        recordbytes += record.length;
+    }
+    // if this file is empty, do flush an empty page to disk
+    if (!records.isEmpty() || npages == 0)
+        os.write(slottedPage(records, npagebytes));
+    br.close();
+    os.close();
+  }
+
+  /** Lays out the records on a page in the slotted layout of HeapPage. */
+  private static byte[] slottedPage(ArrayList<byte[]> records, int npagebytes) {
+    byte[] page = new byte[npagebytes];
+    int end = npagebytes;
+    for (int i = 0; i < records.size(); i++) {
+        byte[] record = records.get(i);
+        end -= record.length;
+        System.arraycopy(record, 0, page, end, record.length);
+        putShort(page, 4 + 4 * i, end);
+        putShort(page, 4 + 4 * i + 2, record.length);
+    }
+    putShort(page, 0, records.size());
+    // the end of the page is stored as 0, as on an empty page
+    putShort(page, 2, end == npagebytes ? 0 : end);
+    return page;
+  }
+
+  private static void putShort(byte[] page, int offset, int value) {
+    page[offset] = (byte) (value >> 8);
+    page[offset + 1] = (byte) value;
+  }
 }
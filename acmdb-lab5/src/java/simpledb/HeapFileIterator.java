@@ -6,23 +6,47 @@ public class HeapFileIterator extends AbstractDbFileIterator {
     private final int tableId;
     private final int numPages;
     private final TransactionId tid;
+    private final int[] columns;
+    private final TupleDesc projected;
+    private final ZoneMap zones;
+    private final Predicate[] predicates;
     private int pageNum;
     private boolean isOpen;
     private Iterator<Tuple> it;
+    private ReadAhead.Stream readAhead;
+    private BufferRing ring;
+    private int pagesSkipped;
 
     public HeapFileIterator(int tableId, int numPages, TransactionId tid) {
+        this(tableId, numPages, tid, null, null, new Predicate[0]);
+    }
+
+    /**
+     * @param columns indexes of the columns to return, or null for all
+     * @param zones the zone map of the file, or null to read every page
+     * @param predicates predicates over the columns of the table; pages
+     *   whose zones show that none of their tuples can satisfy all of them
+     *   are left out
+     */
+    HeapFileIterator(int tableId, int numPages, TransactionId tid, int[] columns,
+            ZoneMap zones, Predicate[] predicates) {
         this.tableId = tableId;
         this.numPages = numPages;
         this.tid = tid;
+        this.columns = columns;
+        this.projected = columns == null ? null
+                : Database.getCatalog().getTupleDesc(tableId).project(columns);
+        this.zones = zones;
+        this.predicates = predicates;
         isOpen = false;
     }
 
     public void open() throws TransactionAbortedException, DbException {
-        pageNum = 0;
+        pageNum = -1;
         isOpen = true;
-        HeapPageId pageId = new HeapPageId(tableId, pageNum);
-        HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
-        it = heapPage.iterator();
+        ring = Database.getBufferPool().newScanRing(numPages);
+        readAhead = Database.getBufferPool().getReadAhead().newStream(ring);
+        it = null;
     }
 
     public void close() {
@@ -34,32 +58,43 @@ public class HeapFileIterator extends AbstractDbFileIterator {
         open();
     }
 
-    public Tuple readNext() {
+    /**
+     * @return the number of pages left out because their zones showed they
+     *   hold no match, over all passes since the iterator was created
+     */
+    public int getPagesSkipped() {
+        return pagesSkipped;
+    }
+
+    public Tuple readNext() throws TransactionAbortedException, DbException {
         if (!isOpen) {
             return null;
         }
-        else if (it.hasNext()) {
-            return it.next();
-        }
-        else if (pageNum < numPages - 1) {
-            try {
-                while (pageNum <= numPages - 1) {
-                    pageNum++;
-                    HeapPageId pageId = new HeapPageId(tableId, pageNum);
-                    HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_WRITE);
-                    it = heapPage.iterator();
-                    if (it.hasNext()) { // Due to deletion of tuples, this page may be empty
-                        return it.next();
-                    }
-                }
+        // Due to deletion of tuples, or to pages left out, pages may yield no tuple
+        while (it == null || !it.hasNext()) {
+            if (pageNum >= numPages - 1) {
                 return null;
             }
-            catch (TransactionAbortedException | DbException e) {
-                throw new RuntimeException(e);
+            pageNum++;
+            if (zones != null && !zones.mayMatch(pageNum, predicates)) {
+                pagesSkipped++;
+                it = null;
+                continue;
             }
+            readAhead.heapPageRead(tableId, pageNum, numPages);
+            HeapPageId pageId = new HeapPageId(tableId, pageNum);
+            HeapPage heapPage = (HeapPage) Database.getBufferPool().getPage(tid, pageId, Permissions.READ_ONLY, ring);
+            it = heapPage.iterator();
         }
-        else {
-            return null;
+        Tuple t = it.next();
+        if (columns == null) {
+            return t;
+        }
+        Tuple result = new Tuple(projected);
+        for (int i = 0; i < columns.length; i++) {
+            result.setField(i, t.getField(columns[i]));
         }
+        result.setRecordId(t.getRecordId());
+        return result;
     }
 }
@@ -1,12 +1,27 @@
 package simpledb;
 
-import java.lang.reflect.Array;
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 /**
  * Each instance of HeapPage stores data for one page of HeapFiles and 
  * implements the Page interface that is used by BufferPool.
+ * <p>
+ * The page keeps its raw image rather than decoded tuples: the header and
+ * the slots are read in place, and the tuples handed out by
+ * {@link #iterator()} decode each field from the image the first time it is
+ * asked for. An image is never modified once it is shared, with the
+ * before-image or with tuples and iterators handed out; the first
+ * modification after that copies it. Recording the before-image is therefore
+ * free, and the copy is only made when a page is actually modified.
+ * <p>
+ * Tables whose tuples are all of one size use fixed slots behind a bitmap
+ * header. Tables with variable-length fields (see {@link Type#isFixedLength()})
+ * use a slotted layout instead: a slot directory at the start of the page
+ * gives the offset and length of each tuple, and the tuples are packed
+ * from the end of the page towards it. A tuple keeps its slot, and so its
+ * {@link RecordId}, while the page is compacted around it.
  *
  * @see HeapFile
  * @see BufferPool
@@ -14,14 +29,34 @@ import java.io.*;
  */
 public class HeapPage implements Page {
 
+    /** Slotted layout: bytes of the page header, the slot count and the start of the tuple data. */
+    private static final int SLOTTED_HEADER_SIZE = 4;
+    /** Slotted layout: bytes of a slot directory entry, the tuple's offset and length. */
+    private static final int SLOT_ENTRY_SIZE = 4;
+
     final HeapPageId pid;
     final TupleDesc td;
-    final byte[] header;
-    final Tuple[] tuples;
     final int numSlots;
+    /** Whether the page uses the slotted layout, for tuples of variable length. */
+    private final boolean slotted;
+    private final int headerSize;
+    private final int tupleSize;
+    /** Offset of each field within a tuple, up to the first variable-length field. */
+    private final int[] fieldOffsets;
+    /** The first field whose offset varies from tuple to tuple, or the number of fields. */
+    private final int firstVariableField;
+
+    /** The page image: the header bytes, then the slots. */
+    private byte[] data;
+    /** Whether data may be referenced elsewhere and must be copied before it is modified. */
+    private boolean shared;
+    /** All slots below this one are in use. */
+    private int freeHint;
+    /** Slotted layout: the total length of the tuples on the page. */
+    private int tupleBytes;
 
     byte[] oldData;
-    private final Byte oldDataLock=new Byte((byte)0);
+    private final Object oldDataLock = new Object();
 
     boolean isDirty;
     TransactionId dirtyingTid;
@@ -38,39 +73,86 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * The slotted layout of a table with variable-length fields starts with
+     * the number of slots and the offset of the tuple data, two bytes each,
+     * followed by a four-byte entry per slot: the offset and the length of
+     * its tuple, or zeros for an empty slot. An all-zero page is empty in
+     * either layout.
+     * <p>
+     * The array is not copied, and the page never modifies it.
+     *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(data.length == BufferPool.getPageSize() ? data : copyPage(ByteBuffer.wrap(data)), id);
+    }
+
+    /**
+     * Create a HeapPage from a view of the page's bytes, e.g. a slice of a
+     * memory-mapped file. The page copies the bytes and keeps no reference to
+     * the buffer, so the buffer may be reused or unmapped afterwards.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) {
+        this(copyPage(data), id);
+    }
+
+    /**
+     * Creates a page over an image of exactly one page. The image is not
+     * copied: it becomes the before-image, and is never modified.
+     */
+    private HeapPage(byte[] image, HeapPageId id) {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.slotted = !td.isFixedLength();
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-        
-        tuples = new Tuple[numSlots];
-        try{
-            // allocate and read the actual records of this page
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
+        this.headerSize = slotted ? SLOTTED_HEADER_SIZE : getHeaderSize();
+        this.tupleSize = td.getSize();
+        this.fieldOffsets = new int[td.numFields()];
+        int firstVariable = 0;
+        while (firstVariable < fieldOffsets.length && td.getFieldType(firstVariable).isFixedLength()) {
+            firstVariable++;
+        }
+        this.firstVariableField = firstVariable;
+        for (int j = 1; j < fieldOffsets.length; j++) {
+            fieldOffsets[j] = fieldOffsets[j - 1] + td.getFieldType(j - 1).getLen();
+        }
+        this.data = image;
+        if (slotted) {
+            for (int i = 0; i < slotCount(image); i++) {
+                tupleBytes += readShort(image, slotEntry(i) + 2);
+            }
         }
-        dis.close();
-
         setBeforeImage();
     }
 
+    /** Copies a page's worth of bytes from the buffer, padding a short one with zeros. */
+    private static byte[] copyPage(ByteBuffer src) {
+        byte[] image = new byte[BufferPool.getPageSize()];
+        ByteBuffer buf = src.duplicate();
+        buf.get(image, 0, Math.min(image.length, buf.remaining()));
+        return image;
+    }
+
     /** Retrieve the number of tuples on this page.
         @return the number of tuples on this page
     */
     private int getNumTuples() {        
         // some code goes here
+        return slotsPerPage(td);
+    }
+
+    /**
+     * @return the number of tuples an empty page of a table with the given
+     *   TupleDesc holds; in the slotted layout, tuples of the largest size
+     */
+    static int slotsPerPage(TupleDesc td) {
+        if (!td.isFixedLength()) {
+            return (BufferPool.getPageSize() - SLOTTED_HEADER_SIZE) / (td.getSize() + SLOT_ENTRY_SIZE);
+        }
         return (BufferPool.getPageSize() * 8) / (td.getSize() * 8 + 1);
     }
 
@@ -104,7 +186,8 @@ public class HeapPage implements Page {
     public void setBeforeImage() {
         synchronized(oldDataLock)
         {
-        oldData = getPageData().clone();
+        oldData = data;
+        shared = true;
         }
     }
 
@@ -117,37 +200,64 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Called before the image is modified: copies it if it is shared, so the
+     * before-image and anything handed out keep their content.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
+    private void beforeWrite() {
+        synchronized(oldDataLock)
+        {
+        if (shared) {
+            data = data.clone();
+            shared = false;
+        }
         }
+    }
 
-        // read fields in the tuple
-        Tuple t = new Tuple(td);
-        RecordId rid = new RecordId(pid, slotId);
-        t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+    /** @return the offset of the tuple in a used slot of the image */
+    private int tupleOffset(byte[] image, int slot) {
+        return slotted ? readShort(image, slotEntry(slot)) : headerSize + slot * tupleSize;
+    }
+
+    /** @return the offset of field i of the tuple at offset start of the image */
+    private int fieldOffset(byte[] image, int start, int i) {
+        if (i <= firstVariableField) {
+            return start + fieldOffsets[i];
+        }
+        int offset = start + fieldOffsets[firstVariableField];
+        for (int j = firstVariableField; j < i; j++) {
+            offset += td.getFieldType(j).getLen(image, offset);
         }
+        return offset;
+    }
+
+    /** @return the number of slots of the image, used or not */
+    private int slotCount(byte[] image) {
+        return slotted ? readShort(image, 0) : numSlots;
+    }
+
+    /** Slotted layout: the offset of a slot's directory entry. */
+    private static int slotEntry(int slot) {
+        return SLOTTED_HEADER_SIZE + slot * SLOT_ENTRY_SIZE;
+    }
 
-        return t;
+    /** Slotted layout: the offset of the first byte of tuple data. */
+    private int dataStart() {
+        int start = readShort(data, 2);
+        // an empty page has no tuple data, and zeros here
+        return start == 0 ? BufferPool.getPageSize() : start;
+    }
+
+    private void setDataStart(int start) {
+        writeShort(2, start == BufferPool.getPageSize() ? 0 : start);
+    }
+
+    private static int readShort(byte[] image, int offset) {
+        return ((image[offset] & 0xff) << 8) | (image[offset + 1] & 0xff);
+    }
+
+    private void writeShort(int offset, int value) {
+        data[offset] = (byte) (value >> 8);
+        data[offset + 1] = (byte) value;
     }
 
     /**
@@ -162,64 +272,15 @@ public class HeapPage implements Page {
      * @return A byte array correspond to the bytes of this page.
      */
     public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (int i=0; i<header.length; i++) {
-            try {
-                dos.writeByte(header[i]);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
-        }
-
-        // create the tuples
-        for (int i=0; i<tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j=0; j<td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-                
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
-        try {
-            dos.write(zeroes, 0, zerolen);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        return data.clone();
+    }
 
-        return baos.toByteArray();
+    /**
+     * Writes the bytes of {@link #getPageData()} into buf at its position,
+     * advancing it by one page.
+     */
+    public void writePageData(ByteBuffer buf) {
+        buf.put(data);
     }
 
     /**
@@ -256,8 +317,41 @@ public class HeapPage implements Page {
             throw new DbException("Slot not used.");
         }
         else {
+            beforeWrite();
+            freeHint = Math.min(freeHint, tupleNum);
+            if (slotted) {
+                deleteSlotted(tupleNum);
+                return;
+            }
             markSlotUsed(tupleNum, false);
+            // empty slots are all zeros on disk
+            int offset = tupleOffset(data, tupleNum);
+            Arrays.fill(data, offset, offset + tupleSize, (byte) 0);
+        }
+    }
+
+    /**
+     * Slotted layout: empties a used slot. The space of the tuple is
+     * reclaimed by the next compaction, unless it is at the start of the
+     * tuple data.
+     */
+    private void deleteSlotted(int slot) {
+        int entry = slotEntry(slot);
+        int offset = readShort(data, entry);
+        int length = readShort(data, entry + 2);
+        Arrays.fill(data, offset, offset + length, (byte) 0);
+        writeShort(entry, 0);
+        writeShort(entry + 2, 0);
+        tupleBytes -= length;
+        if (offset == dataStart()) {
+            setDataStart(offset + length);
+        }
+        // drop empty slots from the end of the directory
+        int count = slotCount(data);
+        while (count > 0 && readShort(data, slotEntry(count - 1)) == 0) {
+            count--;
         }
+        writeShort(0, count);
     }
 
     /**
@@ -273,16 +367,24 @@ public class HeapPage implements Page {
         if (!Database.getCatalog().getTupleDesc(pid.getTableId()).equals(t.getTupleDesc())) {
             throw new DbException("TupleDesc mismatch.");
         }
+        else if (slotted) {
+            insertSlotted(t);
+        }
         else if (getNumEmptySlots() == 0) {
             throw new DbException("Page full.");
         }
         else {
-            // Find an empty slot and insert the tuple into it
-            int tupleNum = 0;
+            // Find an empty slot and write the tuple into it
+            int tupleNum = freeHint;
             while (isSlotUsed(tupleNum)) {
                 tupleNum++;
             }
-            tuples[tupleNum] = t;
+            freeHint = tupleNum + 1;
+            beforeWrite();
+            ByteBuffer slot = ByteBuffer.wrap(data, tupleOffset(data, tupleNum), tupleSize);
+            for (int j = 0; j < td.numFields(); j++) {
+                t.getField(j).serialize(slot);
+            }
             markSlotUsed(tupleNum, true);
 
             // Set the recordId of the tuple
@@ -291,6 +393,64 @@ public class HeapPage implements Page {
         }
     }
 
+    /**
+     * Slotted layout: adds the tuple in the first empty slot, or a new one,
+     * compacting the page first if the free space is fragmented.
+     */
+    private void insertSlotted(Tuple t) throws DbException {
+        int length = td.getSize(t);
+        int count = slotCount(data);
+        int slot = freeHint;
+        while (slot < count && isSlotUsed(data, slot)) {
+            slot++;
+        }
+        int directoryEnd = slotEntry(Math.max(count, slot + 1));
+        if (directoryEnd + tupleBytes + length > BufferPool.getPageSize()) {
+            throw new DbException("Page full.");
+        }
+        beforeWrite();
+        if (dataStart() - directoryEnd < length) {
+            compact();
+        }
+        int offset = dataStart() - length;
+        ByteBuffer buf = ByteBuffer.wrap(data, offset, length);
+        for (int j = 0; j < td.numFields(); j++) {
+            t.getField(j).serialize(buf);
+        }
+        setDataStart(offset);
+        writeShort(slotEntry(slot), offset);
+        writeShort(slotEntry(slot) + 2, length);
+        if (slot == count) {
+            writeShort(0, count + 1);
+        }
+        tupleBytes += length;
+        freeHint = slot + 1;
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Slotted layout: moves the tuples to the end of the page, so all of its
+     * free space lies between the slot directory and the tuple data. Slots
+     * keep their numbers.
+     */
+    private void compact() {
+        byte[] old = data.clone();
+        int count = slotCount(old);
+        int end = BufferPool.getPageSize();
+        Arrays.fill(data, slotEntry(count), end, (byte) 0);
+        for (int i = 0; i < count; i++) {
+            int offset = readShort(old, slotEntry(i));
+            if (offset == 0) {
+                continue;
+            }
+            int length = readShort(old, slotEntry(i) + 2);
+            end -= length;
+            System.arraycopy(old, offset, data, end, length);
+            writeShort(slotEntry(i), end);
+        }
+        setDataStart(end);
+    }
+
     /**
      * Marks this page as dirty/not dirty and record that transaction
      * that did the dirtying
@@ -316,15 +476,19 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Returns the number of empty slots on this page.
+     * Returns the number of empty slots on this page. In the slotted layout,
+     * this is the number of tuples of the largest size that still fit; any
+     * smaller tuple fits if this is not 0.
      */
     public int getNumEmptySlots() {
         // some code goes here
+        if (slotted) {
+            int free = BufferPool.getPageSize() - slotEntry(slotCount(data)) - tupleBytes;
+            return Math.max(0, free) / (tupleSize + SLOT_ENTRY_SIZE);
+        }
         int numFullSlots = 0;
-        for (byte headerByte : header) {
-            for (int i = 0; i < 8; ++i) {
-                numFullSlots += (headerByte >> i) & 1;
-            }
+        for (int i = 0; i < headerSize; ++i) {
+            numFullSlots += Integer.bitCount(data[i] & 0xff);
         }
         return numSlots - numFullSlots;
     }
@@ -334,8 +498,15 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
+        return isSlotUsed(data, i);
+    }
+
+    private boolean isSlotUsed(byte[] image, int i) {
+        if (slotted) {
+            return i < slotCount(image) && readShort(image, slotEntry(i)) != 0;
+        }
         int iByte = i / 8, iBit = i - i / 8 * 8;
-        return ((header[iByte] >> iBit) & 1) == 1;
+        return ((image[iByte] >> iBit) & 1) == 1;
     }
 
     /**
@@ -345,24 +516,141 @@ public class HeapPage implements Page {
         // some code goes here
         // not necessary for lab1
         if (value) {
-            header[i / 8] |= (byte) (1 << (i % 8));
+            data[i / 8] |= (byte) (1 << (i % 8));
         }
         else {
-            header[i / 8] &= (byte) ~ (1 << (i % 8));
+            data[i / 8] &= (byte) ~ (1 << (i % 8));
         }
     }
 
     /**
      * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
      * (note that this iterator shouldn't return tuples in empty slots!)
+     * <p>
+     * The iterator and its tuples read the page as it is now; later changes
+     * to the page do not affect them.
      */
     public Iterator<Tuple> iterator() {
         // some code goes here
-        ArrayList<Tuple> usedSlots = new ArrayList<>(numSlots);
-        for (int i = 0; i < numSlots; ++i) {
-            if (isSlotUsed(i)) usedSlots.add(tuples[i]);
+        final byte[] image;
+        synchronized(oldDataLock)
+        {
+        image = data;
+        shared = true;
+        }
+        final int count = slotCount(image);
+        return new Iterator<Tuple>() {
+            private int next = nextUsedSlot(image, 0, count);
+
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            public Tuple next() {
+                if (next >= count) {
+                    throw new NoSuchElementException();
+                }
+                Tuple t = new SlotTuple(image, next);
+                next = nextUsedSlot(image, next + 1, count);
+                return t;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * @return the tuple in the slot as the page is now, or null if the slot
+     *   is not in use, e.g. to fetch a tuple by its {@link RecordId}
+     */
+    public Tuple getTuple(int slot) {
+        final byte[] image;
+        synchronized(oldDataLock)
+        {
+        image = data;
+        shared = true;
         }
-        return usedSlots.iterator();
+        if (slot < 0 || slot >= slotCount(image) || !isSlotUsed(image, slot)) {
+            return null;
+        }
+        return new SlotTuple(image, slot);
     }
-}
 
+    private int nextUsedSlot(byte[] image, int from, int count) {
+        int i = from;
+        while (i < count && !isSlotUsed(image, i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * A tuple in a slot of a page image, whose fields are decoded from the
+     * image the first time they are asked for.
+     */
+    private class SlotTuple extends Tuple {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] image;
+        private final int slot;
+        /** Offset of the tuple in the image. */
+        private final int start;
+        /** Whether the record id is still this slot's, yet to be created. */
+        private boolean slotRecordId = true;
+
+        SlotTuple(byte[] image, int slot) {
+            super(td);
+            this.image = image;
+            this.slot = slot;
+            this.start = tupleOffset(image, slot);
+        }
+
+        @Override
+        public RecordId getRecordId() {
+            if (slotRecordId) {
+                setRecordId(new RecordId(pid, slot));
+            }
+            return super.getRecordId();
+        }
+
+        @Override
+        public void setRecordId(RecordId rid) {
+            slotRecordId = false;
+            super.setRecordId(rid);
+        }
+
+        @Override
+        public Field getField(int i) {
+            Field f = super.getField(i);
+            if (f == null) {
+                try {
+                    f = td.getFieldType(i).parse(image, fieldOffset(image, start, i));
+                } catch (java.text.ParseException e) {
+                    throw new NoSuchElementException("parsing error!");
+                }
+                super.setField(i, f);
+            }
+            return f;
+        }
+
+        @Override
+        public Iterator<Field> fields() {
+            decodeAll();
+            return super.fields();
+        }
+
+        @Override
+        public String toString() {
+            decodeAll();
+            return super.toString();
+        }
+
+        private void decodeAll() {
+            for (int i = 0; i < td.numFields(); i++) {
+                getField(i);
+            }
+        }
+    }
+}
@@ -35,15 +35,14 @@ public class HeapPageId implements PageId {
     }
 
     /**
-     * @return a hash code for this page, represented by the concatenation of
-     *   the table number and the page number (needed if a PageId is used as a
+     * @return a hash code for this page, combined from the table number and
+     *   the page number without allocating (needed if a PageId is used as a
      *   key in a hash table in the BufferPool, for example.)
      * @see BufferPool
      */
     public int hashCode() {
         // some code goes here
-        String code = String.valueOf(tableId) + pageNum;
-        return code.hashCode();
+        return 31 * tableId + pageNum;
     }
 
     /**
@@ -0,0 +1,27 @@
+package simpledb;
+
+/**
+ * The interface for database files that are keyed on one of their fields
+ * and can find the tuples whose key satisfies an {@link IndexPredicate}
+ * without reading the whole file.
+ *
+ * @see BTreeFile
+ * @see HashFile
+ */
+public interface IndexFile extends DbFile {
+    /**
+     * Returns the index of the field the file is keyed on.
+     */
+    public int keyField();
+
+    /**
+     * Returns an iterator over the tuples whose key satisfies the predicate.
+     * This method will acquire a read lock on the affected pages of the
+     * file, and may block until the lock can be acquired.
+     *
+     * @param tid the transaction id
+     * @param ipred the index predicate value to filter on
+     * @return an iterator for the filtered tuples
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred);
+}
@@ -0,0 +1,140 @@
+package simpledb;
+
+/**
+ * IndexNestedLoopJoin is a {@link Join} that, instead of rescanning its
+ * inner child for every outer tuple, probes an index on the join field of
+ * the inner table: for each outer tuple it sets the predicate of the
+ * {@link IndexedScan} at the bottom of the inner child to the join predicate
+ * against the outer join field, and rewinds the inner child. The inner child
+ * may apply further filters over the scan.
+ */
+public class IndexNestedLoopJoin extends Join {
+
+    private static final long serialVersionUID = 1L;
+
+    private DbIterator outer, inner;
+    private IndexedScan probe;
+    private TupleDesc td;
+    private Tuple outerTuple;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children; any operator but
+     *            NOT_EQUALS and LIKE
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join: an
+     *            {@link IndexedScan} of the inner table, on its join field,
+     *            under zero or more single-child operators such as
+     *            {@link Filter}
+     * @throws IllegalArgumentException if the predicate cannot be answered
+     *            by an index or child2 does not read an {@link IndexedScan}
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        super(p, child1, child2);
+        if (p.getOperator() == Predicate.Op.NOT_EQUALS || p.getOperator() == Predicate.Op.LIKE) {
+            throw new IllegalArgumentException("no index answers " + p.getOperator());
+        }
+        setChildren(new DbIterator[] {child1, child2});
+    }
+
+    /**
+     * @return the {@link IndexedScan} a plan reads through single-child
+     *         operators, or null if there is none
+     */
+    public static IndexedScan findProbe(DbIterator plan) {
+        while (!(plan instanceof IndexedScan) && plan instanceof Operator) {
+            DbIterator[] children = ((Operator) plan).getChildren();
+            if (children.length != 1) {
+                return null;
+            }
+            plan = children[0];
+        }
+        return plan instanceof IndexedScan ? (IndexedScan) plan : null;
+    }
+
+    /** @return the scan of the inner table that is probed */
+    public IndexedScan getProbe() {
+        return probe;
+    }
+
+    public TupleDesc getTupleDesc() {
+        if (td == null) {
+            td = super.getTupleDesc();
+        }
+        return td;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.rewind();
+        outerTuple = null;
+    }
+
+    public void close() {
+        super.close();
+        outerTuple = null;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples: the concatenation of the current outer tuple with the
+     * next inner tuple its probe returns.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        JoinPredicate p = getJoinPredicate();
+        while (true) {
+            if (outerTuple != null && inner.hasNext()) {
+                Tuple innerTuple = inner.next();
+                Tuple joined = new Tuple(getTupleDesc());
+                int n1 = outerTuple.getTupleDesc().numFields();
+                for (int i = 0; i < n1; i++) {
+                    joined.setField(i, outerTuple.getField(i));
+                }
+                for (int i = 0; i < innerTuple.getTupleDesc().numFields(); i++) {
+                    joined.setField(n1 + i, innerTuple.getField(i));
+                }
+                return joined;
+            }
+            if (!outer.hasNext()) {
+                return null;
+            }
+            outerTuple = outer.next();
+            // outer.f1 op inner.f2 is inner.f2 (reversed op) outer.f1
+            probe.setPredicate(new IndexPredicate(reverse(p.getOperator()),
+                    outerTuple.getField(p.getField1())));
+            inner.rewind();
+        }
+    }
+
+    /** @return the operator op' such that a op b if and only if b op' a */
+    private static Predicate.Op reverse(Predicate.Op op) {
+        switch (op) {
+            case LESS_THAN:
+                return Predicate.Op.GREATER_THAN;
+            case LESS_THAN_OR_EQ:
+                return Predicate.Op.GREATER_THAN_OR_EQ;
+            case GREATER_THAN:
+                return Predicate.Op.LESS_THAN;
+            case GREATER_THAN_OR_EQ:
+                return Predicate.Op.LESS_THAN_OR_EQ;
+            default:
+                return op;
+        }
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        IndexedScan probe = findProbe(children[1]);
+        if (probe == null) {
+            throw new IllegalArgumentException("the inner child does not read an index");
+        }
+        super.setChildren(children);
+        this.outer = children[0];
+        this.inner = children[1];
+        this.probe = probe;
+        this.td = null;
+    }
+}
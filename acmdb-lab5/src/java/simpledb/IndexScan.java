@@ -0,0 +1,154 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * IndexScan is an access method that reads the tuples of a heap table whose
+ * indexed field satisfies a predicate: it finds their record ids in a
+ * {@link SecondaryIndex}, in key order, and fetches each tuple from its heap
+ * page, so only the pages holding matching tuples are read. Each tuple
+ * fetched is checked against the predicate again, so the scan returns only
+ * matching tuples even if an entry is out of date.
+ */
+public class IndexScan implements IndexedScan {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TransactionId tid;
+    private final SecondaryIndex index;
+    private final String alias;
+    private IndexPredicate ipred;
+    private final TupleDesc td;
+    private transient DbFileIterator it;
+    private boolean isOpen = false;
+
+    /**
+     * Creates an index scan over the table of the index as a part of the
+     * specified transaction.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param index
+     *            the index to find tuples through
+     * @param tableAlias
+     *            the alias of the table, as in
+     *            {@link SeqScan#SeqScan(TransactionId, int, String)}
+     * @param ipred
+     *            the predicate the indexed field must satisfy, or null to
+     *            return all tuples in key order
+     */
+    public IndexScan(TransactionId tid, SecondaryIndex index, String tableAlias, IndexPredicate ipred) {
+        this.tid = tid;
+        this.index = index;
+        this.alias = tableAlias;
+        this.ipred = ipred;
+        TupleDesc tableTd = Database.getCatalog().getTupleDesc(index.getTableId());
+        String[] names = new String[tableTd.numFields()];
+        Type[] types = new Type[tableTd.numFields()];
+        for (int i = 0; i < tableTd.numFields(); i++) {
+            names[i] = tableAlias + "." + tableTd.getFieldName(i);
+            types[i] = tableTd.getFieldType(i);
+        }
+        this.td = new TupleDesc(types, names);
+    }
+
+    /** @return the actual name of the table in the catalog of the database */
+    public String getTableName() {
+        return Database.getCatalog().getTableName(index.getTableId());
+    }
+
+    /** @return the alias of the table this operator scans */
+    public String getAlias() {
+        return alias;
+    }
+
+    /** @return the index the scan reads */
+    public SecondaryIndex getIndex() {
+        return index;
+    }
+
+    public IndexPredicate getPredicate() {
+        return ipred;
+    }
+
+    public void setPredicate(IndexPredicate ipred) {
+        close();
+        this.ipred = ipred;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        if (isOpen) {
+            throw new DbException("double open on one DbIterator.");
+        }
+        final DbFileIterator entries = ipred == null
+                ? index.getFile().iterator(tid)
+                : index.getFile().indexIterator(tid, ipred);
+        it = new AbstractDbFileIterator() {
+            public void open() throws DbException, TransactionAbortedException {
+                entries.open();
+            }
+
+            @Override
+            protected Tuple readNext() throws DbException, TransactionAbortedException {
+                while (entries.hasNext()) {
+                    RecordId rid = index.recordId(entries.next());
+                    HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                            rid.getPageId(), Permissions.READ_ONLY);
+                    Tuple t = page.getTuple(rid.tupleno());
+                    // an out of date entry may point at a tuple that does not match
+                    if (t != null && (ipred == null
+                            || t.getField(index.getField()).compare(ipred.getOp(), ipred.getField()))) {
+                        return t;
+                    }
+                }
+                return null;
+            }
+
+            public void rewind() throws DbException, TransactionAbortedException {
+                close();
+                open();
+            }
+
+            public void close() {
+                super.close();
+                entries.close();
+            }
+        };
+        it.open();
+        isOpen = true;
+    }
+
+    /**
+     * Returns the TupleDesc of the table, with field names prefixed with the
+     * tableAlias string from the constructor.
+     */
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (!isOpen) {
+            throw new IllegalStateException("iterator is closed");
+        }
+        return it.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException, TransactionAbortedException, DbException {
+        if (!isOpen) {
+            throw new IllegalStateException("iterator is closed");
+        }
+        return it.next();
+    }
+
+    public void close() {
+        if (it != null) {
+            it.close();
+        }
+        isOpen = false;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException, TransactionAbortedException {
+        close();
+        open();
+    }
+}
@@ -0,0 +1,31 @@
+package simpledb;
+
+/**
+ * The interface for access methods that read the tuples of a table whose
+ * indexed field satisfies an {@link IndexPredicate}. The predicate can be
+ * replaced between runs of the scan, which is how
+ * {@link IndexNestedLoopJoin} probes its inner table once per outer tuple.
+ * <p>
+ * A scan checks every tuple it returns against the predicate, rather than
+ * trusting the index to have found only matches, so a plan needs no
+ * {@link Filter} for the predicate above it.
+ *
+ * @see BTreeScan
+ * @see IndexScan
+ */
+public interface IndexedScan extends DbIterator {
+    /**
+     * Returns the predicate the indexed field must satisfy, or null if the
+     * scan returns all tuples.
+     */
+    public IndexPredicate getPredicate();
+
+    /**
+     * Replaces the predicate the indexed field must satisfy. The scan is
+     * closed; the next {@link #open()} or {@link #rewind()} returns the
+     * tuples matching the new predicate.
+     *
+     * @param ipred the new predicate, or null to return all tuples
+     */
+    public void setPredicate(IndexPredicate ipred);
+}
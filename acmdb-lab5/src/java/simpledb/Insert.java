@@ -1,7 +1,8 @@
 package simpledb;
 
-import javax.xml.crypto.Data;
 import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Inserts tuples read from the child operator into the tableId specified in the
@@ -82,15 +83,18 @@ public class Insert extends Operator {
         // some code goes here
         if (called) return null;
 
-        while (child.hasNext()) {
-            Tuple tuple = child.next();
-            try {
-                Database.getBufferPool().insertTuple(tid, tableId, tuple);
-                numInsertions++;
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        // the child's tuples go to the table's bulk insert path in one call
+        ChildTuples tuples = new ChildTuples();
+        try {
+            Database.getBufferPool().insertTuples(tid, tableId, tuples);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } catch (NoSuchElementException e) {
+            tuples.rethrow();
+            throw e;
         }
+        tuples.rethrow();
+        numInsertions = tuples.count;
         called = true;
         Type[] typeArr = {Type.INT_TYPE};
         Tuple tuple = new Tuple(new TupleDesc(typeArr));
@@ -98,6 +102,50 @@ public class Insert extends Operator {
         return tuple;
     }
 
+    /**
+     * The child's tuples as an Iterator. An exception thrown by the child
+     * ends the iteration and is kept, to be rethrown once the insert returns.
+     */
+    private class ChildTuples implements Iterator<Tuple> {
+        int count;
+        private Exception failure;
+
+        public boolean hasNext() {
+            if (failure != null) {
+                return false;
+            }
+            try {
+                return child.hasNext();
+            } catch (DbException | TransactionAbortedException e) {
+                failure = e;
+                return false;
+            }
+        }
+
+        public Tuple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                Tuple t = child.next();
+                count++;
+                return t;
+            } catch (DbException | TransactionAbortedException e) {
+                failure = e;
+                throw new NoSuchElementException(e.getMessage());
+            }
+        }
+
+        void rethrow() throws DbException, TransactionAbortedException {
+            if (failure instanceof TransactionAbortedException) {
+                throw (TransactionAbortedException) failure;
+            }
+            if (failure != null) {
+                throw (DbException) failure;
+            }
+        }
+    }
+
     @Override
     public DbIterator[] getChildren() {
         // some code goes here
@@ -54,7 +54,7 @@ public class Join extends Operator {
      * */
     public String getJoinField2Name() {
         // some code goes here
-        return child1.getTupleDesc().getFieldName(p.getField2());
+        return child2.getTupleDesc().getFieldName(p.getField2());
     }
 
     /**
@@ -13,6 +13,16 @@ import javax.swing.tree.*;
 public class JoinOptimizer {
     LogicalPlan p;
     Vector<LogicalJoinNode> joins;
+    /**
+     * The cost of inserting a tuple into the hash table of a hash join,
+     * relative to looking one up
+     */
+    static final double HASH_BUILD_COST = 2.0;
+    /** The estimated fraction of pairs of tuples a range predicate joins */
+    static final double RANGE_JOIN_SELECTIVITY = 0.3;
+
+    /** The table stats passed to {@link #orderJoins}, by table name */
+    private Map<String, TableStats> stats;
 
     /**
      * Constructor
@@ -40,7 +50,10 @@ public class JoinOptimizer {
      * @param plan1
      *            The left join node's child
      * @param plan2
-     *            The right join node's child
+     *            The right join node's child; for a join run with
+     *            {@link LogicalJoinNode.Algorithm#INDEX_NESTED_LOOP}, a plan
+     *            reading an {@link IndexedScan} on the join field, as
+     *            {@link IndexNestedLoopJoin} requires
      */
     public static DbIterator instantiateJoin(LogicalJoinNode lj,
             DbIterator plan1, DbIterator plan2) throws ParsingException {
@@ -68,20 +81,41 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        switch (lj.algorithm) {
+            case BLOCK_NESTED_LOOP:
+                j = new BlockNestedLoopJoin(p, plan1, plan2);
+                break;
+            case INDEX_NESTED_LOOP:
+                j = new IndexNestedLoopJoin(p, plan1, plan2);
+                break;
+            case HASH:
+                j = new HashEquiJoin(p, plan1, plan2);
+                break;
+            case HASH_BUILD_OUTER:
+                j = new HashEquiJoin(p, plan1, plan2, true);
+                break;
+            case SORT_MERGE:
+                j = new SortMergeJoin(p, plan1, plan2);
+                break;
+            default:
+                j = new Join(p, plan1, plan2);
+                break;
+        }
 
         return j;
 
     }
 
     /**
-     * Estimate the cost of a join.
+     * Estimate the cost of a join run as a {@link BlockNestedLoopJoin}, which
+     * runs any join predicate.
      * 
-     * The cost of the join should be calculated based on the join algorithm (or
-     * algorithms) that you implemented for Lab 2. It should be a function of
-     * the amount of data that must be read over the course of the query, as
-     * well as the number of CPU opertions performed by your join. Assume that
-     * the cost of a single predicate application is roughly 1.
+     * The cost of the join is a function of the amount of data that must be
+     * read over the course of the query, as well as the number of CPU
+     * opertions performed by the join. Assume that the cost of a single
+     * predicate application is roughly 1. The optimizer compares the costs
+     * of all algorithms with
+     * {@link #estimateJoinCost(LogicalJoinNode, LogicalJoinNode.Algorithm, int, int, double, double)}.
      * 
      * 
      * @param j
@@ -102,19 +136,279 @@ public class JoinOptimizer {
      */
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
             double cost1, double cost2) {
+        return estimateJoinCost(j, LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP, card1, card2,
+                cost1, cost2);
+    }
+
+    /**
+     * Estimate the cost of a join run with the specified algorithm; the
+     * other parameters are as in
+     * {@link #estimateJoinCost(LogicalJoinNode, int, int, double, double)}.
+     * 
+     * @return An estimate of the cost of this query, or
+     *         Double.POSITIVE_INFINITY if the join cannot run with the
+     *         algorithm
+     */
+    public double estimateJoinCost(LogicalJoinNode j, LogicalJoinNode.Algorithm a,
+            int card1, int card2, double cost1, double cost2) {
         if (j instanceof LogicalSubplanJoinNode) {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Lab 5.
-            return card1 + cost1 + cost2;
-        } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
-            return cost1 + card1 * cost2 + card1 * card2;
+            return a == LogicalJoinNode.Algorithm.NESTED_LOOP ? card1 + cost1 + cost2
+                    : Double.POSITIVE_INFINITY;
+        }
+        switch (a) {
+            case BLOCK_NESTED_LOOP:
+                return cost1 + Math.ceil((double) card1 / blockTuples(j)) * cost2
+                        + (double) card1 * card2;
+            case INDEX_NESTED_LOOP:
+                return estimateIndexJoinCost(j, card1, cost1);
+            case HASH:
+                return estimateHashJoinCost(j, false, card2, card1, cost1, cost2);
+            case HASH_BUILD_OUTER:
+                return estimateHashJoinCost(j, true, card1, card2, cost1, cost2);
+            case SORT_MERGE:
+                return estimateSortMergeJoinCost(j, card1, card2, cost1, cost2, false, false);
+            default:
+                return cost1 + card1 * cost2 + card1 * card2;
         }
     }
 
+    /**
+     * @return how many outer tuples a block of a {@link BlockNestedLoopJoin}
+     *         holds, by the width of the tuples of the outer table; when the
+     *         outer side joins several tables its tuples are wider, so this
+     *         is an upper bound. 1 if the outer table is unknown.
+     */
+    private int blockTuples(LogicalJoinNode j) {
+        TupleDesc td = tableTupleDesc(j.t1Alias);
+        if (td == null) {
+            return 1;
+        }
+        int width = SpillFile.memorySize(td);
+        return Math.max(1, BlockNestedLoopJoin.DEFAULT_BLOCK_PAGES * BufferPool.getPageSize() / width);
+    }
+
+    /**
+     * @return the TupleDesc of the table an alias names, or null if it is
+     *         unknown; when a side joins several tables its tuples are
+     *         wider
+     */
+    private TupleDesc tableTupleDesc(String alias) {
+        Integer tableid = p.getTableId(alias);
+        return tableid == null ? null : Database.getCatalog().getTupleDesc(tableid);
+    }
+
+    /**
+     * @return the number of pages card tuples of the table an alias names
+     *         take in a {@link SpillFile}, or 0 if the table is unknown
+     */
+    private double spillPages(String alias, int card) {
+        TupleDesc td = tableTupleDesc(alias);
+        return td == null ? 0 : (double) card * td.getSize() / BufferPool.getPageSize();
+    }
+
+    /**
+     * @return whether card tuples of the table an alias names exceed a
+     *         memory budget of the given number of pages, counted as the
+     *         operators count them
+     */
+    private boolean exceedsMemory(String alias, int card, int memoryPages) {
+        TupleDesc td = tableTupleDesc(alias);
+        return td != null
+                && (double) card * SpillFile.memorySize(td) > (double) memoryPages * BufferPool.getPageSize();
+    }
+
+    /**
+     * Estimate the cost of a {@link HashEquiJoin}: one scan of each side, an
+     * insert into the hash table for each tuple of the build side, and a
+     * lookup for each tuple of the probe side. As inserts cost more than
+     * lookups, building on the side with the lower cardinality is cheaper.
+     * A build side larger than the join's default memory budget spills both
+     * sides to partitions, which are written and read back once.
+     * 
+     * @param buildOuter
+     *            whether the hash table is built on the left-hand side
+     * @param buildCard
+     *            Estimated cardinality of the side the hash table is built on
+     * @param probeCard
+     *            Estimated cardinality of the side that probes it
+     * @return the estimated cost, or Double.POSITIVE_INFINITY if the join is
+     *         not an equi-join
+     */
+    private double estimateHashJoinCost(LogicalJoinNode j, boolean buildOuter, int buildCard,
+            int probeCard, double cost1, double cost2) {
+        if (j.p != Predicate.Op.EQUALS) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = cost1 + cost2 + HASH_BUILD_COST * buildCard + probeCard;
+        String buildAlias = buildOuter ? j.t1Alias : j.t2Alias;
+        String probeAlias = buildOuter ? j.t2Alias : j.t1Alias;
+        if (exceedsMemory(buildAlias, buildCard, HashEquiJoin.DEFAULT_MEMORY_PAGES)) {
+            cost += 2 * TableStats.IOCOSTPERPAGE
+                    * (spillPages(buildAlias, buildCard) + spillPages(probeAlias, probeCard));
+        }
+        return cost;
+    }
+
+    /**
+     * Estimate the cost of a {@link SortMergeJoin}: a scan of each side, a
+     * sort of each side not already sorted on its join field, which spills
+     * to disk if the side exceeds the sort's memory budget, and the merge.
+     * An equality merge reads each side once. A band merge returns a prefix
+     * of one side for each tuple of the other, reading that side once and
+     * keeping the prefix; the part of the prefix beyond the join's default
+     * memory budget is spilled, and read back for each tuple.
+     * 
+     * @param sorted1
+     *            whether the left-hand side is sorted on its join field
+     * @param sorted2
+     *            whether the right-hand side is sorted on its join field
+     * @return the estimated cost, or Double.POSITIVE_INFINITY if the
+     *         predicate cannot be merged
+     */
+    private double estimateSortMergeJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2, boolean sorted1, boolean sorted2) {
+        if (j.p == Predicate.Op.NOT_EQUALS || j.p == Predicate.Op.LIKE) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = cost1 + cost2 + (sorted1 ? 0 : sortCost(j.t1Alias, card1))
+                + (sorted2 ? 0 : sortCost(j.t2Alias, card2));
+        if (j.p == Predicate.Op.EQUALS) {
+            return cost + card1 + card2;
+        }
+        boolean outerDrives = j.p == Predicate.Op.GREATER_THAN
+                || j.p == Predicate.Op.GREATER_THAN_OR_EQ;
+        int driverCard = outerDrives ? card1 : card2;
+        String scannedAlias = outerDrives ? j.t2Alias : j.t1Alias;
+        int prefixCard = (int) (RANGE_JOIN_SELECTIVITY * (outerDrives ? card2 : card1));
+        double rereadCost = 0;
+        if (exceedsMemory(scannedAlias, prefixCard, SortMergeJoin.DEFAULT_MEMORY_PAGES)) {
+            int inMemory = SortMergeJoin.DEFAULT_MEMORY_PAGES * BufferPool.getPageSize()
+                    / SpillFile.memorySize(tableTupleDesc(scannedAlias));
+            rereadCost = TableStats.IOCOSTPERPAGE * spillPages(scannedAlias, prefixCard - inMemory);
+        }
+        return cost + driverCard * (1 + rereadCost) + RANGE_JOIN_SELECTIVITY * card1 * card2;
+    }
+
+    /**
+     * @return the estimated cost of an {@link OrderBy} of card tuples of the
+     *         table an alias names: the comparisons, and, if the tuples
+     *         exceed the default memory budget, writing them to sorted runs
+     *         and reading them back once per merge pass
+     */
+    private double sortCost(String alias, int card) {
+        double cost = card * (Math.log(Math.max(card, 2)) / Math.log(2));
+        if (exceedsMemory(alias, card, OrderBy.DEFAULT_MEMORY_PAGES)) {
+            double runs = Math.ceil((double) card * SpillFile.memorySize(tableTupleDesc(alias))
+                    / ((double) OrderBy.DEFAULT_MEMORY_PAGES * BufferPool.getPageSize()));
+            int fanIn = Math.min(OrderBy.MAX_FAN_IN, OrderBy.DEFAULT_MEMORY_PAGES);
+            double passes = Math.max(1, Math.ceil(Math.log(runs) / Math.log(fanIn)));
+            cost += 2 * TableStats.IOCOSTPERPAGE * passes * spillPages(alias, card);
+        }
+        return cost;
+    }
+
+    /**
+     * @return whether a table is stored in order of a field, so a scan of it
+     *         needs no sort before a merge join on the field
+     */
+    private boolean isStoredSorted(String alias, String field) {
+        Integer tableid = p.getTableId(alias);
+        if (tableid == null) {
+            return false;
+        }
+        try {
+            return SortMergeJoin.isSortedTable(tableid,
+                    Database.getCatalog().getTupleDesc(tableid).fieldNameToIndex(field));
+        } catch (NoSuchElementException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Estimate the cost of an index nested-loop join: a scan of the outer
+     * side, then a probe of the index on the join field of the inner table
+     * for each outer tuple, which returns the inner tuples it joins with.
+     * 
+     * @return the estimated cost, or Double.POSITIVE_INFINITY if the inner
+     *         table has no index on its join field that answers the predicate
+     */
+    private double estimateIndexJoinCost(LogicalJoinNode j, int card1, double cost1) {
+        Integer tableid = p.getTableId(j.t2Alias);
+        if (tableid == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        TableStats s = (stats != null ? stats : TableStats.getStatsMap())
+                .get(Database.getCatalog().getTableName(tableid));
+        int field;
+        try {
+            field = Database.getCatalog().getTupleDesc(tableid).fieldNameToIndex(j.f2PureName);
+        } catch (NoSuchElementException e) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (s == null) {
+            return Double.POSITIVE_INFINITY;
+        }
+        // probes see the whole inner table; filters on it apply afterwards
+        int total = s.totalTuples();
+        int card = estimateTableJoinCardinality(j.p, j.t1Alias, j.t2Alias,
+                j.f1PureName, j.f2PureName, card1, total,
+                isPkey(j.t1Alias, j.f1PureName), isPkey(j.t2Alias, j.f2PureName),
+                stats, p.getTableAliasToIdMapping());
+        double matchesPerProbe = (double) card / Math.max(card1, 1);
+        double probeCost = s.estimateIndexScanCost(field, j.p,
+                Math.min(1.0, matchesPerProbe / Math.max(total, 1)));
+        return cost1 + card1 * probeCost + card;
+    }
+
+    /**
+     * Estimate the cost of a join run with the specified algorithm, as
+     * {@link #estimateJoinCost(LogicalJoinNode, LogicalJoinNode.Algorithm, int, int, double, double)}
+     * does, knowing which sides are base tables rather than the results of
+     * other joins: an index join needs an inner table to probe, and a merge
+     * join need not sort a table stored in order of its join field.
+     */
+    private double algorithmCost(LogicalJoinNode j, LogicalJoinNode.Algorithm a,
+            int card1, int card2, double cost1, double cost2, boolean outerIsTable,
+            boolean innerIsTable) {
+        if (j instanceof LogicalSubplanJoinNode) {
+            return estimateJoinCost(j, a, card1, card2, cost1, cost2);
+        }
+        switch (a) {
+            case INDEX_NESTED_LOOP:
+                return innerIsTable ? estimateJoinCost(j, a, card1, card2, cost1, cost2)
+                        : Double.POSITIVE_INFINITY;
+            case SORT_MERGE:
+                return estimateSortMergeJoinCost(j, card1, card2, cost1, cost2,
+                        outerIsTable && isStoredSorted(j.t1Alias, j.f1PureName),
+                        innerIsTable && isStoredSorted(j.t2Alias, j.f2PureName));
+            default:
+                return estimateJoinCost(j, a, card1, card2, cost1, cost2);
+        }
+    }
+
+    /**
+     * @return the algorithm with the lowest estimated cost for a join, by
+     *         {@link #algorithmCost}
+     */
+    private LogicalJoinNode.Algorithm cheapestAlgorithm(LogicalJoinNode j, int card1,
+            int card2, double cost1, double cost2, boolean outerIsTable,
+            boolean innerIsTable) {
+        LogicalJoinNode.Algorithm best = LogicalJoinNode.Algorithm.NESTED_LOOP;
+        double bestCost = algorithmCost(j, best, card1, card2, cost1, cost2,
+                outerIsTable, innerIsTable);
+        for (LogicalJoinNode.Algorithm a : LogicalJoinNode.Algorithm.values()) {
+            double cost = algorithmCost(j, a, card1, card2, cost1, cost2,
+                    outerIsTable, innerIsTable);
+            if (cost < bestCost) {
+                best = a;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
     /**
      * Estimate the cardinality of a join. The cardinality of a join is the
      * number of tuples produced by the join.
@@ -173,7 +467,7 @@ public class JoinOptimizer {
         }
         else {  // Range Join
             int maxCard = Math.max(card1, card2);
-            card = Math.max((int) (0.3 * card1 * card2), maxCard);
+            card = Math.max((int) (RANGE_JOIN_SELECTIVITY * card1 * card2), maxCard);
         }
         return card <= 0 ? 1 : card;
     }
@@ -237,6 +531,10 @@ public class JoinOptimizer {
             throws ParsingException {
         // Not necessary for labs 1--3
         // some code goes here
+        if (joins.isEmpty()) {
+            return joins;
+        }
+        this.stats = stats;
         PlanCache pc = new PlanCache();
         CostCard bestCostCard = new CostCard();
         for (int i = 0; i < joins.size(); ++i) {
@@ -326,6 +624,9 @@ public class JoinOptimizer {
         double t1cost, t2cost;
         int t1card, t2card;
         boolean leftPkey, rightPkey;
+        // whether each side is a base table, which an index join can probe
+        // and a merge join may read in order
+        boolean t1IsTable = true, t2IsTable = true;
 
         if (news.isEmpty()) { // base case -- both are base relations
             prevBest = new Vector<LogicalJoinNode>();
@@ -361,6 +662,7 @@ public class JoinOptimizer {
                 // subtree is
                 t1card = bestCard;
                 leftPkey = hasPkey(prevBest);
+                t1IsTable = false;
 
                 t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
                         .estimateScanCost();
@@ -377,6 +679,7 @@ public class JoinOptimizer {
                 // subtree is
                 t2card = bestCard;
                 rightPkey = hasPkey(prevBest);
+                t2IsTable = false;
                 t1cost = stats.get(table1Name).estimateScanCost();
                 t1card = stats.get(table1Name).estimateTableCardinality(
                         filterSelectivities.get(j.t1Alias));
@@ -390,13 +693,20 @@ public class JoinOptimizer {
         }
 
         // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
+        LogicalJoinNode.Algorithm a1 = cheapestAlgorithm(j, t1card, t2card, t1cost,
+                t2cost, t1IsTable, t2IsTable);
+        double cost1 = algorithmCost(j, a1, t1card, t2card, t1cost, t2cost,
+                t1IsTable, t2IsTable);
 
         LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
+        LogicalJoinNode.Algorithm a2 = cheapestAlgorithm(j2, t2card, t1card, t2cost,
+                t1cost, t2IsTable, t1IsTable);
+        double cost2 = algorithmCost(j2, a2, t2card, t1card, t2cost, t1cost,
+                t2IsTable, t1IsTable);
         if (cost2 < cost1) {
             boolean tmp;
             j = j2;
+            a1 = a2;
             cost1 = cost2;
             tmp = rightPkey;
             rightPkey = leftPkey;
@@ -411,6 +721,9 @@ public class JoinOptimizer {
                 rightPkey, stats);
         cc.cost = cost1;
         cc.plan = (Vector<LogicalJoinNode>) prevBest.clone();
+        if (a1 != j.algorithm) {
+            j = j.withAlgorithm(a1);
+        }
         cc.plan.addElement(j); // prevbest is left -- add new join to end
         return cc;
     }
@@ -510,7 +823,7 @@ public class JoinOptimizer {
             // Double c = pc.getCost(pathSoFar);
             neither = true;
 
-            root = new DefaultMutableTreeNode("Join " + j + " (Cost ="
+            root = new DefaultMutableTreeNode("Join " + j + " " + j.algorithm + " (Cost ="
                     + pc.getCost(pathSoFar) + ", card = "
                     + pc.getCard(pathSoFar) + ")");
             DefaultMutableTreeNode n = m.get(j.t1Alias);
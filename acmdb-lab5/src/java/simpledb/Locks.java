@@ -1,142 +1,529 @@
 package simpledb;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-class Lock {
-    private final TransactionId tid;
-    private final PageId pid;
-    private boolean isExclusive;
+/**
+ * Locks is the page-level lock manager used by the BufferPool. Each page has
+ * a lock with a set of granted requests and a FIFO queue of waiting ones.
+ * <p>
+ * A transaction may hold a page in shared or exclusive mode. A shared holder
+ * asking for exclusive access upgrades its lock; the upgrade waits at the
+ * front of the queue until the transaction is the only holder. Any other
+ * request is granted immediately only if it is compatible with the holders
+ * and nobody is queued ahead of it, so waiters are served in arrival order.
+ * <p>
+ * Waiting threads park on a Condition of the page's latch instead of
+ * spinning; releasing a lock wakes exactly the requests it makes grantable.
+ * The latches are ReentrantLocks rather than monitors so that parked virtual
+ * threads do not pin their carriers.
+ * <p>
+ * Deadlocks are detected incrementally with a waits-for graph: every waiting
+ * request has edges to the holders and earlier waiters it conflicts with,
+ * refreshed whenever its page's lock changes. When a new wait closes a cycle,
+ * the youngest transaction on the cycle is chosen as the victim; its wait
+ * ends with a TransactionAbortedException. A single wait can close several
+ * cycles, so the search is repeated until none is left.
+ * <p>
+ * Latch order: a page latch may be held while taking the graph latch, never
+ * the other way round, and no thread holds two page latches at once.
+ */
+public class Locks {
 
-    public Lock(TransactionId tid, PageId pid, boolean isExclusive) {
-        this.tid = tid;
-        this.pid = pid;
-        this.isExclusive = isExclusive;
-    }
+    /** A transaction's request for one page, granted or waiting. */
+    private static class Request {
+        final TransactionId tid;
+        final PageLock pageLock;
+        final Condition granted;
+        volatile boolean exclusive;
+        /** True while a shared holder waits to become exclusive. */
+        boolean upgrade;
+        volatile boolean isGranted;
+        /** Set when the request was chosen to break a deadlock. */
+        volatile boolean isVictim;
+        long waitStart;
 
-    public boolean isLockExclusive() {
-        return isExclusive;
+        Request(TransactionId tid, boolean exclusive, PageLock pageLock) {
+            this.tid = tid;
+            this.exclusive = exclusive;
+            this.pageLock = pageLock;
+            this.granted = pageLock.latch.newCondition();
+        }
+
+        boolean conflictsWith(Request other) {
+            return exclusive || upgrade || other.exclusive || other.upgrade;
+        }
     }
 
-    public TransactionId getTid() {
-        return tid;
+    /**
+     * The waits-for graph: an edge from a waiting transaction to each
+     * transaction it waits for.
+     */
+    private static class WaitsForGraph {
+        final ReentrantLock latch = new ReentrantLock();
+        final HashMap<TransactionId, HashSet<TransactionId>> edges = new HashMap<>();
+
+        void setEdges(TransactionId waiter, HashSet<TransactionId> blockers) {
+            latch.lock();
+            try {
+                edges.put(waiter, blockers);
+            } finally {
+                latch.unlock();
+            }
+        }
+
+        void removeWaiter(TransactionId waiter) {
+            latch.lock();
+            try {
+                edges.remove(waiter);
+            } finally {
+                latch.unlock();
+            }
+        }
+
+        /**
+         * Looks for a cycle through the given transaction.
+         *
+         * @return the youngest transaction on the cycle, or null if there is
+         *   no cycle
+         */
+        TransactionId findVictim(TransactionId start) {
+            latch.lock();
+            try {
+                ArrayList<TransactionId> path = new ArrayList<>();
+                path.add(start);
+                if (!reaches(start, start, path, new HashSet<TransactionId>())) {
+                    return null;
+                }
+                TransactionId youngest = start;
+                for (TransactionId tid : path) {
+                    if (tid.getId() > youngest.getId()) {
+                        youngest = tid;
+                    }
+                }
+                return youngest;
+            } finally {
+                latch.unlock();
+            }
+        }
+
+        /** Depth-first search for target; on success path holds the cycle. */
+        private boolean reaches(TransactionId from, TransactionId target,
+                ArrayList<TransactionId> path, HashSet<TransactionId> visited) {
+            HashSet<TransactionId> next = edges.get(from);
+            if (next == null) return false;
+            for (TransactionId tid : next) {
+                if (tid.equals(target)) {
+                    return true;
+                }
+                if (visited.add(tid)) {
+                    path.add(tid);
+                    if (reaches(tid, target, path, visited)) {
+                        return true;
+                    }
+                    path.remove(path.size() - 1);
+                }
+            }
+            return false;
+        }
     }
 
-    public void upgrade() {
-        isExclusive = true;
+    /** The lock of one page. All fields are guarded by {@code latch}. */
+    private class PageLock {
+        final ReentrantLock latch = new ReentrantLock();
+        final HashMap<TransactionId, Request> holders = new HashMap<>();
+        final ArrayDeque<Request> waiters = new ArrayDeque<>();
+        boolean exclusivelyHeld;
+
+        /** @return true if the request could be granted right now */
+        boolean compatible(Request r) {
+            if (r.upgrade) {
+                return holders.size() == 1;
+            }
+            if (r.exclusive) {
+                return holders.isEmpty();
+            }
+            return !exclusivelyHeld;
+        }
+
+        void grant(Request r) {
+            if (r.upgrade) {
+                r.upgrade = false;
+                r.exclusive = true;
+            }
+            else {
+                holders.put(r.tid, r);
+            }
+            if (r.exclusive) {
+                exclusivelyHeld = true;
+            }
+            r.isGranted = true;
+        }
+
+        /**
+         * Grants waiters from the head of the queue while they are
+         * compatible, then refreshes the edges of those still waiting.
+         */
+        void grantWaiters() {
+            while (!waiters.isEmpty() && compatible(waiters.peek())) {
+                Request r = waiters.poll();
+                grant(r);
+                waiting.remove(r.tid, r);
+                graph.removeWaiter(r.tid);
+                r.granted.signal();
+            }
+            updateEdges();
+        }
+
+        /** Recomputes the waits-for edges of every waiter of this page. */
+        void updateEdges() {
+            ArrayList<Request> ahead = new ArrayList<>();
+            for (Request r : waiters) {
+                if (r.isVictim) {
+                    // leaving the queue; it waits for nobody any more
+                    continue;
+                }
+                HashSet<TransactionId> blockers = new HashSet<>();
+                for (Request holder : holders.values()) {
+                    if (!holder.tid.equals(r.tid) && r.conflictsWith(holder)) {
+                        blockers.add(holder.tid);
+                    }
+                }
+                for (Request earlier : ahead) {
+                    if (r.conflictsWith(earlier)) {
+                        blockers.add(earlier.tid);
+                    }
+                }
+                graph.setEdges(r.tid, blockers);
+                ahead.add(r);
+            }
+        }
     }
-}
 
-public class Locks {
-    private final ConcurrentHashMap<TransactionId, ConcurrentHashMap<PageId, Lock>> tidToLock;
-    private final ConcurrentHashMap<PageId, ArrayList<Lock>> pidToLock;
+    private final ConcurrentHashMap<PageId, PageLock> pageLocks;
+    private final ConcurrentHashMap<TransactionId, ConcurrentHashMap<PageId, Request>> tidToLock;
+    /**
+     * The queued request of each waiting transaction; a transaction waits
+     * for at most one page at a time. Changed under the latch of the
+     * request's page, together with its queue.
+     */
+    private final ConcurrentHashMap<TransactionId, Request> waiting;
+    private final WaitsForGraph graph;
+    private final AtomicLong deadlocks;
+    private final AtomicLong victimWaitNanos;
 
     public Locks() {
+        pageLocks = new ConcurrentHashMap<>();
         tidToLock = new ConcurrentHashMap<>();
-        pidToLock = new ConcurrentHashMap<>();
+        waiting = new ConcurrentHashMap<>();
+        graph = new WaitsForGraph();
+        deadlocks = new AtomicLong();
+        victimWaitNanos = new AtomicLong();
     }
 
-    public synchronized boolean lock(TransactionId tid, PageId pid, Permissions perm) {
-        boolean isExclusive = (perm == Permissions.READ_WRITE);
+    /** @return the number of deadlocks detected so far */
+    public long getDeadlockCount() {
+        return deadlocks.get();
+    }
 
-        if (tid == null) return true;
+    /** @return the total time deadlock victims spent waiting before they were aborted */
+    public long getVictimWaitNanos() {
+        return victimWaitNanos.get();
+    }
 
-        if (!tidToLock.containsKey(tid)) {
-            tidToLock.put(tid, new ConcurrentHashMap<>());
+    private PageLock pageLock(PageId pid) {
+        PageLock pageLock = pageLocks.get(pid);
+        if (pageLock == null) {
+            PageLock created = new PageLock();
+            pageLock = pageLocks.putIfAbsent(pid, created);
+            if (pageLock == null) {
+                pageLock = created;
+            }
         }
+        return pageLock;
+    }
 
-        if (!pidToLock.containsKey(pid)) {
-            pidToLock.put(pid, new ArrayList<>());
+    private ConcurrentHashMap<PageId, Request> heldBy(TransactionId tid) {
+        ConcurrentHashMap<PageId, Request> held = tidToLock.get(tid);
+        if (held == null) {
+            ConcurrentHashMap<PageId, Request> created = new ConcurrentHashMap<>();
+            held = tidToLock.putIfAbsent(tid, created);
+            if (held == null) {
+                held = created;
+            }
         }
+        return held;
+    }
 
-        ConcurrentHashMap<PageId, Lock> transactionPidToLock = tidToLock.get(tid);
-        ArrayList<Lock> pageLocks = pidToLock.get(pid);
+    /**
+     * Acquires a lock on a page, waiting until it is granted or the
+     * transaction is aborted to break a deadlock.
+     *
+     * @param tid the transaction acquiring the lock; a null tid needs no lock
+     * @param pid the page to lock
+     * @param perm READ_ONLY for a shared lock, READ_WRITE for an exclusive one
+     * @throws TransactionAbortedException if the transaction was chosen as a
+     *   deadlock victim or the waiting thread was interrupted
+     */
+    public void lock(TransactionId tid, PageId pid, Permissions perm)
+            throws TransactionAbortedException {
+        lock(tid, pid, perm, Long.MAX_VALUE);
+    }
 
-        // if the transaction has a lock on this page
-        if (transactionPidToLock.containsKey(pid)) {
-            Lock lock = transactionPidToLock.get(pid);
-            // if the lock is exclusive, return
-            if (lock.isLockExclusive()) {
-                return true;
+    /**
+     * Acquires a lock on a page, waiting for at most timeoutMillis.
+     *
+     * @param tid the transaction acquiring the lock; a null tid needs no lock
+     * @param pid the page to lock
+     * @param perm READ_ONLY for a shared lock, READ_WRITE for an exclusive one
+     * @param timeoutMillis how long to wait before giving up
+     * @throws TransactionAbortedException if the lock was not granted in
+     *   time, the transaction was chosen as a deadlock victim or the waiting
+     *   thread was interrupted
+     */
+    public void lock(TransactionId tid, PageId pid, Permissions perm, long timeoutMillis)
+            throws TransactionAbortedException {
+        if (tid == null) return;
+        boolean isExclusive = (perm == Permissions.READ_WRITE);
+
+        // fast path: a transaction re-reading a page it already holds a
+        // sufficient lock on does not need the page latch
+        ConcurrentHashMap<PageId, Request> held = tidToLock.get(tid);
+        if (held != null) {
+            Request r = held.get(pid);
+            if (r != null && (r.exclusive || !isExclusive)) {
+                return;
             }
-            // if the lock is shared and the required lock is exclusive
-            else if (isExclusive) {
-                // if there is only one shared lock on this page, upgrade it to be exclusive and return
-                if (pageLocks.size() == 1) {
-                    lock.upgrade();
-                    return true;
+        }
+
+        PageLock pageLock = pageLock(pid);
+        pageLock.latch.lock();
+        try {
+            Request r = pageLock.holders.get(tid);
+            if (r != null) {
+                if (r.exclusive || !isExclusive) {
+                    return;
                 }
-                // if there are more than one shared locks on this page, block
-                else {
-                    return false;
+                // upgrade: jump the queue, but wait for the other readers to leave
+                r.upgrade = true;
+                r.isGranted = false;
+                if (pageLock.compatible(r)) {
+                    pageLock.grant(r);
+                    return;
                 }
+                pageLock.waiters.addFirst(r);
             }
-            // if the lock is shared and the required lock is shared, return
             else {
-                return true;
+                r = new Request(tid, isExclusive, pageLock);
+                if (pageLock.waiters.isEmpty() && pageLock.compatible(r)) {
+                    pageLock.grant(r);
+                    heldBy(tid).put(pid, r);
+                    return;
+                }
+                pageLock.waiters.addLast(r);
             }
+            waiting.put(tid, r);
+            r.waitStart = System.nanoTime();
+            pageLock.updateEdges();
+            TransactionId victim;
+            while (!r.isVictim && !r.isGranted && (victim = graph.findVictim(tid)) != null) {
+                deadlocks.incrementAndGet();
+                if (victim.equals(tid)) {
+                    r.isVictim = true;
+                    graph.removeWaiter(tid);
+                }
+                else {
+                    // the victim's wakeup needs its own page latch
+                    pageLock.latch.unlock();
+                    try {
+                        abortWaiter(victim);
+                    } finally {
+                        pageLock.latch.lock();
+                    }
+                }
+            }
+            await(pageLock, r, timeoutMillis);
+            heldBy(tid).put(pid, r);
+        } finally {
+            pageLock.latch.unlock();
         }
-        // if the transaction doesn't have a lock on this page
-        else {
-            // if the required lock is exclusive and there are at least one shared locks on this page, block
-            if (isExclusive && !pageLocks.isEmpty()) {
+    }
+
+    /**
+     * Acquires a lock on a page only if it can be granted at once, without
+     * queueing. A transaction that already holds a sufficient lock succeeds.
+     *
+     * @return true if the transaction now holds the lock
+     */
+    public boolean tryLock(TransactionId tid, PageId pid, Permissions perm) {
+        if (tid == null) return true;
+        boolean isExclusive = (perm == Permissions.READ_WRITE);
+
+        PageLock pageLock = pageLock(pid);
+        pageLock.latch.lock();
+        try {
+            Request r = pageLock.holders.get(tid);
+            if (r != null) {
+                if (r.exclusive || !isExclusive) {
+                    return true;
+                }
+                r.upgrade = true;
+                r.isGranted = false;
+                if (pageLock.compatible(r)) {
+                    pageLock.grant(r);
+                    return true;
+                }
+                r.upgrade = false;
+                r.isGranted = true;
                 return false;
             }
+            r = new Request(tid, isExclusive, pageLock);
+            if (pageLock.waiters.isEmpty() && pageLock.compatible(r)) {
+                pageLock.grant(r);
+                heldBy(tid).put(pid, r);
+                return true;
+            }
+            return false;
+        } finally {
+            pageLock.latch.unlock();
+        }
+    }
 
-            // if the required lock is shared and there is an exclusive lock on this page, block
-            if (!isExclusive) {
-                for (Lock l: pageLocks) {
-                    if (l.isLockExclusive()) {
-                        return false;
-                    }
+    /**
+     * Marks the waiting request of a deadlock victim and wakes it up. The
+     * request leaves the queue under the same latch, so no release can grant
+     * it before its thread runs, and its edges leave the graph at once, so
+     * the caller can look for further cycles.
+     */
+    private void abortWaiter(TransactionId victim) {
+        for (Request r = waiting.get(victim); r != null; r = waiting.get(victim)) {
+            PageLock pageLock = r.pageLock;
+            pageLock.latch.lock();
+            try {
+                // unless it was granted or gave up before the latch was taken
+                if (pageLock.waiters.remove(r)) {
+                    r.isVictim = true;
+                    waiting.remove(victim, r);
+                    graph.removeWaiter(victim);
+                    r.granted.signal();
+                    // the requests behind it may be grantable now
+                    pageLock.grantWaiters();
+                    return;
                 }
+            } finally {
+                pageLock.latch.unlock();
             }
+        }
+        // no longer waiting
+        graph.removeWaiter(victim);
+    }
 
-            // if the required lock is exclusive and there are no locks on this page
-            // or if the required lock is shared and there are no exclusive locks on this page
-            // build a new lock and return
-            Lock newLock = new Lock(tid, pid, isExclusive);
-            transactionPidToLock.put(pid, newLock);
-            pageLocks.add(newLock);
-            return true;
+    /**
+     * Parks until the request is granted. On timeout or abort the request
+     * leaves the queue, which may make the requests behind it grantable.
+     * The caller holds the page latch.
+     */
+    private void await(PageLock pageLock, Request r, long timeoutMillis)
+            throws TransactionAbortedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            while (!r.isGranted && !r.isVictim && remaining > 0) {
+                remaining = r.granted.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!r.isGranted) {
+            if (r.isVictim) {
+                victimWaitNanos.addAndGet(System.nanoTime() - r.waitStart);
+            }
+            pageLock.waiters.remove(r);
+            waiting.remove(r.tid, r);
+            graph.removeWaiter(r.tid);
+            if (r.upgrade) {
+                // the transaction keeps its shared lock
+                r.upgrade = false;
+                r.isVictim = false;
+                r.isGranted = true;
+            }
+            pageLock.grantWaiters();
+            throw new TransactionAbortedException();
         }
     }
 
-    public synchronized void unlock(TransactionId tid, PageId pid) {
-        if (!tidToLock.containsKey(tid)) return;
-        ConcurrentHashMap<PageId, Lock> transactionPidToLock = tidToLock.get(tid);
-        if (!pidToLock.containsKey(pid)) return;
-        ArrayList<Lock> pageLocks = pidToLock.get(pid);
+    public void unlock(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, Request> held = tidToLock.get(tid);
+        if (held == null || held.remove(pid) == null) return;
 
-        Lock lock = transactionPidToLock.get(pid);
-        transactionPidToLock.remove(pid);
-        pageLocks.remove(lock);
+        PageLock pageLock = pageLocks.get(pid);
+        pageLock.latch.lock();
+        try {
+            Request r = pageLock.holders.remove(tid);
+            if (r != null && r.exclusive) {
+                pageLock.exclusivelyHeld = false;
+            }
+            pageLock.grantWaiters();
+        } finally {
+            pageLock.latch.unlock();
+        }
     }
 
-    public boolean holdsLock(TransactionId tid, PageId pid) {
-        if (tidToLock.containsKey(tid)) {
-            return tidToLock.get(tid).containsKey(pid);
-        }
-        else {
-            return false;
+    /**
+     * @return true if the transaction is queued for a lock on the page; for
+     *   tests, as the answer may be out of date as soon as it is returned
+     */
+    boolean isWaiting(TransactionId tid, PageId pid) {
+        Request r = waiting.get(tid);
+        return r != null && r.pageLock == pageLocks.get(pid);
+    }
+
+    /** @return true if some transaction holds an exclusive lock on the page */
+    public boolean isLockedExclusively(PageId pid) {
+        PageLock pageLock = pageLocks.get(pid);
+        if (pageLock == null) return false;
+        pageLock.latch.lock();
+        try {
+            return pageLock.exclusivelyHeld;
+        } finally {
+            pageLock.latch.unlock();
         }
     }
 
+    public boolean holdsLock(TransactionId tid, PageId pid) {
+        ConcurrentHashMap<PageId, Request> held = tidToLock.get(tid);
+        return held != null && held.containsKey(pid);
+    }
+
+    /**
+     * @return the number of transactions with an entry in the lock table;
+     *   for tests
+     */
+    int numTransactions() {
+        return tidToLock.size();
+    }
+
     public Set<PageId> getLockedPages(TransactionId tid) {
-        if (!tidToLock.containsKey(tid)) return null;
-        return tidToLock.get(tid).keySet();
+        ConcurrentHashMap<PageId, Request> held = tidToLock.get(tid);
+        if (held == null) return null;
+        return held.keySet();
     }
 
     public void unlockPages(TransactionId tid) {
-        ConcurrentHashMap<PageId, Lock> transactionPidToLock;
-
-        if (!tidToLock.containsKey(tid)) return;
-        transactionPidToLock = tidToLock.get(tid);
-        for (PageId pid : transactionPidToLock.keySet()) {
-            unlock(tid, pid);
+        ConcurrentHashMap<PageId, Request> held = tidToLock.get(tid);
+        if (held == null) return;
+        Iterator<PageId> it = held.keySet().iterator();
+        while (it.hasNext()) {
+            unlock(tid, it.next());
         }
-
         tidToLock.remove(tid);
     }
 }
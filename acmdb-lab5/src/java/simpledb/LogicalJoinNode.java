@@ -23,6 +23,25 @@ public class LogicalJoinNode {
     /** The join predicate */
     public Predicate.Op p;
 
+    /** The algorithms a join can be run with */
+    public enum Algorithm {
+        /** {@link Join}: rescan the inner child for each outer tuple */
+        NESTED_LOOP,
+        /** {@link BlockNestedLoopJoin}: rescan the inner child for each block of outer tuples */
+        BLOCK_NESTED_LOOP,
+        /** {@link IndexNestedLoopJoin}: probe an index on the inner table for each outer tuple */
+        INDEX_NESTED_LOOP,
+        /** {@link HashEquiJoin}: build a hash table on the inner child, probe it with the outer */
+        HASH,
+        /** {@link HashEquiJoin}: build a hash table on the outer child, probe it with the inner */
+        HASH_BUILD_OUTER,
+        /** {@link SortMergeJoin}: merge the children in order of their join fields */
+        SORT_MERGE
+    }
+
+    /** The algorithm chosen by the {@link JoinOptimizer} */
+    public Algorithm algorithm = Algorithm.NESTED_LOOP;
+
     public LogicalJoinNode() {
     }
 
@@ -63,6 +82,13 @@ public class LogicalJoinNode {
         return j2;
     }
     
+    /** Return a copy of this LogicalJoinNode that runs with the specified algorithm. */
+    public LogicalJoinNode withAlgorithm(Algorithm a) {
+        LogicalJoinNode j2 = new LogicalJoinNode(t1Alias,t2Alias,f1PureName,f2PureName, p);
+        j2.algorithm = a;
+        return j2;
+    }
+
     @Override public boolean equals(Object o) {
         LogicalJoinNode j2 =(LogicalJoinNode)o;
         return (j2.t1Alias.equals(t1Alias)  || j2.t1Alias.equals(t2Alias)) && (j2.t2Alias.equals(t1Alias)  || j2.t2Alias.equals(t2Alias));
@@ -2,6 +2,7 @@ package simpledb;
 import java.util.Map;
 import java.util.Vector;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
@@ -289,17 +290,18 @@ public class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        HashMap<String,LogicalScanNode> scanNodes = new HashMap<String,LogicalScanNode>();
+        HashMap<LogicalFilterNode,Field> constants = new HashMap<LogicalFilterNode,Field>();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
-            SeqScan ss = null;
             try {
-                 ss = new SeqScan(t, Database.getCatalog().getDatabaseFile(table.t).getId(), table.alias);
+                Database.getCatalog().getDatabaseFile(table.t);
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown table " + table.t);
             }
             
-            subplanMap.put(table.alias,ss);
+            scanNodes.put(table.alias,table);
             String baseTableName = Database.getCatalog().getTableName(table.t);
             statsMap.put(baseTableName, baseTableStats.get(baseTableName));
             filterSelectivities.put(table.alias, 1.0);
@@ -309,40 +311,32 @@ public class LogicalPlan {
         Iterator<LogicalFilterNode> filterIt = filters.iterator();        
         while (filterIt.hasNext()) {
             LogicalFilterNode lf = filterIt.next();
-            DbIterator subplan = subplanMap.get(lf.tableAlias);
-            if (subplan == null) {
+            LogicalScanNode table = scanNodes.get(lf.tableAlias);
+            if (table == null) {
                 throw new ParsingException("Unknown table in WHERE clause " + lf.tableAlias);
             }
 
-            Field f;
-            Type ftyp;
-            TupleDesc td = subplanMap.get(lf.tableAlias).getTupleDesc();
-            
-            try {//td.fieldNameToIndex(disambiguateName(lf.fieldPureName))
-                ftyp = td.getFieldType(td.fieldNameToIndex(lf.fieldQuantifiedName));
+            // statistics are by column of the table, not of a scan of some columns
+            TupleDesc td = Database.getCatalog().getTupleDesc(table.t);
+            int column;
+            try {
+                column = td.fieldNameToIndex(lf.fieldPureName);
             } catch (java.util.NoSuchElementException e) {
                 throw new ParsingException("Unknown field in filter expression " + lf.fieldQuantifiedName);
             }
-            if (ftyp == Type.INT_TYPE)
-                f = new IntField(new Integer(lf.c).intValue());
-            else
-                f = new StringField(lf.c, Type.STRING_LEN);
+            Field f = filterConstant(td.getFieldType(column), lf.c);
+            constants.put(lf, f);
 
-            Predicate p = null;
-            try {
-                p = new Predicate(subplan.getTupleDesc().fieldNameToIndex(lf.fieldQuantifiedName), lf.p,f);
-            } catch (NoSuchElementException e) {
-                throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
-            }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
-
-            TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
-            
-            double sel= s.estimateSelectivity(subplan.getTupleDesc().fieldNameToIndex(lf.fieldQuantifiedName), lf.p, f);
+            TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+            double sel= s.estimateSelectivity(column, lf.p, f);
             filterSelectivities.put(lf.tableAlias, filterSelectivities.get(lf.tableAlias) * sel);
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
+
+        for (LogicalScanNode table : tables) {
+            subplanMap.put(table.alias, accessPath(t, table, statsMap, constants));
+        }
         
         JoinOptimizer jo = new JoinOptimizer(this,joins);
 
@@ -381,6 +375,18 @@ public class LogicalPlan {
             if (plan2 == null)
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t2Alias);
             
+            if (lj.algorithm == LogicalJoinNode.Algorithm.INDEX_NESTED_LOOP) {
+                if (equivMap.containsKey(lj.t2Alias) || equivMap.containsValue(lj.t2Alias)) {
+                    // the inner side already joins other tables, so it has no index to probe
+                    lj = lj.withAlgorithm(LogicalJoinNode.Algorithm.NESTED_LOOP);
+                } else {
+                    // probe the index on the join field, then apply all filters on the table
+                    LogicalScanNode table = scanNodes.get(lj.t2Alias);
+                    int field = Database.getCatalog().getTupleDesc(table.t).fieldNameToIndex(lj.f2PureName);
+                    plan2 = filter(table, indexScan(t, table, field, null), null, constants);
+                }
+            }
+
             DbIterator j;
             j = jo.instantiateJoin(lj,plan1,plan2);
             subplanMap.put(t1name, j);
@@ -416,14 +422,13 @@ public class LogicalPlan {
             if (si.aggOp != null) {
                 outFields.add(groupByField!=null?1:0);
                 TupleDesc td = node.getTupleDesc();
-//                int  id;
+                int  id;
                 try {
-//                    id = 
-                    td.fieldNameToIndex(si.fname);
+                    id = td.fieldNameToIndex(si.fname);
                 } catch (NoSuchElementException e) {
                     throw new ParsingException("Unknown field " +  si.fname + " in SELECT list");
                 }
-                outTypes.add(Type.INT_TYPE);  //the type of all aggregate functions is INT
+                outTypes.add(Aggregate.aggregateType(getAggOp(si.aggOp), td.getFieldType(id)));
 
             } else if (hasAgg) {
                     if (groupByField == null) {
@@ -481,6 +486,143 @@ public class LogicalPlan {
         return new Project(outFields, outTypes, node);
     }
 
+    /** @return the constant of a filter on a field of the given type */
+    private static Field filterConstant(Type ftyp, String c) {
+        if (ftyp == Type.INT_TYPE)
+            return new IntField(new Integer(c).intValue());
+        else if (ftyp == Type.LONG_TYPE)
+            return new LongField(Long.parseLong(c));
+        else if (ftyp == Type.DOUBLE_TYPE)
+            return new DoubleField(Double.parseDouble(c));
+        else if (ftyp == Type.VARCHAR_TYPE)
+            return new VarcharField(c, Type.STRING_LEN);
+        else
+            return new StringField(c, Type.STRING_LEN);
+    }
+
+    /**
+     * Returns the plan reading a table of the query and applying its
+     * filters. The table is read by a {@link SeqScan}, unless reading it
+     * through an index on the field of one of the filters is estimated to
+     * cost less (see {@link TableStats#estimateIndexScanCost}); the index
+     * scan then applies that filter.
+     */
+    private DbIterator accessPath(TransactionId t, LogicalScanNode table,
+            Map<String,TableStats> statsMap, Map<LogicalFilterNode,Field> constants)
+            throws ParsingException {
+        TupleDesc td = Database.getCatalog().getTupleDesc(table.t);
+        TableStats s = statsMap.get(Database.getCatalog().getTableName(table.t));
+        LogicalFilterNode indexed = null;
+        double indexCost = Double.POSITIVE_INFINITY;
+        for (LogicalFilterNode lf : filters) {
+            if (lf.tableAlias.equals(table.alias)) {
+                int column = td.fieldNameToIndex(lf.fieldPureName);
+                double cost = s.estimateIndexScanCost(column, lf.p,
+                        s.estimateSelectivity(column, lf.p, constants.get(lf)));
+                if (cost < indexCost) {
+                    indexed = lf;
+                    indexCost = cost;
+                }
+            }
+        }
+        DbIterator scan;
+        if (indexed != null && indexCost < s.estimateScanCost()) {
+            scan = indexScan(t, table, td.fieldNameToIndex(indexed.fieldPureName),
+                    new IndexPredicate(indexed.p, constants.get(indexed)));
+        } else {
+            indexed = null;
+            scan = new SeqScan(t, table.t, table.alias, scanColumns(table));
+        }
+        return filter(table, scan, indexed, constants);
+    }
+
+    /**
+     * Returns a scan of a table through an index on a field: a
+     * {@link BTreeScan} if the table is an {@link IndexFile} keyed on the
+     * field, or else an {@link IndexScan} of the table's
+     * {@link SecondaryIndex} on the field, which must exist.
+     */
+    private IndexedScan indexScan(TransactionId t, LogicalScanNode table, int field,
+            IndexPredicate ipred) {
+        DbFile f = Database.getCatalog().getDatabaseFile(table.t);
+        if (f instanceof IndexFile && ((IndexFile) f).keyField() == field) {
+            return new BTreeScan(t, table.t, table.alias, ipred);
+        }
+        return new IndexScan(t, Database.getCatalog().getIndex(table.t, field), table.alias, ipred);
+    }
+
+    /**
+     * Returns the filters of the query on a table over a scan of the table.
+     *
+     * @param applied a filter the scan applies itself, which is left out
+     *   since an {@link IndexedScan} checks its predicate on every tuple it
+     *   returns, or null
+     */
+    private DbIterator filter(LogicalScanNode table, DbIterator scan,
+            LogicalFilterNode applied, Map<LogicalFilterNode,Field> constants)
+            throws ParsingException {
+        DbIterator plan = scan;
+        for (LogicalFilterNode lf : filters) {
+            if (lf == applied || !lf.tableAlias.equals(table.alias)) {
+                continue;
+            }
+            Predicate p = null;
+            try {
+                p = new Predicate(scan.getTupleDesc().fieldNameToIndex(lf.fieldQuantifiedName), lf.p,
+                        constants.get(lf));
+            } catch (NoSuchElementException e) {
+                throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
+            }
+            plan = new Filter(p, plan);
+            if (scan instanceof SeqScan) {
+                // lets the scan skip pages; filters do not change the fields, so p applies to it
+                ((SeqScan) scan).pushPredicate(p);
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Returns the columns of a scanned table that the query refers to, in
+     * table order, or null if it needs all of them (e.g. for SELECT *), so
+     * the scan need not read the others.
+     */
+    private int[] scanColumns(LogicalScanNode table) {
+        HashSet<String> used = new HashSet<String>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.equals("null.*")) {
+                return null;
+            }
+            used.add(si.fname);
+        }
+        for (LogicalFilterNode lf : filters) {
+            used.add(lf.tableAlias + "." + lf.fieldPureName);
+        }
+        for (LogicalJoinNode lj : joins) {
+            used.add(lj.t1Alias + "." + lj.f1PureName);
+            used.add(lj.t2Alias + "." + lj.f2PureName);
+        }
+        used.add(aggField);
+        used.add(groupByField);
+        used.add(oByField);
+
+        TupleDesc td = Database.getCatalog().getTupleDesc(table.t);
+        ArrayList<Integer> columns = new ArrayList<Integer>();
+        for (int i = 0; i < td.numFields(); i++) {
+            if (used.contains(table.alias + "." + td.getFieldName(i))) {
+                columns.add(i);
+            }
+        }
+        if (columns.isEmpty() || columns.size() == td.numFields()) {
+            return null;
+        }
+        int[] result = new int[columns.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = columns.get(i);
+        }
+        return result;
+    }
+
     public static void main(String argv[]) {
         // construct a 3-column table schema
         Type types[] = new Type[]{ Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE };
@@ -33,6 +33,12 @@ public class LogicalSubplanJoinNode extends LogicalJoinNode {
         return (j2.t1Alias.equals(t1Alias)  && j2.f1PureName.equals(f1PureName) && ((LogicalSubplanJoinNode)o).subPlan.equals(subPlan));
     }
     
+    public LogicalSubplanJoinNode withAlgorithm(Algorithm a) {
+        LogicalSubplanJoinNode j2 = new LogicalSubplanJoinNode(t1Alias,f1PureName,subPlan, p);
+        j2.algorithm = a;
+        return j2;
+    }
+
     public LogicalSubplanJoinNode swapInnerOuter() {
         LogicalSubplanJoinNode j2 = new LogicalSubplanJoinNode(t1Alias,f1PureName,subPlan, p);
         return j2;
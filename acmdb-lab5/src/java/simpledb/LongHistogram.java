@@ -0,0 +1,123 @@
+package simpledb;
+
+/**
+ * A class to represent a fixed-width histogram over a single 64-bit integer
+ * field, like {@link IntHistogram}. The width of a bucket is kept as a
+ * double, so the histogram covers any range of longs, e.g. timestamps,
+ * without overflowing.
+ */
+public class LongHistogram {
+
+    private final int[] histogram;
+    private final long min;
+    private final long max;
+    /** The number of distinct values each bucket covers, at least 1. */
+    private final double width;
+    private int numTuples;
+
+    /**
+     * Create a new LongHistogram.
+     *
+     * @param buckets The number of buckets to split the input value into;
+     *   fewer are used if the range holds fewer values.
+     * @param min The minimum value that will ever be passed to this class for histogramming
+     * @param max The maximum value that will ever be passed to this class for histogramming
+     */
+    public LongHistogram(int buckets, long min, long max) {
+        this.min = min;
+        this.max = max;
+        double values = (double) max - (double) min + 1;
+        this.histogram = new int[(int) Math.max(1, Math.min(buckets, values))];
+        this.width = values / histogram.length;
+    }
+
+    private int bucket(long v) {
+        return (int) Math.min(histogram.length - 1, ((double) v - min) / width);
+    }
+
+    /**
+     * Add a value to the set of values that you are keeping a histogram of.
+     * @param v Value to add to the histogram
+     */
+    public void addValue(long v) {
+        histogram[bucket(v)]++;
+        numTuples++;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this
+     * table, assuming values are spread evenly within each bucket.
+     *
+     * @param op Operator
+     * @param v Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, long v) {
+        if (numTuples == 0) {
+            return 0;
+        }
+        double selectivity = 0;
+        switch (op) {
+            case EQUALS:
+            case LIKE:
+                selectivity = equal(v);
+                break;
+            case NOT_EQUALS:
+                selectivity = 1 - equal(v);
+                break;
+            case LESS_THAN:
+                selectivity = below(v);
+                break;
+            case LESS_THAN_OR_EQ:
+                selectivity = below(v) + equal(v);
+                break;
+            case GREATER_THAN:
+                selectivity = 1 - below(v) - equal(v);
+                break;
+            case GREATER_THAN_OR_EQ:
+                selectivity = 1 - below(v);
+                break;
+        }
+        return Math.max(0, Math.min(1, selectivity));
+    }
+
+    /** @return the fraction of values equal to v */
+    private double equal(long v) {
+        if (v < min || v > max) {
+            return 0;
+        }
+        return histogram[bucket(v)] / width / numTuples;
+    }
+
+    /** @return the fraction of values less than v */
+    private double below(long v) {
+        if (v <= min) {
+            return 0;
+        }
+        if (v > max) {
+            return 1;
+        }
+        int bin = bucket(v);
+        double count = 0;
+        for (int i = 0; i < bin; ++i) {
+            count += histogram[i];
+        }
+        double left = min + bin * width;
+        count += histogram[bin] * Math.min(1, (v - left) / width);
+        return count / numTuples;
+    }
+
+    /**
+     * @return the average selectivity of this histogram.
+     */
+    public double avgSelectivity() {
+        return 1.0;
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        return "LongHistogram[" + min + ", " + max + "] " + java.util.Arrays.toString(histogram);
+    }
+}
@@ -0,0 +1,109 @@
+package simpledb;
+
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+
+/**
+ * LoserTree merges k sorted inputs into one sorted stream. It is a
+ * tournament tree over the head tuples of the inputs: each internal node
+ * holds the input that lost the match played there, and the root the
+ * overall winner. Taking the winner's next tuple replays only the matches on
+ * the path from its leaf to the root, so each tuple costs log2(k)
+ * comparisons, about half as many as with a binary heap.
+ * <p>
+ * Of equal tuples, the one from the input with the lower index wins, so a
+ * merge of runs of consecutive parts of an input is a stable sort.
+ */
+class LoserTree {
+
+    private final DbFileIterator[] inputs;
+    private final Comparator<Tuple> comparator;
+    /** The next tuple of each input, or null if it is exhausted */
+    private final Tuple[] heads;
+    /**
+     * tree[0] is the winning input; tree[1..k-1] are the losers at the
+     * internal nodes, where the children of node n are 2n and 2n+1, and
+     * node k+i is the leaf of input i.
+     */
+    private final int[] tree;
+
+    /**
+     * Creates a merge of opened inputs, reading the first tuple of each.
+     *
+     * @param inputs
+     *            at least one input, each sorted by the comparator
+     */
+    LoserTree(DbFileIterator[] inputs, Comparator<Tuple> comparator)
+            throws DbException, TransactionAbortedException {
+        this.inputs = inputs;
+        this.comparator = comparator;
+        this.heads = new Tuple[inputs.length];
+        this.tree = new int[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            heads[i] = inputs[i].hasNext() ? inputs[i].next() : null;
+        }
+        tree[0] = play(1);
+    }
+
+    /**
+     * Plays the matches of the subtree at a node, recording the losers.
+     *
+     * @return the input that wins the subtree
+     */
+    private int play(int node) {
+        int k = inputs.length;
+        if (node >= k) {
+            return node - k;
+        }
+        int a = play(2 * node);
+        int b = play(2 * node + 1);
+        if (beats(a, b)) {
+            tree[node] = b;
+            return a;
+        }
+        tree[node] = a;
+        return b;
+    }
+
+    /** @return whether the head of input a comes before the head of input b */
+    private boolean beats(int a, int b) {
+        if (heads[b] == null) {
+            return heads[a] != null || a < b;
+        }
+        if (heads[a] == null) {
+            return false;
+        }
+        int c = comparator.compare(heads[a], heads[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    boolean hasNext() {
+        return heads[tree[0]] != null;
+    }
+
+    /** @return the smallest head tuple, replaced by the next of its input */
+    Tuple next() throws DbException, TransactionAbortedException {
+        int winner = tree[0];
+        Tuple t = heads[winner];
+        if (t == null) {
+            throw new NoSuchElementException();
+        }
+        heads[winner] = inputs[winner].hasNext() ? inputs[winner].next() : null;
+        for (int node = (winner + inputs.length) / 2; node > 0; node /= 2) {
+            if (beats(tree[node], winner)) {
+                int loser = winner;
+                winner = tree[node];
+                tree[node] = loser;
+            }
+        }
+        tree[0] = winner;
+        return t;
+    }
+
+    /** Closes the inputs. */
+    void close() {
+        for (DbFileIterator input : inputs) {
+            input.close();
+        }
+    }
+}
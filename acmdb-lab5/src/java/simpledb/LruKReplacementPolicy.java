@@ -0,0 +1,127 @@
+package simpledb;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). The victim is the page whose
+ * K-th most recent reference lies furthest in the past; pages referenced
+ * fewer than K times count as infinitely old and go first, least recently
+ * used first. Reference histories of evicted pages are retained for a while,
+ * so a page that is re-read soon after eviction keeps its history.
+ * <p>
+ * Time is a logical clock that ticks once per reference.
+ */
+public class LruKReplacementPolicy implements ReplacementPolicy {
+
+    private final int k;
+    private final int maxRetained;
+    private long clock;
+    private long nextSeq;
+
+    /** Histories of resident pages. */
+    private final HashMap<PageId, History> resident;
+    /** Resident histories, ordered by eviction priority. */
+    private final TreeSet<History> byPriority;
+    /** Histories of evicted pages, oldest first. */
+    private final LinkedHashMap<PageId, History> retained;
+
+    /** The last K reference times of one page. */
+    private static class History implements Comparable<History> {
+        final PageId pid;
+        final long[] times;
+        int count;
+        long seq;
+
+        History(PageId pid, int k) {
+            this.pid = pid;
+            this.times = new long[k];
+        }
+
+        void reference(long time) {
+            System.arraycopy(times, 0, times, 1, times.length - 1);
+            times[0] = time;
+            count = Math.min(count + 1, times.length);
+        }
+
+        /** Backward K-distance as a timestamp; Long.MIN_VALUE if infinite. */
+        long kthTime() {
+            return count == times.length ? times[times.length - 1] : Long.MIN_VALUE;
+        }
+
+        public int compareTo(History o) {
+            int c = Long.compare(kthTime(), o.kthTime());
+            if (c == 0) c = Long.compare(times[0], o.times[0]);
+            if (c == 0) c = Long.compare(seq, o.seq);
+            return c;
+        }
+    }
+
+    /**
+     * @param k the number of references tracked per page
+     * @param capacity the number of pages managed; as many evicted
+     *   histories are retained
+     */
+    public LruKReplacementPolicy(int k, int capacity) {
+        this.k = k;
+        this.maxRetained = Math.max(1, capacity);
+        resident = new HashMap<>();
+        byPriority = new TreeSet<>();
+        retained = new LinkedHashMap<>();
+    }
+
+    public void pageAdded(PageId pid) {
+        History h = retained.remove(pid);
+        if (h == null) {
+            h = new History(pid, k);
+        }
+        h.seq = nextSeq++;
+        h.reference(++clock);
+        resident.put(pid, h);
+        byPriority.add(h);
+    }
+
+    public void pageAccessed(PageId pid) {
+        History h = resident.get(pid);
+        if (h != null) {
+            // the key changes, so re-position the history
+            byPriority.remove(h);
+            h.reference(++clock);
+            byPriority.add(h);
+        }
+    }
+
+    public void pageRemoved(PageId pid) {
+        History h = resident.remove(pid);
+        if (h != null) {
+            byPriority.remove(h);
+        }
+    }
+
+    public PageId evict(Predicate<PageId> evictable) {
+        Iterator<History> it = byPriority.iterator();
+        while (it.hasNext()) {
+            History h = it.next();
+            if (evictable.test(h.pid)) {
+                it.remove();
+                resident.remove(h.pid);
+                retain(h);
+                return h.pid;
+            }
+        }
+        return null;
+    }
+
+    private void retain(History h) {
+        retained.put(h.pid, h);
+        if (retained.size() > maxRetained) {
+            Iterator<Map.Entry<PageId, History>> it = retained.entrySet().iterator();
+            it.next();
+            it.remove();
+        }
+    }
+}
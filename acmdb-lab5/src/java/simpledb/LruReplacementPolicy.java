@@ -0,0 +1,42 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Least-recently-used replacement, the BufferPool's default policy.
+ */
+public class LruReplacementPolicy implements ReplacementPolicy {
+
+    /** Access-ordered; the head is the least recently used page. */
+    private final LinkedHashMap<PageId, Boolean> order;
+
+    public LruReplacementPolicy() {
+        order = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public void pageAdded(PageId pid) {
+        order.put(pid, Boolean.TRUE);
+    }
+
+    public void pageAccessed(PageId pid) {
+        order.get(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        order.remove(pid);
+    }
+
+    public PageId evict(Predicate<PageId> evictable) {
+        Iterator<PageId> it = order.keySet().iterator();
+        while (it.hasNext()) {
+            PageId pid = it.next();
+            if (evictable.test(pid)) {
+                it.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+}
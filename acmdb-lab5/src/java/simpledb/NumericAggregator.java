@@ -0,0 +1,148 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Knows how to compute some aggregate over a set of LongFields or
+ * DoubleFields. Each group keeps its count and running value as primitives,
+ * so merging a tuple allocates nothing once its group exists.
+ * <p>
+ * MIN, MAX, SUM and AVG are of the type of the aggregate field (AVG of longs
+ * rounds towards zero, like that of ints); COUNT is an int.
+ */
+public class NumericAggregator implements Aggregator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The running aggregate of one group. */
+    private static class Group {
+        long count;
+        long longValue;
+        double doubleValue;
+    }
+
+    private final int gbField;
+    private final Type gbFieldType;
+    private final int aField;
+    private final Type aFieldType;
+    private final Op op;
+    private final LinkedHashMap<Field, Group> groups;
+
+    /**
+     * Aggregate constructor
+     *
+     * @param gbfield
+     *            the 0-based index of the group-by field in the tuple, or
+     *            NO_GROUPING if there is no grouping
+     * @param gbfieldtype
+     *            the type of the group by field (e.g., Type.INT_TYPE), or null
+     *            if there is no grouping
+     * @param afield
+     *            the 0-based index of the aggregate field in the tuple
+     * @param afieldtype
+     *            the type of the aggregate field, Type.LONG_TYPE or
+     *            Type.DOUBLE_TYPE
+     * @param what
+     *            the aggregation operator
+     * @throws IllegalArgumentException if the type of the aggregate field is
+     *            not numeric, or what is not MIN, MAX, SUM, AVG or COUNT
+     */
+    public NumericAggregator(int gbfield, Type gbfieldtype, int afield, Type afieldtype, Op what) {
+        if (afieldtype != Type.LONG_TYPE && afieldtype != Type.DOUBLE_TYPE) {
+            throw new IllegalArgumentException("not a numeric type: " + afieldtype);
+        }
+        if (what == Op.SUM_COUNT || what == Op.SC_AVG) {
+            throw new IllegalArgumentException("unsupported aggregate " + what);
+        }
+        this.gbField = gbfield;
+        this.gbFieldType = gbfieldtype;
+        this.aField = afield;
+        this.aFieldType = afieldtype;
+        this.op = what;
+        this.groups = new LinkedHashMap<>();
+    }
+
+    /**
+     * Merge a new tuple into the aggregate, grouping as indicated in the
+     * constructor
+     *
+     * @param tup
+     *            the Tuple containing an aggregate field and a group-by field
+     */
+    public void mergeTupleIntoGroup(Tuple tup) {
+        Field key = gbField == NO_GROUPING ? null : tup.getField(gbField);
+        Group group = groups.get(key);
+        boolean first = group == null;
+        if (first) {
+            group = new Group();
+            groups.put(key, group);
+        }
+        group.count++;
+        if (op == Op.COUNT) {
+            return;
+        }
+
+        Field value = tup.getField(aField);
+        if (aFieldType == Type.LONG_TYPE) {
+            long v = ((LongField) value).getValue();
+            if (first) {
+                group.longValue = v;
+            } else if (op == Op.MIN) {
+                group.longValue = Math.min(group.longValue, v);
+            } else if (op == Op.MAX) {
+                group.longValue = Math.max(group.longValue, v);
+            } else {
+                group.longValue += v;
+            }
+        } else {
+            double v = ((DoubleField) value).getValue();
+            if (first) {
+                group.doubleValue = v;
+            } else if (op == Op.MIN) {
+                group.doubleValue = Math.min(group.doubleValue, v);
+            } else if (op == Op.MAX) {
+                group.doubleValue = Math.max(group.doubleValue, v);
+            } else {
+                group.doubleValue += v;
+            }
+        }
+    }
+
+    private Field result(Group group) {
+        if (op == Op.COUNT) {
+            return new IntField((int) group.count);
+        }
+        if (aFieldType == Type.LONG_TYPE) {
+            return new LongField(op == Op.AVG ? group.longValue / group.count : group.longValue);
+        }
+        return new DoubleField(op == Op.AVG ? group.doubleValue / group.count : group.doubleValue);
+    }
+
+    /**
+     * Create a DbIterator over group aggregate results.
+     *
+     * @return a DbIterator whose tuples are the pair (groupVal, aggregateVal)
+     *         if using group, or a single (aggregateVal) if no grouping. The
+     *         aggregateVal is determined by the type of aggregate specified in
+     *         the constructor.
+     */
+    public DbIterator iterator() {
+        Type resultType = Aggregate.aggregateType(op, aFieldType);
+        TupleDesc td = gbField == NO_GROUPING
+                ? new TupleDesc(new Type[]{resultType})
+                : new TupleDesc(new Type[]{gbFieldType, resultType});
+        ArrayList<Tuple> results = new ArrayList<>(groups.size());
+        for (Map.Entry<Field, Group> entry : groups.entrySet()) {
+            Tuple tuple = new Tuple(td);
+            if (gbField == NO_GROUPING) {
+                tuple.setField(0, result(entry.getValue()));
+            } else {
+                tuple.setField(0, entry.getKey());
+                tuple.setField(1, result(entry.getValue()));
+            }
+            results.add(tuple);
+        }
+        return new TupleIterator(td, results);
+    }
+
+}
@@ -41,10 +41,8 @@ public class OperatorCardinality {
                     hasJoinPK = updateOperatorCardinality(
                             (Operator) children[0], tableAliasToId, tableStats);
                     childC = ((Operator) children[0]).getEstimatedCardinality();
-                } else if (children[0] instanceof SeqScan) {
-                    childC = tableStats.get(
-                            ((SeqScan) children[0]).getTableName())
-                            .estimateTableCardinality(1.0);
+                } else if (isTableScan(children[0])) {
+                    childC = scanCardinality(children[0], tableStats);
                 }
             }
             o.setEstimatedCardinality(childC);
@@ -77,10 +75,9 @@ public class OperatorCardinality {
                 f.setEstimatedCardinality((int) (oChild
                         .getEstimatedCardinality() * selectivity) + 1);
                 return hasJoinPK;
-            } else if (child instanceof SeqScan) {
-                f.setEstimatedCardinality((int) (tableStats.get(
-                        ((SeqScan) child).getTableName())
-                        .estimateTableCardinality(1.0) * selectivity) + 1);
+            } else if (isTableScan(child)) {
+                f.setEstimatedCardinality((int) (scanCardinality(child, tableStats)
+                        * selectivity) + 1);
                 return false;
             }
         }
@@ -120,9 +117,8 @@ public class OperatorCardinality {
             child1HasJoinPK = pk || child1HasJoinPK;
             child1Card = child1O.getEstimatedCardinality();
             child1Card = child1Card > 0 ? child1Card : 1;
-        } else if (child1 instanceof SeqScan) {
-            child1Card = (int) (tableStats.get(((SeqScan) child1)
-                    .getTableName()).estimateTableCardinality(1.0));
+        } else if (isTableScan(child1)) {
+            child1Card = scanCardinality(child1, tableStats);
         }
 
         if (child2 instanceof Operator) {
@@ -132,9 +128,8 @@ public class OperatorCardinality {
             child2HasJoinPK = pk || child2HasJoinPK;
             child2Card = child2O.getEstimatedCardinality();
             child2Card = child2Card > 0 ? child2Card : 1;
-        } else if (child2 instanceof SeqScan) {
-            child2Card = (int) (tableStats.get(((SeqScan) child2)
-                    .getTableName()).estimateTableCardinality(1.0));
+        } else if (isTableScan(child2)) {
+            child2Card = scanCardinality(child2, tableStats);
         }
 
         j.setEstimatedCardinality(JoinOptimizer.estimateTableJoinCardinality(j
@@ -177,9 +172,8 @@ public class OperatorCardinality {
             child1HasJoinPK = pk || child1HasJoinPK;
             child1Card = child1O.getEstimatedCardinality();
             child1Card = child1Card > 0 ? child1Card : 1;
-        } else if (child1 instanceof SeqScan) {
-            child1Card = (int) (tableStats.get(((SeqScan) child1)
-                    .getTableName()).estimateTableCardinality(1.0));
+        } else if (isTableScan(child1)) {
+            child1Card = scanCardinality(child1, tableStats);
         }
 
         if (child2 instanceof Operator) {
@@ -189,9 +183,8 @@ public class OperatorCardinality {
             child2HasJoinPK = pk || child2HasJoinPK;
             child2Card = child2O.getEstimatedCardinality();
             child2Card = child2Card > 0 ? child2Card : 1;
-        } else if (child2 instanceof SeqScan) {
-            child2Card = (int) (tableStats.get(((SeqScan) child2)
-                    .getTableName()).estimateTableCardinality(1.0));
+        } else if (isTableScan(child2)) {
+            child2Card = scanCardinality(child2, tableStats);
         }
 
         j.setEstimatedCardinality(JoinOptimizer.estimateTableJoinCardinality(j
@@ -219,9 +212,8 @@ public class OperatorCardinality {
             return hasJoinPK;
         }
 
-        if (child instanceof SeqScan) {
-            childCard = (int) (tableStats.get(((SeqScan) child).getTableName())
-                    .estimateTableCardinality(1.0));
+        if (isTableScan(child)) {
+            childCard = scanCardinality(child, tableStats);
         }
 
         String[] tmp = a.groupFieldName().split("[.]");
@@ -244,4 +236,41 @@ public class OperatorCardinality {
         a.setEstimatedCardinality(childCard);
         return hasJoinPK;
     }
+
+    /**
+     * @return whether an iterator reads a base table: a {@link SeqScan},
+     *         {@link BTreeScan} or {@link IndexScan}
+     */
+    private static boolean isTableScan(DbIterator it) {
+        return it instanceof SeqScan || it instanceof BTreeScan || it instanceof IndexScan;
+    }
+
+    /**
+     * @return the estimated cardinality of a scan of a base table; an index
+     *         scan returns the tuples matching its predicate
+     */
+    private static int scanCardinality(DbIterator scan,
+            Map<String, TableStats> tableStats) {
+        if (scan instanceof SeqScan) {
+            return tableStats.get(((SeqScan) scan).getTableName())
+                    .estimateTableCardinality(1.0);
+        }
+        String tableName;
+        IndexPredicate ipred = ((IndexedScan) scan).getPredicate();
+        int field = 0;
+        if (scan instanceof BTreeScan) {
+            tableName = ((BTreeScan) scan).getTableName();
+            if (ipred != null) {
+                field = ((IndexFile) Database.getCatalog().getDatabaseFile(
+                        Database.getCatalog().getTableId(tableName))).keyField();
+            }
+        } else {
+            tableName = ((IndexScan) scan).getTableName();
+            field = ((IndexScan) scan).getIndex().getField();
+        }
+        TableStats s = tableStats.get(tableName);
+        double selectivity = ipred == null ? 1.0
+                : s.estimateSelectivity(field, ipred.getOp(), ipred.getField());
+        return s.estimateTableCardinality(selectivity);
+    }
 }
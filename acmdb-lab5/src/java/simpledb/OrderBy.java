@@ -1,13 +1,50 @@
 package simpledb;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * OrderBy is an operator that implements a relational ORDER BY.
+ * <p>
+ * A child that fits in a memory budget is sorted in memory. A larger child
+ * is sorted externally: each budget of its tuples is cut into slices that
+ * the threads of a shared pool sort and write to {@link SpillFile}s as
+ * sorted runs, and the runs are merged with a {@link LoserTree}, in passes
+ * of at most one run per page of the budget. The sort is stable.
  */
 public class OrderBy extends Operator {
 
     private static final long serialVersionUID = 1L;
+
+    /** The default memory budget, in pages of {@link BufferPool#getPageSize()} bytes */
+    public static final int DEFAULT_MEMORY_PAGES = 256;
+    /** The most runs merged at once */
+    static final int MAX_FAN_IN = 64;
+    /** The fewest tuples worth sorting on a thread of their own */
+    private static final int MIN_SLICE = 1024;
+    /** Number of threads sorting runs. */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ThreadPoolExecutor SORTERS;
+    static {
+        // idle threads exit, so a finished sort leaves nothing behind
+        SORTERS = new ThreadPoolExecutor(THREADS, THREADS, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "simpledb-sort");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        SORTERS.allowCoreThreadTimeOut(true);
+    }
+
     private DbIterator child;
     private TupleDesc td;
     private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
@@ -15,6 +52,11 @@ public class OrderBy extends Operator {
     private String orderByFieldName;
     private Iterator<Tuple> it;
     private boolean asc;
+    private int memoryPages = DEFAULT_MEMORY_PAGES;
+    /** The sorted runs left to merge, or empty if the child fit in memory */
+    private final ArrayList<SpillFile> runs = new ArrayList<SpillFile>();
+    private int runCount;
+    private transient LoserTree merge;
 
     /**
      * Creates a new OrderBy node over the tuples from the iterator.
@@ -53,24 +95,177 @@ public class OrderBy extends Operator {
         return td;
     }
 
+    /**
+     * Sets how many pages of tuples the sort may hold in memory, counting the
+     * tuples by their estimated size there. Takes effect on the next open.
+     */
+    public void setMemoryPages(int pages) {
+        if (pages < 1) {
+            throw new IllegalArgumentException("memory budget must be at least a page");
+        }
+        memoryPages = pages;
+    }
+
+    /**
+     * @return the number of sorted runs the child was spilled to when the
+     *         operator was last opened, or 0 if it was sorted in memory
+     */
+    public int getRunCount() {
+        return runCount;
+    }
+
     public void open() throws DbException, NoSuchElementException,
             TransactionAbortedException {
         child.open();
-        // load all the tuples in a collection, and sort it
-        while (child.hasNext())
-            childTups.add((Tuple) child.next());
-        Collections.sort(childTups, new TupleComparator(orderByField, asc));
-        it = childTups.iterator();
+        long budget = (long) memoryPages * BufferPool.getPageSize();
+        long bytes = 0;
+        runCount = 0;
+        // load tuples into a collection; sort it if it holds all of them
+        while (child.hasNext()) {
+            Tuple t = child.next();
+            childTups.add(t);
+            bytes += SpillFile.memorySize(t);
+            if (bytes >= budget && child.hasNext()) {
+                spill();
+                bytes = 0;
+            }
+        }
+        if (runs.isEmpty()) {
+            Collections.sort(childTups, new TupleComparator(orderByField, asc));
+            it = childTups.iterator();
+        } else {
+            spill();
+            mergeRuns();
+            merge = newMerge();
+        }
         super.open();
     }
 
+    /**
+     * Sorts the tuples in memory as runs, one per slice of them, in parallel,
+     * and writes the runs out.
+     */
+    private void spill() throws DbException {
+        int slices = Math.max(1, Math.min(THREADS, childTups.size() / MIN_SLICE));
+        ArrayList<Future<SpillFile>> sorted = new ArrayList<Future<SpillFile>>();
+        for (int i = 0; i < slices; i++) {
+            final List<Tuple> slice = new ArrayList<Tuple>(childTups.subList(
+                    i * childTups.size() / slices, (i + 1) * childTups.size() / slices));
+            sorted.add(SORTERS.submit(new Callable<SpillFile>() {
+                public SpillFile call() throws IOException {
+                    Collections.sort(slice, new TupleComparator(orderByField, asc));
+                    SpillFile run = new SpillFile(td);
+                    try {
+                        for (Tuple t : slice) {
+                            run.add(t);
+                        }
+                        run.finish();
+                    } catch (IOException e) {
+                        run.delete();
+                        throw e;
+                    }
+                    return run;
+                }
+            }));
+        }
+        childTups.clear();
+        DbException failure = null;
+        for (Future<SpillFile> f : sorted) {
+            try {
+                runs.add(f.get());
+                runCount++;
+            } catch (ExecutionException e) {
+                failure = new DbException("could not write sorted run: " + e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new DbException("interrupted while sorting");
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Merges consecutive groups of runs into longer runs until there are few
+     * enough to merge at once.
+     */
+    private void mergeRuns() throws DbException, TransactionAbortedException {
+        int fanIn = Math.max(2, Math.min(MAX_FAN_IN, memoryPages));
+        while (runs.size() > fanIn) {
+            ArrayList<SpillFile> merged = new ArrayList<SpillFile>();
+            boolean done = false;
+            try {
+                for (int from = 0; from < runs.size(); from += fanIn) {
+                    List<SpillFile> group = runs.subList(from, Math.min(from + fanIn, runs.size()));
+                    LoserTree m = newMerge(group);
+                    try {
+                        SpillFile run = new SpillFile(td);
+                        merged.add(run);
+                        while (m.hasNext()) {
+                            run.add(m.next());
+                        }
+                        run.finish();
+                    } catch (IOException e) {
+                        throw new DbException("could not write sorted run: " + e.getMessage());
+                    } finally {
+                        m.close();
+                    }
+                    for (SpillFile f : group) {
+                        f.delete();
+                    }
+                }
+                done = true;
+            } finally {
+                if (!done) {
+                    // close() removes the runs, but not these
+                    for (SpillFile f : merged) {
+                        f.delete();
+                    }
+                }
+            }
+            runs.clear();
+            runs.addAll(merged);
+        }
+    }
+
+    private LoserTree newMerge() throws DbException, TransactionAbortedException {
+        return newMerge(runs);
+    }
+
+    /** @return a merge of sorted runs */
+    private LoserTree newMerge(List<SpillFile> group) throws DbException,
+            TransactionAbortedException {
+        DbFileIterator[] inputs = new DbFileIterator[group.size()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = group.get(i).iterator();
+            inputs[i].open();
+        }
+        return new LoserTree(inputs, new TupleComparator(orderByField, asc));
+    }
+
     public void close() {
         super.close();
+        child.close();
+        childTups.clear();
         it = null;
+        if (merge != null) {
+            merge.close();
+            merge = null;
+        }
+        for (SpillFile run : runs) {
+            run.delete();
+        }
+        runs.clear();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
-        it = childTups.iterator();
+        if (merge != null) {
+            merge.close();
+            merge = newMerge();
+        } else {
+            it = childTups.iterator();
+        }
     }
 
     /**
@@ -82,6 +277,9 @@ public class OrderBy extends Operator {
      */
     protected Tuple fetchNext() throws NoSuchElementException,
             TransactionAbortedException, DbException {
+        if (merge != null) {
+            return merge.hasNext() ? merge.next() : null;
+        }
         if (it != null && it.hasNext()) {
             return it.next();
         } else
@@ -1,5 +1,7 @@
 package simpledb;
 
+import java.nio.ByteBuffer;
+
 /**
  * Page is the interface used to represent pages that are resident in the
  * BufferPool.  Typically, DbFiles will read and write pages from disk.
@@ -46,6 +48,18 @@ public interface Page {
 
     public byte[] getPageData();
 
+  /**
+   * Writes the bytes that {@link #getPageData} returns into the buffer at its
+   * current position, and advances the position past them. Lets a caller
+   * serialize the page into a buffer it reuses. Pages should override this
+   * to write their contents directly, without building an array first.
+   *
+   * @param buf the buffer to write to, with room for the page
+   */
+    public default void writePageData(ByteBuffer buf) {
+        buf.put(getPageData());
+    }
+
     /** Provide a representation of this page before any modifications were made
         to it.  Used by recovery.
     */
@@ -0,0 +1,182 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * PageChannel keeps one FileChannel open on the file backing a DbFile and
+ * moves pages with positional reads and writes, so a page transfer is a
+ * single pread/pwrite with no open, seek or close around it. Positional
+ * calls never move the channel's position, which lets any number of threads
+ * share the channel without further locking.
+ * <p>
+ * The channel is opened on first use, so a DbFile can still be constructed
+ * for a file that does not exist yet, and reopened if it was closed (e.g.
+ * because a thread was interrupted in the middle of an I/O).
+ * <p>
+ * Pages can also be read through {@link #map}, which returns a read-only view
+ * into a memory-mapped segment of the file instead of copying the bytes.
+ * Segments are mapped on demand and remapped when the file has grown past the
+ * end of a partially mapped segment. Writes still go through the channel;
+ * the mappings are shared with the OS page cache, so they see them at once.
+ */
+class PageChannel {
+
+    /** Size of one mapped segment in bytes. */
+    static final int SEGMENT_SIZE = 1 << 22;
+
+    private final File file;
+    private volatile FileChannel channel;
+    /** Mapped segments by index, replaced copy-on-write under this monitor. */
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    /** Per-thread buffer pages are serialized into by {@link #write(Page, long)}. */
+    private static final ThreadLocal<ByteBuffer> PAGE_BUFFER = new ThreadLocal<>();
+
+    PageChannel(File file) {
+        this.file = file;
+    }
+
+    private FileChannel channel() throws IOException {
+        FileChannel fc = channel;
+        if (fc == null || !fc.isOpen()) {
+            synchronized (this) {
+                fc = channel;
+                if (fc == null || !fc.isOpen()) {
+                    fc = new RandomAccessFile(file, "rw").getChannel();
+                    channel = fc;
+                }
+            }
+        }
+        return fc;
+    }
+
+    /**
+     * Reads bytes starting at the given file offset until data is full or
+     * the end of the file is reached; bytes past the end are left untouched.
+     *
+     * @return the number of bytes read
+     */
+    int read(byte[] data, long offset) throws IOException {
+        FileChannel fc = channel();
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            int n = fc.read(buf, offset + buf.position());
+            if (n < 0) {
+                break;
+            }
+        }
+        return buf.position();
+    }
+
+    /** Writes all of data at the given file offset, extending the file if needed. */
+    void write(byte[] data, long offset) throws IOException {
+        write(ByteBuffer.wrap(data), offset);
+    }
+
+    /**
+     * Writes a page of {@link BufferPool#getPageSize()} bytes at the given
+     * file offset. The page is serialized into a direct buffer kept by the
+     * calling thread, so writing allocates nothing and the bytes are not
+     * copied again on their way to the file.
+     */
+    void write(Page page, long offset) throws IOException {
+        int len = BufferPool.getPageSize();
+        ByteBuffer buf = PAGE_BUFFER.get();
+        if (buf == null || buf.capacity() != len) {
+            buf = ByteBuffer.allocateDirect(len);
+            PAGE_BUFFER.set(buf);
+        }
+        buf.clear();
+        page.writePageData(buf);
+        buf.flip();
+        write(buf, offset);
+    }
+
+    private void write(ByteBuffer buf, long offset) throws IOException {
+        FileChannel fc = channel();
+        int start = buf.position();
+        while (buf.hasRemaining()) {
+            fc.write(buf, offset + buf.position() - start);
+        }
+    }
+
+    /**
+     * Returns a read-only view of len bytes at the given file offset from a
+     * mapped segment of the file, or null if those bytes are not all in the
+     * file or straddle two segments; callers then fall back to {@link #read}.
+     */
+    ByteBuffer map(long offset, int len) throws IOException {
+        int index = (int) (offset / SEGMENT_SIZE);
+        int start = (int) (offset % SEGMENT_SIZE);
+        if (start + len > SEGMENT_SIZE) {
+            return null;
+        }
+        MappedByteBuffer[] segs = segments;
+        MappedByteBuffer seg = index < segs.length ? segs[index] : null;
+        if (seg == null || seg.capacity() < start + len) {
+            seg = remap(index, start + len);
+            if (seg == null) {
+                return null;
+            }
+        }
+        ByteBuffer view = seg.duplicate();
+        view.position(start);
+        view.limit(start + len);
+        return view.slice();
+    }
+
+    /**
+     * Maps segment index as far as the file currently extends, provided that
+     * covers at least the first needed bytes of the segment.
+     */
+    private synchronized MappedByteBuffer remap(int index, int needed) throws IOException {
+        MappedByteBuffer[] segs = segments;
+        MappedByteBuffer seg = index < segs.length ? segs[index] : null;
+        if (seg != null && seg.capacity() >= needed) {
+            return seg; // another thread got here first
+        }
+        FileChannel fc = channel();
+        long base = (long) index * SEGMENT_SIZE;
+        long available = Math.min(SEGMENT_SIZE, fc.size() - base);
+        if (available < needed) {
+            return null;
+        }
+        seg = fc.map(FileChannel.MapMode.READ_ONLY, base, available);
+        segs = Arrays.copyOf(segs, Math.max(segs.length, index + 1));
+        segs[index] = seg;
+        segments = segs;
+        return seg;
+    }
+
+    /** @return the current size of the file in bytes */
+    long size() throws IOException {
+        return channel().size();
+    }
+
+    /** Forces the writes made so far to the storage device. */
+    void force() throws IOException {
+        channel().force(false);
+    }
+
+    /** Cuts the file down to the given size, if it is longer. */
+    void truncate(long size) throws IOException {
+        channel().truncate(size);
+    }
+
+    /**
+     * Closes the channel and drops the mapped segments, e.g. before the file
+     * is deleted. A later read or write opens the channel again.
+     */
+    synchronized void close() throws IOException {
+        segments = new MappedByteBuffer[0];
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
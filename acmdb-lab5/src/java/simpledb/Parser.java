@@ -357,21 +357,35 @@ public class Parser {
                             "Complex expressions not allowed in INSERT statements.");
                 ZConstant zc = (ZConstant) e;
                 if (zc.getType() == ZConstant.NUMBER) {
-                    if (td.getFieldType(i) != Type.INT_TYPE) {
+                    Field f;
+                    try {
+                        if (td.getFieldType(i) == Type.INT_TYPE) {
+                            f = new IntField(new Integer(zc.getValue()));
+                        } else if (td.getFieldType(i) == Type.LONG_TYPE) {
+                            f = new LongField(Long.parseLong(zc.getValue()));
+                        } else if (td.getFieldType(i) == Type.DOUBLE_TYPE) {
+                            f = new DoubleField(Double.parseDouble(zc.getValue()));
+                        } else {
+                            throw new simpledb.ParsingException("Value "
+                                    + zc.getValue()
+                                    + " is a number, expected a string.");
+                        }
+                    } catch (NumberFormatException nfe) {
                         throw new simpledb.ParsingException("Value "
                                 + zc.getValue()
-                                + " is not an integer, expected a string.");
+                                + " is not a valid " + td.getFieldType(i));
                     }
-                    IntField f = new IntField(new Integer(zc.getValue()));
                     t.setField(i, f);
                 } else if (zc.getType() == ZConstant.STRING) {
-                    if (td.getFieldType(i) != Type.STRING_TYPE) {
+                    if (td.getFieldType(i) != Type.STRING_TYPE
+                            && td.getFieldType(i) != Type.VARCHAR_TYPE) {
                         throw new simpledb.ParsingException("Value "
                                 + zc.getValue()
-                                + " is a string, expected an integer.");
+                                + " is a string, expected a number.");
                     }
-                    StringField f = new StringField(zc.getValue(),
-                            Type.STRING_LEN);
+                    StringField f = td.getFieldType(i) == Type.VARCHAR_TYPE
+                            ? new VarcharField(zc.getValue(), Type.STRING_LEN)
+                            : new StringField(zc.getValue(), Type.STRING_LEN);
                     t.setField(i, f);
                 } else {
                     throw new simpledb.ParsingException(
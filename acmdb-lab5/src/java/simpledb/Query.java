@@ -113,6 +113,29 @@ public class Query implements Serializable {
             cnt++;
         }
         System.out.println("\n " + cnt + " rows.");
+        int skipped = pagesSkipped(op);
+        if (skipped > 0) {
+            System.out.println(" " + skipped + " pages skipped by zone maps.");
+        }
         this.close();
     }
+
+    /**
+     * @return the number of pages the scans of a plan have left out because
+     *   of the predicates pushed into them
+     */
+    public static int pagesSkipped(DbIterator plan) {
+        if (plan instanceof SeqScan) {
+            return ((SeqScan) plan).getPagesSkipped();
+        }
+        int skipped = 0;
+        if (plan instanceof Operator) {
+            for (DbIterator child : ((Operator) plan).getChildren()) {
+                if (child != null) {
+                    skipped += pagesSkipped(child);
+                }
+            }
+        }
+        return skipped;
+    }
 }
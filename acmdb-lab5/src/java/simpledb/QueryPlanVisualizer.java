@@ -9,10 +9,15 @@ public class QueryPlanVisualizer {
 
     static final String JOIN = "⨝";
     static final String HASH_JOIN = "⨝(hash)";
+    static final String HASH_JOIN_BUILD_OUTER = "⨝(hash,build left)";
+    static final String INDEX_JOIN = "⨝(index)";
+    static final String BLOCK_JOIN = "⨝(block)";
+    static final String MERGE_JOIN = "⨝(merge)";
     static final String SELECT = "σ";
     static final String PROJECT = "π";
     static final String RENAME = "ρ";
     static final String SCAN = "scan";
+    static final String INDEX_SCAN = "index scan";
     static final String ORDERBY = "o";
     static final String GROUPBY = "g";
     static final String SPACE = "  ";
@@ -65,24 +70,42 @@ public class QueryPlanVisualizer {
         int adjustDepth = currentDepth == 0 ? -1 : 0;
         SubTreeDescriptor thisNode = new SubTreeDescriptor(null, null);
 
-        if (queryPlan instanceof SeqScan) {
-            SeqScan s = (SeqScan) queryPlan;
-            String tableName = s.getTableName();
-            String alias = s.getAlias();
+        if (!(queryPlan instanceof Operator)) {
+            String scan = SCAN;
+            String tableName;
+            String alias;
+            if (queryPlan instanceof BTreeScan) {
+                scan = INDEX_SCAN;
+                tableName = ((BTreeScan) queryPlan).getTableName();
+                alias = ((BTreeScan) queryPlan).getAlias();
+            } else if (queryPlan instanceof IndexScan) {
+                scan = INDEX_SCAN;
+                tableName = ((IndexScan) queryPlan).getTableName();
+                alias = ((IndexScan) queryPlan).getAlias();
+            } else {
+                SeqScan s = (SeqScan) queryPlan;
+                tableName = s.getTableName();
+                alias = s.getAlias();
+            }
 //            TupleDesc td = s.getTupleDesc();
             if (!tableName.equals(alias))
                 alias = " " + alias;
             else
                 alias = "";
+            String predicate = "";
+            if (queryPlan instanceof IndexedScan && ((IndexedScan) queryPlan).getPredicate() != null) {
+                IndexPredicate ipred = ((IndexedScan) queryPlan).getPredicate();
+                predicate = "," + ipred.getOp() + ipred.getField();
+            }
             thisNode.text = String
-                    .format("%1$s(%2$s)", SCAN, tableName + alias);
-            if (SCAN.length() / 2 < parentUpperBarStartShift) {
+                    .format("%1$s(%2$s)", scan, tableName + alias + predicate);
+            if (scan.length() / 2 < parentUpperBarStartShift) {
                 thisNode.upBarPosition = currentStartPosition
                         + parentUpperBarStartShift;
                 thisNode.textStartPosition = thisNode.upBarPosition
-                        - SCAN.length() / 2;
+                        - scan.length() / 2;
             } else {
-                thisNode.upBarPosition = currentStartPosition + SCAN.length()
+                thisNode.upBarPosition = currentStartPosition + scan.length()
                         / 2;
                 thisNode.textStartPosition = currentStartPosition;
             }
@@ -109,16 +132,19 @@ public class QueryPlanVisualizer {
 
             if (plan instanceof Join) {
                 Join j = (Join) plan;
+                String symbol = j instanceof IndexNestedLoopJoin ? INDEX_JOIN
+                        : j instanceof BlockNestedLoopJoin ? BLOCK_JOIN
+                        : j instanceof SortMergeJoin ? MERGE_JOIN : JOIN;
                 TupleDesc td = j.getTupleDesc();
                 JoinPredicate jp = j.getJoinPredicate();
                 String field1 = td.getFieldName(jp.getField1());
                 String field2 = td.getFieldName(jp.getField2()
                         + children[0].getTupleDesc().numFields());
-                thisNode.text = String.format("%1$s(%2$s),card:%3$d", JOIN,
+                thisNode.text = String.format("%1$s(%2$s),card:%3$d", symbol,
                         field1 + jp.getOperator() + field2,j.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
-                if (JOIN.length() / 2 > parentUpperBarStartShift)
-                    upBarShift = JOIN.length() / 2;
+                if (symbol.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = symbol.length() / 2;
 
                 SubTreeDescriptor left = this.buildTree(queryPlanDepth,
                         currentDepth + adjustDepth + 3, children[0],
@@ -128,7 +154,7 @@ public class QueryPlanVisualizer {
                         currentStartPosition + left.width + SPACE.length(), 0);
                 thisNode.upBarPosition = (left.upBarPosition + right.upBarPosition) / 2;
                 thisNode.textStartPosition = thisNode.upBarPosition
-                        - JOIN.length() / 2;
+                        - symbol.length() / 2;
                 thisNode.width = Math.max(
                         left.width + right.width + SPACE.length(),
                         thisNode.textStartPosition + thisNode.text.length()
@@ -138,16 +164,17 @@ public class QueryPlanVisualizer {
                 thisNode.height = currentDepth;
             } else if (plan instanceof HashEquiJoin) {
                 HashEquiJoin j = (HashEquiJoin) plan;
+                String symbol = j.buildsOuter() ? HASH_JOIN_BUILD_OUTER : HASH_JOIN;
                 JoinPredicate jp = j.getJoinPredicate();
                 TupleDesc td = j.getTupleDesc();
                 String field1 = td.getFieldName(jp.getField1());
                 String field2 = td.getFieldName(jp.getField2()
                         + children[0].getTupleDesc().numFields());
-                thisNode.text = String.format("%1$s(%2$s),card:%3$d", HASH_JOIN, field1
+                thisNode.text = String.format("%1$s(%2$s),card:%3$d", symbol, field1
                         + jp.getOperator() + field2,j.getEstimatedCardinality());
                 int upBarShift = parentUpperBarStartShift;
-                if (HASH_JOIN.length() / 2 > parentUpperBarStartShift)
-                    upBarShift = HASH_JOIN.length() / 2;
+                if (symbol.length() / 2 > parentUpperBarStartShift)
+                    upBarShift = symbol.length() / 2;
                 SubTreeDescriptor left = this.buildTree(queryPlanDepth,
                         currentDepth + 3 + adjustDepth, children[0],
                         currentStartPosition, upBarShift);
@@ -156,7 +183,7 @@ public class QueryPlanVisualizer {
                         currentStartPosition + left.width + SPACE.length(), 0);
                 thisNode.upBarPosition = (left.upBarPosition + right.upBarPosition) / 2;
                 thisNode.textStartPosition = thisNode.upBarPosition
-                        - HASH_JOIN.length() / 2;
+                        - symbol.length() / 2;
                 thisNode.width = Math.max(
                         left.width + right.width + SPACE.length(),
                         thisNode.textStartPosition + thisNode.text.length()
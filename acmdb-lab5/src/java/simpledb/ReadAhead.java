@@ -0,0 +1,268 @@
+package simpledb;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ReadAhead loads pages into a BufferPool on a small pool of background I/O
+ * threads ahead of a scan that is about to need them, so the scan does not
+ * wait on the disk once per page.
+ * <p>
+ * Scans tell the service where they are through a {@link Stream}, which
+ * detects sequential access and keeps up to {@link #getWindowSize()} pages
+ * in flight ahead of the scan: the following page numbers of a HeapFile, or
+ * the chain of right siblings of a BTreeLeafPage.
+ * <p>
+ * A prefetched page is read without a lock: while the read is in flight, a
+ * scan or writer that asks for the page waits for it rather than issuing a
+ * second read, and the page is skipped if the pool evicts pages of its
+ * partition meanwhile. Only clean pages are evicted to make room; if there
+ * are none the page is skipped too. The service counts prefetched pages
+ * that a scan later asked for (hits) and those evicted unused (waste).
+ */
+public class ReadAhead {
+
+    /** Default number of pages kept in flight ahead of a scan. */
+    public static final int DEFAULT_WINDOW = 8;
+
+    /** Number of background I/O threads. */
+    private static final int THREADS = 2;
+
+    private final BufferPool pool;
+    private final ThreadPoolExecutor executor;
+    private volatile int window = DEFAULT_WINDOW;
+
+    /** Reads under way, completed when the page is cached (or skipped). */
+    private final ConcurrentHashMap<PageId, CountDownLatch> inFlight;
+    /** Prefetched pages that no scan has asked for yet. */
+    private final Set<PageId> unused;
+
+    private final AtomicLong issued = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong wasted = new AtomicLong();
+
+    ReadAhead(BufferPool pool) {
+        this.pool = pool;
+        this.inFlight = new ConcurrentHashMap<>();
+        this.unused = ConcurrentHashMap.newKeySet();
+        // idle threads exit, so replaced buffer pools leave nothing behind
+        this.executor = new ThreadPoolExecutor(THREADS, THREADS, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "simpledb-read-ahead");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** @return the number of pages kept in flight ahead of a scan */
+    public int getWindowSize() {
+        return window;
+    }
+
+    /**
+     * Sets the number of pages kept in flight ahead of a scan; 0 turns
+     * read-ahead off.
+     */
+    public void setWindowSize(int window) {
+        this.window = Math.max(0, window);
+    }
+
+    /** @return the number of pages read ahead into the pool */
+    public long getIssuedCount() {
+        return issued.get();
+    }
+
+    /** @return the number of prefetched pages a scan later asked for */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /** @return the number of prefetched pages evicted before anyone asked for them */
+    public long getWasteCount() {
+        return wasted.get();
+    }
+
+    /** @return a new tracker for one scan */
+    public Stream newStream() {
+        return newStream(null);
+    }
+
+    /**
+     * @param ring the scan's ring of frames, into which its pages are read
+     *   ahead, or null
+     * @return a new tracker for one scan
+     */
+    public Stream newStream(BufferRing ring) {
+        return new Stream(ring);
+    }
+
+    /**
+     * Tracks the pages one scan reads and issues read-ahead once the scan is
+     * seen to be sequential. Not thread-safe; each scan uses its own.
+     */
+    public class Stream {
+        private final BufferRing ring;
+        private int lastPage = -1;
+        private int issuedTo = -1;
+        private int sinceIssue;
+
+        private Stream(BufferRing ring) {
+            this.ring = ring;
+        }
+
+        /**
+         * Records that the scan has moved to page pageNo of a HeapFile with
+         * numPages pages, and prefetches the pages after it.
+         */
+        public void heapPageRead(int tableId, int pageNo, int numPages) {
+            boolean sequential = (pageNo == lastPage + 1);
+            lastPage = pageNo;
+            int w = window;
+            if (!sequential || w == 0) {
+                issuedTo = pageNo;
+                return;
+            }
+            int last = Math.min(pageNo + w, numPages - 1);
+            for (int p = Math.max(issuedTo, pageNo) + 1; p <= last; p++) {
+                prefetch(new HeapPageId(tableId, p), ring);
+            }
+            issuedTo = Math.max(issuedTo, last);
+        }
+
+        /**
+         * Records that the scan has moved to a leaf reached through its left
+         * sibling, and prefetches the chain of right siblings after it. The
+         * chain is followed in the background, so it is re-issued every half
+         * window; leaves already cached are skipped cheaply.
+         */
+        public void leafPageRead(BTreeLeafPage leaf) {
+            int w = window;
+            if (w == 0 || leaf.getRightSiblingId() == null) {
+                return;
+            }
+            if (sinceIssue-- > 0) {
+                return;
+            }
+            sinceIssue = Math.max(0, w / 2 - 1);
+            prefetchSiblings(leaf.getRightSiblingId(), w, ring);
+        }
+    }
+
+    /** Loads a single page in the background. */
+    void prefetch(final PageId pid, final BufferRing ring) {
+        final CountDownLatch done = new CountDownLatch(1);
+        if (inFlight.putIfAbsent(pid, done) != null) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    load(pid, ring);
+                } finally {
+                    inFlight.remove(pid);
+                    done.countDown();
+                }
+            }
+        });
+    }
+
+    /** Loads a leaf and up to count - 1 of its right siblings in the background. */
+    void prefetchSiblings(final BTreePageId first, final int count, final BufferRing ring) {
+        executor.execute(new Runnable() {
+            public void run() {
+                BTreePageId pid = first;
+                for (int i = 0; i < count && pid != null; i++) {
+                    CountDownLatch done = new CountDownLatch(1);
+                    Page page = null;
+                    if (inFlight.putIfAbsent(pid, done) == null) {
+                        try {
+                            page = load(pid, ring);
+                        } finally {
+                            inFlight.remove(pid);
+                            done.countDown();
+                        }
+                    }
+                    if (!(page instanceof BTreeLeafPage)) {
+                        return;
+                    }
+                    pid = ((BTreeLeafPage) page).getRightSiblingId();
+                }
+            }
+        });
+    }
+
+    private Page load(PageId pid, BufferRing ring) {
+        try {
+            return pool.prefetchPage(pid, ring);
+        } catch (RuntimeException e) {
+            // e.g. the table is gone; read-ahead is best effort
+            return null;
+        }
+    }
+
+    /** Called by the pool when it has cached a page on behalf of read-ahead. */
+    void pagePrefetched(PageId pid) {
+        issued.incrementAndGet();
+        unused.add(pid);
+    }
+
+    /**
+     * Called by the pool when a transaction asks for a cached page.
+     *
+     * @return true if the page had been prefetched and this is its first use
+     */
+    boolean pageRequested(PageId pid) {
+        if (!unused.isEmpty() && unused.remove(pid)) {
+            hits.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /** Called by the pool when a page leaves the cache. */
+    void pageEvicted(PageId pid) {
+        if (!unused.isEmpty() && unused.remove(pid)) {
+            wasted.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits for all read-ahead reads under way.
+     *
+     * @return true if there were any
+     */
+    boolean awaitInFlight() {
+        boolean waited = false;
+        for (PageId pid : inFlight.keySet()) {
+            waited |= awaitInFlight(pid);
+        }
+        return waited;
+    }
+
+    /**
+     * Waits for a read-ahead of the page that is under way, if any.
+     *
+     * @return true if there was one
+     */
+    boolean awaitInFlight(PageId pid) {
+        CountDownLatch done = inFlight.get(pid);
+        if (done == null) {
+            return false;
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return true;
+    }
+}
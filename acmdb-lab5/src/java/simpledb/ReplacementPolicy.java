@@ -0,0 +1,78 @@
+package simpledb;
+
+import java.util.function.Predicate;
+
+/**
+ * ReplacementPolicy decides which page of a BufferPool partition is evicted
+ * when the pool is full. The BufferPool reports every admission, hit and
+ * removal of a page; the policy keeps whatever replacement state it needs
+ * and picks a victim among the pages the BufferPool allows it to evict.
+ * <p>
+ * A policy instance belongs to a single partition and is only called while
+ * that partition's monitor is held, so implementations need no locking.
+ *
+ * @see BufferPool
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * The available replacement policies, used to choose one when the
+     * BufferPool is created.
+     *
+     * @see Database#resetBufferPool(int, ReplacementPolicy.Kind)
+     */
+    public enum Kind {
+        /** Evict the least recently used page. */
+        LRU() {
+            @Override
+            public ReplacementPolicy create(int capacity) {
+                return new LruReplacementPolicy();
+            }
+        },
+        /** Second-chance sweep over the frames with one reference bit per page. */
+        CLOCK() {
+            @Override
+            public ReplacementPolicy create(int capacity) {
+                return new ClockReplacementPolicy(capacity);
+            }
+        },
+        /** 2Q: pages referenced once stay in a FIFO and never displace the hot LRU queue. */
+        TWO_Q() {
+            @Override
+            public ReplacementPolicy create(int capacity) {
+                return new TwoQueueReplacementPolicy(capacity);
+            }
+        },
+        /** LRU-2: evict the page whose second most recent reference is oldest. */
+        LRU_K() {
+            @Override
+            public ReplacementPolicy create(int capacity) {
+                return new LruKReplacementPolicy(2, capacity);
+            }
+        };
+
+        /**
+         * @param capacity the number of pages the policy is expected to manage
+         * @return a new, empty policy of this kind
+         */
+        public abstract ReplacementPolicy create(int capacity);
+    }
+
+    /** Called when a page is brought into the partition. */
+    public void pageAdded(PageId pid);
+
+    /** Called on every hit on a page already in the partition. */
+    public void pageAccessed(PageId pid);
+
+    /** Called when a page leaves the partition other than through {@link #evict}. */
+    public void pageRemoved(PageId pid);
+
+    /**
+     * Chooses a victim and forgets it.
+     *
+     * @param evictable tells whether a page may be evicted right now (e.g.
+     *   it is not dirty)
+     * @return the evicted page, or null if no page may be evicted
+     */
+    public PageId evict(Predicate<PageId> evictable);
+}
@@ -0,0 +1,209 @@
+package simpledb;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * SecondaryIndex is a B+ tree on one field of a {@link HeapFile} table that
+ * maps each value of the field to the {@link RecordId}s of the tuples
+ * holding it. The tree is a {@link BTreeFile} of entries (value, page
+ * number, slot), keyed on the value.
+ * <p>
+ * Indexes are registered with {@link Catalog#addIndex} and kept up to date
+ * by {@link BufferPool#insertTuple} and {@link BufferPool#deleteTuple}, in
+ * the same transaction as the change to the table, so an abort rolls back
+ * both. {@link IndexScan} reads the tuples an index finds.
+ * <p>
+ * An index file is only reused if it was closed by {@link #close()} along
+ * with its table, which leaves a stamp file next to it holding the size and
+ * modification time of the table's data file. Opening the index removes the
+ * stamp, so an index that was not closed cleanly, or whose table has changed
+ * since, is rebuilt; see {@link #isCurrent}.
+ */
+public class SecondaryIndex {
+
+    /** Entries inserted per transaction by {@link #build()}. */
+    private static final int BUILD_BATCH = 1000;
+
+    private final int tableId;
+    private final int field;
+    private final BTreeFile file;
+
+    /**
+     * @param tableId the table the index is on
+     * @param field the indexed field of the table
+     * @param file the B+ tree of entries, with TupleDesc
+     *          {@link #entryDesc(TupleDesc, int)} and keyed on field 0
+     */
+    public SecondaryIndex(int tableId, int field, BTreeFile file) {
+        this.tableId = tableId;
+        this.field = field;
+        this.file = file;
+    }
+
+    /**
+     * @return the TupleDesc of the entries of an index on a field of a table:
+     *   the field, then the page number and the slot of the record id
+     */
+    public static TupleDesc entryDesc(TupleDesc td, int field) {
+        return new TupleDesc(new Type[] {td.getFieldType(field), Type.INT_TYPE, Type.INT_TYPE},
+                new String[] {td.getFieldName(field), "page", "slot"});
+    }
+
+    /** @return the id of the table the index is on */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the indexed field of the table */
+    public int getField() {
+        return field;
+    }
+
+    /** @return the B+ tree of entries */
+    public BTreeFile getFile() {
+        return file;
+    }
+
+    /** @return the stamp file of an index file */
+    private static File stampFile(File f) {
+        return new File(f.getPath() + ".stamp");
+    }
+
+    /**
+     * Checks whether an index file holds the entries of a table as it is
+     * now: it must have been closed with the table, which has not changed
+     * since. The stamp of the last close is removed, so the index must be
+     * closed again before it is next trusted.
+     *
+     * @param f the index file
+     * @param table the table the index is on
+     * @return true if the entries in f can be used, false if the index must
+     *   be rebuilt
+     */
+    static boolean isCurrent(File f, HeapFile table) throws IOException {
+        File stamp = stampFile(f);
+        if (f.length() == 0 || !stamp.exists()) {
+            return false;
+        }
+        DataInputStream in = new DataInputStream(new FileInputStream(stamp));
+        boolean current;
+        try {
+            current = in.readLong() == table.getFile().length()
+                    && in.readLong() == table.getFile().lastModified();
+        } finally {
+            in.close();
+        }
+        if (!stamp.delete()) {
+            throw new IOException("could not remove " + stamp);
+        }
+        return current;
+    }
+
+    /**
+     * Stamps the index file with the table as it is now, once both are
+     * written out, so the next {@link Catalog#addIndex} for the file can
+     * reuse it.
+     */
+    void close() throws IOException {
+        File table = ((HeapFile) Database.getCatalog().getDatabaseFile(tableId)).getFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(stampFile(file.getFile())));
+        try {
+            out.writeLong(table.length());
+            out.writeLong(table.lastModified());
+        } finally {
+            out.close();
+        }
+    }
+
+    /** @return the entry for a tuple of the table, which must have a record id */
+    private Tuple entry(Field key, RecordId rid) {
+        Tuple entry = new Tuple(file.getTupleDesc());
+        entry.setField(0, key);
+        entry.setField(1, new IntField(rid.getPageId().pageNumber()));
+        entry.setField(2, new IntField(rid.tupleno()));
+        return entry;
+    }
+
+    /** @return the record id of the table's tuple an entry points to */
+    public RecordId recordId(Tuple entry) {
+        return new RecordId(new HeapPageId(tableId, ((IntField) entry.getField(1)).getValue()),
+                ((IntField) entry.getField(2)).getValue());
+    }
+
+    /**
+     * Adds the entry for a tuple just inserted into the table.
+     *
+     * @return the pages of the index that were modified
+     */
+    public ArrayList<Page> insertEntry(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        return file.insertTuple(tid, entry(t.getField(field), t.getRecordId()));
+    }
+
+    /**
+     * Removes the entry for a tuple of the table.
+     *
+     * @param key the value of the indexed field of the tuple
+     * @param rid the record id the tuple had
+     * @return the pages of the index that were modified
+     * @throws DbException if the index has no such entry
+     */
+    public ArrayList<Page> deleteEntry(TransactionId tid, Field key, RecordId rid)
+            throws DbException, IOException, TransactionAbortedException {
+        DbFileIterator it = file.indexIterator(tid, new IndexPredicate(Predicate.Op.EQUALS, key));
+        try {
+            it.open();
+            while (it.hasNext()) {
+                Tuple entry = it.next();
+                if (recordId(entry).equals(rid)) {
+                    return file.deleteTuple(tid, entry);
+                }
+            }
+        } finally {
+            it.close();
+        }
+        throw new DbException("no entry for " + rid + " in the index on field " + field + " of table " + tableId);
+    }
+
+    /**
+     * Adds the entries for all tuples in the table, in key order and a
+     * transaction for every {@link #BUILD_BATCH} entries, so the pages they
+     * dirty fit in the buffer pool. The table must not change meanwhile.
+     */
+    public void build() throws DbException, IOException, TransactionAbortedException {
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> entries = new ArrayList<Tuple>();
+        DbFileIterator it = Database.getCatalog().getDatabaseFile(tableId).iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            entries.add(entry(t.getField(field), t.getRecordId()));
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        Collections.sort(entries, new Comparator<Tuple>() {
+            public int compare(Tuple a, Tuple b) {
+                if (a.getField(0).compare(Predicate.Op.LESS_THAN, b.getField(0))) {
+                    return -1;
+                }
+                return a.getField(0).compare(Predicate.Op.GREATER_THAN, b.getField(0)) ? 1 : 0;
+            }
+        });
+        for (int i = 0; i < entries.size(); i += BUILD_BATCH) {
+            tid = new TransactionId();
+            for (Tuple entry : entries.subList(i, Math.min(i + BUILD_BATCH, entries.size()))) {
+                Database.getBufferPool().insertTuple(tid, file.getId(), entry);
+            }
+            Database.getBufferPool().transactionComplete(tid);
+        }
+    }
+}
@@ -14,6 +14,8 @@ public class SeqScan implements DbIterator {
     private final TransactionId tid;
     private int tableId;
     private String tableAlias;
+    private int[] columns;
+    private ArrayList<Predicate> predicates = new ArrayList<Predicate>();
     private DbFileIterator it;
 
     /**
@@ -33,11 +35,70 @@ public class SeqScan implements DbIterator {
      *            tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null);
+    }
+
+    /**
+     * Creates a sequential scan that returns only some of the columns of the
+     * specified table, read through {@link DbFile#iterator(TransactionId, int[])}.
+     * A file that stores its columns apart then reads only their pages.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table, as in
+     *            {@link #SeqScan(TransactionId, int, String)}
+     * @param columns
+     *            indexes of the columns of the table to return, in the order
+     *            they are returned, or null for all of them
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] columns) {
         // some code goes here
         this.tid = tid;
         this.tableId = tableid;
         this.tableAlias = tableAlias;
-        this.it = Database.getCatalog().getDatabaseFile(tableId).iterator(tid);
+        this.columns = columns == null ? null : columns.clone();
+        this.it = openIterator();
+    }
+
+    private DbFileIterator openIterator() {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        if (!predicates.isEmpty()) {
+            // the file takes predicates over the columns of the table
+            Predicate[] pushed = new Predicate[predicates.size()];
+            for (int i = 0; i < pushed.length; i++) {
+                Predicate p = predicates.get(i);
+                int field = columns == null ? p.getField() : columns[p.getField()];
+                pushed[i] = new Predicate(field, p.getOp(), p.getOperand());
+            }
+            return file.iterator(tid, columns, pushed);
+        }
+        return columns == null ? file.iterator(tid) : file.iterator(tid, columns);
+    }
+
+    /**
+     * Pushes a predicate down into the scan, which may then leave out pages
+     * that the file shows cannot hold a tuple satisfying all the predicates
+     * pushed, e.g. through the zone map of a {@link HeapFile}. The scan still
+     * returns every tuple of the pages it reads, so the predicate must be
+     * applied above it as well, e.g. by a {@link Filter}. Must be called
+     * before the scan is opened.
+     *
+     * @param p a predicate over the fields of {@link #getTupleDesc()}
+     */
+    public void pushPredicate(Predicate p) {
+        predicates.add(p);
+        this.it = openIterator();
+    }
+
+    /**
+     * @return the number of pages this scan has left out because of the
+     *       predicates pushed into it, over all the times it was rewound
+     */
+    public int getPagesSkipped() {
+        return it.getPagesSkipped();
     }
 
     /**
@@ -49,6 +110,11 @@ public class SeqScan implements DbIterator {
         return Database.getCatalog().getTableName(tableId);
     }
 
+    /** @return the id of the table this operator scans */
+    public int getTableId() {
+        return tableId;
+    }
+
     /**
      * @return Return the alias of the table this operator scans.
      * */
@@ -59,7 +125,17 @@ public class SeqScan implements DbIterator {
     }
 
     /**
-     * Reset the tableid, and tableAlias of this operator.
+     * @return the indexes of the columns of the table this operator returns,
+     *       or null if it returns all of them
+     */
+    public int[] getColumns() {
+        return columns == null ? null : columns.clone();
+    }
+
+    /**
+     * Reset the tableid, and tableAlias of this operator; the scan returns
+     * all the columns of the new table, and predicates pushed into it are
+     * dropped.
      * @param tableid
      *            the table to scan.
      * @param tableAlias
@@ -74,7 +150,9 @@ public class SeqScan implements DbIterator {
         // some code goes here
         this.tableId = tableid;
         this.tableAlias = tableAlias;
-        this.it = Database.getCatalog().getDatabaseFile(tableId).iterator(tid);
+        this.columns = null;
+        this.predicates.clear();
+        this.it = openIterator();
     }
 
     public SeqScan(TransactionId tid, int tableid) {
@@ -88,7 +166,8 @@ public class SeqScan implements DbIterator {
 
     /**
      * Returns the TupleDesc with field names from the underlying HeapFile,
-     * prefixed with the tableAlias string from the constructor. This prefix
+     * prefixed with the tableAlias string from the constructor, of the columns
+     * the scan returns. This prefix
      * becomes useful when joining tables containing a field(s) with the same
      * name.  The alias and name should be separated with a "." character
      * (e.g., "alias.fieldName").
@@ -99,6 +178,9 @@ public class SeqScan implements DbIterator {
     public TupleDesc getTupleDesc() {
         // some code goes here
         TupleDesc tupleDesc = Database.getCatalog().getDatabaseFile(tableId).getTupleDesc();
+        if (columns != null) {
+            tupleDesc = tupleDesc.project(columns);
+        }
         int numFields = tupleDesc.numFields();
         Type[] typeAr = new Type[numFields];
         String[] fieldAr = new String[numFields];
@@ -0,0 +1,160 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SideFile stores one fixed-size record per page of a HeapFile in a file
+ * next to it, for the {@link FreeSpaceMap} and the {@link ZoneMap}. Records
+ * are put into an image in memory and written out by {@link #sync}, which
+ * the BufferPool calls after it has flushed pages of the table, so a page
+ * write costs no extra I/O.
+ * <p>
+ * The file starts with a header: a magic number telling the kind of the
+ * records, the number of pages the records cover, whether the records are
+ * clean, and a stamp of the heap file, its modification time in nanoseconds,
+ * taken when the records were written. Before the heap file is first written
+ * after a sync, {@link #markDirty} clears the clean flag on disk; the next
+ * sync sets it again. The records are only trusted if they are clean and the
+ * heap file still has that many pages and that stamp, so a process that
+ * stopped before it synced its side files leaves records that are rebuilt,
+ * as does a heap file rewritten since by something else.
+ */
+class SideFile {
+
+    private static final int HEADER_SIZE = 20;
+    /** Offset of the clean flag in the header. */
+    private static final int CLEAN_OFFSET = 8;
+
+    private final File file;
+    private final PageChannel store;
+    private final int magic;
+    private final int recordSize;
+    /** The records as they are to be written. */
+    private byte[] image = new byte[0];
+    /** The range of pages whose records changed since the last sync. */
+    private int dirtyFrom = Integer.MAX_VALUE, dirtyTo = -1;
+    /** The number of pages the header on disk says the records cover. */
+    private int syncedPages = -1;
+    /** True once the header on disk was marked not clean since the last sync. */
+    private boolean marked;
+
+    /**
+     * @param file the side file
+     * @param magic the number identifying the kind of records
+     * @param recordSize the size of the record of one page, in bytes
+     */
+    SideFile(File file, int magic, int recordSize) {
+        this.file = file;
+        this.store = new PageChannel(file);
+        this.magic = magic;
+        this.recordSize = recordSize;
+    }
+
+    /**
+     * Loads the records, if the side file exists, is clean and was written
+     * for the heap file as it is now.
+     *
+     * @param heapFile the heap file the records describe
+     * @param numPages the number of pages the heap file has now
+     * @return the records of the pages, or null if there are none to trust
+     */
+    synchronized byte[] load(File heapFile, int numPages) throws IOException {
+        if (!file.exists() || store.size() != HEADER_SIZE + (long) numPages * recordSize) {
+            return null;
+        }
+        byte[] data = new byte[HEADER_SIZE + numPages * recordSize];
+        store.read(data, 0);
+        ByteBuffer header = ByteBuffer.wrap(data, 0, HEADER_SIZE);
+        if (header.getInt() != magic || header.getInt() != numPages || header.getInt() != 1
+                || header.getLong() != stamp(heapFile)) {
+            return null;
+        }
+        image = Arrays.copyOfRange(data, HEADER_SIZE, data.length);
+        syncedPages = numPages;
+        return image.clone();
+    }
+
+    /** Sets the record of a page, to be written by the next sync. */
+    synchronized void put(int pageNo, byte[] record) {
+        int end = (pageNo + 1) * recordSize;
+        if (end > image.length) {
+            image = Arrays.copyOf(image, Math.max(end, image.length * 2));
+        }
+        System.arraycopy(record, 0, image, pageNo * recordSize, recordSize);
+        dirtyFrom = Math.min(dirtyFrom, pageNo);
+        dirtyTo = Math.max(dirtyTo, pageNo);
+    }
+
+    /**
+     * Marks the records on disk as not clean, if this is the first write to
+     * the heap file since the last sync. Called before the heap file is
+     * written, so its writes never reach the disk under a clean header.
+     */
+    synchronized void markDirty() throws IOException {
+        if (marked) {
+            return;
+        }
+        if (file.exists() && store.size() >= HEADER_SIZE) {
+            store.write(new byte[4], CLEAN_OFFSET);
+            store.force();
+        }
+        marked = true;
+    }
+
+    /**
+     * Writes the records that changed since the last sync and a clean header
+     * stamped with the heap file as it is now. Pages with no record put get
+     * a record of zeros.
+     *
+     * @param heapFile the heap file the records describe
+     * @param numPages the number of pages the records cover
+     */
+    synchronized void sync(File heapFile, int numPages) throws IOException {
+        if (dirtyTo < 0 && numPages == syncedPages && !marked) {
+            return;
+        }
+        int end = numPages * recordSize;
+        if (end > image.length) {
+            image = Arrays.copyOf(image, end);
+        }
+        if (syncedPages < 0) {
+            // a new or untrusted file: write it whole
+            dirtyFrom = 0;
+            dirtyTo = numPages - 1;
+            store.truncate(HEADER_SIZE + (long) end);
+        }
+        int from = dirtyFrom * recordSize;
+        int to = Math.min(end, (dirtyTo + 1) * recordSize);
+        if (from < to) {
+            store.write(Arrays.copyOfRange(image, from, to), HEADER_SIZE + (long) from);
+        }
+        if (numPages < syncedPages) {
+            store.truncate(HEADER_SIZE + (long) end);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(magic).putInt(numPages).putInt(1).putLong(stamp(heapFile));
+        store.write(header.array(), 0);
+        syncedPages = numPages;
+        marked = false;
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = -1;
+    }
+
+    /** Closes and deletes the side file. */
+    synchronized void delete() throws IOException {
+        store.close();
+        file.delete();
+        syncedPages = -1;
+        marked = false;
+    }
+
+    /** @return the stamp of a heap file: its modification time */
+    private static long stamp(File heapFile) throws IOException {
+        return Files.getLastModifiedTime(heapFile.toPath()).to(TimeUnit.NANOSECONDS);
+    }
+}
@@ -34,6 +34,12 @@ public class SimpleDb {
                             ts[index++]=Type.INT_TYPE;
                         else if (s.toLowerCase().equals("string"))
                                 ts[index++]=Type.STRING_TYPE;
+                        else if (s.toLowerCase().equals("varchar"))
+                                ts[index++]=Type.VARCHAR_TYPE;
+                        else if (s.toLowerCase().equals("long"))
+                                ts[index++]=Type.LONG_TYPE;
+                        else if (s.toLowerCase().equals("double"))
+                                ts[index++]=Type.DOUBLE_TYPE;
                             else {
                                 System.err.println("Unknown type " + s);
                                 return;
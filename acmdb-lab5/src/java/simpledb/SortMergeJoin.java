@@ -0,0 +1,321 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * SortMergeJoin is a {@link Join} over children sorted in ascending order of
+ * their join fields. A child that is not known to be sorted, by
+ * {@link #isSorted}, is sorted by an {@link OrderBy} put over it.
+ * <p>
+ * An equality join merges the two inputs, keeping in memory only the run of
+ * inner tuples that share the current join key, which is joined with each of
+ * the outer tuples with that key. For a band predicate, the tuples of one
+ * side that match a tuple of the other are a prefix of that side: the inner
+ * tuples with a key below the outer key for {@code >} and {@code >=}, the
+ * outer tuples with a key below the inner key for {@code <} and {@code <=}.
+ * As the driving side is sorted, the prefix only grows from one tuple to
+ * the next, so the join keeps the prefix read so far and reads the other
+ * side once, stopping at the first tuple past the current prefix. The
+ * prefix is kept in memory up to a budget, and spilled to a
+ * {@link SpillFile} beyond it.
+ */
+public class SortMergeJoin extends Join {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default memory budget of a band join's prefix, in pages of
+     * {@link BufferPool#getPageSize()} bytes
+     */
+    public static final int DEFAULT_MEMORY_PAGES = 256;
+
+    private DbIterator outer, inner;
+    private TupleDesc td;
+
+    // equality joins
+    private Tuple outerTuple;
+    /** The inner tuples whose key equals the key of the last outer tuple */
+    private final ArrayList<Tuple> run = new ArrayList<Tuple>();
+    private int runPos;
+    /** The first inner tuple past the run, if it was read */
+    private Tuple innerNext;
+
+    // band joins
+    private int memoryPages = DEFAULT_MEMORY_PAGES;
+    /** The tuple whose matches are being read, from the driving side */
+    private Tuple driver;
+    /** The start of the prefix of the scanned side read so far */
+    private final ArrayList<Tuple> prefix = new ArrayList<Tuple>();
+    private long prefixBytes;
+    /** The rest of the prefix, once the start fills the memory budget */
+    private SpillFile prefixSpill;
+    private int prefixPos;
+    private DbFileIterator spillIt;
+    /** The first tuple of the scanned side past the prefix, if it was read */
+    private Tuple scannedNext;
+
+    /**
+     * Constructor. Accepts to children to join and the predicate to join them
+     * on; children not sorted on their join fields are sorted.
+     *
+     * @param p
+     *            The predicate to use to join the children; EQUALS, or one of
+     *            LESS_THAN, LESS_THAN_OR_EQ, GREATER_THAN and
+     *            GREATER_THAN_OR_EQ
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param child2
+     *            Iterator for the right(inner) relation to join
+     * @throws IllegalArgumentException if the predicate is NOT_EQUALS or
+     *            LIKE
+     */
+    public SortMergeJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        super(p, sorted(child1, p.getField1()), sorted(child2, p.getField2()));
+        if (p.getOperator() == Predicate.Op.NOT_EQUALS || p.getOperator() == Predicate.Op.LIKE) {
+            throw new IllegalArgumentException("no merge join for " + p.getOperator());
+        }
+        setChildren(super.getChildren());
+    }
+
+    /** @return the child, or an OrderBy sorting it if it is not sorted */
+    private static DbIterator sorted(DbIterator child, int field) {
+        return isSorted(child, field) ? child : new OrderBy(field, true, child);
+    }
+
+    /**
+     * @return whether a plan returns its tuples in ascending order of a
+     *         field: an ascending {@link OrderBy} on the field, a scan of a
+     *         {@link BTreeFile} keyed on the field, or an {@link IndexScan}
+     *         through an index on it, under zero or more {@link Filter}s
+     */
+    public static boolean isSorted(DbIterator plan, int field) {
+        while (plan instanceof Filter) {
+            plan = ((Filter) plan).getChildren()[0];
+        }
+        if (plan instanceof OrderBy) {
+            OrderBy o = (OrderBy) plan;
+            return o.isASC() && o.getOrderByField() == field;
+        }
+        if (plan instanceof IndexScan) {
+            return ((IndexScan) plan).getIndex().getField() == field;
+        }
+        if (plan instanceof BTreeScan) {
+            return isSortedTable(((BTreeScan) plan).getTableId(), field);
+        }
+        if (plan instanceof SeqScan) {
+            SeqScan scan = (SeqScan) plan;
+            int[] columns = scan.getColumns();
+            return isSortedTable(scan.getTableId(), columns == null ? field : columns[field]);
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the tuples of a table are stored, and so scanned, in
+     *         ascending order of one of its fields: the key of a
+     *         {@link BTreeFile}
+     */
+    public static boolean isSortedTable(int tableid, int field) {
+        DbFile f = Database.getCatalog().getDatabaseFile(tableid);
+        return f instanceof BTreeFile && ((BTreeFile) f).keyField() == field;
+    }
+
+    /**
+     * Sets how many pages of tuples, counting the tuples by their estimated
+     * size in memory, a band join keeps of its prefix in memory before it
+     * spills the rest. Takes effect on the next open or rewind.
+     */
+    public void setMemoryPages(int pages) {
+        if (pages < 1) {
+            throw new IllegalArgumentException("memory budget must be at least a page");
+        }
+        memoryPages = pages;
+    }
+
+    /** @return whether the prefix of a band join spilled to disk since the join was opened */
+    public boolean prefixSpilled() {
+        return prefixSpill != null;
+    }
+
+    /** @return the file the prefix of a band join spilled to, or null; for tests */
+    SpillFile getPrefixSpill() {
+        return prefixSpill;
+    }
+
+    public TupleDesc getTupleDesc() {
+        if (td == null) {
+            td = super.getTupleDesc();
+        }
+        return td;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        super.rewind();
+        reset();
+    }
+
+    public void close() {
+        super.close();
+        reset();
+    }
+
+    private void reset() {
+        outerTuple = null;
+        run.clear();
+        runPos = 0;
+        innerNext = null;
+        driver = null;
+        prefix.clear();
+        prefixBytes = 0;
+        prefixPos = 0;
+        if (spillIt != null) {
+            spillIt.close();
+            spillIt = null;
+        }
+        if (prefixSpill != null) {
+            prefixSpill.delete();
+            prefixSpill = null;
+        }
+        scannedNext = null;
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        switch (getJoinPredicate().getOperator()) {
+            case EQUALS:
+                return fetchNextEqual();
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQ:
+                return fetchNextBand(outer, inner, true);
+            default:
+                return fetchNextBand(inner, outer, false);
+        }
+    }
+
+    /** Merges the children of an equality join. */
+    private Tuple fetchNextEqual() throws TransactionAbortedException, DbException {
+        JoinPredicate p = getJoinPredicate();
+        while (true) {
+            if (outerTuple != null && runPos < run.size()) {
+                return merge(outerTuple, run.get(runPos++));
+            }
+            if (!outer.hasNext()) {
+                return null;
+            }
+            outerTuple = outer.next();
+            Field key = outerTuple.getField(p.getField1());
+            runPos = 0;
+            if (!run.isEmpty() && run.get(0).getField(p.getField2()).equals(key)) {
+                continue; // a duplicate outer key joins with the same run
+            }
+            run.clear();
+            while (innerNext != null || inner.hasNext()) {
+                Tuple t = innerNext != null ? innerNext : inner.next();
+                innerNext = null;
+                Field innerKey = t.getField(p.getField2());
+                if (innerKey.compare(Predicate.Op.EQUALS, key)) {
+                    run.add(t);
+                } else if (innerKey.compare(Predicate.Op.GREATER_THAN, key)) {
+                    innerNext = t;
+                    break;
+                }
+            }
+            if (run.isEmpty() && innerNext == null) {
+                return null; // the inner child is exhausted
+            }
+        }
+    }
+
+    /**
+     * Joins the children of a band join: for each tuple of the driving side,
+     * returns the prefix kept so far, then reads on through the other side
+     * for as long as its tuples match, adding them to the prefix.
+     *
+     * @param driverIsOuter
+     *            whether the driving side is the outer child
+     */
+    private Tuple fetchNextBand(DbIterator driving, DbIterator scanned, boolean driverIsOuter)
+            throws TransactionAbortedException, DbException {
+        JoinPredicate p = getJoinPredicate();
+        try {
+            while (true) {
+                if (driver != null) {
+                    Tuple t = null;
+                    if (prefixPos < prefix.size()) {
+                        t = prefix.get(prefixPos++);
+                    } else if (spillIt != null && spillIt.hasNext()) {
+                        t = spillIt.next();
+                    } else {
+                        // every tuple of the prefix matched an earlier driver
+                        Tuple next = scannedNext != null ? scannedNext
+                                : scanned.hasNext() ? scanned.next() : null;
+                        scannedNext = null;
+                        if (next != null && p.filter(driverIsOuter ? driver : next,
+                                driverIsOuter ? next : driver)) {
+                            addToPrefix(next);
+                            // this driver has seen the whole prefix
+                            prefixPos = prefix.size();
+                            t = next;
+                        } else {
+                            // the rest of the sorted side does not match either
+                            scannedNext = next;
+                        }
+                    }
+                    if (t != null) {
+                        return driverIsOuter ? merge(driver, t) : merge(t, driver);
+                    }
+                    driver = null;
+                }
+                if (!driving.hasNext()) {
+                    return null;
+                }
+                driver = driving.next();
+                prefixPos = 0;
+                if (spillIt != null) {
+                    spillIt.close();
+                    spillIt = null;
+                }
+                if (prefixSpill != null) {
+                    spillIt = prefixSpill.iterator();
+                    spillIt.open();
+                }
+            }
+        } catch (IOException e) {
+            throw new DbException("could not spill join prefix: " + e.getMessage());
+        }
+    }
+
+    /** Adds a tuple to the prefix, in memory while it fits the budget. */
+    private void addToPrefix(Tuple t) throws IOException {
+        if (prefixSpill == null && prefixBytes < (long) memoryPages * BufferPool.getPageSize()) {
+            prefix.add(t);
+            prefixBytes += SpillFile.memorySize(t);
+            return;
+        }
+        if (prefixSpill == null) {
+            prefixSpill = new SpillFile(t.getTupleDesc());
+        }
+        prefixSpill.add(t);
+    }
+
+    /** @return the concatenation of an outer and an inner tuple */
+    private Tuple merge(Tuple outerTuple, Tuple innerTuple) {
+        Tuple joined = new Tuple(getTupleDesc());
+        int n1 = outerTuple.getTupleDesc().numFields();
+        for (int i = 0; i < n1; i++) {
+            joined.setField(i, outerTuple.getField(i));
+        }
+        for (int i = 0; i < innerTuple.getTupleDesc().numFields(); i++) {
+            joined.setField(n1 + i, innerTuple.getField(i));
+        }
+        return joined;
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        super.setChildren(children);
+        this.outer = children[0];
+        this.inner = children[1];
+        this.td = null;
+    }
+}
@@ -0,0 +1,207 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * SpillFile is a temporary file of tuples that an operator writes when its
+ * input does not fit in memory, and reads back in the order the tuples were
+ * added. The tuples are packed into pages of {@link BufferPool#getPageSize()}
+ * bytes: the number of tuples on the page, then their fields serialized back
+ * to back. The pages bypass the BufferPool, as they belong to no table and
+ * are seen by one operator only; only the page being filled and one page per
+ * open iterator are kept in memory.
+ * <p>
+ * Operators count their memory budgets by {@link #memorySize}, an estimate of
+ * the heap a tuple takes, as a tuple of a few small fields takes several
+ * times its serialized size there.
+ */
+class SpillFile {
+
+    /**
+     * The bytes a tuple takes in memory besides its fields: the Tuple, its
+     * array of fields, and the reference to it from the collection holding it
+     */
+    static final int TUPLE_OVERHEAD = 48;
+    /** The bytes a field takes in memory besides its serialized value */
+    static final int FIELD_OVERHEAD = 16;
+
+    private final TupleDesc td;
+    private final File file;
+    private final PageChannel channel;
+    /** The page being filled, allocated when the first tuple is added to it */
+    private ByteBuffer page;
+    private int pageTuples;
+    private int numPages;
+    private long numTuples;
+
+    /**
+     * Creates an empty spill file in the temporary directory. The operator
+     * that creates it removes it by {@link #delete()} when it is closed, or
+     * when writing the file fails; it is not registered to be removed at
+     * exit, as every registration is kept until the JVM exits.
+     *
+     * @param td the TupleDesc of the tuples the file holds
+     */
+    SpillFile(TupleDesc td) throws IOException {
+        this.td = td;
+        this.file = File.createTempFile("spill", ".tmp");
+        this.channel = new PageChannel(file);
+    }
+
+    /** @return the number of bytes the fields of a tuple are serialized to */
+    static int tupleSize(Tuple t) {
+        TupleDesc td = t.getTupleDesc();
+        int size = 0;
+        for (int i = 0; i < td.numFields(); i++) {
+            size += td.getFieldType(i).getLen(t.getField(i));
+        }
+        return size;
+    }
+
+    /** @return the estimated number of bytes a tuple takes in memory */
+    static int memorySize(Tuple t) {
+        return tupleSize(t) + TUPLE_OVERHEAD + FIELD_OVERHEAD * t.getTupleDesc().numFields();
+    }
+
+    /**
+     * @return the estimated number of bytes a tuple of the given TupleDesc
+     *         takes in memory, taking strings at their longest
+     */
+    static int memorySize(TupleDesc td) {
+        return td.getSize() + TUPLE_OVERHEAD + FIELD_OVERHEAD * td.numFields();
+    }
+
+    /** @return the number of tuples added to the file */
+    long numTuples() {
+        return numTuples;
+    }
+
+    /** Appends a tuple to the file. */
+    void add(Tuple t) throws IOException {
+        int size = tupleSize(t);
+        if (page == null) {
+            page = ByteBuffer.allocate(BufferPool.getPageSize());
+            page.putInt(0);
+        }
+        if (size > page.remaining()) {
+            if (pageTuples == 0) {
+                throw new IOException("tuple of " + size + " bytes does not fit on a page");
+            }
+            writePage();
+        }
+        for (int i = 0; i < td.numFields(); i++) {
+            t.getField(i).serialize(page);
+        }
+        pageTuples++;
+        numTuples++;
+    }
+
+    private void writePage() throws IOException {
+        page.putInt(0, pageTuples);
+        channel.write(page.array(), (long) numPages * page.capacity());
+        numPages++;
+        page.clear();
+        page.putInt(0);
+        pageTuples = 0;
+    }
+
+    /**
+     * Writes out the page being filled and releases its memory. Tuples can
+     * still be added afterwards; they start a new page.
+     */
+    void finish() throws IOException {
+        if (page != null && pageTuples > 0) {
+            writePage();
+        }
+        page = null;
+    }
+
+    /** @return the number of pages written out */
+    int numPages() {
+        return numPages;
+    }
+
+    /**
+     * Returns an iterator over the tuples added to the file so far: those on
+     * the pages written out, then those on the page being filled, which the
+     * iterator copies rather than writing it out, so a file read after every
+     * few tuples added does not fill up with nearly empty pages.
+     */
+    DbFileIterator iterator() {
+        final int pages = numPages;
+        final byte[] tail = page == null || pageTuples == 0 ? null
+                : Arrays.copyOf(page.array(), page.position());
+        final int tailTuples = pageTuples;
+        return new AbstractDbFileIterator() {
+            private ByteBuffer buf;
+            private int pgNo;
+            private int left;
+
+            public void open() {
+                buf = ByteBuffer.allocate(BufferPool.getPageSize());
+                pgNo = 0;
+                left = 0;
+            }
+
+            @Override
+            protected Tuple readNext() throws DbException {
+                if (buf == null) {
+                    return null;
+                }
+                try {
+                    while (left == 0) {
+                        if (pgNo == pages && tail != null) {
+                            // the page being filled, whose count is not set yet
+                            buf = ByteBuffer.wrap(tail);
+                            buf.position(4);
+                            left = tailTuples;
+                            pgNo++;
+                            continue;
+                        }
+                        if (pgNo >= pages) {
+                            return null;
+                        }
+                        channel.read(buf.array(), (long) pgNo++ * buf.capacity());
+                        buf.clear();
+                        left = buf.getInt();
+                    }
+                    Tuple t = new Tuple(td);
+                    for (int i = 0; i < td.numFields(); i++) {
+                        t.setField(i, td.getFieldType(i).parse(buf));
+                    }
+                    left--;
+                    return t;
+                } catch (IOException e) {
+                    throw new DbException("could not read spill file: " + e.getMessage());
+                } catch (ParseException e) {
+                    throw new DbException("corrupt spill file: " + e.getMessage());
+                }
+            }
+
+            public void rewind() {
+                close();
+                open();
+            }
+
+            public void close() {
+                super.close();
+                buf = null;
+            }
+        };
+    }
+
+    /** Closes and removes the file; it must not be used afterwards. */
+    void delete() {
+        page = null;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // the file is removed below all the same
+        }
+        file.delete();
+    }
+}
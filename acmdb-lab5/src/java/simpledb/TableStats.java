@@ -2,6 +2,7 @@ package simpledb;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -68,7 +69,11 @@ public class TableStats {
      */
     static final int NUM_HIST_BINS = 100;
 
+    /** Bytes an index page spends per child pointer, besides the key */
+    private static final int INDEX_POINTER_SIZE = 4;
+
     private final int ioCostPerPage;
+    private final int tableid;
     private final DbFile file;
     private int numTuples;
     private final ArrayList<Object> histograms;
@@ -93,32 +98,49 @@ public class TableStats {
         // in a single scan of the table.
         // some code goes here
         this.ioCostPerPage = ioCostPerPage;
+        this.tableid = tableid;
         this.file = Database.getCatalog().getDatabaseFile(tableid);
         this.numTuples = 0;
         this.histograms = new ArrayList<>();
 
-        // Scan through the table, calculate the min and max of the Int Fields
-        ConcurrentHashMap<Integer, Integer> minIntFields = new ConcurrentHashMap<>();
-        ConcurrentHashMap<Integer, Integer> maxIntFields = new ConcurrentHashMap<>();
+        // Scan through the table, calculate the min and max of the numeric fields
         TupleDesc tupleDesc = file.getTupleDesc();
+        int numFields = tupleDesc.numFields();
+        long[] minLong = new long[numFields];
+        long[] maxLong = new long[numFields];
+        double[] minDouble = new double[numFields];
+        double[] maxDouble = new double[numFields];
+        Arrays.fill(minLong, Long.MAX_VALUE);
+        Arrays.fill(maxLong, Long.MIN_VALUE);
+        Arrays.fill(minDouble, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxDouble, Double.NEGATIVE_INFINITY);
+        // large tables are scanned through a ring of frames, so computing
+        // statistics does not flush the buffer pool
         DbFileIterator fileIterator = file.iterator(null);
         try {
             fileIterator.open();
             while (fileIterator.hasNext()) {
                 Tuple tuple = fileIterator.next();
                 this.numTuples++;
-                for (int i = 0; i < tupleDesc.numFields(); ++i) {
+                for (int i = 0; i < numFields; ++i) {
                     Field field = tuple.getField(i);
-                    if (field.getType() == Type.INT_TYPE) { // Int Field
-                        int value = ((IntField)field).getValue();
-                        if (minIntFields.containsKey(i)) {
-                            minIntFields.put(i, Math.min(minIntFields.get(i), value));
-                            maxIntFields.put(i, Math.max(maxIntFields.get(i), value));
-                        }
-                        else {
-                            minIntFields.put(i, value);
-                            maxIntFields.put(i, value);
-                        }
+                    long value;
+                    switch (field.getType()) {
+                        case INT_TYPE:
+                        case LONG_TYPE:
+                            value = field.getType() == Type.INT_TYPE
+                                    ? ((IntField) field).getValue() : ((LongField) field).getValue();
+                            minLong[i] = Math.min(minLong[i], value);
+                            maxLong[i] = Math.max(maxLong[i], value);
+                            break;
+                        case DOUBLE_TYPE:
+                            double d = ((DoubleField) field).getValue();
+                            // comparisons, unlike Math.min, skip NaN
+                            if (d < minDouble[i]) minDouble[i] = d;
+                            if (d > maxDouble[i]) maxDouble[i] = d;
+                            break;
+                        default:
+                            break;
                     }
                 }
             }
@@ -128,12 +150,26 @@ public class TableStats {
         }
 
         // Construct the histograms
-        for (int i = 0; i < tupleDesc.numFields(); ++i) {
-            if (tupleDesc.getFieldType(i) == Type.INT_TYPE) { // Int Field
-                histograms.add(new IntHistogram(NUM_HIST_BINS, minIntFields.get(i), maxIntFields.get(i)));
+        for (int i = 0; i < numFields; ++i) {
+            if (minLong[i] > maxLong[i]) {  // no values
+                minLong[i] = maxLong[i] = 0;
+            }
+            if (!(minDouble[i] <= maxDouble[i])) {
+                minDouble[i] = maxDouble[i] = 0;
             }
-            else {
-                histograms.add(new StringHistogram(NUM_HIST_BINS));
+            switch (tupleDesc.getFieldType(i)) {
+                case INT_TYPE:
+                    histograms.add(new IntHistogram(NUM_HIST_BINS, (int) minLong[i], (int) maxLong[i]));
+                    break;
+                case LONG_TYPE:
+                    histograms.add(new LongHistogram(NUM_HIST_BINS, minLong[i], maxLong[i]));
+                    break;
+                case DOUBLE_TYPE:
+                    histograms.add(new DoubleHistogram(NUM_HIST_BINS, minDouble[i], maxDouble[i]));
+                    break;
+                default:
+                    histograms.add(new StringHistogram(NUM_HIST_BINS));
+                    break;
             }
         }
 
@@ -142,17 +178,21 @@ public class TableStats {
             fileIterator.rewind();
             while (fileIterator.hasNext()) {
                 Tuple tuple = fileIterator.next();
-                for (int i = 0; i < tuple.getTupleDesc().numFields(); ++i) {
+                for (int i = 0; i < numFields; ++i) {
                     Field field = tuple.getField(i);
-                    if (field.getType() == Type.INT_TYPE) { // Int Field
-                        int value = ((IntField)field).getValue();
-                        IntHistogram histogram = (IntHistogram) histograms.get(i);
-                        histogram.addValue(value);
-                    }
-                    else {  // String Field
-                        String value = ((StringField)field).getValue();
-                        StringHistogram histogram = (StringHistogram) histograms.get(i);
-                        histogram.addValue(value);
+                    switch (field.getType()) {
+                        case INT_TYPE:
+                            ((IntHistogram) histograms.get(i)).addValue(((IntField) field).getValue());
+                            break;
+                        case LONG_TYPE:
+                            ((LongHistogram) histograms.get(i)).addValue(((LongField) field).getValue());
+                            break;
+                        case DOUBLE_TYPE:
+                            ((DoubleHistogram) histograms.get(i)).addValue(((DoubleField) field).getValue());
+                            break;
+                        default:  // String Field
+                            ((StringHistogram) histograms.get(i)).addValue(((StringField) field).getValue());
+                            break;
                     }
                 }
             }
@@ -179,11 +219,74 @@ public class TableStats {
         if (file instanceof HeapFile) {
             return ((HeapFile)file).numPages() * ioCostPerPage;
         }
+        else if (file instanceof ColumnFile) {
+            return ((ColumnFile)file).numPages() * ioCostPerPage;
+        }
+        else if (file instanceof HashFile) {
+            return ((HashFile)file).numPages() * ioCostPerPage;
+        }
         else {
             return ((BTreeFile)file).numPages() * ioCostPerPage;
         }
     }
 
+    /**
+     * Estimates the cost of reading the tuples of the table whose field
+     * satisfies a predicate through an index on the field: the table itself
+     * if it is an {@link IndexFile} keyed on the field, read by a
+     * {@link BTreeScan}, or a {@link SecondaryIndex} of the field, read by an
+     * {@link IndexScan}. A scan of the table's own index reads the matching
+     * tuples page by page; a scan of a secondary index reads a page of the
+     * table for each matching tuple.
+     *
+     * @param field
+     *            The indexed field
+     * @param op
+     *            The operator of the predicate
+     * @param selectivity
+     *            The fraction of the tuples that satisfy the predicate
+     * @return The estimated cost of the index scan, or
+     *         Double.POSITIVE_INFINITY if no index on the field can answer
+     *         the predicate
+     */
+    public double estimateIndexScanCost(int field, Predicate.Op op, double selectivity) {
+        if (op == Predicate.Op.NOT_EQUALS || op == Predicate.Op.LIKE) {
+            return Double.POSITIVE_INFINITY;
+        }
+        Type keyType = file.getTupleDesc().getFieldType(field);
+        double pages;
+        if (file instanceof IndexFile && ((IndexFile) file).keyField() == field) {
+            if (file instanceof HashFile) {
+                if (op != Predicate.Op.EQUALS) {
+                    return Double.POSITIVE_INFINITY;
+                }
+                // the header and directory pages, then the bucket chain
+                pages = 2 + Math.max(1, selectivity * ((HashFile) file).numPages());
+            } else {
+                int numPages = ((BTreeFile) file).numPages();
+                pages = indexDescentPages(numPages, keyType) + selectivity * numPages;
+            }
+        } else {
+            SecondaryIndex index = Database.getCatalog().getIndex(tableid, field);
+            if (index == null) {
+                return Double.POSITIVE_INFINITY;
+            }
+            int indexPages = index.getFile().numPages();
+            pages = indexDescentPages(indexPages, keyType) + selectivity * indexPages
+                    + selectivity * numTuples;
+        }
+        return pages * ioCostPerPage;
+    }
+
+    /**
+     * @return the pages read to descend a B+ tree of the given size to the
+     *         leaf holding a key
+     */
+    private static double indexDescentPages(int numPages, Type keyType) {
+        int fanout = Math.max(2, BufferPool.getPageSize() / (keyType.getLen() + INDEX_POINTER_SIZE));
+        return 1 + Math.ceil(Math.log(Math.max(numPages, 1)) / Math.log(fanout));
+    }
+
     /**
      * This method returns the number of tuples in the relation, given that a
      * predicate with selectivity selectivityFactor is applied.
@@ -229,13 +332,19 @@ public class TableStats {
     public double estimateSelectivity(int field, Predicate.Op op, Field constant) {
         // some code goes here
         TupleDesc tupleDesc = file.getTupleDesc();
-        if (tupleDesc.getFieldType(field) == Type.INT_TYPE) {   // Int Field
-            IntHistogram histogram = (IntHistogram) histograms.get(field);
-            return histogram.estimateSelectivity(op, ((IntField)constant).getValue());
-        }
-        else {  // String Field
-            StringHistogram histogram = (StringHistogram) histograms.get(field);
-            return histogram.estimateSelectivity(op, ((StringField)constant).getValue());
+        switch (tupleDesc.getFieldType(field)) {
+            case INT_TYPE:
+                IntHistogram intHistogram = (IntHistogram) histograms.get(field);
+                return intHistogram.estimateSelectivity(op, ((IntField)constant).getValue());
+            case LONG_TYPE:
+                LongHistogram longHistogram = (LongHistogram) histograms.get(field);
+                return longHistogram.estimateSelectivity(op, ((LongField)constant).getValue());
+            case DOUBLE_TYPE:
+                DoubleHistogram doubleHistogram = (DoubleHistogram) histograms.get(field);
+                return doubleHistogram.estimateSelectivity(op, ((DoubleField)constant).getValue());
+            default:  // String Field
+                StringHistogram histogram = (StringHistogram) histograms.get(field);
+                return histogram.estimateSelectivity(op, ((StringField)constant).getValue());
         }
     }
 
@@ -12,7 +12,15 @@ public class Transaction {
     volatile boolean started = false;
 
     public Transaction() {
-        tid = new TransactionId();
+        this(false);
+    }
+
+    /**
+     * @param readOnly whether the transaction only reads; see
+     *   {@link BufferPool#getPage}
+     */
+    public Transaction(boolean readOnly) {
+        tid = new TransactionId(readOnly);
     }
 
     /** Start the transaction running */
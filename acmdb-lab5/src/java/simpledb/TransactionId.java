@@ -5,6 +5,8 @@ import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * TransactionId is a class that contains the identifier of a transaction.
+ * A transaction can be declared read-only when it starts; the BufferPool
+ * then refuses it write access and lets it read heap pages without locks.
  */
 public class TransactionId implements Serializable {
 
@@ -12,15 +14,26 @@ public class TransactionId implements Serializable {
 
     static AtomicLong counter = new AtomicLong(0);
     final long myid;
+    private final boolean readOnly;
 
     public TransactionId() {
+        this(false);
+    }
+
+    public TransactionId(boolean readOnly) {
         myid = counter.getAndIncrement();
+        this.readOnly = readOnly;
     }
 
     public long getId() {
         return myid;
     }
 
+    /** @return true if this transaction will only read */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
     @Override
 	public boolean equals(Object obj) {
 		if (this == obj)
@@ -1,7 +1,6 @@
 package simpledb;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 
@@ -16,7 +15,7 @@ public class Tuple implements Serializable {
 
     private TupleDesc tupleDesc;
     private RecordId recordId;
-    private ArrayList<Field> fields;
+    private final Field[] fields;
 
     /**
      * Create a new tuple with the specified schema (type).
@@ -28,8 +27,7 @@ public class Tuple implements Serializable {
     public Tuple(TupleDesc td) {
         // some code goes here
         tupleDesc = td;
-        fields = new ArrayList<>(td.numFields());
-        while (fields.size() < td.numFields()) fields.add(null);
+        fields = new Field[td.numFields()];
     }
 
     /**
@@ -70,7 +68,7 @@ public class Tuple implements Serializable {
      */
     public void setField(int i, Field f) {
         // some code goes here
-        fields.set(i, f);
+        fields[i] = f;
     }
 
     /**
@@ -81,7 +79,7 @@ public class Tuple implements Serializable {
      */
     public Field getField(int i) {
         // some code goes here
-        return fields.get(i);
+        return fields[i];
     }
 
     /**
@@ -95,11 +93,11 @@ public class Tuple implements Serializable {
     public String toString() {
         // some code goes here
         StringBuilder result = new StringBuilder();
-        for (int i = 0; i < fields.size() - 1; ++i) {
-            result.append(fields.get(i).toString());
+        for (int i = 0; i < fields.length - 1; ++i) {
+            result.append(fields[i].toString());
             result.append("\t");
         }
-        result.append(fields.get(fields.size() - 1).toString());
+        result.append(fields[fields.length - 1].toString());
         return result.toString();
     }
 
@@ -110,7 +108,7 @@ public class Tuple implements Serializable {
     public Iterator<Field> fields()
     {
         // some code goes here
-        return fields.iterator();
+        return Arrays.asList(fields).iterator();
     }
 
     /**
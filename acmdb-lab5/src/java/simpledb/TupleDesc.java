@@ -158,7 +158,8 @@ public class TupleDesc implements Serializable {
 
     /**
      * @return The size (in bytes) of tuples corresponding to this TupleDesc.
-     *         Note that tuples from a given TupleDesc are of a fixed size.
+     *         Tuples from a TupleDesc with only fixed-length fields are of a
+     *         fixed size; otherwise this is the largest size of any tuple.
      */
     public int getSize() {
         // some code goes here
@@ -169,6 +170,30 @@ public class TupleDesc implements Serializable {
         return size;
     }
 
+    /**
+     * @return The size (in bytes) of the given tuple of this TupleDesc, with
+     *         its fields serialized one after another.
+     * @see Type#getLen(Field)
+     */
+    public int getSize(Tuple t) {
+        int size = 0;
+        for (int i = 0; i < tdItems.size(); ++i) {
+            size += tdItems.get(i).fieldType.getLen(t.getField(i));
+        }
+        return size;
+    }
+
+    /**
+     * @return whether all fields of this TupleDesc are of fixed-length types,
+     *         so that all of its tuples are of size {@link #getSize()}.
+     */
+    public boolean isFixedLength() {
+        for (TDItem tdItem : tdItems) {
+            if (!tdItem.fieldType.isFixedLength()) return false;
+        }
+        return true;
+    }
+
     /**
      * Merge two TupleDescs into one, with td1.numFields + td2.numFields fields,
      * with the first td1.numFields coming from td1 and the remaining from td2.
@@ -198,6 +223,25 @@ public class TupleDesc implements Serializable {
         return new TupleDesc(typeAr, fieldAr);
     }
 
+    /**
+     * Returns the TupleDesc of the given fields of this one, in the order
+     * given, with their types and names.
+     *
+     * @param fields
+     *            indexes of the fields to keep. It must contain at least one
+     *            valid index.
+     * @return the new TupleDesc
+     */
+    public TupleDesc project(int[] fields) {
+        Type[] typeAr = new Type[fields.length];
+        String[] fieldAr = new String[fields.length];
+        for (int i = 0; i < fields.length; ++i) {
+            typeAr[i] = getFieldType(fields[i]);
+            fieldAr[i] = getFieldName(fields[i]);
+        }
+        return new TupleDesc(typeAr, fieldAr);
+    }
+
     /**
      * Compares the specified object with this TupleDesc for equality. Two
      * TupleDescs are considered equal if they are the same size and if the n-th
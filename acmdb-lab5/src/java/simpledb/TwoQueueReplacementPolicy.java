@@ -0,0 +1,90 @@
+package simpledb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.function.Predicate;
+
+/**
+ * 2Q replacement (Johnson and Shasha). A page seen for the first time enters
+ * the FIFO queue A1in; only a page that is referenced again after falling out
+ * of A1in, while it is still remembered in the ghost queue A1out, is promoted
+ * to the LRU queue Am. A sequential scan therefore cycles through A1in and
+ * leaves the hot pages in Am alone.
+ */
+public class TwoQueueReplacementPolicy implements ReplacementPolicy {
+
+    /** Resident pages referenced once, in arrival order. */
+    private final LinkedHashSet<PageId> a1in;
+    /** Ids of pages recently evicted from A1in, in eviction order. */
+    private final LinkedHashSet<PageId> a1out;
+    /** Resident hot pages, access-ordered. */
+    private final LinkedHashMap<PageId, Boolean> am;
+    private final int maxA1in;
+    private final int maxA1out;
+
+    public TwoQueueReplacementPolicy(int capacity) {
+        a1in = new LinkedHashSet<>();
+        a1out = new LinkedHashSet<>();
+        am = new LinkedHashMap<>(16, 0.75f, true);
+        // the tuning suggested in the paper: Kin = 25%, Kout = 50% of the pages
+        maxA1in = Math.max(1, capacity / 4);
+        maxA1out = Math.max(1, capacity / 2);
+    }
+
+    public void pageAdded(PageId pid) {
+        if (a1out.remove(pid)) {
+            am.put(pid, Boolean.TRUE);
+        }
+        else {
+            a1in.add(pid);
+        }
+    }
+
+    public void pageAccessed(PageId pid) {
+        // hits in A1in are treated as correlated references and ignored
+        am.get(pid);
+    }
+
+    public void pageRemoved(PageId pid) {
+        a1in.remove(pid);
+        am.remove(pid);
+    }
+
+    public PageId evict(Predicate<PageId> evictable) {
+        PageId victim = null;
+        if (a1in.size() > maxA1in) {
+            victim = evictFrom(a1in.iterator(), evictable);
+        }
+        if (victim == null) {
+            victim = evictFrom(am.keySet().iterator(), evictable);
+            if (victim != null) {
+                return victim;
+            }
+            victim = evictFrom(a1in.iterator(), evictable);
+        }
+        return victim == null ? null : remember(victim);
+    }
+
+    private PageId evictFrom(Iterator<PageId> queue, Predicate<PageId> evictable) {
+        while (queue.hasNext()) {
+            PageId pid = queue.next();
+            if (evictable.test(pid)) {
+                queue.remove();
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    /** Records a page evicted from A1in in the ghost queue A1out. */
+    private PageId remember(PageId pid) {
+        a1out.add(pid);
+        if (a1out.size() > maxA1out) {
+            Iterator<PageId> it = a1out.iterator();
+            it.next();
+            it.remove();
+        }
+        return pid;
+    }
+}
@@ -2,6 +2,8 @@ package simpledb;
 
 import java.text.ParseException;
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 
 /**
  * Class representing a type in SimpleDB.
@@ -24,6 +26,23 @@ public enum Type implements Serializable {
             }
         }
 
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            try {
+                return new IntField(buf.getInt());
+            } catch (BufferUnderflowException e) {
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
+        @Override
+        public Field parse(byte[] data, int offset) throws ParseException {
+            if (offset < 0 || offset + 4 > data.length) {
+                throw new ParseException("couldn't parse", offset);
+            }
+            return new IntField(readInt(data, offset));
+        }
+
     }, STRING_TYPE() {
         @Override
         public int getLen() {
@@ -42,15 +61,196 @@ public enum Type implements Serializable {
                 throw new ParseException("couldn't parse", 0);
             }
         }
+
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            try {
+                int strLen = buf.getInt();
+                if (strLen < 0 || strLen > STRING_LEN) {
+                    throw new ParseException("couldn't parse", buf.position() - 4);
+                }
+                byte bs[] = new byte[strLen];
+                buf.get(bs);
+                buf.position(buf.position() + STRING_LEN - strLen);
+                return new StringField(new String(bs), STRING_LEN);
+            } catch (RuntimeException e) {
+                // underflow
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
+        @Override
+        public Field parse(byte[] data, int offset) throws ParseException {
+            if (offset < 0 || offset + getLen() > data.length) {
+                throw new ParseException("couldn't parse", offset);
+            }
+            int strLen = readInt(data, offset);
+            if (strLen < 0 || strLen > STRING_LEN) {
+                throw new ParseException("couldn't parse", offset);
+            }
+            return new StringField(new String(data, offset + 4, strLen), STRING_LEN);
+        }
+    }, VARCHAR_TYPE() {
+        /** The largest size, for layouts that reserve room for any value. */
+        @Override
+        public int getLen() {
+            return STRING_LEN+4;
+        }
+
+        @Override
+        public int getLen(Field f) {
+            return 4 + ((StringField) f).getValue().length();
+        }
+
+        @Override
+        public int getLen(byte[] data, int offset) {
+            return 4 + readInt(data, offset);
+        }
+
+        @Override
+        public boolean isFixedLength() {
+            return false;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                int strLen = dis.readInt();
+                if (strLen < 0 || strLen > STRING_LEN) {
+                    throw new ParseException("couldn't parse", 0);
+                }
+                byte bs[] = new byte[strLen];
+                dis.readFully(bs);
+                return new VarcharField(new String(bs), STRING_LEN);
+            } catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            try {
+                int strLen = buf.getInt();
+                if (strLen < 0 || strLen > STRING_LEN) {
+                    throw new ParseException("couldn't parse", buf.position() - 4);
+                }
+                byte bs[] = new byte[strLen];
+                buf.get(bs);
+                return new VarcharField(new String(bs), STRING_LEN);
+            } catch (RuntimeException e) {
+                // underflow
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
+        @Override
+        public Field parse(byte[] data, int offset) throws ParseException {
+            if (offset < 0 || offset + 4 > data.length) {
+                throw new ParseException("couldn't parse", offset);
+            }
+            int strLen = readInt(data, offset);
+            if (strLen < 0 || strLen > STRING_LEN || offset + 4 + strLen > data.length) {
+                throw new ParseException("couldn't parse", offset);
+            }
+            return new VarcharField(new String(data, offset + 4, strLen), STRING_LEN);
+        }
+    }, LONG_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new LongField(dis.readLong());
+            }  catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            try {
+                return new LongField(buf.getLong());
+            } catch (BufferUnderflowException e) {
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
+        @Override
+        public Field parse(byte[] data, int offset) throws ParseException {
+            if (offset < 0 || offset + 8 > data.length) {
+                throw new ParseException("couldn't parse", offset);
+            }
+            return new LongField(readLong(data, offset));
+        }
+    }, DOUBLE_TYPE() {
+        @Override
+        public int getLen() {
+            return 8;
+        }
+
+        @Override
+        public Field parse(DataInputStream dis) throws ParseException {
+            try {
+                return new DoubleField(dis.readDouble());
+            }  catch (IOException e) {
+                throw new ParseException("couldn't parse", 0);
+            }
+        }
+
+        @Override
+        public Field parse(ByteBuffer buf) throws ParseException {
+            try {
+                return new DoubleField(buf.getDouble());
+            } catch (BufferUnderflowException e) {
+                throw new ParseException("couldn't parse", buf.position());
+            }
+        }
+
+        @Override
+        public Field parse(byte[] data, int offset) throws ParseException {
+            if (offset < 0 || offset + 8 > data.length) {
+                throw new ParseException("couldn't parse", offset);
+            }
+            return new DoubleField(Double.longBitsToDouble(readLong(data, offset)));
+        }
     };
     
     public static final int STRING_LEN = 128;
 
   /**
-   * @return the number of bytes required to store a field of this type.
+   * @return the number of bytes required to store a field of this type; for
+   *   a variable-length type, the most any field of the type needs.
    */
     public abstract int getLen();
 
+  /**
+   * @return the number of bytes the given field of this type is serialized
+   *   to, which for a fixed-length type is {@link #getLen()}.
+   */
+    public int getLen(Field f) {
+        return getLen();
+    }
+
+  /**
+   * @return the number of bytes of the field of this type serialized at the
+   *   given offset of an array, e.g. a page image
+   */
+    public int getLen(byte[] data, int offset) {
+        return getLen();
+    }
+
+  /**
+   * @return whether every field of this type is serialized to
+   *   {@link #getLen()} bytes. Fields of a variable-length type are written
+   *   with no padding, and fixed-slot layouts pad them to getLen() bytes.
+   */
+    public boolean isFixedLength() {
+        return true;
+    }
+
   /**
    * @return a Field object of the same type as this object that has contents
    *   read from the specified DataInputStream.
@@ -60,4 +260,33 @@ public enum Type implements Serializable {
    */
     public abstract Field parse(DataInputStream dis) throws ParseException;
 
+  /**
+   * Like {@link #parse(DataInputStream)}, but reads the field in place from
+   * the buffer's current position and advances the position past it.
+   * @param buf The buffer to read from
+   * @throws ParseException if the buffer does not hold a field of this type
+   */
+    public abstract Field parse(ByteBuffer buf) throws ParseException;
+
+  /**
+   * Like {@link #parse(DataInputStream)}, but reads the field in place at the
+   * given offset of an array, e.g. a page image. Reads nothing but the field.
+   * @param data The array to read from
+   * @param offset The offset of the field's first byte
+   * @throws ParseException if the array does not hold a field of this type
+   *   at that offset
+   */
+    public abstract Field parse(byte[] data, int offset) throws ParseException;
+
+    /** Reads a big-endian int, as written by DataOutputStream. */
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+    }
+
+    /** Reads a big-endian long, as written by DataOutputStream. */
+    private static long readLong(byte[] data, int offset) {
+        return ((long) readInt(data, offset) << 32) | (readInt(data, offset + 4) & 0xffffffffL);
+    }
+
 }
@@ -0,0 +1,57 @@
+package simpledb;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Instance of Field that stores a single String of variable length, up to a
+ * maximum size. It compares and hashes like a {@link StringField} of the same
+ * value, but is serialized without padding: four bytes of string length, then
+ * the string.
+ */
+public class VarcharField extends StringField {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param s
+	 *            The value of this field.
+	 * @param maxSize
+	 *            The maximum size of this string
+	 */
+	public VarcharField(String s, int maxSize) {
+		super(s, maxSize);
+	}
+
+	/**
+	 * Write this string to dos: four bytes of string length, then the string.
+	 *
+	 * @param dos
+	 *            Where the string is written
+	 */
+	public void serialize(DataOutputStream dos) throws IOException {
+		dos.writeInt(getValue().length());
+		dos.writeBytes(getValue());
+	}
+
+	/**
+	 * Write this string to buf in the format of
+	 * {@link #serialize(DataOutputStream)}.
+	 */
+	public void serialize(ByteBuffer buf) {
+		String s = getValue();
+		buf.putInt(s.length());
+		// like DataOutputStream.writeBytes, keeps the low byte of each char
+		for (int i = 0; i < s.length(); i++)
+			buf.put((byte) s.charAt(i));
+	}
+
+	/**
+	 * @return the Type for this Field
+	 */
+	public Type getType() {
+		return Type.VARCHAR_TYPE;
+	}
+}
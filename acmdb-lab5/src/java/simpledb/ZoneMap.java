@@ -0,0 +1,268 @@
+package simpledb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * ZoneMap records, for every page of a HeapFile, the smallest and largest
+ * value of each INT column on the page, so that a scan with a predicate such
+ * as <code>t.ts &gt; 1000000</code> can leave out pages none of whose tuples
+ * can match without reading them.
+ * <p>
+ * The zone of a page always contains the values of the page as any
+ * transaction may see it: an insert widens it at once, while a delete only
+ * narrows it once the page is written to disk, i.e. when the delete has
+ * committed. The zone of a page may also be unknown, in which case the page
+ * is never left out; it becomes known when the page is read from or written
+ * to disk.
+ * <p>
+ * Zones of pages written to disk are also kept in a {@link SideFile} next to
+ * the heap file, one record per page: a byte that is 1 if the zone is known,
+ * then the minimum and maximum of each INT column (big-endian). A page with
+ * no tuples has a minimum greater than its maximum.
+ */
+class ZoneMap {
+
+    /** "ZMP1" */
+    private static final int MAGIC = 0x5a4d5031;
+
+    private final SideFile side;
+    /** Indexes of the INT columns of the table. */
+    private final int[] columns;
+    private final int recordSize;
+
+    /** Per page, whether its zone is known. */
+    private boolean[] known = new boolean[16];
+    /** Per page and INT column, the smallest and the largest value. */
+    private int[] mins;
+    private int[] maxs;
+
+    /**
+     * @param file the side file in which zones are persisted
+     * @param td the schema of the heap file
+     */
+    ZoneMap(File file, TupleDesc td) {
+        this.columns = intColumns(td);
+        this.recordSize = 1 + 8 * columns.length;
+        this.side = new SideFile(file, MAGIC, recordSize);
+        this.mins = new int[known.length * columns.length];
+        this.maxs = new int[known.length * columns.length];
+    }
+
+    /** @return the indexes of the INT columns of a schema */
+    static int[] intColumns(TupleDesc td) {
+        int n = 0;
+        int[] columns = new int[td.numFields()];
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) {
+                columns[n++] = i;
+            }
+        }
+        return Arrays.copyOf(columns, n);
+    }
+
+    /**
+     * Loads the persisted zones, unless the side file is missing or was not
+     * written for the heap file as it is now (see {@link SideFile}).
+     *
+     * @param heapFile the heap file the zones describe
+     * @param maxPages the number of pages the heap file has now
+     */
+    synchronized void load(File heapFile, int maxPages) throws IOException {
+        byte[] data = side.load(heapFile, maxPages);
+        if (data == null) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        for (int pageNo = 0; pageNo < maxPages; pageNo++) {
+            ensureCapacity(pageNo);
+            known[pageNo] = buf.get() == 1;
+            for (int c = 0; c < columns.length; c++) {
+                mins[pageNo * columns.length + c] = buf.getInt();
+                maxs[pageNo * columns.length + c] = buf.getInt();
+            }
+        }
+    }
+
+    /**
+     * Widens the zone of a page to the values of a tuple just inserted into
+     * it. An unknown zone stays unknown.
+     */
+    synchronized void widen(int pageNo, Tuple t) {
+        if (pageNo >= known.length || !known[pageNo]) {
+            return;
+        }
+        for (int c = 0; c < columns.length; c++) {
+            int v = ((IntField) t.getField(columns[c])).getValue();
+            int i = pageNo * columns.length + c;
+            mins[i] = Math.min(mins[i], v);
+            maxs[i] = Math.max(maxs[i], v);
+        }
+    }
+
+    /**
+     * Sets the zone of a page just read from disk, if it is not known yet.
+     */
+    void fill(int pageNo, HeapPage page) {
+        synchronized (this) {
+            if (pageNo < known.length && known[pageNo]) {
+                return;
+            }
+        }
+        int[][] zone = zoneOf(page);
+        synchronized (this) {
+            // unless the page was written meanwhile
+            if (pageNo >= known.length || !known[pageNo]) {
+                set(pageNo, zone);
+            }
+        }
+    }
+
+    /**
+     * Sets the zone of a page just written to disk, in memory and for the
+     * side file.
+     */
+    void persist(int pageNo, HeapPage page) {
+        int[][] zone = zoneOf(page);
+        synchronized (this) {
+            set(pageNo, zone);
+            side.put(pageNo, record(zone));
+        }
+    }
+
+    /**
+     * Sets the zone of a page just appended to the file with no tuples, in
+     * memory and for the side file.
+     */
+    synchronized void persistEmpty(int pageNo) {
+        int[][] zone = emptyZone();
+        set(pageNo, zone);
+        side.put(pageNo, record(zone));
+    }
+
+    /**
+     * Writes the zones persisted since the last sync to the side file.
+     *
+     * @param heapFile the heap file the zones describe
+     * @param numPages the number of pages the heap file has now
+     */
+    void sync(File heapFile, int numPages) throws IOException {
+        side.sync(heapFile, numPages);
+    }
+
+    /**
+     * Marks the side file as not clean before the heap file is written; see
+     * {@link SideFile#markDirty}.
+     */
+    void markDirty() throws IOException {
+        side.markDirty();
+    }
+
+    /** Deletes the side file. */
+    void delete() throws IOException {
+        side.delete();
+    }
+
+    /**
+     * @param predicates predicates over the columns of the table
+     * @return false if the zone of the page shows that none of its tuples
+     *   can satisfy all of the predicates
+     */
+    synchronized boolean mayMatch(int pageNo, Predicate[] predicates) {
+        if (pageNo >= known.length || !known[pageNo]) {
+            return true;
+        }
+        if (columns.length > 0 && mins[pageNo * columns.length] > maxs[pageNo * columns.length]) {
+            // no tuples
+            return false;
+        }
+        for (Predicate p : predicates) {
+            int c = Arrays.binarySearch(columns, p.getField());
+            if (c < 0 || !(p.getOperand() instanceof IntField)) {
+                continue;
+            }
+            int v = ((IntField) p.getOperand()).getValue();
+            int min = mins[pageNo * columns.length + c];
+            int max = maxs[pageNo * columns.length + c];
+            if (!mayMatch(p.getOp(), v, min, max)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return false if no value in [min, max] satisfies "value op v" */
+    private static boolean mayMatch(Predicate.Op op, int v, int min, int max) {
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return min <= v && v <= max;
+        case GREATER_THAN:
+            return max > v;
+        case GREATER_THAN_OR_EQ:
+            return max >= v;
+        case LESS_THAN:
+            return min < v;
+        case LESS_THAN_OR_EQ:
+            return min <= v;
+        case NOT_EQUALS:
+            return min != v || max != v;
+        default:
+            return true;
+        }
+    }
+
+    /** @return the smallest and largest value of each INT column of a page */
+    private int[][] zoneOf(HeapPage page) {
+        int[][] zone = emptyZone();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            for (int c = 0; c < columns.length; c++) {
+                int v = ((IntField) t.getField(columns[c])).getValue();
+                zone[0][c] = Math.min(zone[0][c], v);
+                zone[1][c] = Math.max(zone[1][c], v);
+            }
+        }
+        return zone;
+    }
+
+    private int[][] emptyZone() {
+        int[][] zone = new int[2][columns.length];
+        Arrays.fill(zone[0], Integer.MAX_VALUE);
+        Arrays.fill(zone[1], Integer.MIN_VALUE);
+        return zone;
+    }
+
+    private void set(int pageNo, int[][] zone) {
+        ensureCapacity(pageNo);
+        known[pageNo] = true;
+        for (int c = 0; c < columns.length; c++) {
+            mins[pageNo * columns.length + c] = zone[0][c];
+            maxs[pageNo * columns.length + c] = zone[1][c];
+        }
+    }
+
+    /** @return the side file record of a known zone */
+    private byte[] record(int[][] zone) {
+        ByteBuffer buf = ByteBuffer.allocate(recordSize);
+        buf.put((byte) 1);
+        for (int c = 0; c < columns.length; c++) {
+            buf.putInt(zone[0][c]);
+            buf.putInt(zone[1][c]);
+        }
+        return buf.array();
+    }
+
+    private void ensureCapacity(int pageNo) {
+        if (pageNo >= known.length) {
+            int pages = Math.max(pageNo + 1, known.length * 2);
+            known = Arrays.copyOf(known, pages);
+            mins = Arrays.copyOf(mins, pages * columns.length);
+            maxs = Arrays.copyOf(maxs, pages * columns.length);
+        }
+    }
+}
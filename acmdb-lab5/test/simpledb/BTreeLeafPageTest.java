@@ -7,6 +7,7 @@ import simpledb.systemtest.SystemTestUtil;
 
 //import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import org.junit.Before;
@@ -336,6 +337,21 @@ public class BTreeLeafPageTest extends SimpleDbTestBase {
 		}
 	}
 
+	/**
+	 * Unit test for BTreeLeafPage.writePageData(): writing into a reused
+	 * buffer produces exactly the bytes of getPageData()
+	 */
+	@Test public void writePageData() throws Exception {
+		BTreeLeafPage page = new BTreeLeafPage(pid, EXAMPLE_DATA, 0);
+		page.deleteTuple(page.iterator().next());
+		ByteBuffer buf = ByteBuffer.allocate(BufferPool.getPageSize() + 1);
+		Arrays.fill(buf.array(), (byte) 0xff);
+		page.writePageData(buf);
+		assertEquals(BufferPool.getPageSize(), buf.position());
+		assertTrue(Arrays.equals(page.getPageData(), Arrays.copyOf(buf.array(), BufferPool.getPageSize())));
+		assertTrue(Arrays.equals(EXAMPLE_DATA, new BTreeLeafPage(pid, EXAMPLE_DATA, 0).getPageData()));
+	}
+
 	/**
 	 * JUnit suite target
 	 */
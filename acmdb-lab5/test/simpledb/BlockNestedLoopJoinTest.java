@@ -0,0 +1,108 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class BlockNestedLoopJoinTest extends SimpleDbTestBase {
+
+    private static final int OUTER = 2000;
+    private static final int INNER = 300;
+
+    /** @return a list of two-field tuples (key, i) for the given keys */
+    private static TupleIterator tuples(int[] keys) {
+        int[] data = new int[keys.length * 2];
+        for (int i = 0; i < keys.length; i++) {
+            data[2 * i] = keys[i];
+            data[2 * i + 1] = i;
+        }
+        return TestUtil.createTupleList(2, data);
+    }
+
+    private static int[] keys(int n, int mod) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = (i * 7) % mod;
+        }
+        return keys;
+    }
+
+    /** @return the tuples of a join, as strings in sorted order */
+    private static ArrayList<String> sortedRows(DbIterator join) throws Exception {
+        ArrayList<String> rows = new ArrayList<String>();
+        join.open();
+        while (join.hasNext()) {
+            rows.add(join.next().toString());
+        }
+        join.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * BlockNestedLoopJoin returns what Join returns, for each predicate.
+     */
+    @Test public void matchesJoin() throws Exception {
+        int[] outerKeys = keys(OUTER, 100);
+        int[] innerKeys = keys(INNER, 150);
+        for (Predicate.Op op : Predicate.Op.values()) {
+            if (op == Predicate.Op.LIKE) {
+                continue;
+            }
+            JoinPredicate p = new JoinPredicate(0, op, 0);
+            ArrayList<String> expected = sortedRows(new Join(p, tuples(outerKeys),
+                    tuples(innerKeys)));
+            BlockNestedLoopJoin join = new BlockNestedLoopJoin(p, tuples(outerKeys),
+                    tuples(innerKeys));
+            join.setBlockPages(1);
+            assertEquals(op.toString(), expected, sortedRows(join));
+        }
+    }
+
+    /**
+     * The inner child is scanned once per block of outer tuples, and once
+     * more after a rewind.
+     */
+    @Test public void innerScans() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        BlockNestedLoopJoin join = new BlockNestedLoopJoin(p, tuples(keys(OUTER, 100)),
+                tuples(keys(INNER, 150)));
+        join.setBlockPages(1);
+        int size = SpillFile.memorySize(Utility.getTupleDesc(2));
+        int perBlock = (BufferPool.getPageSize() + size - 1) / size;
+        int blocks = (OUTER + perBlock - 1) / perBlock;
+        join.open();
+        int count = 0;
+        while (join.hasNext()) {
+            join.next();
+            count++;
+        }
+        assertEquals(blocks, join.getInnerScans());
+
+        join.rewind();
+        // a page per block before holds them all
+        join.setBlockPages(blocks);
+        int again = 0;
+        while (join.hasNext()) {
+            join.next();
+            again++;
+        }
+        assertEquals(count, again);
+        assertEquals(1, join.getInnerScans());
+        join.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BlockNestedLoopJoinTest.class);
+    }
+}
@@ -133,6 +133,30 @@ public class BufferPoolWriteTest extends TestUtil.CreateHeapFile {
     	assertEquals(10, count);
     }
 
+    /**
+     * Pages a DbFile appends outside of getPage take frames of the pool
+     * like any other, so the pool never holds more pages than it has
+     * frames.
+     */
+    @Test public void appendedPagesTakeFrames() throws Exception {
+        Database.resetBufferPool(4);
+        HeapFileDuplicates hfd = new HeapFileDuplicates(empty.getFile(), empty.getTupleDesc(), 3);
+        Database.getCatalog().addTable(hfd, SystemTestUtil.getUUID());
+        for (int i = 0; i < 4; i++) {
+            Database.getBufferPool().insertTuple(tid, hfd.getId(), Utility.getHeapTuple(i, 2));
+            // clean, and so evictable
+            Database.getBufferPool().flushAllPages();
+        }
+        int cached = 0;
+        for (int i = 0; i < hfd.numPages(); i++) {
+            if (Database.getBufferPool().isCached(new HeapPageId(hfd.getId(), i))) {
+                cached++;
+            }
+        }
+        assertTrue(hfd.numPages() >= 12);
+        assertTrue(cached <= 4);
+    }
+
     /**
      * JUnit suite target
      */
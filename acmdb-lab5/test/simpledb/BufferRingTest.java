@@ -0,0 +1,104 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class BufferRingTest extends SimpleDbTestBase {
+    private static final int HOT_PAGES = 10;
+
+    private TransactionId tid;
+    private BufferPool bp;
+    private HeapFile hot;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        // 504 two-column tuples fill one page
+        hot = SystemTestUtil.createRandomHeapFile(2, 504 * HOT_PAGES, null, null);
+        loadHotPages();
+    }
+
+    @After public void tearDown() throws Exception {
+        bp.transactionComplete(tid);
+    }
+
+    private void loadHotPages() throws Exception {
+        tid = new TransactionId();
+        bp = Database.getBufferPool();
+        for (int i = 0; i < HOT_PAGES; i++) {
+            bp.getPage(tid, new HeapPageId(hot.getId(), i), Permissions.READ_ONLY);
+        }
+    }
+
+    private void assertHotPagesCached() {
+        for (int i = 0; i < HOT_PAGES; i++) {
+            assertTrue(bp.isCached(new HeapPageId(hot.getId(), i)));
+        }
+    }
+
+    /**
+     * Only scans of tables larger than the pool get a ring.
+     */
+    @Test public void newScanRing() {
+        assertNull(bp.newScanRing(BufferPool.DEFAULT_PAGES));
+        BufferRing ring = bp.newScanRing(BufferPool.DEFAULT_PAGES * 4);
+        assertNotNull(ring);
+        assertTrue(ring.getSize() <= BufferPool.DEFAULT_PAGES / 4);
+    }
+
+    /**
+     * A heap scan of a table twice the size of the pool returns every tuple
+     * and leaves the pages already cached in the pool.
+     */
+    @Test public void heapScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * BufferPool.DEFAULT_PAGES * 2, null, tuples);
+        SystemTestUtil.matchTuples(big, tid, tuples);
+        assertHotPagesCached();
+        assertFalse(bp.isCached(new HeapPageId(big.getId(), 0)));
+    }
+
+    /**
+     * A B+ tree scan reads its leaves through a ring as well.
+     */
+    @Test public void leafScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 502 * BufferPool.DEFAULT_PAGES * 2, null, tuples, 0);
+        // start from a cold cache holding only the hot pages
+        bp.transactionComplete(tid);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        loadHotPages();
+        SystemTestUtil.matchTuples(bf, tid, tuples);
+        assertHotPagesCached();
+    }
+
+    /**
+     * Computing table statistics scans through a ring.
+     */
+    @Test public void tableStats() throws Exception {
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * BufferPool.DEFAULT_PAGES * 2, null, null);
+        TableStats stats = new TableStats(big.getId(), 1);
+        assertEquals(504 * BufferPool.DEFAULT_PAGES * 2, stats.totalTuples());
+        assertHotPagesCached();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferRingTest.class);
+    }
+}
@@ -0,0 +1,186 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ColumnFileTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 1000;
+
+    private TupleDesc td;
+    private File base;
+    private ColumnFile cf;
+
+    @Before public void createTable() throws Exception {
+        td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE, Type.LONG_TYPE},
+                new String[] {"id", "name", "ts"});
+        base = File.createTempFile("columns", ".dat");
+        base.deleteOnExit();
+        for (int c = 0; c < td.numFields(); c++) {
+            new File(base.getPath() + "." + c).deleteOnExit();
+        }
+        cf = new ColumnFile(base, td);
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+    }
+
+    private Tuple tuple(int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("name" + i, Type.STRING_LEN));
+        t.setField(2, new LongField(1_700_000_000_000L + i));
+        return t;
+    }
+
+    private void insert(int from, int to, boolean commit) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = from; i < to; i++) {
+            tuples.add(tuple(i));
+        }
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuples(tid, cf.getId(), tuples.iterator());
+        Database.getBufferPool().transactionComplete(tid, commit);
+    }
+
+    /** @return the tuples a scan of the given columns returns */
+    private ArrayList<Tuple> scan(DbFile file, int[] columns) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = columns == null ? file.iterator(tid) : file.iterator(tid, columns);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext()) {
+            tuples.add(it.next());
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    /**
+     * Rows come back in order with every column, and narrow columns take
+     * fewer pages than wide ones.
+     */
+    @Test public void insertAndScan() throws Exception {
+        insert(0, ROWS, true);
+        ArrayList<Tuple> tuples = scan(cf, null);
+        assertEquals(ROWS, tuples.size());
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = tuples.get(i);
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(new StringField("name" + i, Type.STRING_LEN), t.getField(1));
+            assertEquals(new LongField(1_700_000_000_000L + i), t.getField(2));
+        }
+        assertTrue(cf.numPages(0) < cf.numPages(1));
+        assertEquals((ROWS + cf.slotsPerPage(0) - 1) / cf.slotsPerPage(0), cf.numPages(0));
+    }
+
+    /**
+     * A scan of some columns returns just those, in the order asked for,
+     * and reads no page of the other columns.
+     */
+    @Test public void projectedScan() throws Exception {
+        insert(0, ROWS, true);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        ArrayList<Tuple> tuples = scan(cf, new int[] {2, 0});
+        assertEquals(ROWS, tuples.size());
+        Tuple t = tuples.get(17);
+        assertEquals(2, t.getTupleDesc().numFields());
+        assertEquals("ts", t.getTupleDesc().getFieldName(0));
+        assertEquals(new LongField(1_700_000_000_017L), t.getField(0));
+        assertEquals(new IntField(17), t.getField(1));
+        for (int p = 0; p < cf.numPages(1); p++) {
+            assertFalse(Database.getBufferPool().isCached(new ColumnPageId(cf.getId(), 1, p)));
+        }
+        assertTrue(Database.getBufferPool().isCached(new ColumnPageId(cf.getId(), 2, 0)));
+    }
+
+    /**
+     * Deleted rows are skipped whichever column a scan starts from, and
+     * rows survive reopening the file.
+     */
+    @Test public void deleteAndReopen() throws Exception {
+        insert(0, ROWS, true);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = cf.iterator(tid, new int[] {1});
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (t.getRecordId().tupleno() % 3 == 0) {
+                Database.getBufferPool().deleteTuple(tid, t);
+            }
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        ColumnFile reopened = new ColumnFile(base, td);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        for (int[] columns : new int[][] {{0}, {1, 2}, {2}}) {
+            ArrayList<Tuple> tuples = scan(reopened, columns);
+            assertEquals(ROWS - (ROWS + 2) / 3, tuples.size());
+            for (Tuple t : tuples) {
+                assertTrue(t.getRecordId().tupleno() % 3 != 0);
+            }
+        }
+        assertEquals(new IntField(1), scan(reopened, new int[] {0}).get(0).getField(0));
+    }
+
+    /**
+     * Rows of an aborted insert are gone from every column, and later
+     * inserts line up again.
+     */
+    @Test public void abortedInsert() throws Exception {
+        insert(0, 100, true);
+        insert(100, ROWS, false);
+        insert(ROWS, ROWS + 10, true);
+        ArrayList<Tuple> tuples = scan(cf, null);
+        assertEquals(110, tuples.size());
+        for (Tuple t : tuples) {
+            int id = ((IntField) t.getField(0)).getValue();
+            assertTrue(id < 100 || id >= ROWS);
+            assertEquals(new LongField(1_700_000_000_000L + id), t.getField(2));
+        }
+    }
+
+    /**
+     * The planner scans only the columns a query refers to.
+     */
+    @Test public void planScansUsedColumns() throws Exception {
+        insert(0, ROWS, true);
+        String name = "events";
+        Database.getCatalog().addTable(cf, name);
+        TableStats.setTableStats(name, new TableStats(cf.getId(), TableStats.IOCOSTPERPAGE));
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        Parser p = new Parser();
+        LogicalPlan lp = p.generateLogicalPlan(tid,
+                "SELECT MAX(c.ts) FROM " + name + " c WHERE c.id < 500;");
+        DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        plan.open();
+        assertEquals(new LongField(1_700_000_000_499L), plan.next().getField(0));
+        assertFalse(plan.hasNext());
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        for (int pg = 0; pg < cf.numPages(1); pg++) {
+            assertFalse(Database.getBufferPool().isCached(new ColumnPageId(cf.getId(), 1, pg)));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnFileTest.class);
+    }
+}
@@ -0,0 +1,44 @@
+package simpledb;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import simpledb.Predicate.Op;
+
+public class DoubleHistogramTest {
+
+	/**
+	 * Range selectivities interpolate within a bucket.
+	 */
+	@Test public void opRangeTest() {
+		DoubleHistogram h = new DoubleHistogram(10, 0.0, 100.0);
+		for (int i = 0; i < 1000; i++) {
+			h.addValue(i / 10.0);
+		}
+		Assert.assertEquals(0.255, h.estimateSelectivity(Op.LESS_THAN, 25.5), 0.01);
+		Assert.assertEquals(0.745, h.estimateSelectivity(Op.GREATER_THAN, 25.5), 0.01);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.LESS_THAN, -1.0), 0.001);
+		Assert.assertEquals(1.0, h.estimateSelectivity(Op.LESS_THAN_OR_EQ, 100.0), 0.001);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.GREATER_THAN, 100.0), 0.001);
+	}
+
+	/**
+	 * An equality predicate matches about one value, or all of them if every
+	 * value is the same.
+	 */
+	@Test public void opEqualsTest() {
+		DoubleHistogram h = new DoubleHistogram(10, 0.0, 100.0);
+		for (int i = 0; i < 1000; i++) {
+			h.addValue(i / 10.0);
+		}
+		Assert.assertEquals(0.001, h.estimateSelectivity(Op.EQUALS, 42.0), 0.0005);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.EQUALS, 142.0), 0.001);
+
+		DoubleHistogram same = new DoubleHistogram(10, 9.99, 9.99);
+		same.addValue(9.99);
+		same.addValue(9.99);
+		Assert.assertEquals(1.0, same.estimateSelectivity(Op.EQUALS, 9.99), 0.001);
+		Assert.assertEquals(0.0, same.estimateSelectivity(Op.NOT_EQUALS, 9.99), 0.001);
+		Assert.assertEquals(0.0, same.estimateSelectivity(Op.GREATER_THAN, 9.99), 0.001);
+	}
+}
@@ -8,6 +8,7 @@ import junit.framework.JUnit4TestAdapter;
 import org.junit.Before;
 import org.junit.Test;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.io.IOException;
 import java.util.HashMap;
 
@@ -130,6 +131,80 @@ public class HashEquiJoinTest extends SimpleDbTestBase {
       validateJoin(1,10,1,30001);
   }
 
+  /** @return the tuples of a join, as strings in sorted order */
+  private static ArrayList<String> sortedRows(DbIterator join) throws Exception {
+    ArrayList<String> rows = new ArrayList<String>();
+    join.open();
+    while (join.hasNext()) {
+      rows.add(join.next().toString());
+    }
+    join.close();
+    Collections.sort(rows);
+    return rows;
+  }
+
+  /** @return a list of width-field tuples whose first field is the key of each */
+  private static TupleIterator keyed(int width, int[] keys) {
+    int[] data = new int[keys.length * width];
+    for (int i = 0; i < keys.length; i++) {
+      data[i * width] = keys[i];
+      for (int j = 1; j < width; j++) {
+        data[i * width + j] = i + j;
+      }
+    }
+    return TestUtil.createTupleList(width, data);
+  }
+
+  /**
+   * Checks that HashEquiJoin with a one-page memory budget, building on
+   * either side, spills and returns the tuples a nested-loop Join returns.
+   */
+  private void validateSpill(int[] keys1, int[] keys2) throws Exception {
+    JoinPredicate pred = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+    ArrayList<String> expected = sortedRows(new Join(pred, keyed(width1, keys1),
+        keyed(width2, keys2)));
+    assertTrue(expected.size() > 0);
+    for (boolean buildOuter : new boolean[] { false, true }) {
+      HashEquiJoin op = new HashEquiJoin(pred, keyed(width1, keys1), keyed(width2, keys2),
+          buildOuter);
+      op.setMemoryPages(1);
+      op.open();
+      op.hasNext();
+      assertTrue(op.getPartitionCount() > 0);
+      op.close();
+      assertEquals(expected, sortedRows(op));
+    }
+  }
+
+  /**
+   * Unit test for a join whose build side exceeds the memory budget
+   */
+  @Test public void spillingJoin() throws Exception {
+    int[] keys1 = new int[3000];
+    for (int i = 0; i < keys1.length; i++) {
+      keys1[i] = i % 500;
+    }
+    int[] keys2 = new int[2000];
+    for (int i = 0; i < keys2.length; i++) {
+      keys2[i] = i % 700;
+    }
+    validateSpill(keys1, keys2);
+  }
+
+  /**
+   * Unit test for a spilling join where one key has more tuples than fit in
+   * the memory budget, so its partition cannot be split
+   */
+  @Test public void skewedJoin() throws Exception {
+    int[] keys1 = new int[1000];
+    int[] keys2 = new int[1000];
+    for (int i = 0; i < 1000; i++) {
+      keys1[i] = i % 200 == 0 ? 7 : i;
+      keys2[i] = i % 5 == 0 ? i : 7;
+    }
+    validateSpill(keys1, keys2);
+  }
+
   /**
    * JUnit suite target
    */
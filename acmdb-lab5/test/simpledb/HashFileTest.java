@@ -0,0 +1,286 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.UUID;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class HashFileTest extends SimpleDbTestBase {
+
+    private static final int KEYS = 5000;
+    private static final int BATCH = 1000;
+
+    private HashFile hf;
+
+    @Before public void createFile() throws Exception {
+        File f = File.createTempFile("hash", ".dat");
+        f.deleteOnExit();
+        hf = new HashFile(f, 0, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(hf, UUID.randomUUID().toString());
+    }
+
+    @After public void tearDown() {
+        Database.reset();
+    }
+
+    /** Inserts (key, value) for keys from, ..., to - 1, committing every BATCH tuples. */
+    private void insert(int from, int to, int value) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int k = from; k < to; k++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] {k, value}));
+            if ((k - from + 1) % BATCH == 0) {
+                Database.getBufferPool().transactionComplete(tid);
+                tid = new TransactionId();
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the number of tuples the iterator returns; each must satisfy the predicate */
+    private int count(DbFileIterator it, IndexPredicate ipred) throws Exception {
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (ipred != null) {
+                assertTrue(t.getField(0).compare(ipred.getOp(), ipred.getField()));
+            }
+            n++;
+        }
+        it.close();
+        return n;
+    }
+
+    private int lookup(TransactionId tid, int key) throws Exception {
+        IndexPredicate ipred = new IndexPredicate(Predicate.Op.EQUALS, new IntField(key));
+        return count(hf.indexIterator(tid, ipred), ipred);
+    }
+
+    private HashHeaderPage header(TransactionId tid) throws Exception {
+        return (HashHeaderPage) Database.getBufferPool().getPage(tid,
+                new HashPageId(hf.getId(), 0, HashPageId.HEADER), Permissions.READ_ONLY);
+    }
+
+    /**
+     * Buckets split, and the directory grows, as keys are inserted; every key
+     * is found again.
+     */
+    @Test public void insertAndLookup() throws Exception {
+        insert(0, KEYS, 1);
+        TransactionId tid = new TransactionId();
+        assertTrue(header(tid).getGlobalDepth() > 2);
+        for (int k = 0; k < KEYS; k += 37) {
+            assertEquals(1, lookup(tid, k));
+        }
+        assertEquals(0, lookup(tid, KEYS));
+        assertEquals(0, lookup(tid, -1));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Once the header and directory are cached, a lookup reads one bucket
+     * page, where a B+ tree reads a page per level.
+     */
+    @Test public void lookupReadsOneBucket() throws Exception {
+        insert(0, KEYS, 1);
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Database.getBufferPool().getReadAhead().setWindowSize(0);
+        TransactionId tid = new TransactionId();
+        assertEquals(1, lookup(tid, 1234));
+        int cached = 0;
+        for (int pgNo = 0; pgNo < hf.numPages(); pgNo++) {
+            for (int categ : new int[] {HashPageId.HEADER, HashPageId.DIRECTORY, HashPageId.BUCKET}) {
+                if (Database.getBufferPool().isCached(new HashPageId(hf.getId(), pgNo, categ))) {
+                    cached++;
+                }
+            }
+        }
+        assertEquals(3, cached);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Tuples with equal keys cannot be split apart and go to overflow pages.
+     */
+    @Test public void duplicatesOverflow() throws Exception {
+        TransactionId tid = new TransactionId();
+        int perPage = new HashBucketPage(new HashPageId(hf.getId(), 2, HashPageId.BUCKET),
+                HashPage.createEmptyPageData()).getMaxTuples();
+        for (int i = 0; i < 3 * perPage; i++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] {7, i}));
+        }
+        Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] {8, 0}));
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        assertEquals(3 * perPage, lookup(tid, 7));
+        assertEquals(1, lookup(tid, 8));
+        assertEquals(3 * perPage + 1, count(hf.iterator(tid), null));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Deletes take effect on commit; an aborted insert that split buckets
+     * leaves the index as it was.
+     */
+    @Test public void deleteAndAbort() throws Exception {
+        insert(0, BATCH, 1);
+        TransactionId tid = new TransactionId();
+        int depth = header(tid).getGlobalDepth();
+        IndexPredicate ipred = new IndexPredicate(Predicate.Op.LESS_THAN, new IntField(100));
+        DbFileIterator it = hf.indexIterator(tid, ipred);
+        it.open();
+        HashSet<Tuple> doomed = new HashSet<Tuple>();
+        while (it.hasNext()) {
+            doomed.add(it.next());
+        }
+        it.close();
+        assertEquals(100, doomed.size());
+        for (Tuple t : doomed) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        for (int k = BATCH; k < 4 * BATCH; k++) {
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] {k, 2}));
+        }
+        assertTrue(header(tid).getGlobalDepth() > depth);
+        assertEquals(1, lookup(tid, BATCH + 5));
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertEquals(depth, header(tid).getGlobalDepth());
+        assertEquals(0, lookup(tid, 50));
+        assertEquals(1, lookup(tid, 500));
+        assertEquals(0, lookup(tid, BATCH + 5));
+        assertEquals(BATCH - 100, count(hf.iterator(tid), null));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Predicates other than EQUALS read all buckets; BTreeScan scans a
+     * HashFile through its index iterator.
+     */
+    @Test public void rangePredicatesAndScan() throws Exception {
+        insert(0, KEYS, 1);
+        TransactionId tid = new TransactionId();
+        IndexPredicate ipred = new IndexPredicate(Predicate.Op.GREATER_THAN_OR_EQ, new IntField(KEYS - 10));
+        assertEquals(10, count(hf.indexIterator(tid, ipred), ipred));
+        assertEquals(KEYS, count(hf.iterator(tid), null));
+
+        BTreeScan scan = new BTreeScan(tid, hf.getId(), "h",
+                new IndexPredicate(Predicate.Op.EQUALS, new IntField(42)));
+        scan.open();
+        assertTrue(scan.hasNext());
+        assertEquals(new IntField(42), scan.next().getField(0));
+        assertFalse(scan.hasNext());
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the first key from from on whose hash has the given low bit */
+    private static int keyWithLowBit(int bit, int from) {
+        int k = from;
+        while ((HashFile.hash(new IntField(k)) & 1) != bit) {
+            k++;
+        }
+        return k;
+    }
+
+    /**
+     * Two transactions that both insert into the index, one of them having
+     * to double the directory, do not deadlock: the splitting insert lets go
+     * of its shared lock on the header before it waits for an exclusive one.
+     */
+    @Test public void concurrentSplitNoDeadlock() throws Exception {
+        int perPage = new HashBucketPage(new HashPageId(hf.getId(), 2, HashPageId.BUCKET),
+                HashPage.createEmptyPageData()).getMaxTuples();
+        // one split gives two buckets, by the low bit of the hash
+        insert(0, perPage + 1, 1);
+        TransactionId tid = new TransactionId();
+        assertEquals(1, header(tid).getGlobalDepth());
+        HashPageId full = hf.findBucket(tid, new HashMap<PageId, Page>(), header(tid), keyWithLowBit(0, 0));
+        int room = ((HashBucketPage) Database.getBufferPool().getPage(tid, full, Permissions.READ_ONLY))
+                .getNumEmptySlots();
+        Database.getBufferPool().transactionComplete(tid);
+        int k = perPage + 1;
+        tid = new TransactionId();
+        for (int i = 0; i < room; i++) {
+            k = keyWithLowBit(0, k) + 1;
+            Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] {k - 1, 1}));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        // tid1 holds a shared lock on the header after an insert that fits
+        final TransactionId tid1 = new TransactionId();
+        final int fits = keyWithLowBit(1, k);
+        Database.getBufferPool().insertTuple(tid1, hf.getId(), Utility.getHeapTuple(new int[] {fits, 1}));
+
+        // tid2 has to split the full bucket, doubling the directory
+        final TransactionId tid2 = new TransactionId();
+        final int splits = keyWithLowBit(0, fits + 1);
+        final Exception[] failed = new Exception[1];
+        Thread other = new Thread() {
+            public void run() {
+                try {
+                    Database.getBufferPool().insertTuple(tid2, hf.getId(),
+                            Utility.getHeapTuple(new int[] {splits, 1}));
+                    Database.getBufferPool().transactionComplete(tid2);
+                } catch (Exception e) {
+                    failed[0] = e;
+                    try {
+                        Database.getBufferPool().transactionComplete(tid2, false);
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        };
+        other.start();
+        PageId headerId = new HashPageId(hf.getId(), 0, HashPageId.HEADER);
+        while (!Database.getBufferPool().getLocks().isWaiting(tid2, headerId)) {
+            Thread.sleep(10);
+        }
+
+        // tid1 now wants the same bucket
+        int alsoSplits = keyWithLowBit(0, splits + 1);
+        boolean inserted = false;
+        try {
+            Database.getBufferPool().insertTuple(tid1, hf.getId(), Utility.getHeapTuple(new int[] {alsoSplits, 1}));
+            inserted = true;
+        } finally {
+            Database.getBufferPool().transactionComplete(tid1, inserted);
+            other.join();
+        }
+
+        assertEquals(null, failed[0]);
+        assertEquals(0, Database.getBufferPool().getDeadlockCount());
+        tid = new TransactionId();
+        assertEquals(2, header(tid).getGlobalDepth());
+        assertEquals(1, lookup(tid, fits));
+        assertEquals(1, lookup(tid, splits));
+        assertEquals(1, lookup(tid, alsoSplits));
+        assertEquals(perPage + 1 + room + 3, count(hf.iterator(tid), null));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashFileTest.class);
+    }
+}
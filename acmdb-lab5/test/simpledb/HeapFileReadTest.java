@@ -3,6 +3,7 @@ package simpledb;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
 
+import java.io.File;
 import java.util.*;
 import org.junit.After;
 import org.junit.Before;
@@ -77,6 +78,28 @@ public class HeapFileReadTest extends SimpleDbTestBase {
         assertFalse(page.isSlotUsed(20));
     }
 
+    /**
+     * Unit test for HeapFile.readPage() in memory-mapped mode, including a
+     * page appended after the file was first mapped
+     */
+    @Test
+    public void readPageMemoryMapped() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 1000, 1 << 16, null, tuples);
+        HeapFile mapped = new HeapFile(f, td, true);
+        Database.getCatalog().addTable(mapped, UUID.randomUUID().toString());
+        assertTrue(mapped.isMemoryMapped());
+        SystemTestUtil.matchTuples(mapped, tuples);
+
+        HeapPage empty = new HeapPage(new HeapPageId(mapped.getId(), mapped.numPages()),
+                HeapPage.createEmptyPageData());
+        empty.insertTuple(Utility.getHeapTuple(new int[] {7, 8}));
+        mapped.writePage(empty);
+        HeapPage page = (HeapPage) mapped.readPage(empty.getId());
+        assertEquals(empty.getNumEmptySlots(), page.getNumEmptySlots());
+        assertTrue(page.isSlotUsed(0));
+    }
+
     @Test
     public void testIteratorBasic() throws Exception {
         HeapFile smallFile = SystemTestUtil.createRandomHeapFile(2, 3, null,
@@ -1,5 +1,9 @@
 package simpledb;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,6 +47,104 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         assertEquals(3, empty.numPages());
     }
 
+    /**
+     * Inserts go straight to a page with room, found through the free space
+     * map, without locking the full pages before it; the map survives
+     * reopening the file.
+     */
+    @Test public void insertUsesFreeSpace() throws Exception {
+        for (int i = 0; i < 504 * 3; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(3, empty.numPages());
+        HeapPageId full = new HeapPageId(empty.getId(), 0);
+        HeapPageId freed = new HeapPageId(empty.getId(), 1);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, freed, Permissions.READ_ONLY);
+        empty.deleteTuple(tid, page.iterator().next());
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(7, 2);
+        empty.insertTuple(tid, t);
+        assertEquals(freed, t.getRecordId().getPageId());
+        assertFalse(Database.getBufferPool().holdsLock(tid, full));
+        assertEquals(3, empty.numPages());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // reopen: the counts come from the side file
+        HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+        tid = new TransactionId();
+        reopened.insertTuple(tid, Utility.getHeapTuple(8, 2));
+        assertEquals(4, reopened.numPages());
+    }
+
+    /**
+     * A bulk insert fills pages one after another, each dirtied once, and
+     * grows the file by extents of 1, 2, 4, ... pages.
+     */
+    @Test public void insertTuples() throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < 504 * 5 + 1; ++i) {
+            tuples.add(Utility.getHeapTuple(i, 2));
+        }
+        ArrayList<Page> dirtied = empty.insertTuples(tid, tuples.iterator());
+        assertEquals(6, dirtied.size());
+        for (int i = 0; i < dirtied.size(); ++i) {
+            assertEquals(i, dirtied.get(i).getId().pageNumber());
+        }
+        // the initial page, then extents of 1, 2 and 4 pages; the last is only partly used
+        assertEquals(8, empty.numPages());
+        assertEquals(new HeapPageId(empty.getId(), 5),
+                tuples.get(tuples.size() - 1).getRecordId().getPageId());
+    }
+
+    /**
+     * The free space counts of pages written at commit reach the side file
+     * then, not with each page write; a side file the data file was
+     * rewritten behind is not trusted.
+     */
+    @Test public void sideFileStamp() throws Exception {
+        File fsm = new File(empty.getFile().getPath() + ".fsm");
+        assertFalse(fsm.exists());
+        for (int i = 0; i < 504 * 3; ++i) {
+            Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(i, 2));
+        }
+        assertFalse(fsm.exists());
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(fsm.exists());
+
+        // empty page 0 behind the side file's back, keeping the page count
+        RandomAccessFile raf = new RandomAccessFile(empty.getFile(), "rw");
+        raf.write(HeapPage.createEmptyPageData());
+        raf.close();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        HeapFile reopened = Utility.openHeapFile(2, empty.getFile());
+        tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(8, 2);
+        reopened.insertTuple(tid, t);
+        assertEquals(0, t.getRecordId().getPageId().pageNumber());
+        assertEquals(3, reopened.numPages());
+    }
+
+    /**
+     * Clearing the catalog deletes the side files of a heap file whose data
+     * file is gone.
+     */
+    @Test public void sideFilesDeletedWithData() throws Exception {
+        Database.getBufferPool().insertTuple(tid, empty.getId(), Utility.getHeapTuple(1, 2));
+        Database.getBufferPool().transactionComplete(tid);
+        File fsm = new File(empty.getFile().getPath() + ".fsm");
+        File zm = new File(empty.getFile().getPath() + ".zm");
+        assertTrue(fsm.exists());
+        assertTrue(zm.exists());
+
+        assertTrue(empty.getFile().delete());
+        Database.getCatalog().clear();
+        assertFalse(fsm.exists());
+        assertFalse(zm.exists());
+        tid = new TransactionId();
+    }
+
     /**
      * JUnit suite target
      */
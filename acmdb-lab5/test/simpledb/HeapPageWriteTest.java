@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 
@@ -126,6 +127,34 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Modifying a page leaves its before-image, iterators and tuples already
+     * handed out, and the array it was created from unchanged.
+     */
+    @Test public void modifyLeavesSharedDataAlone() throws Exception {
+        byte[] data = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, data);
+        int free = page.getNumEmptySlots();
+        Iterator<Tuple> it = page.iterator();
+        Tuple first = it.next();
+        Tuple second = it.next();
+
+        page.deleteTuple(first);
+        page.deleteTuple(second);
+        page.insertTuple(Utility.getHeapTuple(new int[] {-1, -2}));
+        assertEquals(free + 1, page.getNumEmptySlots());
+
+        assertTrue(Arrays.equals(HeapPageReadTest.EXAMPLE_DATA, data));
+        assertEquals(free, page.getBeforeImage().getNumEmptySlots());
+        assertEquals(HeapPageReadTest.EXAMPLE_VALUES[1][0], ((IntField) second.getField(0)).getValue());
+        int remaining = 0;
+        while (it.hasNext()) {
+            it.next();
+            remaining++;
+        }
+        assertEquals(HeapPageReadTest.EXAMPLE_VALUES.length - 2, remaining);
+    }
+
     /**
      * JUnit suite target
      */
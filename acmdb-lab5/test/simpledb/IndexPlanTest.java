@@ -0,0 +1,237 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Tests that the planner reads tables through their indexes when that is
+ * cheaper, and {@link IndexNestedLoopJoin}.
+ */
+public class IndexPlanTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 50000;
+    private static final int GROUPS = 5000;
+
+    private HeapFile big;
+    private HeapFile small;
+
+    /**
+     * big is (id, id % GROUPS), keyed on id, with an index on each field;
+     * small is (id, 0) for ten ids spread over big.
+     */
+    @Before public void createTables() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            tuple.add(i);
+            tuple.add(i % GROUPS);
+            tuples.add(tuple);
+        }
+        big = heapFile("big", tuples, "field0");
+        Database.getCatalog().addIndex(big.getId(), 0, tempFile());
+        Database.getCatalog().addIndex(big.getId(), 1, tempFile());
+
+        tuples.clear();
+        for (int i = 0; i < 10; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            tuple.add(i * 997);
+            tuple.add(0);
+            tuples.add(tuple);
+        }
+        small = heapFile("small", tuples, "");
+    }
+
+    @After public void tearDown() {
+        Database.reset();
+    }
+
+    private static HeapFile heapFile(String name, ArrayList<ArrayList<Integer>> tuples, String pkey)
+            throws Exception {
+        File file = File.createTempFile(name, ".dat");
+        HeapFile.deleteOnExit(file);
+        HeapFileEncoder.convert(tuples, file, BufferPool.getPageSize(), 2);
+        HeapFile hf = Utility.openHeapFile(2, "field", file);
+        Database.getCatalog().addTable(hf, name, pkey);
+        TableStats.setTableStats(name, new TableStats(hf.getId(), TableStats.IOCOSTPERPAGE));
+        return hf;
+    }
+
+    private static File tempFile() throws Exception {
+        File f = File.createTempFile("index", ".idx");
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static DbIterator plan(TransactionId tid, String query) throws Exception {
+        LogicalPlan lp = new Parser().generateLogicalPlan(tid, query);
+        return lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+    }
+
+    /** @return whether a plan has an iterator of the given class */
+    private static boolean uses(DbIterator plan, Class<?> c) {
+        if (c.isInstance(plan)) {
+            return true;
+        }
+        if (plan instanceof Operator) {
+            for (DbIterator child : ((Operator) plan).getChildren()) {
+                if (child != null && uses(child, c)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static ArrayList<ArrayList<Integer>> run(DbIterator plan) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        plan.open();
+        while (plan.hasNext()) {
+            tuples.add(SystemTestUtil.tupleToList(plan.next()));
+        }
+        plan.close();
+        return tuples;
+    }
+
+    /**
+     * A selective filter on an indexed field of a heap table is answered by
+     * an IndexScan; an unselective one by a SeqScan.
+     */
+    @Test public void filterOnSecondaryIndex() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbIterator plan = plan(tid, "SELECT * FROM big WHERE big.field1 = 7;");
+        assertTrue(uses(plan, IndexScan.class));
+        assertFalse(uses(plan, SeqScan.class));
+        ArrayList<ArrayList<Integer>> tuples = run(plan);
+        assertEquals(ROWS / GROUPS, tuples.size());
+        for (ArrayList<Integer> t : tuples) {
+            assertEquals(7, (int) t.get(1));
+        }
+
+        plan = plan(tid, "SELECT * FROM big WHERE big.field1 < 4000 AND big.field0 > 100;");
+        assertTrue(uses(plan, SeqScan.class));
+        assertEquals(ROWS / GROUPS * 4000 - 101, run(plan).size());
+
+        // the index applies one filter, the other stays
+        plan = plan(tid, "SELECT * FROM big WHERE big.field0 < 20 AND big.field1 > 10;");
+        assertTrue(uses(plan, IndexScan.class));
+        assertTrue(uses(plan, Filter.class));
+        assertEquals(9, run(plan).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The filter an index scan answers is left out of the plan, so the scan
+     * itself keeps out a tuple that an out of date entry points to.
+     */
+    @Test public void staleEntry() throws Exception {
+        TransactionId tid = new TransactionId();
+        SecondaryIndex index = Database.getCatalog().getIndex(big.getId(), 1);
+        // an entry for 7 pointing at the tuple (8, 8), in slot 8 of page 0
+        Tuple entry = new Tuple(index.getFile().getTupleDesc());
+        entry.setField(0, new IntField(7));
+        entry.setField(1, new IntField(0));
+        entry.setField(2, new IntField(8));
+        Database.getBufferPool().insertTuple(tid, index.getFile().getId(), entry);
+
+        DbIterator plan = plan(tid, "SELECT * FROM big WHERE big.field1 = 7;");
+        assertTrue(uses(plan, IndexScan.class));
+        assertFalse(uses(plan, Filter.class));
+        ArrayList<ArrayList<Integer>> tuples = run(plan);
+        assertEquals(ROWS / GROUPS, tuples.size());
+        for (ArrayList<Integer> t : tuples) {
+            assertEquals(7, (int) t.get(1));
+        }
+        Database.getBufferPool().transactionComplete(tid, false);
+    }
+
+    /**
+     * A selective filter on the key of a B+ tree table is answered by a
+     * BTreeScan.
+     */
+    @Test public void filterOnTableIndex() throws Exception {
+        BTreeFile bf = BTreeUtility.createBTreeFile(2, ROWS, null, null, 0);
+        bf = BTreeUtility.openBTreeFile(2, "field", bf.getFile(), 0);
+        Database.getCatalog().addTable(bf, "tree");
+        TableStats.setTableStats("tree", new TableStats(bf.getId(), TableStats.IOCOSTPERPAGE));
+
+        TransactionId tid = new TransactionId();
+        DbIterator plan = plan(tid, "SELECT * FROM tree WHERE tree.field0 = 1234;");
+        assertTrue(uses(plan, BTreeScan.class));
+        ArrayList<ArrayList<Integer>> tuples = run(plan);
+        assertEquals(1, tuples.size());
+        assertEquals(2468, (int) tuples.get(0).get(1));
+
+        plan = plan(tid, "SELECT * FROM tree WHERE tree.field1 = 1234;");
+        assertTrue(uses(plan, SeqScan.class));
+        assertEquals(1, run(plan).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Joining a few tuples to a large table indexed on the join field probes
+     * the index, applying the filters on the large table to what it finds.
+     */
+    @Test public void indexJoin() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbIterator plan = plan(tid, "SELECT * FROM small, big WHERE small.field0 = big.field0;");
+        assertTrue(uses(plan, IndexNestedLoopJoin.class));
+        ArrayList<ArrayList<Integer>> tuples = run(plan);
+        assertEquals(10, tuples.size());
+        for (ArrayList<Integer> t : tuples) {
+            assertEquals(t.get(0), t.get(2));
+            assertEquals(t.get(0) % GROUPS, (int) t.get(3));
+        }
+
+        plan = plan(tid, "SELECT * FROM small, big WHERE small.field0 = big.field0 AND big.field1 < 3000;");
+        assertTrue(uses(plan, IndexNestedLoopJoin.class));
+        assertEquals(7, run(plan).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * IndexNestedLoopJoin returns what Join returns, for equality and range
+     * predicates.
+     */
+    @Test public void matchesNestedLoopJoin() throws Exception {
+        TransactionId tid = new TransactionId();
+        SecondaryIndex index = Database.getCatalog().getIndex(big.getId(), 1);
+        Predicate.Op[] ops = {Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+                Predicate.Op.GREATER_THAN_OR_EQ};
+        for (Predicate.Op op : ops) {
+            JoinPredicate p = new JoinPredicate(0, op, 1);
+            DbIterator outer = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(2000)),
+                    new SeqScan(tid, small.getId(), "s"));
+            Filter inner = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(5000)),
+                    new IndexScan(tid, index, "b", null));
+            ArrayList<ArrayList<Integer>> expected = run(new Join(p, outer,
+                    new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(5000)),
+                            new SeqScan(tid, big.getId(), "b"))));
+            IndexNestedLoopJoin join = new IndexNestedLoopJoin(p, outer, inner);
+            assertTrue(join.getProbe() == inner.getChildren()[0]);
+            ArrayList<ArrayList<Integer>> actual = run(join);
+            assertEquals(expected.size(), actual.size());
+            assertTrue(actual.containsAll(expected));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(IndexPlanTest.class);
+    }
+}
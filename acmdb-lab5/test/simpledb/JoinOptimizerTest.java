@@ -37,7 +37,7 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
             ArrayList<ArrayList<Integer>> tuples, int columns, String colPrefix)
             throws IOException {
         File temp = File.createTempFile("table", ".dat");
-        temp.deleteOnExit();
+        HeapFile.deleteOnExit(temp);
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
         return Utility.openHeapFile(columns, colPrefix, temp);
     }
@@ -621,4 +621,106 @@ public class JoinOptimizerTest extends SimpleDbTestBase {
         Assert.assertTrue(result.get(result.size() - 1).t2Alias.equals("a")
                 || result.get(result.size() - 1).t1Alias.equals("a"));
     }
+
+    /**
+     * An equi-join of two large tables is planned as a hash join that builds
+     * its hash table on the smaller table, a range join as a sort-merge join,
+     * and other joins as block nested loops.
+     */
+    @Test
+    public void chooseJoinAlgorithmTest() throws ParsingException {
+        TransactionId tid = new TransactionId();
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(tableName1, stats1);
+        stats.put(tableName2, stats2);
+        HashMap<String, Double> filterSelectivities = new HashMap<String, Double>();
+        filterSelectivities.put(tableName1, 1.0);
+        filterSelectivities.put(tableName2, 1.0);
+        Parser p = new Parser();
+
+        Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+        nodes.add(new LogicalJoinNode(tableName2, tableName1, "c1", "c2",
+                Predicate.Op.EQUALS));
+        JoinOptimizer j = new JoinOptimizer(p.generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + ", " + tableName2 + " WHERE "
+                        + tableName2 + ".c1 = " + tableName1 + ".c2;"), nodes);
+        LogicalJoinNode chosen = j.orderJoins(stats, filterSelectivities, false).get(0);
+        String build = chosen.algorithm == LogicalJoinNode.Algorithm.HASH_BUILD_OUTER
+                ? chosen.t1Alias : chosen.t2Alias;
+        Assert.assertTrue(chosen.algorithm == LogicalJoinNode.Algorithm.HASH
+                || chosen.algorithm == LogicalJoinNode.Algorithm.HASH_BUILD_OUTER);
+        Assert.assertEquals(tableName1, build);
+
+        nodes = new Vector<LogicalJoinNode>();
+        nodes.add(new LogicalJoinNode(tableName2, tableName1, "c1", "c2",
+                Predicate.Op.LESS_THAN));
+        j = new JoinOptimizer(p.generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + ", " + tableName2 + " WHERE "
+                        + tableName2 + ".c1 < " + tableName1 + ".c2;"), nodes);
+        chosen = j.orderJoins(stats, filterSelectivities, false).get(0);
+        Assert.assertEquals(LogicalJoinNode.Algorithm.SORT_MERGE, chosen.algorithm);
+
+        nodes = new Vector<LogicalJoinNode>();
+        nodes.add(new LogicalJoinNode(tableName2, tableName1, "c1", "c2",
+                Predicate.Op.NOT_EQUALS));
+        j = new JoinOptimizer(p.generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + ", " + tableName2 + " WHERE "
+                        + tableName2 + ".c1 <> " + tableName1 + ".c2;"), nodes);
+        chosen = j.orderJoins(stats, filterSelectivities, false).get(0);
+        Assert.assertEquals(LogicalJoinNode.Algorithm.BLOCK_NESTED_LOOP, chosen.algorithm);
+    }
+
+    /**
+     * A hash join costs an insert per build tuple and a lookup per probe
+     * tuple while the build side fits the join's memory budget; a larger
+     * build side also writes both sides to partitions and reads them back.
+     */
+    @Test
+    public void hashJoinSpillCost() throws ParsingException {
+        TransactionId tid = new TransactionId();
+        Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+        LogicalJoinNode node = new LogicalJoinNode(tableName1, tableName2, "c1", "c2",
+                Predicate.Op.EQUALS);
+        nodes.add(node);
+        JoinOptimizer j = new JoinOptimizer(new Parser().generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + ", " + tableName2 + " WHERE "
+                        + tableName1 + ".c1 = " + tableName2 + ".c2;"), nodes);
+        int width = Database.getCatalog().getTupleDesc(tableId1).getSize();
+
+        double fits = j.estimateJoinCost(node, LogicalJoinNode.Algorithm.HASH, 1000, 1000, 0, 0);
+        Assert.assertEquals(JoinOptimizer.HASH_BUILD_COST * 1000 + 1000, fits, 1e-6);
+
+        double spills = j.estimateJoinCost(node, LogicalJoinNode.Algorithm.HASH, 1000, 10000, 0, 0);
+        double partitionPages = (double) (10000 + 1000) * width / BufferPool.getPageSize();
+        Assert.assertEquals(JoinOptimizer.HASH_BUILD_COST * 10000 + 1000
+                + 2 * TableStats.IOCOSTPERPAGE * partitionPages, spills, 1e-6);
+    }
+
+    /**
+     * A sort-merge join sorts unsorted sides in memory while they fit the
+     * sort's memory budget; a larger side is also written to sorted runs
+     * and read back for the merge.
+     */
+    @Test
+    public void sortMergeSpillCost() throws ParsingException {
+        TransactionId tid = new TransactionId();
+        Vector<LogicalJoinNode> nodes = new Vector<LogicalJoinNode>();
+        LogicalJoinNode node = new LogicalJoinNode(tableName1, tableName2, "c1", "c2",
+                Predicate.Op.EQUALS);
+        nodes.add(node);
+        JoinOptimizer j = new JoinOptimizer(new Parser().generateLogicalPlan(tid,
+                "SELECT * FROM " + tableName1 + ", " + tableName2 + " WHERE "
+                        + tableName1 + ".c1 = " + tableName2 + ".c2;"), nodes);
+        int width = Database.getCatalog().getTupleDesc(tableId2).getSize();
+        double sort1000 = 1000 * Math.log(1000) / Math.log(2);
+
+        double fits = j.estimateJoinCost(node, LogicalJoinNode.Algorithm.SORT_MERGE, 1000, 1000, 0, 0);
+        Assert.assertEquals(2 * sort1000 + 2000, fits, 1e-6);
+
+        // fewer runs than merge at once: one pass over the runs
+        double spills = j.estimateJoinCost(node, LogicalJoinNode.Algorithm.SORT_MERGE, 1000, 50000, 0, 0);
+        double runPages = 50000.0 * width / BufferPool.getPageSize();
+        Assert.assertEquals(sort1000 + 50000 * Math.log(50000) / Math.log(2)
+                + 2 * TableStats.IOCOSTPERPAGE * runPages + 51000, spills, 1e-6);
+    }
 }
@@ -0,0 +1,221 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class LocksTest extends SimpleDbTestBase {
+    private Locks locks;
+    private PageId pid;
+    private TransactionId tid1, tid2, tid3;
+
+    /** Time to wait before checking the state of lock contention, in ms */
+    private static final int POLL = 100;
+
+    /** Lock timeout long enough that no test request times out by accident */
+    private static final long PATIENT = 10000;
+
+    /** Requests a lock in a new thread. */
+    private class Grabber extends Thread {
+        final TransactionId tid;
+        final PageId pid;
+        final Permissions perm;
+        final long timeout;
+        volatile boolean acquired;
+        volatile boolean aborted;
+
+        Grabber(TransactionId tid, Permissions perm, long timeout) {
+            this(tid, LocksTest.this.pid, perm, timeout);
+        }
+
+        Grabber(TransactionId tid, PageId pid, Permissions perm, long timeout) {
+            this.tid = tid;
+            this.pid = pid;
+            this.perm = perm;
+            this.timeout = timeout;
+            start();
+        }
+
+        public void run() {
+            try {
+                locks.lock(tid, pid, perm, timeout);
+                acquired = true;
+            } catch (TransactionAbortedException e) {
+                aborted = true;
+            }
+        }
+    }
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        locks = new Locks();
+        pid = new HeapPageId(1, 0);
+        tid1 = new TransactionId();
+        tid2 = new TransactionId();
+        tid3 = new TransactionId();
+    }
+
+    /**
+     * A shared request queued behind an exclusive one must not overtake it.
+     */
+    @Test public void fifoOrder() throws Exception {
+        locks.lock(tid1, pid, Permissions.READ_ONLY, PATIENT);
+        Grabber writer = new Grabber(tid2, Permissions.READ_WRITE, PATIENT);
+        Thread.sleep(POLL);
+        Grabber reader = new Grabber(tid3, Permissions.READ_ONLY, PATIENT);
+        Thread.sleep(POLL);
+        assertFalse(writer.acquired);
+        assertFalse(reader.acquired);
+
+        locks.unlockPages(tid1);
+        writer.join(PATIENT);
+        assertTrue(writer.acquired);
+        Thread.sleep(POLL);
+        assertFalse(reader.acquired);
+
+        locks.unlockPages(tid2);
+        reader.join(PATIENT);
+        assertTrue(reader.acquired);
+    }
+
+    /**
+     * An upgrade is served before exclusive requests that queued earlier.
+     */
+    @Test public void upgradeFirst() throws Exception {
+        locks.lock(tid1, pid, Permissions.READ_ONLY, PATIENT);
+        locks.lock(tid2, pid, Permissions.READ_ONLY, PATIENT);
+        Grabber writer = new Grabber(tid3, Permissions.READ_WRITE, PATIENT);
+        Thread.sleep(POLL);
+        Grabber upgrade = new Grabber(tid1, Permissions.READ_WRITE, PATIENT);
+        Thread.sleep(POLL);
+        assertFalse(upgrade.acquired);
+
+        locks.unlockPages(tid2);
+        upgrade.join(PATIENT);
+        assertTrue(upgrade.acquired);
+        Thread.sleep(POLL);
+        assertFalse(writer.acquired);
+
+        locks.unlockPages(tid1);
+        writer.join(PATIENT);
+        assertTrue(writer.acquired);
+    }
+
+    /**
+     * A timed-out waiter aborts and no longer blocks the requests behind it.
+     */
+    @Test public void timeout() throws Exception {
+        locks.lock(tid1, pid, Permissions.READ_ONLY, PATIENT);
+        Grabber writer = new Grabber(tid2, Permissions.READ_WRITE, POLL);
+        Grabber reader = new Grabber(tid3, Permissions.READ_ONLY, PATIENT);
+        writer.join(PATIENT);
+        assertTrue(writer.aborted);
+        assertFalse(locks.holdsLock(tid2, pid));
+        assertFalse(locks.isWaiting(tid2, pid));
+
+        reader.join(PATIENT);
+        assertTrue(reader.acquired);
+        assertTrue(locks.holdsLock(tid3, pid));
+        assertFalse(locks.isWaiting(tid3, pid));
+    }
+
+    /**
+     * Two transactions waiting for each other form a cycle in the waits-for
+     * graph; the younger one is aborted whether or not it closed the cycle.
+     */
+    @Test public void deadlock() throws Exception {
+        PageId other = new HeapPageId(1, 1);
+
+        // tid2 is younger than tid1 and closes the cycle itself
+        locks.lock(tid1, pid, Permissions.READ_WRITE, PATIENT);
+        locks.lock(tid2, other, Permissions.READ_WRITE, PATIENT);
+        Grabber older = new Grabber(tid1, other, Permissions.READ_WRITE, PATIENT);
+        Thread.sleep(POLL);
+        try {
+            locks.lock(tid2, pid, Permissions.READ_WRITE, PATIENT);
+            fail("expected TransactionAbortedException");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        assertEquals(1, locks.getDeadlockCount());
+        locks.unlockPages(tid2);
+        older.join(PATIENT);
+        assertTrue(older.acquired);
+        locks.unlockPages(tid1);
+
+        // tid3 is the youngest and is already waiting when tid1 closes the cycle
+        locks.lock(tid1, pid, Permissions.READ_WRITE, PATIENT);
+        locks.lock(tid3, other, Permissions.READ_WRITE, PATIENT);
+        Grabber younger = new Grabber(tid3, pid, Permissions.READ_WRITE, PATIENT);
+        Thread.sleep(POLL);
+        Grabber closer = new Grabber(tid1, other, Permissions.READ_WRITE, PATIENT);
+        younger.join(PATIENT);
+        assertTrue(younger.aborted);
+        assertEquals(2, locks.getDeadlockCount());
+        assertTrue(locks.getVictimWaitNanos() > 0);
+        locks.unlockPages(tid3);
+        closer.join(PATIENT);
+        assertTrue(closer.acquired);
+    }
+
+    /** Waits until a transaction is queued for a lock on a page. */
+    private void awaitQueued(TransactionId tid, PageId pid) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PATIENT;
+        while (!locks.isWaiting(tid, pid)) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * One wait that closes two cycles at once: tid1 holds pid, which tid2
+     * and tid3 wait for while they share the page tid1 then asks for. Both
+     * cycles are broken by that single wait, and the victims, taken out of
+     * the queue when chosen, are not granted pid when it is released.
+     */
+    @Test public void twoCycles() throws Exception {
+        PageId other = new HeapPageId(1, 1);
+        locks.lock(tid1, pid, Permissions.READ_WRITE, PATIENT);
+        locks.lock(tid2, other, Permissions.READ_ONLY, PATIENT);
+        locks.lock(tid3, other, Permissions.READ_ONLY, PATIENT);
+        Grabber waiter2 = new Grabber(tid2, pid, Permissions.READ_ONLY, PATIENT);
+        Grabber waiter3 = new Grabber(tid3, pid, Permissions.READ_ONLY, PATIENT);
+        awaitQueued(tid2, pid);
+        awaitQueued(tid3, pid);
+        assertEquals(0, locks.getDeadlockCount());
+
+        Grabber closer = new Grabber(tid1, other, Permissions.READ_WRITE, PATIENT);
+        waiter2.join(PATIENT);
+        waiter3.join(PATIENT);
+        assertTrue(waiter2.aborted);
+        assertTrue(waiter3.aborted);
+        assertEquals(2, locks.getDeadlockCount());
+        assertFalse(locks.isWaiting(tid2, pid));
+        assertFalse(locks.isWaiting(tid3, pid));
+
+        locks.unlock(tid1, pid);
+        assertFalse(locks.holdsLock(tid2, pid));
+        assertFalse(locks.holdsLock(tid3, pid));
+        assertFalse(locks.isLockedExclusively(pid));
+
+        locks.unlockPages(tid2);
+        locks.unlockPages(tid3);
+        closer.join(PATIENT);
+        assertTrue(closer.acquired);
+        assertTrue(locks.isLockedExclusively(other));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LocksTest.class);
+    }
+}
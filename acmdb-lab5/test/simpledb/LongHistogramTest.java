@@ -0,0 +1,59 @@
+package simpledb;
+
+import org.junit.Test;
+import org.junit.Assert;
+
+import simpledb.Predicate.Op;
+
+public class LongHistogramTest {
+
+	/**
+	 * A range wider than any int, e.g. of millisecond timestamps, is split
+	 * into buckets without overflowing.
+	 */
+	@Test public void wideRangeTest() {
+		long min = Long.MIN_VALUE / 2;
+		long max = Long.MAX_VALUE / 2;
+		LongHistogram h = new LongHistogram(100, min, max);
+		long step = max / 500;
+		for (long v = min; v < max - step; v += step) {
+			h.addValue(v);
+		}
+		h.addValue(max);
+
+		Assert.assertEquals(0.5, h.estimateSelectivity(Op.LESS_THAN, 0), 0.02);
+		Assert.assertEquals(0.5, h.estimateSelectivity(Op.GREATER_THAN_OR_EQ, 0), 0.02);
+		Assert.assertEquals(1.0, h.estimateSelectivity(Op.LESS_THAN_OR_EQ, max), 0.001);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.GREATER_THAN, max), 0.001);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.LESS_THAN, min), 0.001);
+		Assert.assertTrue(h.estimateSelectivity(Op.EQUALS, 0) < 0.001);
+	}
+
+	/**
+	 * Make sure that equality binning does something reasonable.
+	 */
+	@Test public void opEqualsTest() {
+		LongHistogram h = new LongHistogram(10, 1, 10);
+		h.addValue(3);
+		h.addValue(3);
+		h.addValue(3);
+
+		Assert.assertEquals(1.0, h.estimateSelectivity(Op.EQUALS, 3), 0.001);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.EQUALS, 8), 0.001);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.NOT_EQUALS, 3), 0.001);
+		Assert.assertEquals(0.0, h.estimateSelectivity(Op.EQUALS, 11), 0.001);
+	}
+
+	/**
+	 * Range selectivities over evenly spread values.
+	 */
+	@Test public void opRangeTest() {
+		LongHistogram h = new LongHistogram(10, 3_000_000_000L, 3_000_000_999L);
+		for (long v = 3_000_000_000L; v <= 3_000_000_999L; v++) {
+			h.addValue(v);
+		}
+		Assert.assertEquals(0.25, h.estimateSelectivity(Op.LESS_THAN, 3_000_000_250L), 0.01);
+		Assert.assertEquals(0.75, h.estimateSelectivity(Op.GREATER_THAN_OR_EQ, 3_000_000_250L), 0.01);
+		Assert.assertEquals(0.001, h.estimateSelectivity(Op.EQUALS, 3_000_000_250L), 0.0005);
+	}
+}
@@ -0,0 +1,93 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class NumericAggregatorTest extends SimpleDbTestBase {
+
+    private TupleDesc td;
+    private ArrayList<Tuple> tuples;
+
+    /**
+     * Groups 1 and 2 of (int group, long, double) tuples.
+     */
+    @Before public void createTuples() throws Exception {
+        td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE});
+        tuples = new ArrayList<Tuple>();
+        long[] longs = {5_000_000_000L, -3, 7, 10};
+        double[] doubles = {1.5, 2.25, -0.5, 4.0};
+        int[] groups = {1, 1, 2, 2};
+        for (int i = 0; i < groups.length; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(groups[i]));
+            t.setField(1, new LongField(longs[i]));
+            t.setField(2, new DoubleField(doubles[i]));
+            tuples.add(t);
+        }
+    }
+
+    /** @return the aggregate of each group */
+    private HashMap<Field, Field> run(int afield, Aggregator.Op op) throws Exception {
+        Aggregator agg = new NumericAggregator(0, Type.INT_TYPE, afield, td.getFieldType(afield), op);
+        for (Tuple t : tuples) {
+            agg.mergeTupleIntoGroup(t);
+        }
+        HashMap<Field, Field> results = new HashMap<Field, Field>();
+        DbIterator it = agg.iterator();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(Aggregate.aggregateType(op, td.getFieldType(afield)), t.getTupleDesc().getFieldType(1));
+            results.put(t.getField(0), t.getField(1));
+        }
+        it.close();
+        return results;
+    }
+
+    @Test public void longs() throws Exception {
+        HashMap<Field, Field> sum = run(1, Aggregator.Op.SUM);
+        assertEquals(new LongField(4_999_999_997L), sum.get(new IntField(1)));
+        assertEquals(new LongField(17), sum.get(new IntField(2)));
+        assertEquals(new LongField(-3), run(1, Aggregator.Op.MIN).get(new IntField(1)));
+        assertEquals(new LongField(10), run(1, Aggregator.Op.MAX).get(new IntField(2)));
+        assertEquals(new LongField(8), run(1, Aggregator.Op.AVG).get(new IntField(2)));
+        assertEquals(new IntField(2), run(1, Aggregator.Op.COUNT).get(new IntField(1)));
+    }
+
+    @Test public void doubles() throws Exception {
+        HashMap<Field, Field> sum = run(2, Aggregator.Op.SUM);
+        assertEquals(new DoubleField(3.75), sum.get(new IntField(1)));
+        assertEquals(new DoubleField(3.5), sum.get(new IntField(2)));
+        assertEquals(new DoubleField(-0.5), run(2, Aggregator.Op.MIN).get(new IntField(2)));
+        assertEquals(new DoubleField(2.25), run(2, Aggregator.Op.MAX).get(new IntField(1)));
+        assertEquals(new DoubleField(1.875), run(2, Aggregator.Op.AVG).get(new IntField(1)));
+        assertEquals(new IntField(2), run(2, Aggregator.Op.COUNT).get(new IntField(2)));
+    }
+
+    /**
+     * Aggregate picks this aggregator for long and double fields.
+     */
+    @Test public void aggregate() throws Exception {
+        Aggregate agg = new Aggregate(new TupleIterator(td, tuples), 2, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+        assertEquals(Type.DOUBLE_TYPE, agg.getTupleDesc().getFieldType(0));
+        agg.open();
+        assertEquals(new DoubleField(7.25), agg.next().getField(0));
+        agg.close();
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(NumericAggregatorTest.class);
+    }
+}
@@ -0,0 +1,90 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class NumericTypesTest extends SimpleDbTestBase {
+
+    /**
+     * Fields compare as numbers and read back from each form of their
+     * serialization.
+     */
+    @Test public void fields() throws Exception {
+        Field[] fields = {new LongField(-1_700_000_000_000L), new DoubleField(19.99)};
+        for (Field f : fields) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            f.serialize(new DataOutputStream(baos));
+            byte[] bytes = baos.toByteArray();
+            assertEquals(f.getType().getLen(), bytes.length);
+            assertEquals(f, f.getType().parse(bytes, 0));
+            assertEquals(f, f.getType().parse(java.nio.ByteBuffer.wrap(bytes)));
+            assertEquals(f, f.getType().parse(new java.io.DataInputStream(new java.io.ByteArrayInputStream(bytes))));
+        }
+        assertTrue(new LongField(10).compare(Predicate.Op.GREATER_THAN, new LongField(9)));
+        assertFalse(new LongField(1L << 40).compare(Predicate.Op.LESS_THAN, new LongField(1)));
+        // as numbers, not as strings: "10.5" < "9.5"
+        assertTrue(new DoubleField(10.5).compare(Predicate.Op.GREATER_THAN, new DoubleField(9.5)));
+        assertTrue(new DoubleField(2.0).compare(Predicate.Op.EQUALS, new DoubleField(2.0)));
+    }
+
+    /**
+     * A table with long and double columns can be loaded, has statistics,
+     * and is filtered and summed through the parser.
+     */
+    @Test public void query() throws Exception {
+        File text = File.createTempFile("orders", ".txt");
+        text.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(text));
+        for (int i = 0; i < 1000; i++) {
+            bw.write(i + "," + (1_700_000_000_000L + i * 1000L) + "," + (i / 4.0) + "\n");
+        }
+        bw.close();
+        File data = File.createTempFile("orders", ".dat");
+        HeapFile.deleteOnExit(data);
+        Type[] types = {Type.INT_TYPE, Type.LONG_TYPE, Type.DOUBLE_TYPE};
+        HeapFileEncoder.convert(text, data, BufferPool.getPageSize(), 3, types);
+        HeapFile hf = new HeapFile(data, new TupleDesc(types, new String[] {"id", "ts", "price"}));
+        Database.getCatalog().addTable(hf, "orders");
+        TableStats stats = new TableStats(hf.getId(), TableStats.IOCOSTPERPAGE);
+        TableStats.setTableStats("orders", stats);
+
+        assertEquals(0.5, stats.estimateSelectivity(1, Predicate.Op.GREATER_THAN_OR_EQ,
+                new LongField(1_700_000_500_000L)), 0.02);
+        assertEquals(0.25, stats.estimateSelectivity(2, Predicate.Op.LESS_THAN,
+                new DoubleField(62.5)), 0.02);
+
+        TransactionId tid = new TransactionId();
+        Parser p = new Parser();
+        // keeps ids 500 to 801, whose prices i / 4 add up to 49112.75
+        DbIterator plan = p.generateLogicalPlan(tid,
+                "SELECT SUM(o.price) FROM orders o WHERE o.ts >= 1700000500000 AND o.price < 200.5;")
+                .physicalPlan(tid, TableStats.getStatsMap(), false);
+        plan.open();
+        Tuple t = plan.next();
+        assertEquals(Type.DOUBLE_TYPE, t.getTupleDesc().getFieldType(0));
+        assertEquals(new DoubleField(49112.75), t.getField(0));
+        assertFalse(plan.hasNext());
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(NumericTypesTest.class);
+    }
+}
@@ -0,0 +1,124 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class OrderByTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 20000;
+
+    /** @return two-field tuples (key, i), with many duplicate keys */
+    private static TupleIterator tuples(int n) {
+        int[] data = new int[n * 2];
+        for (int i = 0; i < n; i++) {
+            data[2 * i] = (int) ((i * 7919L) % 1000);
+            data[2 * i + 1] = i;
+        }
+        return TestUtil.createTupleList(2, data);
+    }
+
+    /** @return the tuples (key, i) sorted stably by key */
+    private static ArrayList<String> expected(int n, final boolean asc) {
+        ArrayList<int[]> rows = new ArrayList<int[]>();
+        for (int i = 0; i < n; i++) {
+            rows.add(new int[] {(int) ((i * 7919L) % 1000), i});
+        }
+        Collections.sort(rows, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                return asc ? Integer.compare(a[0], b[0]) : Integer.compare(b[0], a[0]);
+            }
+        });
+        ArrayList<String> strings = new ArrayList<String>();
+        for (int[] row : rows) {
+            strings.add(row[0] + "\t" + row[1]);
+        }
+        return strings;
+    }
+
+    private static ArrayList<String> rows(DbIterator it) throws Exception {
+        ArrayList<String> rows = new ArrayList<String>();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            rows.add(t.getField(0) + "\t" + t.getField(1));
+        }
+        return rows;
+    }
+
+    /**
+     * A child that fits in the budget is sorted in memory, stably.
+     */
+    @Test public void inMemory() throws Exception {
+        OrderBy ob = new OrderBy(0, true, tuples(ROWS / 4));
+        ob.open();
+        assertEquals(expected(ROWS / 4, true), rows(ob));
+        assertEquals(0, ob.getRunCount());
+        ob.close();
+    }
+
+    /**
+     * A child larger than the budget is spilled to sorted runs, which are
+     * merged over several passes, and comes out as it would from an
+     * in-memory sort, in either order and again after a rewind.
+     */
+    @Test public void spilled() throws Exception {
+        for (int pages : new int[] {1, 3, 8}) {
+            for (boolean asc : new boolean[] {true, false}) {
+                OrderBy ob = new OrderBy(0, asc, tuples(ROWS));
+                ob.setMemoryPages(pages);
+                ob.open();
+                ArrayList<String> expected = expected(ROWS, asc);
+                assertEquals(pages + " pages", expected, rows(ob));
+                // a run per budget of tuples, at least
+                int size = SpillFile.memorySize(Utility.getTupleDesc(2));
+                int perBudget = (pages * BufferPool.getPageSize() + size - 1) / size;
+                assertTrue(ob.getRunCount() >= ROWS / perBudget);
+                ob.rewind();
+                assertEquals(expected, rows(ob));
+                ob.close();
+            }
+        }
+    }
+
+    /**
+     * A child whose last tuple fills the budget is not spilled.
+     */
+    @Test public void exactBudget() throws Exception {
+        int size = SpillFile.memorySize(Utility.getTupleDesc(2));
+        int n = (BufferPool.getPageSize() + size - 1) / size;
+        OrderBy ob = new OrderBy(0, true, tuples(n));
+        ob.setMemoryPages(1);
+        ob.open();
+        assertEquals(expected(n, true), rows(ob));
+        assertEquals(0, ob.getRunCount());
+        ob.close();
+
+        ob = new OrderBy(0, true, tuples(n + 1));
+        ob.setMemoryPages(1);
+        ob.open();
+        assertEquals(expected(n + 1, true), rows(ob));
+        assertEquals(2, ob.getRunCount());
+        ob.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noMemory() {
+        new OrderBy(0, true, tuples(1)).setMemoryPages(0);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OrderByTest.class);
+    }
+}
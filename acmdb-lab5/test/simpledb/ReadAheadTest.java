@@ -0,0 +1,96 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadAheadTest extends SimpleDbTestBase {
+    private TransactionId tid;
+    private ReadAhead readAhead;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tid = new TransactionId();
+        readAhead = Database.getBufferPool().getReadAhead();
+        readAhead.setWindowSize(4);
+    }
+
+    @After public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A sequential heap scan has the pages after the current one read ahead,
+     * and uses every page it had read ahead.
+     */
+    @Test public void heapScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        // 504 two-column tuples fill one page
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, tuples);
+        SystemTestUtil.matchTuples(hf, tid, tuples);
+
+        assertTrue(readAhead.getHitCount() > 0);
+        assertEquals(readAhead.getIssuedCount(), readAhead.getHitCount());
+        assertEquals(0, readAhead.getWasteCount());
+    }
+
+    /**
+     * Read-ahead takes no locks, so once the scanning transaction completes
+     * the lock table is empty.
+     */
+    @Test public void noLockEntries() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 20, null, tuples);
+        SystemTestUtil.matchTuples(hf, tid, tuples);
+        readAhead.awaitInFlight();
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertTrue(readAhead.getIssuedCount() > 0);
+        assertEquals(0, Database.getBufferPool().getLocks().numTransactions());
+        tid = new TransactionId();
+    }
+
+    /**
+     * A B+ tree scan has leaves read ahead along the right sibling pointers.
+     */
+    @Test public void leafScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, 502 * 20, null, tuples, 0);
+        // start from a cold cache
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        readAhead = Database.getBufferPool().getReadAhead();
+        readAhead.setWindowSize(4);
+        SystemTestUtil.matchTuples(bf, tid, tuples);
+
+        assertTrue(readAhead.getHitCount() > 0);
+        assertEquals(0, readAhead.getWasteCount());
+    }
+
+    /**
+     * A window of 0 turns read-ahead off.
+     */
+    @Test public void disabled() throws Exception {
+        readAhead.setWindowSize(0);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504 * 5, null, tuples);
+        SystemTestUtil.matchTuples(hf, tid, tuples);
+        assertEquals(0, readAhead.getIssuedCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadAheadTest.class);
+    }
+}
@@ -0,0 +1,130 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class ReadOnlyTransactionTest extends SimpleDbTestBase {
+    private static final long TIMEOUT = 10000;
+
+    private HeapFile hf;
+    private HeapPageId p0;
+    private BufferPool bp;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        hf = SystemTestUtil.createRandomHeapFile(2, 1000, null, null);
+        p0 = new HeapPageId(hf.getId(), 0);
+        bp = Database.getBufferPool();
+    }
+
+    private int count(TransactionId tid) throws Exception {
+        SeqScan scan = new SeqScan(tid, hf.getId());
+        int n = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        return n;
+    }
+
+    /**
+     * A sequential scan takes shared locks, so a second transaction can scan
+     * the same table while the first still holds its locks.
+     */
+    @Test public void scansShareLocks() throws Exception {
+        TransactionId tid1 = new TransactionId();
+        assertEquals(1000, count(tid1));
+        assertTrue(bp.holdsLock(tid1, p0));
+
+        final int[] counted = new int[1];
+        Thread other = new Thread() {
+            public void run() {
+                try {
+                    TransactionId tid2 = new TransactionId();
+                    counted[0] = count(tid2);
+                    bp.transactionComplete(tid2);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        other.start();
+        other.join(TIMEOUT);
+        assertEquals(1000, counted[0]);
+        bp.transactionComplete(tid1);
+    }
+
+    /**
+     * A read-only transaction takes no locks on heap pages and may not write.
+     */
+    @Test public void readOnly() throws Exception {
+        TransactionId tid = new TransactionId(true);
+        assertEquals(1000, count(tid));
+        assertFalse(bp.holdsLock(tid, p0));
+
+        try {
+            bp.getPage(tid, p0, Permissions.READ_WRITE);
+            fail("expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+        try {
+            bp.insertTuple(tid, hf.getId(), Utility.getHeapTuple(1, 2));
+            fail("expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+        bp.transactionComplete(tid);
+    }
+
+    /**
+     * A read-only transaction sees committed data only, and a page it already
+     * holds is not changed by a later writer.
+     */
+    @Test public void committedVersions() throws Exception {
+        TransactionId reader = new TransactionId(true);
+        HeapPage before = (HeapPage) bp.getPage(reader, p0, Permissions.READ_ONLY);
+        int empty = before.getNumEmptySlots();
+
+        TransactionId writer = new TransactionId();
+        bp.deleteTuple(writer, before.iterator().next());
+        assertEquals(empty, before.getNumEmptySlots());
+        HeapPage dirty = (HeapPage) bp.getPage(writer, p0, Permissions.READ_ONLY);
+        assertEquals(empty + 1, dirty.getNumEmptySlots());
+
+        // the uncommitted delete is invisible to readers
+        assertEquals(1000, count(reader));
+        HeapPage again = (HeapPage) bp.getPage(reader, p0, Permissions.READ_ONLY);
+        assertEquals(empty, again.getNumEmptySlots());
+
+        bp.transactionComplete(writer);
+        assertEquals(999, count(reader));
+        bp.transactionComplete(reader);
+
+        // without lock-free readers, writers modify the cached page in place
+        writer = new TransactionId();
+        HeapPage cached = (HeapPage) bp.getPage(writer, p0, Permissions.READ_ONLY);
+        assertSame(cached, bp.getPage(writer, p0, Permissions.READ_WRITE));
+        bp.transactionComplete(writer);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReadOnlyTransactionTest.class);
+    }
+}
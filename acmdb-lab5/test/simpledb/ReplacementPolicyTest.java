@@ -0,0 +1,142 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.function.Predicate;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ReplacementPolicyTest extends SimpleDbTestBase {
+
+    /** Allows every page to be evicted except the pinned ones. */
+    private static class Unpinned implements Predicate<PageId> {
+        final HashSet<PageId> pinned = new HashSet<PageId>();
+
+        public boolean test(PageId pid) {
+            return !pinned.contains(pid);
+        }
+    }
+
+    private static PageId page(int n) {
+        return new HeapPageId(1, n);
+    }
+
+    /**
+     * Runs a long scan of pages that are each touched once through a policy
+     * and checks that the hot page is never chosen as a victim.
+     */
+    private void checkScanResistant(ReplacementPolicy policy, PageId hot) {
+        Unpinned unpinned = new Unpinned();
+        for (int i = 1000; i < 1100; i++) {
+            policy.pageAdded(page(i));
+            assertFalse("hot page evicted by scan", hot.equals(policy.evict(unpinned)));
+        }
+    }
+
+    /**
+     * Unit test for LruReplacementPolicy
+     */
+    @Test public void lru() {
+        ReplacementPolicy policy = ReplacementPolicy.Kind.LRU.create(4);
+        Unpinned unpinned = new Unpinned();
+        for (int i = 0; i < 4; i++) {
+            policy.pageAdded(page(i));
+        }
+        policy.pageAccessed(page(0));
+        assertEquals(page(1), policy.evict(unpinned));
+
+        unpinned.pinned.add(page(2));
+        assertEquals(page(3), policy.evict(unpinned));
+        assertEquals(page(0), policy.evict(unpinned));
+        assertNull(policy.evict(unpinned));
+    }
+
+    /**
+     * Unit test for ClockReplacementPolicy
+     */
+    @Test public void clock() {
+        ReplacementPolicy policy = ReplacementPolicy.Kind.CLOCK.create(4);
+        Unpinned unpinned = new Unpinned();
+        for (int i = 0; i < 4; i++) {
+            policy.pageAdded(page(i));
+        }
+        // page 0 gets a second chance, page 1 is pinned
+        policy.pageAccessed(page(0));
+        unpinned.pinned.add(page(1));
+        assertEquals(page(2), policy.evict(unpinned));
+
+        // the freed frame is reused and the hand moves on
+        policy.pageAdded(page(4));
+        assertEquals(page(3), policy.evict(unpinned));
+        assertEquals(page(0), policy.evict(unpinned));
+
+        policy.pageRemoved(page(4));
+        assertNull(policy.evict(unpinned));
+    }
+
+    /**
+     * Unit test for TwoQueueReplacementPolicy
+     */
+    @Test public void twoQueue() {
+        ReplacementPolicy policy = ReplacementPolicy.Kind.TWO_Q.create(8);
+        Unpinned unpinned = new Unpinned();
+        for (int i = 0; i < 3; i++) {
+            policy.pageAdded(page(i));
+        }
+        // pages referenced once are evicted FIFO while A1in is over its share
+        assertEquals(page(0), policy.evict(unpinned));
+        // page 0 is still remembered in A1out, so it is promoted to Am
+        policy.pageAdded(page(0));
+        checkScanResistant(policy, page(0));
+    }
+
+    /**
+     * Unit test for LruKReplacementPolicy
+     */
+    @Test public void lruK() {
+        ReplacementPolicy policy = ReplacementPolicy.Kind.LRU_K.create(4);
+        Unpinned unpinned = new Unpinned();
+        for (int i = 0; i < 3; i++) {
+            policy.pageAdded(page(i));
+        }
+        policy.pageAccessed(page(0));
+        policy.pageAccessed(page(1));
+        // page 2 has a single reference, so it goes first
+        assertEquals(page(2), policy.evict(unpinned));
+        // page 0's second most recent reference is the oldest
+        assertEquals(page(0), policy.evict(unpinned));
+
+        checkScanResistant(policy, page(1));
+    }
+
+    /**
+     * Every policy must refuse to evict when all pages are pinned.
+     */
+    @Test public void allPinned() {
+        for (ReplacementPolicy.Kind kind : ReplacementPolicy.Kind.values()) {
+            ReplacementPolicy policy = kind.create(4);
+            Unpinned unpinned = new Unpinned();
+            for (int i = 0; i < 4; i++) {
+                policy.pageAdded(page(i));
+                unpinned.pinned.add(page(i));
+            }
+            assertNull(kind.toString(), policy.evict(unpinned));
+            unpinned.pinned.remove(page(3));
+            assertEquals(kind.toString(), page(3), policy.evict(unpinned));
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
@@ -0,0 +1,220 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SecondaryIndexTest extends SimpleDbTestBase {
+
+    private static final int ROWS = 5000;
+    private static final int GROUPS = 50;
+
+    private HeapFile hf;
+    private SecondaryIndex byGroup;
+
+    /**
+     * A table of (id, id % GROUPS), with an index on the second field.
+     */
+    @Before public void createTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < ROWS; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            tuple.add(i);
+            tuple.add(i % GROUPS);
+            tuples.add(tuple);
+        }
+        File file = File.createTempFile("indexed", ".dat");
+        HeapFile.deleteOnExit(file);
+        HeapFileEncoder.convert(tuples, file, BufferPool.getPageSize(), 2);
+        hf = Utility.openHeapFile(2, "field", file);
+        byGroup = Database.getCatalog().addIndex(hf.getId(), 1, tempFile());
+    }
+
+    @After public void tearDown() {
+        Database.reset();
+    }
+
+    private static File tempFile() throws Exception {
+        File f = File.createTempFile("index", ".idx");
+        f.deleteOnExit();
+        return f;
+    }
+
+    /** @return the ids of the tuples an index scan returns, checking their key */
+    private ArrayList<Integer> scan(TransactionId tid, SecondaryIndex index, Predicate.Op op, int value)
+            throws Exception {
+        IndexScan scan = new IndexScan(tid, index, "t", new IndexPredicate(op, new IntField(value)));
+        assertEquals("t.field0", scan.getTupleDesc().getFieldName(0));
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            assertTrue(t.getField(index.getField()).compare(op, new IntField(value)));
+            ids.add(((IntField) t.getField(0)).getValue());
+        }
+        scan.close();
+        return ids;
+    }
+
+    /**
+     * An index added to a table with tuples in it is built from them.
+     */
+    @Test public void buildAndScan() throws Exception {
+        TransactionId tid = new TransactionId();
+        assertEquals(ROWS / GROUPS, scan(tid, byGroup, Predicate.Op.EQUALS, 7).size());
+        assertEquals(0, scan(tid, byGroup, Predicate.Op.EQUALS, GROUPS).size());
+        assertEquals(3 * ROWS / GROUPS, scan(tid, byGroup, Predicate.Op.GREATER_THAN_OR_EQ, GROUPS - 3).size());
+        assertTrue(byGroup == Database.getCatalog().getIndex(hf.getId(), 1));
+        assertEquals(null, Database.getCatalog().getIndex(hf.getId(), 0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A lookup of a unique value reads one heap page, where a scan reads
+     * them all.
+     */
+    @Test public void lookupReadsOnePage() throws Exception {
+        SecondaryIndex byId = Database.getCatalog().addIndex(hf.getId(), 0, tempFile());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        Database.getBufferPool().getReadAhead().setWindowSize(0);
+        TransactionId tid = new TransactionId();
+        ArrayList<Integer> ids = scan(tid, byId, Predicate.Op.EQUALS, 3210);
+        assertEquals(1, ids.size());
+        assertEquals(3210, (int) ids.get(0));
+        int cached = 0;
+        for (int pgNo = 0; pgNo < hf.numPages(); pgNo++) {
+            if (Database.getBufferPool().isCached(new HeapPageId(hf.getId(), pgNo))) {
+                cached++;
+            }
+        }
+        assertEquals(1, cached);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts and deletes through the buffer pool change the index with the
+     * table, and an abort rolls both back.
+     */
+    @Test public void maintainedWithTable() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple added = Utility.getHeapTuple(new int[] {ROWS, 7});
+        added.resetTupleDesc(hf.getTupleDesc());
+        Database.getBufferPool().insertTuple(tid, hf.getId(), added);
+        assertTrue(scan(tid, byGroup, Predicate.Op.EQUALS, 7).contains(ROWS));
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        for (Tuple t : tuplesOf(tid, 3)) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        assertEquals(0, scan(tid, byGroup, Predicate.Op.EQUALS, 3).size());
+        Database.getBufferPool().transactionComplete(tid);
+
+        tid = new TransactionId();
+        for (Tuple t : tuplesOf(tid, 5)) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        ArrayList<Tuple> batch = new ArrayList<Tuple>();
+        for (int i = 0; i < 300; i++) {
+            Tuple t = Utility.getHeapTuple(new int[] {ROWS + 1 + i, 9});
+            t.resetTupleDesc(hf.getTupleDesc());
+            batch.add(t);
+        }
+        Database.getBufferPool().insertTuples(tid, hf.getId(), batch.iterator());
+        assertEquals(ROWS / GROUPS + 300, scan(tid, byGroup, Predicate.Op.EQUALS, 9).size());
+        Database.getBufferPool().transactionComplete(tid, false);
+
+        tid = new TransactionId();
+        assertEquals(ROWS / GROUPS + 1, scan(tid, byGroup, Predicate.Op.EQUALS, 7).size());
+        assertEquals(0, scan(tid, byGroup, Predicate.Op.EQUALS, 3).size());
+        assertEquals(ROWS / GROUPS, scan(tid, byGroup, Predicate.Op.EQUALS, 5).size());
+        assertEquals(ROWS / GROUPS, scan(tid, byGroup, Predicate.Op.EQUALS, 9).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An index file is reused only if it was closed along with its table and
+     * the table has not changed since; otherwise it is rebuilt.
+     */
+    @Test public void reopened() throws Exception {
+        File f = tempFile();
+        new File(f.getPath() + ".stamp").deleteOnExit();
+        Database.getCatalog().addIndex(hf.getId(), 0, f);
+        Database.getCatalog().clear();
+        Database.reset();
+        hf = Utility.openHeapFile(2, "field", hf.getFile());
+        assertTrue(SecondaryIndex.isCurrent(f, hf));
+        // the stamp is used up, so an index not closed again is not trusted
+        assertFalse(SecondaryIndex.isCurrent(f, hf));
+
+        Database.getCatalog().addIndex(hf.getId(), 0, f);
+        Database.getCatalog().clear();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 2 * ROWS; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            tuple.add(2 * i);
+            tuple.add(i % GROUPS);
+            tuples.add(tuple);
+        }
+        HeapFileEncoder.convert(tuples, hf.getFile(), BufferPool.getPageSize(), 2);
+        Database.reset();
+        hf = Utility.openHeapFile(2, "field", hf.getFile());
+        SecondaryIndex byId = Database.getCatalog().addIndex(hf.getId(), 0, f);
+        TransactionId tid = new TransactionId();
+        assertEquals(1, scan(tid, byId, Predicate.Op.EQUALS, 2 * ROWS + 2).size());
+        assertEquals(0, scan(tid, byId, Predicate.Op.EQUALS, 3211).size());
+        assertEquals(2 * ROWS, scan(tid, byId, Predicate.Op.GREATER_THAN_OR_EQ, 0).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private ArrayList<Tuple> tuplesOf(TransactionId tid, int group) throws Exception {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        IndexScan scan = new IndexScan(tid, byGroup, "t", new IndexPredicate(Predicate.Op.EQUALS, new IntField(group)));
+        scan.open();
+        while (scan.hasNext()) {
+            tuples.add(scan.next());
+        }
+        scan.close();
+        return tuples;
+    }
+
+    /**
+     * The catalog file marks indexed fields with "index".
+     */
+    @Test public void schemaAnnotation() throws Exception {
+        File dir = new File(hf.getFile().getParentFile(), "schema" + System.nanoTime());
+        assertTrue(dir.mkdir());
+        dir.deleteOnExit();
+        File schema = new File(dir, "catalog.txt");
+        schema.deleteOnExit();
+        FileWriter w = new FileWriter(schema);
+        w.write("people (id int pk, age int index)\n");
+        w.close();
+        new File(dir, "people.dat").deleteOnExit();
+        new File(dir, "people.age.idx").deleteOnExit();
+        Database.getCatalog().loadSchema(schema.getPath());
+        int tableid = Database.getCatalog().getTableId("people");
+        assertNotNull(Database.getCatalog().getIndex(tableid, 1));
+        assertFalse(Database.getCatalog().getIndexes(tableid).isEmpty());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SecondaryIndexTest.class);
+    }
+}
@@ -0,0 +1,236 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private TupleDesc td;
+    private HeapPageId pid;
+
+    @Before public void addTable() throws Exception {
+        td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.VARCHAR_TYPE});
+        pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, td), SystemTestUtil.getUUID());
+    }
+
+    private Tuple tuple(int key, String name) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(key));
+        t.setField(1, new VarcharField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private static String name(int i) {
+        return "name" + i;
+    }
+
+    /** @return the tuples of the page by slot, null for empty slots */
+    private static ArrayList<Tuple> bySlot(HeapPage page) {
+        ArrayList<Tuple> slots = new ArrayList<Tuple>();
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            int slot = t.getRecordId().tupleno();
+            while (slots.size() <= slot) {
+                slots.add(null);
+            }
+            slots.set(slot, t);
+        }
+        return slots;
+    }
+
+    /** @return the number of tuples on a page if the strings were of fixed size */
+    private static int fixedSlots() {
+        TupleDesc fixed = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE});
+        return (BufferPool.getPageSize() * 8) / (fixed.getSize() * 8 + 1);
+    }
+
+    /**
+     * Short strings take only the room they need, so a page holds several
+     * times as many tuples as with fixed-size strings.
+     */
+    @Test public void packsShortStrings() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        assertFalse(page.iterator().hasNext());
+        int n = 0;
+        while (page.getNumEmptySlots() > 0) {
+            page.insertTuple(tuple(n, name(n)));
+            n++;
+        }
+        assertTrue(n > 4 * fixedSlots());
+
+        // the image round-trips, and every tuple reads back from its slot
+        HeapPage copy = new HeapPage(pid, page.getPageData());
+        ArrayList<Tuple> slots = bySlot(copy);
+        assertEquals(n, slots.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(new IntField(i), slots.get(i).getField(0));
+            assertEquals(name(i), ((StringField) slots.get(i).getField(1)).getValue());
+            assertEquals(Type.VARCHAR_TYPE, slots.get(i).getField(1).getType());
+        }
+    }
+
+    /**
+     * Deleting leaves holes that a later insert reclaims by compacting the
+     * page; the remaining tuples keep their slots.
+     */
+    @Test public void compactsAroundDeletes() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+        while (page.getNumEmptySlots() > 0) {
+            Tuple t = tuple(inserted.size(), name(inserted.size()));
+            page.insertTuple(t);
+            inserted.add(t);
+        }
+        for (int i = 0; i < inserted.size(); i += 2) {
+            page.deleteTuple(inserted.get(i));
+            assertFalse(page.isSlotUsed(i));
+        }
+
+        // long tuples only fit once the holes are put together
+        String big = new String(new char[100]).replace('\0', 'x');
+        int added = 0;
+        while (page.getNumEmptySlots() > 0) {
+            Tuple t = tuple(-1, big);
+            page.insertTuple(t);
+            assertEquals(0, t.getRecordId().tupleno() % 2);
+            added++;
+        }
+        assertTrue(added > 1);
+
+        ArrayList<Tuple> slots = bySlot(new HeapPage(pid, page.getPageData()));
+        for (int i = 1; i < inserted.size(); i += 2) {
+            assertEquals(new IntField(i), slots.get(i).getField(0));
+            assertEquals(name(i), ((StringField) slots.get(i).getField(1)).getValue());
+        }
+        for (int i = 0; i < 2 * added; i += 2) {
+            assertEquals(big, ((StringField) slots.get(i).getField(1)).getValue());
+        }
+    }
+
+    /**
+     * A page with a few bytes left refuses a tuple that does not fit.
+     */
+    @Test public void full() throws Exception {
+        HeapPage page = new HeapPage(pid, HeapPage.createEmptyPageData());
+        String big = new String(new char[Type.STRING_LEN]).replace('\0', 'y');
+        try {
+            while (true) {
+                page.insertTuple(tuple(0, big));
+            }
+        } catch (DbException e) {
+            // expected
+        }
+        assertEquals(0, page.getNumEmptySlots());
+        page.insertTuple(tuple(0, ""));
+        try {
+            while (true) {
+                page.insertTuple(tuple(0, ""));
+            }
+        } catch (DbException e) {
+            // expected
+        }
+    }
+
+    /**
+     * HeapFileEncoder writes slotted pages for a table with a VARCHAR column.
+     */
+    @Test public void encoder() throws Exception {
+        File text = File.createTempFile("varchar", ".txt");
+        text.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(text));
+        int n = 1000;
+        for (int i = 0; i < n; i++) {
+            bw.write(i + "," + name(i) + "\n");
+        }
+        bw.close();
+        File data = File.createTempFile("varchar", ".dat");
+        HeapFile.deleteOnExit(data);
+        HeapFileEncoder.convert(text, data, BufferPool.getPageSize(), 2,
+                new Type[] {Type.INT_TYPE, Type.VARCHAR_TYPE});
+
+        HeapFile hf = new HeapFile(data, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        assertTrue(4 * hf.numPages() < n / fixedSlots());
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        int i = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(name(i), ((StringField) t.getField(1)).getValue());
+            i++;
+        }
+        it.close();
+        assertEquals(n, i);
+
+        // and takes inserts
+        hf.insertTuple(tid, tuple(n, name(n)));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * B+ tree pages store VARCHAR fields padded to their largest size.
+     */
+    @Test public void btreeLeaf() throws Exception {
+        BTreePageId leafId = new BTreePageId(-1, 1, BTreePageId.LEAF);
+        BTreeLeafPage leaf = new BTreeLeafPage(leafId, BTreeLeafPage.createEmptyPageData(), 0);
+        for (int i = 0; i < 10; i++) {
+            leaf.insertTuple(tuple(i, name(i)));
+        }
+        BTreeLeafPage copy = new BTreeLeafPage(leafId, leaf.getPageData(), 0);
+        Iterator<Tuple> it = copy.iterator();
+        for (int i = 0; i < 10; i++) {
+            Tuple t = it.next();
+            assertEquals(new IntField(i), t.getField(0));
+            assertEquals(name(i), ((StringField) t.getField(1)).getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    /**
+     * A string length out of range is a parse error, not an allocation of
+     * that many bytes.
+     */
+    @Test public void corruptLength() throws Exception {
+        int[] lengths = {-1, Type.STRING_LEN + 1, Integer.MAX_VALUE};
+        for (int len : lengths) {
+            ByteBuffer buf = ByteBuffer.allocate(Type.STRING_LEN + 8);
+            buf.putInt(len).rewind();
+            try {
+                Type.VARCHAR_TYPE.parse(buf);
+                fail("parsed a string of length " + len);
+            } catch (ParseException e) {
+                assertEquals(0, e.getErrorOffset());
+            }
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
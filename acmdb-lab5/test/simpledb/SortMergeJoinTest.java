@@ -0,0 +1,213 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class SortMergeJoinTest extends SimpleDbTestBase {
+
+    private static final int MAX_VALUE = 100;
+
+    private ArrayList<ArrayList<Integer>> tuplesA = new ArrayList<ArrayList<Integer>>();
+    private ArrayList<ArrayList<Integer>> tuplesB = new ArrayList<ArrayList<Integer>>();
+    private BTreeFile a;
+    private BTreeFile b;
+
+    /**
+     * Two B+ tree tables keyed on field0, with random values in both fields,
+     * so both have runs of duplicate keys.
+     */
+    @Before public void createTables() throws Exception {
+        a = table("ta", 400, tuplesA);
+        b = table("tb", 300, tuplesB);
+    }
+
+    @After public void tearDown() {
+        Database.reset();
+    }
+
+    private static BTreeFile table(String name, int rows, ArrayList<ArrayList<Integer>> tuples)
+            throws Exception {
+        BTreeFile bf = BTreeUtility.createRandomBTreeFile(2, rows, MAX_VALUE, null, tuples, 0);
+        bf = BTreeUtility.openBTreeFile(2, "field", bf.getFile(), 0);
+        Database.getCatalog().addTable(bf, name);
+        TableStats.setTableStats(name, new TableStats(bf.getId(), TableStats.IOCOSTPERPAGE));
+        return bf;
+    }
+
+    /** @return the tuples of a join, as strings in sorted order */
+    private static ArrayList<String> sortedRows(DbIterator join) throws Exception {
+        ArrayList<String> rows = new ArrayList<String>();
+        join.open();
+        while (join.hasNext()) {
+            rows.add(join.next().toString());
+        }
+        join.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    private static final Predicate.Op[] OPS = {Predicate.Op.EQUALS, Predicate.Op.LESS_THAN,
+            Predicate.Op.LESS_THAN_OR_EQ, Predicate.Op.GREATER_THAN,
+            Predicate.Op.GREATER_THAN_OR_EQ};
+
+    /**
+     * SortMergeJoin returns what Join returns, joining on the keys of the
+     * tables, which it reads in order, and on other fields, which it sorts.
+     */
+    @Test public void matchesJoin() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int field = 0; field < 2; field++) {
+            for (Predicate.Op op : OPS) {
+                JoinPredicate p = new JoinPredicate(field, op, field);
+                ArrayList<String> expected = sortedRows(new Join(p,
+                        new SeqScan(tid, a.getId(), "a"), new SeqScan(tid, b.getId(), "b")));
+                SortMergeJoin join = new SortMergeJoin(p, new SeqScan(tid, a.getId(), "a"),
+                        new BTreeScan(tid, b.getId(), "b", null));
+                DbIterator[] children = join.getChildren();
+                assertEquals(field != 0, children[0] instanceof OrderBy);
+                assertEquals(field != 0, children[1] instanceof OrderBy);
+                ArrayList<String> actual = sortedRows(join);
+                assertEquals(op + " on field" + field, expected, actual);
+                // rewinding runs the join again
+                join.open();
+                join.rewind();
+                int count = 0;
+                while (join.hasNext()) {
+                    join.next();
+                    count++;
+                }
+                join.close();
+                assertEquals(expected.size(), count);
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A band join whose prefix outgrows the memory budget spills the rest of
+     * it, and returns what Join returns, again after a rewind.
+     */
+    @Test public void prefixSpills() throws Exception {
+        TransactionId tid = new TransactionId();
+        for (Predicate.Op op : new Predicate.Op[] {Predicate.Op.LESS_THAN, Predicate.Op.GREATER_THAN_OR_EQ}) {
+            JoinPredicate p = new JoinPredicate(1, op, 1);
+            ArrayList<String> expected = sortedRows(new Join(p,
+                    new SeqScan(tid, a.getId(), "a"), new SeqScan(tid, b.getId(), "b")));
+            SortMergeJoin join = new SortMergeJoin(p, new SeqScan(tid, a.getId(), "a"),
+                    new SeqScan(tid, b.getId(), "b"));
+            join.setMemoryPages(1);
+            join.open();
+            ArrayList<String> rows = new ArrayList<String>();
+            while (join.hasNext()) {
+                rows.add(join.next().toString());
+            }
+            assertTrue(join.prefixSpilled());
+            Collections.sort(rows);
+            assertEquals(op.toString(), expected, rows);
+
+            join.rewind();
+            int count = 0;
+            while (join.hasNext()) {
+                join.next();
+                count++;
+            }
+            join.close();
+            assertEquals(expected.size(), count);
+            assertFalse(join.prefixSpilled());
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Reading a spilled prefix for each driving tuple does not write out the
+     * page being filled, so the spilled tuples fill their pages.
+     */
+    @Test public void spilledPrefixPacked() throws Exception {
+        int n = 2000;
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        // every outer tuple is greater than one more inner tuple
+        SortMergeJoin join = new SortMergeJoin(new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0),
+                new OrderBy(0, true, TestUtil.createTupleList(1, keys)),
+                new OrderBy(0, true, TestUtil.createTupleList(1, keys)));
+        join.setMemoryPages(1);
+        join.open();
+        int count = 0;
+        while (join.hasNext()) {
+            join.next();
+            count++;
+        }
+        assertEquals(n * (n - 1) / 2, count);
+        SpillFile spill = join.getPrefixSpill();
+        // a count, then 4 bytes per tuple
+        int perPage = (BufferPool.getPageSize() - 4) / 4;
+        assertEquals((spill.numTuples() - 1) / perPage, spill.numPages());
+        join.close();
+    }
+
+    /**
+     * Plans that are and are not known to return tuples in order of a field.
+     */
+    @Test public void isSorted() throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, a.getId(), "a");
+        assertTrue(SortMergeJoin.isSorted(scan, 0));
+        assertFalse(SortMergeJoin.isSorted(scan, 1));
+        assertTrue(SortMergeJoin.isSorted(new Filter(
+                new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(5)), scan), 0));
+        assertTrue(SortMergeJoin.isSorted(new OrderBy(1, true, scan), 1));
+        assertFalse(SortMergeJoin.isSorted(new OrderBy(1, false, scan), 1));
+        assertFalse(SortMergeJoin.isSorted(new SeqScan(tid, a.getId(), "a", new int[] {1, 0}), 0));
+        assertTrue(SortMergeJoin.isSorted(new SeqScan(tid, a.getId(), "a", new int[] {1, 0}), 1));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * An equi-join of two tables on the keys they are stored in order of is
+     * planned as a merge of their scans.
+     */
+    @Test public void plannedOnKeys() throws Exception {
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new Parser().generateLogicalPlan(tid,
+                "SELECT * FROM ta, tb WHERE ta.field0 = tb.field0;");
+        DbIterator plan = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        while (!(plan instanceof SortMergeJoin)) {
+            assertTrue(plan instanceof Operator);
+            plan = ((Operator) plan).getChildren()[0];
+        }
+        for (DbIterator child : ((SortMergeJoin) plan).getChildren()) {
+            assertFalse(child instanceof OrderBy);
+        }
+        int expected = 0;
+        for (ArrayList<Integer> ta : tuplesA) {
+            for (ArrayList<Integer> tb : tuplesB) {
+                if (ta.get(0).equals(tb.get(0))) {
+                    expected++;
+                }
+            }
+        }
+        assertEquals(expected, sortedRows(plan).size());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SortMergeJoinTest.class);
+    }
+}
@@ -0,0 +1,236 @@
+package simpledb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+
+    private static final int PAGES = 10;
+    private static final int PER_PAGE = 504;
+
+    private File file;
+    private HeapFile hf;
+
+    /**
+     * A table of (id % 7, id) with ids in order, so each page holds a range
+     * of ids of its own.
+     */
+    @Before public void createTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < PAGES * PER_PAGE; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>();
+            tuple.add(i % 7);
+            tuple.add(i);
+            tuples.add(tuple);
+        }
+        file = File.createTempFile("zones", ".dat");
+        HeapFile.deleteOnExit(file);
+        HeapFileEncoder.convert(tuples, file, BufferPool.getPageSize(), 2);
+        open();
+    }
+
+    /**
+     * Opens the table; read-ahead is off, as it would learn the zones of
+     * pages before the scans get to them.
+     */
+    private void open() {
+        hf = Utility.openHeapFile(2, "field", file);
+        Database.getBufferPool().getReadAhead().setWindowSize(0);
+    }
+
+    /**
+     * @return the number of tuples with id op value that a scan with the
+     *   predicate pushed down, under a filter, finds; the scan is returned in
+     *   scanOut[0]
+     */
+    private int count(TransactionId tid, Predicate.Op op, int value, SeqScan[] scanOut) throws Exception {
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t");
+        Predicate p = new Predicate(1, op, new IntField(value));
+        scan.pushPredicate(p);
+        Filter filter = new Filter(p, scan);
+        int n = 0;
+        filter.open();
+        while (filter.hasNext()) {
+            filter.next();
+            n++;
+        }
+        filter.close();
+        scanOut[0] = scan;
+        return n;
+    }
+
+    /**
+     * Zones become known as pages are read; later scans then leave out the
+     * pages outside the range asked for.
+     */
+    @Test public void skipsPages() throws Exception {
+        SeqScan[] scan = new SeqScan[1];
+        TransactionId tid = new TransactionId();
+        assertEquals(PER_PAGE, count(tid, Predicate.Op.LESS_THAN, PER_PAGE, scan));
+        assertEquals(0, scan[0].getPagesSkipped());
+
+        assertEquals(PER_PAGE, count(tid, Predicate.Op.LESS_THAN, PER_PAGE, scan));
+        assertEquals(PAGES - 1, scan[0].getPagesSkipped());
+        assertEquals(1, count(tid, Predicate.Op.EQUALS, 3 * PER_PAGE + 10, scan));
+        assertEquals(PAGES - 1, scan[0].getPagesSkipped());
+        assertEquals(2 * PER_PAGE - 1, count(tid, Predicate.Op.GREATER_THAN, (PAGES - 2) * PER_PAGE, scan));
+        assertEquals(PAGES - 2, scan[0].getPagesSkipped());
+        assertEquals(PAGES * PER_PAGE - 1, count(tid, Predicate.Op.NOT_EQUALS, 0, scan));
+        assertEquals(0, scan[0].getPagesSkipped());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A transaction sees its own insert even where the page's zone did not
+     * cover the value before; an aborted delete leaves the zone alone.
+     */
+    @Test public void insertWidensAndAbortKeeps() throws Exception {
+        SeqScan[] scan = new SeqScan[1];
+        TransactionId tid = new TransactionId();
+        count(tid, Predicate.Op.EQUALS, 0, scan);
+        Database.getBufferPool().transactionComplete(tid);
+
+        // make room on page 0, then put a large id there
+        tid = new TransactionId();
+        HeapPage first = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(hf.getId(), 0), Permissions.READ_ONLY);
+        Database.getBufferPool().deleteTuple(tid, first.iterator().next());
+        Database.getBufferPool().transactionComplete(tid);
+        tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(new int[] {0, 1000000});
+        t.resetTupleDesc(hf.getTupleDesc());
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        assertEquals(0, t.getRecordId().getPageId().pageNumber());
+        assertEquals(1, count(tid, Predicate.Op.GREATER_THAN, PAGES * PER_PAGE, scan));
+        assertEquals(PAGES - 1, scan[0].getPagesSkipped());
+        Database.getBufferPool().transactionComplete(tid);
+
+        // delete every tuple of page 1 and abort: its tuples are still found
+        tid = new TransactionId();
+        HeapPage second = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(hf.getId(), 1), Permissions.READ_WRITE);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (java.util.Iterator<Tuple> it = second.iterator(); it.hasNext(); ) {
+            tuples.add(it.next());
+        }
+        for (Tuple u : tuples) {
+            Database.getBufferPool().deleteTuple(tid, u);
+        }
+        Database.getBufferPool().transactionComplete(tid, false);
+        tid = new TransactionId();
+        assertEquals(PER_PAGE, count(tid, Predicate.Op.GREATER_THAN_OR_EQ, PER_PAGE, scan)
+                - count(tid, Predicate.Op.GREATER_THAN_OR_EQ, 2 * PER_PAGE, scan));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A committed delete narrows the zone, which is kept in the side file
+     * and used by the first scan after reopening the table.
+     */
+    @Test public void deleteNarrowsAndPersists() throws Exception {
+        SeqScan[] scan = new SeqScan[1];
+        TransactionId tid = new TransactionId();
+        HeapPage last = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(hf.getId(), PAGES - 1), Permissions.READ_WRITE);
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (java.util.Iterator<Tuple> it = last.iterator(); it.hasNext(); ) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(1)).getValue() >= (PAGES - 1) * PER_PAGE + 100) {
+                tuples.add(t);
+            }
+        }
+        for (Tuple t : tuples) {
+            Database.getBufferPool().deleteTuple(tid, t);
+        }
+        // the side file is written once the commit has flushed the page
+        File side = new File(file.getPath() + ".zm");
+        assertFalse(side.exists());
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(side.exists());
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        open();
+        tid = new TransactionId();
+        assertEquals(0, count(tid, Predicate.Op.GREATER_THAN_OR_EQ, (PAGES - 1) * PER_PAGE + 100, scan));
+        // only the page written has a zone on disk
+        assertEquals(1, scan[0].getPagesSkipped());
+        assertEquals(0, count(tid, Predicate.Op.GREATER_THAN_OR_EQ, (PAGES - 1) * PER_PAGE + 100, scan));
+        assertEquals(PAGES, scan[0].getPagesSkipped());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A page written after the last sync of the side file, by a process that
+     * then stopped, leaves the side file marked not clean; its zones are not
+     * trusted even though the data file has the stamp they were written with.
+     */
+    @Test public void uncleanShutdown() throws Exception {
+        SeqScan[] scan = new SeqScan[1];
+        TransactionId tid = new TransactionId();
+        HeapPageId first = new HeapPageId(hf.getId(), 0);
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, first, Permissions.READ_WRITE);
+        Database.getBufferPool().deleteTuple(tid, page.iterator().next());
+        Database.getBufferPool().transactionComplete(tid);
+        File side = new File(file.getPath() + ".zm");
+        assertTrue(side.exists());
+
+        // put an id past all others on page 0, keeping the data file's stamp
+        FileTime stamp = Files.getLastModifiedTime(file.toPath());
+        page = (HeapPage) hf.readPage(first);
+        Tuple t = Utility.getHeapTuple(new int[] {0, PAGES * PER_PAGE});
+        t.resetTupleDesc(hf.getTupleDesc());
+        page.insertTuple(t);
+        hf.writePage(page);
+        Files.setLastModifiedTime(file.toPath(), stamp);
+
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        open();
+        tid = new TransactionId();
+        assertEquals(1, count(tid, Predicate.Op.GREATER_THAN_OR_EQ, PAGES * PER_PAGE, scan));
+        assertEquals(0, scan[0].getPagesSkipped());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * The planner pushes WHERE predicates into the scans of heap files.
+     */
+    @Test public void planPushesPredicates() throws Exception {
+        Database.getCatalog().addTable(hf, "zoned");
+        TableStats.setTableStats("zoned", new TableStats(hf.getId(), TableStats.IOCOSTPERPAGE));
+        TransactionId tid = new TransactionId();
+        Parser p = new Parser();
+        DbIterator plan = p.generateLogicalPlan(tid,
+                "SELECT z.field1 FROM zoned z WHERE z.field1 >= 5000 AND z.field0 = 3;")
+                .physicalPlan(tid, TableStats.getStatsMap(), false);
+        plan.open();
+        int n = 0;
+        while (plan.hasNext()) {
+            assertTrue(((IntField) plan.next().getField(0)).getValue() >= 5000);
+            n++;
+        }
+        plan.close();
+        assertEquals(6, n);
+        assertEquals(PAGES - 1, Query.pagesSkipped(plan));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -0,0 +1,20 @@
+package simpledb.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Reads the number of bytes the current thread has allocated, as reported by
+ * the HotSpot thread MXBean, so benchmarks can report bytes per operation.
+ */
+class Allocations {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocations() {
+    }
+
+    /** @return the bytes allocated by the current thread so far */
+    static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,81 @@
+package simpledb.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures BufferPool.getPage throughput on the hit path. Every page of the
+ * table fits in the pool, so after warm-up each call is a cache hit; each
+ * thread uses its own transaction and takes shared locks only.
+ *
+ * Run with: ant runbench -Dbench=BufferPoolBenchmark
+ */
+public class BufferPoolBenchmark {
+    private static final int TABLE_PAGES = 40;
+    private static final int[] THREADS = {1, 4, 16, 64};
+    private static final long MEASURE_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        // 504 two-column tuples fill one page
+        final HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+        final int numPages = table.numPages();
+
+        for (int threads : THREADS) {
+            System.out.printf("%3d threads: %,15.0f hits/s%n", threads, run(table.getId(), numPages, threads));
+        }
+    }
+
+    private static double run(final int tableId, final int numPages, int threads) throws Exception {
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicLong hits = new AtomicLong();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            final int seed = i;
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    TransactionId tid = new TransactionId();
+                    BufferPool bp = Database.getBufferPool();
+                    long count = 0;
+                    int page = seed % numPages;
+                    try {
+                        // warm up: lock and cache every page once
+                        for (int p = 0; p < numPages; p++) {
+                            bp.getPage(tid, new HeapPageId(tableId, p), Permissions.READ_ONLY);
+                        }
+                        ready.countDown();
+                        start.await();
+                        while (!done.get()) {
+                            bp.getPage(tid, new HeapPageId(tableId, page), Permissions.READ_ONLY);
+                            page = (page + 7) % numPages;
+                            count++;
+                        }
+                        bp.transactionComplete(tid);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    hits.addAndGet(count);
+                }
+            });
+            workers[i].start();
+        }
+
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(MEASURE_MILLIS);
+        done.set(true);
+        for (Thread t : workers) {
+            t.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return hits.get() / seconds;
+    }
+}
@@ -0,0 +1,126 @@
+package simpledb.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import simpledb.*;
+
+/**
+ * Compares scans of two INT columns of a wide table (eight INT and two
+ * STRING columns) stored row by row in a HeapFile and column by column in a
+ * ColumnFile: the number of pages each scan reads and how fast it goes. The
+ * buffer pool is much smaller than the table, so every page of every scan
+ * is read from the file.
+ *
+ * Run with: ant runbench -Dbench=ColumnScanBenchmark
+ */
+public class ColumnScanBenchmark {
+    private static final int ROWS = 200000;
+    private static final int LOAD_BATCH = 2000;
+    private static final int LOAD_POOL_PAGES = 1000;
+    private static final int POOL_PAGES = 64;
+    private static final int WARMUP_SCANS = 3;
+    private static final int MEASURED_SCANS = 10;
+    private static final int[] COLUMNS = {2, 5};
+
+    public static void main(String[] args) throws Exception {
+        Type[] types = new Type[10];
+        String[] names = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = i < 8 ? Type.INT_TYPE : Type.STRING_TYPE;
+            names[i] = "f" + i;
+        }
+        TupleDesc td = new TupleDesc(types, names);
+
+        File text = File.createTempFile("wide", ".txt");
+        text.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(text));
+        for (int i = 0; i < ROWS; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 8; j++) {
+                sb.append(i * (j + 1) % 1000).append(',');
+            }
+            bw.write(sb.append("name").append(i).append(",city").append(i % 97).append('\n').toString());
+        }
+        bw.close();
+        File heapData = File.createTempFile("wide", ".dat");
+        HeapFile.deleteOnExit(heapData);
+        HeapFileEncoder.convert(text, heapData, BufferPool.getPageSize(), types.length, types);
+
+        Database.reset();
+        HeapFile heap = new HeapFile(heapData, td);
+        Database.getCatalog().addTable(heap, UUID.randomUUID().toString());
+        File columnData = File.createTempFile("wide", ".col");
+        columnData.deleteOnExit();
+        ColumnFile columns = new ColumnFile(columnData, td);
+        Database.getCatalog().addTable(columns, UUID.randomUUID().toString());
+        for (int i = 0; i < types.length; i++) {
+            columns.getColumnFile(i).deleteOnExit();
+        }
+        load(heap, columns);
+
+        int columnPages = 0;
+        for (int c : COLUMNS) {
+            columnPages += columns.numPages(c);
+        }
+        measure("HeapFile", heap, heap.numPages());
+        measure("ColumnFile", columns, columnPages);
+    }
+
+    /** Copies the rows of the heap file into the column file. */
+    private static void load(HeapFile heap, ColumnFile columns) throws Exception {
+        // room for the dirty pages of a batch
+        Database.resetBufferPool(LOAD_POOL_PAGES);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = heap.iterator(tid);
+        ArrayList<Tuple> batch = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext()) {
+            batch.add(it.next());
+            if (batch.size() == LOAD_BATCH || !it.hasNext()) {
+                TransactionId insert = new TransactionId();
+                Database.getBufferPool().insertTuples(insert, columns.getId(), batch.iterator());
+                Database.getBufferPool().transactionComplete(insert);
+                batch.clear();
+            }
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static void measure(String name, DbFile table, int pages) throws Exception {
+        Database.resetBufferPool(POOL_PAGES);
+        for (int i = 0; i < WARMUP_SCANS; i++) {
+            scan(table);
+        }
+        long tuples = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_SCANS; i++) {
+            tuples += scan(table);
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%-12s %,6d pages/scan %,14.0f tuples/s%n", name, pages, tuples / seconds);
+    }
+
+    private static long scan(DbFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId(), "t", COLUMNS);
+        long count = 0;
+        long sum = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            sum += ((IntField) t.getField(0)).getValue() + ((IntField) t.getField(1)).getValue();
+            count++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        if (sum < 0) {
+            throw new AssertionError();
+        }
+        return count;
+    }
+}
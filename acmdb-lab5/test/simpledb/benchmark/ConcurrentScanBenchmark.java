@@ -0,0 +1,77 @@
+package simpledb.benchmark;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures how full-table scans by concurrent readers scale. Each thread
+ * runs SeqScans over the same table back to back, each in its own
+ * transaction; the table fits in the buffer pool. Readers use ordinary
+ * transactions, which take shared locks, and then read-only transactions,
+ * which read heap pages without locking.
+ *
+ * Run with: ant runbench -Dbench=ConcurrentScanBenchmark
+ */
+public class ConcurrentScanBenchmark {
+    private static final int TABLE_PAGES = 40;
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final long MEASURE_MILLIS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        // 504 two-column tuples fill one page
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, 504 * TABLE_PAGES, null, null);
+
+        for (boolean readOnly : new boolean[] {false, true}) {
+            for (int threads : THREADS) {
+                System.out.printf("%-9s %2d threads: %,10.1f scans/s%n", readOnly ? "read-only" : "shared",
+                        threads, run(table.getId(), threads, readOnly));
+            }
+        }
+    }
+
+    private static double run(final int tableId, int threads, final boolean readOnly) throws Exception {
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicLong scans = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        while (!done.get()) {
+                            TransactionId tid = new TransactionId(readOnly);
+                            SeqScan scan = new SeqScan(tid, tableId);
+                            scan.open();
+                            while (scan.hasNext()) {
+                                scan.next();
+                            }
+                            scan.close();
+                            Database.getBufferPool().transactionComplete(tid);
+                            scans.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(MEASURE_MILLIS);
+        done.set(true);
+        for (Thread t : workers) {
+            t.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return scans.get() / seconds;
+    }
+}
@@ -0,0 +1,63 @@
+package simpledb.benchmark;
+
+import java.util.Random;
+
+import simpledb.*;
+
+/**
+ * Sorts tables of random (key, id) rows of 1 to 20 times a fixed memory
+ * budget with an OrderBy, and prints how many sorted runs each was spilled
+ * to and how fast it was sorted. Each sort is checked to come out in order.
+ *
+ * Run with: ant runbench -Dbench=ExternalSortBenchmark
+ */
+public class ExternalSortBenchmark {
+    private static final int MEMORY_PAGES = 64;
+    private static final int[] SIZES = {1, 2, 5, 10, 20};
+    private static final int WARMUP_SORTS = 2;
+    private static final int MEASURED_SORTS = 5;
+
+    public static void main(String[] args) throws Exception {
+        // two int fields are 8 bytes
+        int budgetRows = MEMORY_PAGES * BufferPool.getPageSize() / 8;
+        for (int size : SIZES) {
+            int rows = budgetRows * size;
+            int[] data = new int[rows * 2];
+            Random random = new Random(size);
+            for (int i = 0; i < rows; i++) {
+                data[2 * i] = random.nextInt();
+                data[2 * i + 1] = i;
+            }
+            TupleIterator input = TestUtil.createTupleList(2, data);
+            for (int i = 0; i < WARMUP_SORTS; i++) {
+                sort(input);
+            }
+            int runs = 0;
+            long begin = System.nanoTime();
+            for (int i = 0; i < MEASURED_SORTS; i++) {
+                runs = sort(input);
+            }
+            double ms = (System.nanoTime() - begin) / 1e6 / MEASURED_SORTS;
+            System.out.printf("%2dx budget %,9d rows %,5d runs %,10.2f ms/sort %,12.0f rows/s%n",
+                    size, rows, runs, ms, rows / ms * 1000);
+        }
+    }
+
+    /** @return the number of runs the input was spilled to */
+    private static int sort(TupleIterator input) throws Exception {
+        OrderBy ob = new OrderBy(0, true, input);
+        ob.setMemoryPages(MEMORY_PAGES);
+        ob.open();
+        int last = Integer.MIN_VALUE;
+        while (ob.hasNext()) {
+            int key = ((IntField) ob.next().getField(0)).getValue();
+            if (key < last) {
+                throw new AssertionError("out of order: " + key + " after " + last);
+            }
+            last = key;
+        }
+        int runs = ob.getRunCount();
+        ob.close();
+        return runs;
+    }
+}
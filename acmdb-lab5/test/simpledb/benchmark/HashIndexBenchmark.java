@@ -0,0 +1,97 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.UUID;
+
+import simpledb.*;
+
+/**
+ * Compares point lookups on a unique INT key through a B+ tree
+ * ({@link BTreeFile}) and an extendible hash index ({@link HashFile}) over
+ * the same rows. Each lookup runs in a transaction of its own, as a query
+ * would; the buffer pool is much smaller than either index, so most lookups
+ * read their leaf or bucket page from the file.
+ *
+ * Run with: ant runbench -Dbench=HashIndexBenchmark
+ */
+public class HashIndexBenchmark {
+    private static final int ROWS = 500000;
+    private static final int LOAD_BATCH = 500;
+    private static final int LOAD_POOL_PAGES = 1000;
+    private static final int POOL_PAGES = 64;
+    private static final int WARMUP_LOOKUPS = 20000;
+    private static final int MEASURED_LOOKUPS = 200000;
+
+    public static void main(String[] args) throws Exception {
+        Database.reset();
+        BTreeFile btree = BTreeUtility.createBTreeFile(2, ROWS, null, null, 0);
+        File hashData = File.createTempFile("hash", ".dat");
+        hashData.deleteOnExit();
+        HashFile hash = new HashFile(hashData, 0, btree.getTupleDesc());
+        Database.getCatalog().addTable(hash, UUID.randomUUID().toString());
+        load(btree, hash);
+
+        measure("BTreeFile", btree, btree.numPages());
+        measure("HashFile", hash, hash.numPages());
+    }
+
+    /**
+     * Copies the rows of the B+ tree into the hash index, in batches small
+     * enough that the buckets they dirty fit in the pool.
+     */
+    private static void load(BTreeFile btree, HashFile hash) throws Exception {
+        Database.resetBufferPool(LOAD_POOL_PAGES);
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = btree.iterator(tid);
+        ArrayList<Tuple> batch = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            Tuple copy = new Tuple(t.getTupleDesc());
+            copy.setField(0, t.getField(0));
+            copy.setField(1, t.getField(1));
+            batch.add(copy);
+            if (batch.size() == LOAD_BATCH || !it.hasNext()) {
+                TransactionId insert = new TransactionId();
+                Database.getBufferPool().insertTuples(insert, hash.getId(), batch.iterator());
+                Database.getBufferPool().transactionComplete(insert);
+                batch.clear();
+            }
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private static void measure(String name, IndexFile index, int pages) throws Exception {
+        Database.resetBufferPool(POOL_PAGES);
+        Random random = new Random(42);
+        for (int i = 0; i < WARMUP_LOOKUPS; i++) {
+            lookup(index, 1 + random.nextInt(ROWS));
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_LOOKUPS; i++) {
+            if (lookup(index, 1 + random.nextInt(ROWS)) != 1) {
+                throw new AssertionError();
+            }
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%-10s %,7d pages %,12.0f lookups/s%n", name, pages, MEASURED_LOOKUPS / seconds);
+    }
+
+    private static int lookup(IndexFile index, int key) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = index.indexIterator(tid,
+                new IndexPredicate(Predicate.Op.EQUALS, new IntField(key)));
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+}
@@ -0,0 +1,75 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Iterator;
+
+import simpledb.*;
+
+/**
+ * Measures the cost of building a HeapPage from its bytes and filtering its
+ * tuples on one column, as a SeqScan under a Filter does for every page it
+ * reads: time and bytes allocated per page, for a page of two-column int
+ * tuples and one of int and string tuples.
+ *
+ * Run with: ant runbench -Dbench=HeapPageDecodeBenchmark
+ */
+public class HeapPageDecodeBenchmark {
+    private static final int WARMUP_OPS = 20000;
+    private static final int MEASURED_OPS = 50000;
+
+    public static void main(String[] args) throws Exception {
+        run("int,int", Utility.getTypes(2));
+        run("int,string", new Type[] {Type.INT_TYPE, Type.STRING_TYPE});
+    }
+
+    private static void run(String name, Type[] types) throws Exception {
+        Database.reset();
+        TupleDesc td = new TupleDesc(types);
+        File f = File.createTempFile("table", ".dat");
+        HeapFile.deleteOnExit(f);
+        HeapFile table = new HeapFile(f, td);
+        Database.getCatalog().addTable(table, name);
+        HeapPageId pid = new HeapPageId(table.getId(), 0);
+
+        // a full page
+        HeapPage full = new HeapPage(pid, HeapPage.createEmptyPageData());
+        for (int i = 0; full.getNumEmptySlots() > 0; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new IntField(i));
+            if (types[1] == Type.INT_TYPE) {
+                t.setField(1, new IntField(i));
+            } else {
+                t.setField(1, new StringField("value " + i, Type.STRING_LEN));
+            }
+            full.insertTuple(t);
+        }
+        byte[] data = full.getPageData();
+        Field threshold = new IntField(10);
+
+        long matches = 0;
+        for (int i = 0; i < WARMUP_OPS; i++) {
+            matches += filter(pid, data, threshold);
+        }
+        long bytes = Allocations.allocatedBytes();
+        long begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_OPS; i++) {
+            matches += filter(pid, data, threshold);
+        }
+        long nanos = System.nanoTime() - begin;
+        bytes = Allocations.allocatedBytes() - bytes;
+        System.out.printf("%-11s %,10.0f ns/page %,10d bytes/page (%d matches)%n", name,
+                (double) nanos / MEASURED_OPS, bytes / MEASURED_OPS, matches);
+    }
+
+    private static int filter(HeapPageId pid, byte[] data, Field threshold) throws Exception {
+        HeapPage page = new HeapPage(pid, data);
+        int n = 0;
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext()) {
+            if (it.next().getField(0).compare(Predicate.Op.LESS_THAN, threshold)) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
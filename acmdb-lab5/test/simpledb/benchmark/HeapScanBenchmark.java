@@ -0,0 +1,62 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.UUID;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares sequential scan throughput of a HeapFile read through the file
+ * channel (each page copied into a fresh array, then decoded) with the same
+ * file opened in memory-mapped mode (each page decoded from the mapping).
+ * The buffer pool is much smaller than the table, so every page of every
+ * scan is read from the file; the file itself stays in the OS page cache.
+ *
+ * Run with: ant runbench -Dbench=HeapScanBenchmark
+ */
+public class HeapScanBenchmark {
+    private static final int TABLE_PAGES = 4000;
+    private static final int POOL_PAGES = 64;
+    private static final int WARMUP_SCANS = 3;
+    private static final int MEASURED_SCANS = 10;
+
+    public static void main(String[] args) throws Exception {
+        // 504 two-column tuples fill one page
+        File f = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * TABLE_PAGES, 1 << 16, null, null);
+        TupleDesc td = Utility.getTupleDesc(2);
+
+        for (boolean mapped : new boolean[] {false, true}) {
+            Database.reset();
+            Database.resetBufferPool(POOL_PAGES);
+            HeapFile table = new HeapFile(f, td, mapped);
+            Database.getCatalog().addTable(table, UUID.randomUUID().toString());
+
+            for (int i = 0; i < WARMUP_SCANS; i++) {
+                scan(table);
+            }
+            long tuples = 0;
+            long begin = System.nanoTime();
+            for (int i = 0; i < MEASURED_SCANS; i++) {
+                tuples += scan(table);
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("%-7s %,12.0f pages/s %,14.0f tuples/s%n", mapped ? "mapped" : "channel",
+                    MEASURED_SCANS * table.numPages() / seconds, tuples / seconds);
+        }
+    }
+
+    private static long scan(HeapFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId());
+        long count = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+            count++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures the cost of serializing a full page of each type: time and bytes
+ * allocated per page, for getPageData, which returns a new array, and for
+ * writePageData into a reused direct buffer, which is how pages are written
+ * to their files.
+ *
+ * Run with: ant runbench -Dbench=PageSerializationBenchmark
+ */
+public class PageSerializationBenchmark {
+    private static final int WARMUP_OPS = 50000;
+    private static final int MEASURED_OPS = 200000;
+
+    public static void main(String[] args) throws Exception {
+        File f = File.createTempFile("btree", ".dat");
+        f.deleteOnExit();
+        BTreeFile bf = BTreeUtility.createEmptyBTreeFile(f.getAbsolutePath(), 2, 0);
+        int tableId = bf.getId();
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 504, null, null);
+
+        HeapPageId heapId = new HeapPageId(hf.getId(), 0);
+        Page[] pages = {
+            hf.readPage(heapId),
+            BTreeUtility.createRandomLeafPage(new BTreePageId(tableId, 1, BTreePageId.LEAF),
+                    2, 0, 0, BTreeUtility.MAX_RAND_VALUE),
+            BTreeUtility.createRandomInternalPage(new BTreePageId(tableId, 2, BTreePageId.INTERNAL),
+                    0, BTreePageId.LEAF, 0, BTreeUtility.MAX_RAND_VALUE, 3),
+            new BTreeHeaderPage(new BTreePageId(tableId, 3, BTreePageId.HEADER),
+                    BTreeHeaderPage.createEmptyPageData()),
+        };
+        ByteBuffer buf = ByteBuffer.allocateDirect(BufferPool.getPageSize());
+
+        for (Page page : pages) {
+            String name = page.getClass().getSimpleName();
+            report(name + ".getPageData", measure(page, null));
+            report(name + ".writePageData", measure(page, buf));
+        }
+    }
+
+    /** @return {ns/op, bytes/op} */
+    private static long[] measure(Page page, ByteBuffer buf) {
+        long sink = 0;
+        for (int i = 0; i < WARMUP_OPS; i++) {
+            sink += serialize(page, buf);
+        }
+        long bytes = Allocations.allocatedBytes();
+        long begin = System.nanoTime();
+        for (int i = 0; i < MEASURED_OPS; i++) {
+            sink += serialize(page, buf);
+        }
+        long nanos = System.nanoTime() - begin;
+        bytes = Allocations.allocatedBytes() - bytes;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return new long[] {nanos / MEASURED_OPS, bytes / MEASURED_OPS};
+    }
+
+    private static int serialize(Page page, ByteBuffer buf) {
+        if (buf == null) {
+            return page.getPageData()[BufferPool.getPageSize() - 1];
+        }
+        buf.clear();
+        page.writePageData(buf);
+        return buf.position();
+    }
+
+    private static void report(String name, long[] result) {
+        System.out.printf("%-35s %,8d ns/op %,8d bytes/op%n", name, result[0], result[1]);
+    }
+}
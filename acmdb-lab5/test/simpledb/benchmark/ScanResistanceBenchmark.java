@@ -0,0 +1,107 @@
+package simpledb.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Measures how well a point-lookup working set survives a concurrent large
+ * scan. One thread reads random pages of a small hot table, one page per
+ * transaction with a pause in between, and counts how many it finds in the
+ * buffer pool; another scans
+ * a table several times the size of the pool back to back. The scan runs
+ * once through the whole pool, reading every page with a plain getPage, and
+ * once as a SeqScan, which reads through a scan ring.
+ *
+ * Run with: ant runbench -Dbench=ScanResistanceBenchmark
+ */
+public class ScanResistanceBenchmark {
+    private static final int HOT_PAGES = 20;
+    private static final int SCAN_PAGES = BufferPool.DEFAULT_PAGES * 4;
+    private static final long MEASURE_MILLIS = 3000;
+    /** Pause between lookups, as clients of an OLTP workload think between requests. */
+    private static final long THINK_MILLIS = 1;
+
+    public static void main(String[] args) throws Exception {
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        // 504 two-column tuples fill one page
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 504 * HOT_PAGES, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * SCAN_PAGES, null, null);
+
+        for (boolean ring : new boolean[] {false, true}) {
+            Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+            System.out.printf("%-10s point-lookup hit ratio: %5.1f%%%n", ring ? "ring" : "whole pool",
+                    100 * run(hot.getId(), big.getId(), ring));
+        }
+    }
+
+    private static double run(final int hotId, final int bigId, final boolean ring) throws Exception {
+        final AtomicBoolean done = new AtomicBoolean(false);
+        final AtomicLong lookups = new AtomicLong();
+        final AtomicLong hits = new AtomicLong();
+        final BufferPool bp = Database.getBufferPool();
+
+        // warm the working set
+        TransactionId warm = new TransactionId();
+        for (int i = 0; i < HOT_PAGES; i++) {
+            bp.getPage(warm, new HeapPageId(hotId, i), Permissions.READ_ONLY);
+        }
+        bp.transactionComplete(warm);
+
+        Thread scanner = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        TransactionId tid = new TransactionId();
+                        if (ring) {
+                            SeqScan scan = new SeqScan(tid, bigId);
+                            scan.open();
+                            while (scan.hasNext()) {
+                                scan.next();
+                            }
+                            scan.close();
+                        } else {
+                            for (int i = 0; i < SCAN_PAGES; i++) {
+                                bp.getPage(tid, new HeapPageId(bigId, i), Permissions.READ_ONLY);
+                            }
+                        }
+                        bp.transactionComplete(tid);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        Thread lookup = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Random rand = new Random(0);
+                    while (!done.get()) {
+                        TransactionId tid = new TransactionId();
+                        HeapPageId pid = new HeapPageId(hotId, rand.nextInt(HOT_PAGES));
+                        if (bp.isCached(pid)) {
+                            hits.incrementAndGet();
+                        }
+                        bp.getPage(tid, pid, Permissions.READ_ONLY);
+                        bp.transactionComplete(tid);
+                        lookups.incrementAndGet();
+                        Thread.sleep(THINK_MILLIS);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        scanner.start();
+        lookup.start();
+        Thread.sleep(MEASURE_MILLIS);
+        done.set(true);
+        scanner.join();
+        lookup.join();
+        return (double) hits.get() / lookups.get();
+    }
+}
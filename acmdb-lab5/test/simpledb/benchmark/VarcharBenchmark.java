@@ -0,0 +1,72 @@
+package simpledb.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.UUID;
+
+import simpledb.*;
+
+/**
+ * Compares a table of (int, short name) rows stored with a fixed-size
+ * STRING column, in fixed heap page slots, with the same rows stored with a
+ * VARCHAR column, in slotted heap pages: the number of pages each takes and
+ * how fast a sequential scan reads them. The buffer pool is much smaller
+ * than either table, so every page of every scan is read from the file.
+ *
+ * Run with: ant runbench -Dbench=VarcharBenchmark
+ */
+public class VarcharBenchmark {
+    private static final int ROWS = 200000;
+    private static final int POOL_PAGES = 64;
+    private static final int WARMUP_SCANS = 3;
+    private static final int MEASURED_SCANS = 10;
+
+    public static void main(String[] args) throws Exception {
+        File text = File.createTempFile("names", ".txt");
+        text.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(text));
+        for (int i = 0; i < ROWS; i++) {
+            bw.write(i + ",user" + (i * 7919 % ROWS) + "\n");
+        }
+        bw.close();
+
+        for (Type type : new Type[] {Type.STRING_TYPE, Type.VARCHAR_TYPE}) {
+            Type[] types = {Type.INT_TYPE, type};
+            File f = File.createTempFile("names", ".dat");
+            HeapFile.deleteOnExit(f);
+            HeapFileEncoder.convert(text, f, BufferPool.getPageSize(), 2, types);
+
+            Database.reset();
+            Database.resetBufferPool(POOL_PAGES);
+            HeapFile table = new HeapFile(f, new TupleDesc(types));
+            Database.getCatalog().addTable(table, UUID.randomUUID().toString());
+
+            for (int i = 0; i < WARMUP_SCANS; i++) {
+                scan(table);
+            }
+            long tuples = 0;
+            long begin = System.nanoTime();
+            for (int i = 0; i < MEASURED_SCANS; i++) {
+                tuples += scan(table);
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            System.out.printf("%-12s %,6d pages %,5d rows/page %,14.0f tuples/s%n", type, table.numPages(),
+                    ROWS / table.numPages(), tuples / seconds);
+        }
+    }
+
+    private static long scan(HeapFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId());
+        long count = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next().getField(1);
+            count++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return count;
+    }
+}
@@ -0,0 +1,83 @@
+package simpledb.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.UUID;
+
+import simpledb.*;
+
+/**
+ * Runs a selective range filter, <code>ts &gt; x</code> matching the last
+ * 1% of a table of (id, ts) rows loaded in ts order, over a sequential scan
+ * with and without the predicate pushed into the scan, and prints how many
+ * pages each left out and how long it took. The buffer pool is much smaller
+ * than the table, so every page read comes from the file. The zones are
+ * learned by a first full scan.
+ *
+ * Run with: ant runbench -Dbench=ZoneMapBenchmark
+ */
+public class ZoneMapBenchmark {
+    private static final int ROWS = 1000000;
+    private static final int POOL_PAGES = 64;
+    private static final int WARMUP_SCANS = 3;
+    private static final int MEASURED_SCANS = 10;
+
+    public static void main(String[] args) throws Exception {
+        File text = File.createTempFile("events", ".txt");
+        text.deleteOnExit();
+        BufferedWriter bw = new BufferedWriter(new FileWriter(text));
+        for (int i = 0; i < ROWS; i++) {
+            bw.write(i * 7919 % ROWS + "," + (1000000 + i) + "\n");
+        }
+        bw.close();
+        File data = File.createTempFile("events", ".dat");
+        HeapFile.deleteOnExit(data);
+        Type[] types = {Type.INT_TYPE, Type.INT_TYPE};
+        HeapFileEncoder.convert(text, data, BufferPool.getPageSize(), 2, types);
+
+        Database.reset();
+        Database.resetBufferPool(POOL_PAGES);
+        HeapFile table = new HeapFile(data, new TupleDesc(types, new String[] {"id", "ts"}));
+        Database.getCatalog().addTable(table, UUID.randomUUID().toString());
+        Predicate p = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(1000000 + ROWS * 99 / 100));
+        run(table, p, true);
+
+        for (boolean pushed : new boolean[] {false, true}) {
+            for (int i = 0; i < WARMUP_SCANS; i++) {
+                run(table, p, pushed);
+            }
+            long matches = 0;
+            int skipped = 0;
+            long begin = System.nanoTime();
+            for (int i = 0; i < MEASURED_SCANS; i++) {
+                long[] result = run(table, p, pushed);
+                matches += result[0];
+                skipped = (int) result[1];
+            }
+            double ms = (System.nanoTime() - begin) / 1e6 / MEASURED_SCANS;
+            System.out.printf("%-12s %,6d of %,6d pages skipped %,8d rows %,10.2f ms/query%n",
+                    pushed ? "pushed down" : "filter only", skipped, table.numPages(),
+                    matches / MEASURED_SCANS, ms);
+        }
+    }
+
+    /** @return the number of matches and of pages skipped */
+    private static long[] run(HeapFile table, Predicate p, boolean pushed) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId());
+        if (pushed) {
+            scan.pushPredicate(p);
+        }
+        Filter filter = new Filter(p, scan);
+        long count = 0;
+        filter.open();
+        while (filter.hasNext()) {
+            filter.next();
+            count++;
+        }
+        filter.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return new long[] {count, scan.getPagesSkipped()};
+    }
+}